@@ -22,6 +22,7 @@ package org.openremote.android.console;
 
 import org.openremote.android.console.net.ControllerService;
 import org.openremote.android.console.net.HttpXmlControllerService;
+import org.openremote.android.console.net.ORHttpTransport;
 
 import roboguice.config.AbstractAndroidModule;
 
@@ -34,5 +35,8 @@ public class OpenRemoteModule extends AbstractAndroidModule {
   @Override
   protected void configure() {
     bind(ControllerService.class).to(HttpXmlControllerService.class);
+    // Code that isn't created by the injector uses ORHttpTransport.getInstance()
+    // so bind that instance to keep a single connection pool
+    bind(ORHttpTransport.class).toInstance(ORHttpTransport.getInstance());
   }
 }
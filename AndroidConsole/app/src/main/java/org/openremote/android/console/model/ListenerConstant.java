@@ -30,7 +30,6 @@ public class ListenerConstant {
    public static final String ListenerHideInitView = "hideInitViewListener";
    public static final String ListenerRefreshAcitivitiesView = "refreshAcitivitiesViewListener";
    public static final String ListenerRefreshGroupsView = "refreshGroupsViewListener";
-   public static final String ListenerPollingStatusIdFormat = "polling_status_";
    public static final String ListenerNavigateTo = "navigateToListener";
    public static final String ListenerPopulateCredentialView = "ListenerPopulateCredentialView";
    public static final String ListenerPopulateSettingsView = "ListenerPopulateSettingsView";
@@ -33,11 +33,6 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
 import org.openremote.android.console.AppSettingsActivity;
 import org.openremote.android.console.Constants;
 import org.openremote.android.console.ControllerDataHelper;
@@ -45,7 +40,7 @@ import org.openremote.android.console.ControllerObject;
 import org.openremote.android.console.Main;
 import org.openremote.android.console.net.IPAutoDiscoveryClient;
 import org.openremote.android.console.net.ORControllerServerSwitcher;
-import org.openremote.android.console.net.SelfCertificateSSLSocketFactory;
+import org.openremote.android.console.net.ORHttpTransport;
 import org.openremote.android.console.util.SecurityUtil;
 import android.content.Context;
 import android.content.Intent;
@@ -147,13 +142,7 @@ public class PollingHelper {
     * Request current status and start polling.
     */
    public void requestCurrentStatusAndStartPolling() {
-      HttpParams params = new BasicHttpParams();
-      HttpConnectionParams.setConnectionTimeout(params, 50 * 1000);
-      
-      // make polling socket timeout bigger than Controller (50s)
-      HttpConnectionParams.setSoTimeout(params, 55 * 1000);
-      
-      client = new DefaultHttpClient(params);
+      client = ORHttpTransport.getInstance().getHttpClient();
       if (isPolling) {
          // TODO Explain this part! We don't want to start polling again for the same thing?
          return;
@@ -161,16 +150,12 @@ public class PollingHelper {
       
       try {
          serverUrl.toURI();
-         if ("https".equals(serverUrl.getProtocol())) {
-            Scheme sch = new Scheme(serverUrl.getProtocol(), new SelfCertificateSSLSocketFactory(), serverUrl.getPort());
-            client.getConnectionManager().getSchemeRegistry().register(sch);
-         }
       } catch (URISyntaxException e) {
          Log.e(LOG_CATEGORY, "Could not convert " + serverUrl + " to a compliant URI");
          return;
       }
       isPolling = true;
-      handleRequest(serverUrl + "/rest/status/" + pollingStatusIds);
+      handleRequest(serverUrl + "/rest/status/" + pollingStatusIds, true);
       while (isPolling) {
          doPolling();
       }
@@ -182,25 +167,31 @@ public class PollingHelper {
          httpGet = null;
       }
       Log.i(LOG_CATEGORY, "polling start");
-      handleRequest(serverUrl + "/rest/polling/" + deviceId + "/" + pollingStatusIds);
+      handleRequest(serverUrl + "/rest/polling/" + deviceId + "/" + pollingStatusIds, false);
    }
 
    /**
     * Execute request and handle the result.
     * 
     * @param requestUrl the request url
+    * @param currentStatus true for the current status request, all its statuses are notified as
+    *        the screen's listeners have just been registered; polling results only notify changes
     */
-   private void handleRequest(String requestUrl) {
+   private void handleRequest(String requestUrl, boolean currentStatus) {
       Log.i(LOG_CATEGORY, requestUrl);
       httpGet = new HttpGet(requestUrl);
       // why would httpGet ever be aborted here, right after instantiation?
       if (!httpGet.isAborted()) {
          SecurityUtil.addCredentialToHttpRequest(context, httpGet);
+         // make polling socket timeout bigger than Controller (50s)
+         ORHttpTransport.setTimeout(httpGet, 50 * 1000, 55 * 1000);
          try {
             HttpResponse response = client.execute(httpGet);
             int statusCode = response.getStatusLine().getStatusCode();
             if (statusCode == Constants.HTTP_SUCCESS) {
-               PollingStatusParser.parse(response.getEntity().getContent());
+               PollingStatusParser.parse(response.getEntity().getContent(), currentStatus);
+               // Keep the connection for the next poll
+               ORHttpTransport.release(response);
             } else {
                response.getEntity().getContent().close();
                handleServerErrorWithStatusCode(statusCode);
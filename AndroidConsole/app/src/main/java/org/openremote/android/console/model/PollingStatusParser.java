@@ -21,19 +21,13 @@ package org.openremote.android.console.model;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import org.openremote.android.console.Constants;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import android.util.Log;
+import android.util.Xml;
 
 
 /**
@@ -41,44 +35,138 @@ import android.util.Log;
  * 
  * Fix added for ANDROID-102 see JIRA
  * 
+ * The status elements are read in a single pass with a pull parser (no DOM)
+ * into the {@link SensorStatusStore}.
+ * 
  * @author Tomsky Wang
  * @author Dan Cong
  * @author Rich Turner
  * 
  */
 public class PollingStatusParser {
-   public static final HashMap<String, String> statusMap = new HashMap<String, String>();
-   
+   private static final String LOG_CATEGORY = Constants.LOG_CATEGORY + "POLLING";
+   private static final String STATUS_ELEMENT = "status";
+   private static final String ID_ATTRIBUTE = "id";
+
+   /**
+    * Sensor statuses decoded from one response.
+    */
+   public static final class Statuses {
+      private int[] ids = new int[16];
+      private String[] values = new String[16];
+      private int size;
+
+      void add(int id, String value) {
+         if (size == ids.length) {
+            int[] newIds = new int[size * 2];
+            String[] newValues = new String[size * 2];
+            System.arraycopy(ids, 0, newIds, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            ids = newIds;
+            values = newValues;
+         }
+         ids[size] = id;
+         values[size] = value;
+         size++;
+      }
+
+      public int size() {
+         return size;
+      }
+
+      public int getId(int index) {
+         return ids[index];
+      }
+
+      public String getValue(int index) {
+         return values[index];
+      }
+   }
+
+   /**
+    * Parses a long polling result and notifies the subscribers of the sensors
+    * whose status changed as one {@link SensorEventBus} batch.
+    * 
+    * @param inputStream the input stream
+    * 
+    * @return the ids of the sensors whose status changed
+    */
+   public static int[] parse(InputStream inputStream) {
+      return parse(inputStream, false);
+   }
+
    /**
     * Parses the polling result.
     * 
     * @param inputStream the input stream
+    * @param notifyUnchanged notify the subscribers of every sensor in the result
+    *        rather than only the changed ones, needed for the initial status
+    *        request as the subscribers have just been registered
+    * 
+    * @return the ids of the sensors whose status changed
     */
-   public static void parse(InputStream inputStream) {
+   public static int[] parse(InputStream inputStream, boolean notifyUnchanged) {
+      Statuses statuses;
       try {
-         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-         DocumentBuilder builder = factory.newDocumentBuilder();
-         Document dom = builder.parse(inputStream);
-         Element root = dom.getDocumentElement();
-         
-         NodeList nodeList = root.getElementsByTagName("status");
-         int nodeNums = nodeList.getLength();
-         for (int i = 0; i < nodeNums; i++) {
-            String lastId = nodeList.item(i).getAttributes().getNamedItem("id").getNodeValue();
-            String newStatus = "";
-            Node newStatusNode = nodeList.item(i).getFirstChild();
-            if (newStatusNode != null)
-            	newStatus = newStatusNode.getNodeValue();
-            statusMap.put(lastId, newStatus);
-            Log.i("OpenRemote/POLLING", "set " + lastId + " to new status: " + newStatus);
-            ORListenerManager.getInstance().notifyOREventListener(ListenerConstant.ListenerPollingStatusIdFormat + lastId, null);
-         }
-      } catch (ParserConfigurationException e) {
-         Log.e("OpenRemote/POLLING", "failed", e);
-      } catch (SAXException e) {
-         Log.e("OpenRemote/POLLING", "failed", e);
+         statuses = decode(inputStream);
+      } catch (XmlPullParserException e) {
+         Log.e(LOG_CATEGORY, "failed", e);
+         return new int[0];
       } catch (IOException e) {
-         Log.e("OpenRemote/POLLING", "failed", e);
+         Log.e(LOG_CATEGORY, "failed", e);
+         return new int[0];
+      }
+
+      int[] changed = store(statuses, SensorStatusStore.getInstance());
+      if (Log.isLoggable(LOG_CATEGORY, Log.DEBUG)) {
+         Log.d(LOG_CATEGORY, "received " + statuses.size + " statuses, " + changed.length + " changed");
+      }
+
+      SensorEventBus bus = SensorEventBus.getInstance();
+      if (notifyUnchanged) {
+         int[] ids = new int[statuses.size];
+         System.arraycopy(statuses.ids, 0, ids, 0, statuses.size);
+         bus.publish(ids);
+      } else if (changed.length > 0) {
+         bus.publish(changed);
+      }
+      return changed;
+   }
+
+   /**
+    * Stores decoded statuses.
+    * 
+    * @return the ids of the sensors whose status changed
+    */
+   public static int[] store(Statuses statuses, SensorStatusStore store) {
+      return store.update(statuses.ids, statuses.values, statuses.size);
+   }
+
+   /**
+    * Reads the id and text of each status element.
+    * 
+    * @param inputStream the input stream
+    * 
+    * @return the statuses in document order
+    */
+   public static Statuses decode(InputStream inputStream) throws XmlPullParserException, IOException {
+      XmlPullParser parser = Xml.newPullParser();
+      parser.setInput(inputStream, null);
+      Statuses statuses = new Statuses();
+
+      int event = parser.getEventType();
+      while (event != XmlPullParser.END_DOCUMENT) {
+         if (event == XmlPullParser.START_TAG && STATUS_ELEMENT.equals(parser.getName())) {
+            String id = parser.getAttributeValue(null, ID_ATTRIBUTE);
+            String value = parser.nextText();
+            try {
+               statuses.add(Integer.parseInt(id != null ? id.trim() : null), value);
+            } catch (NumberFormatException e) {
+               Log.w(LOG_CATEGORY, "ignoring status with invalid id " + id);
+            }
+         }
+         event = parser.next();
       }
+      return statuses;
    }
 }
@@ -0,0 +1,301 @@
+/* OpenRemote, the Home of the Digital Home.
+* Copyright 2008-2011, OpenRemote Inc.
+*
+* See the contributors.txt file in the distribution for a
+* full listing of individual contributors.
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Affero General Public License as
+* published by the Free Software Foundation, either version 3 of the
+* License, or (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Affero General Public License for more details.
+*
+* You should have received a copy of the GNU Affero General Public License
+* along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.openremote.android.console.model;
+
+import android.view.View;
+
+/**
+ * Delivers sensor status changes to the views showing them.
+ *
+ * Subscribers are kept in copy-on-write arrays keyed by the primitive sensor
+ * id so publishing a polling batch takes no lock and creates no keys or
+ * event objects. A subscription made for a view is only active while the view
+ * is attached to a window; it is removed when the screen is torn down and
+ * restored, with the current status, if the view is attached again.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorEventBus {
+
+   /**
+    * Receives the status changes of the subscribed sensor; called on the
+    * polling thread, or on the UI thread when a view is attached.
+    */
+   public interface SensorListener {
+      void onSensorChanged(int sensorId, String status);
+   }
+
+   /**
+    * A listener's subscription to a sensor.
+    */
+   public final class Subscription {
+      private final int sensorId;
+      private final SensorListener listener;
+      private boolean active;
+      private boolean cancelled;
+
+      private Subscription(int sensorId, SensorListener listener) {
+         this.sensorId = sensorId;
+         this.listener = listener;
+      }
+
+      public int getSensorId() {
+         return sensorId;
+      }
+
+      public boolean isActive() {
+         synchronized (SensorEventBus.this) {
+            return active;
+         }
+      }
+
+      /**
+       * Stops the listener from receiving any further changes.
+       */
+      public void cancel() {
+         synchronized (SensorEventBus.this) {
+            cancelled = true;
+            remove(this);
+         }
+      }
+   }
+
+   /**
+    * Sorted sensor ids and the subscriptions of each; replaced as a whole,
+    * never modified, so a reader always sees ids and subscriptions that
+    * belong together.
+    */
+   private static final class Snapshot {
+      final int[] sensorIds;
+      final Subscription[][] subscriptions;
+
+      Snapshot(int[] sensorIds, Subscription[][] subscriptions) {
+         this.sensorIds = sensorIds;
+         this.subscriptions = subscriptions;
+      }
+   }
+
+   private static final Snapshot EMPTY = new Snapshot(new int[0], new Subscription[0][]);
+   private static SensorEventBus instance;
+
+   private final SensorStatusStore store;
+
+   private volatile Snapshot snapshot = EMPTY;
+   private int subscriptionCount;
+
+   /**
+    * Gets the bus shared by the polling helpers and the views.
+    */
+   public static synchronized SensorEventBus getInstance() {
+      if (instance == null) {
+         instance = new SensorEventBus(SensorStatusStore.getInstance());
+      }
+      return instance;
+   }
+
+   /**
+    * @param store the store the published statuses are read from
+    */
+   public SensorEventBus(SensorStatusStore store) {
+      this.store = store;
+   }
+
+   /**
+    * Subscribes the listener until the subscription is cancelled.
+    */
+   public Subscription subscribe(int sensorId, SensorListener listener) {
+      Subscription subscription = new Subscription(sensorId, listener);
+      synchronized (this) {
+         add(subscription);
+      }
+      return subscription;
+   }
+
+   /**
+    * Subscribes the listener while the view is attached to a window. When the
+    * view is attached the listener receives the current status, if known.
+    */
+   public Subscription subscribe(View view, int sensorId, SensorListener listener) {
+      final Subscription subscription = new Subscription(sensorId, listener);
+
+      view.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+         @Override
+         public void onViewAttachedToWindow(View v) {
+            attach(subscription);
+         }
+
+         @Override
+         public void onViewDetachedFromWindow(View v) {
+            synchronized (SensorEventBus.this) {
+               remove(subscription);
+            }
+         }
+      });
+
+      if (view.getWindowToken() != null) {
+         attach(subscription);
+      }
+      return subscription;
+   }
+
+   /**
+    * Notifies the subscribers of each sensor in the batch with its current
+    * status, e.g. the changed ids returned by {@link SensorStatusStore#update}.
+    */
+   public void publish(int[] changedIds) {
+      Snapshot current = snapshot;
+      int[] ids = current.sensorIds;
+      Subscription[][] subs = current.subscriptions;
+      if (ids.length == 0) {
+         return;
+      }
+
+      for (int sensorId : changedIds) {
+         int index = binarySearch(ids, sensorId);
+         if (index < 0) {
+            continue;
+         }
+         String status = store.get(sensorId);
+         for (Subscription subscription : subs[index]) {
+            subscription.listener.onSensorChanged(sensorId, status);
+         }
+      }
+   }
+
+   /**
+    * Number of active subscriptions.
+    */
+   public synchronized int getSubscriptionCount() {
+      return subscriptionCount;
+   }
+
+   /**
+    * Number of active subscriptions to the sensor.
+    */
+   public int getSubscriptionCount(int sensorId) {
+      Snapshot current = snapshot;
+      int index = binarySearch(current.sensorIds, sensorId);
+      return index < 0 ? 0 : current.subscriptions[index].length;
+   }
+
+   private void attach(Subscription subscription) {
+      synchronized (this) {
+         if (subscription.active || subscription.cancelled) {
+            return;
+         }
+         add(subscription);
+      }
+
+      // Catch up with the changes published while detached
+      String status = store.get(subscription.sensorId);
+      if (status != null) {
+         subscription.listener.onSensorChanged(subscription.sensorId, status);
+      }
+   }
+
+   // Callers hold the bus lock
+
+   private void add(Subscription subscription) {
+      if (subscription.active || subscription.cancelled) {
+         return;
+      }
+
+      int[] ids = snapshot.sensorIds;
+      Subscription[][] subs = snapshot.subscriptions;
+      int index = binarySearch(ids, subscription.sensorId);
+
+      if (index >= 0) {
+         Subscription[] current = subs[index];
+         Subscription[] updated = new Subscription[current.length + 1];
+         System.arraycopy(current, 0, updated, 0, current.length);
+         updated[current.length] = subscription;
+
+         Subscription[][] newSubs = subs.clone();
+         newSubs[index] = updated;
+         snapshot = new Snapshot(ids, newSubs);
+      } else {
+         int insert = -(index + 1);
+         int[] newIds = new int[ids.length + 1];
+         Subscription[][] newSubs = new Subscription[ids.length + 1][];
+         System.arraycopy(ids, 0, newIds, 0, insert);
+         System.arraycopy(subs, 0, newSubs, 0, insert);
+         newIds[insert] = subscription.sensorId;
+         newSubs[insert] = new Subscription[] { subscription };
+         System.arraycopy(ids, insert, newIds, insert + 1, ids.length - insert);
+         System.arraycopy(subs, insert, newSubs, insert + 1, ids.length - insert);
+         snapshot = new Snapshot(newIds, newSubs);
+      }
+
+      subscription.active = true;
+      subscriptionCount++;
+   }
+
+   private void remove(Subscription subscription) {
+      if (!subscription.active) {
+         return;
+      }
+
+      int[] ids = snapshot.sensorIds;
+      Subscription[][] subs = snapshot.subscriptions;
+      int index = binarySearch(ids, subscription.sensorId);
+      Subscription[] current = subs[index];
+
+      if (current.length == 1) {
+         int[] newIds = new int[ids.length - 1];
+         Subscription[][] newSubs = new Subscription[ids.length - 1][];
+         System.arraycopy(ids, 0, newIds, 0, index);
+         System.arraycopy(subs, 0, newSubs, 0, index);
+         System.arraycopy(ids, index + 1, newIds, index, ids.length - index - 1);
+         System.arraycopy(subs, index + 1, newSubs, index, ids.length - index - 1);
+         snapshot = new Snapshot(newIds, newSubs);
+      } else {
+         Subscription[] updated = new Subscription[current.length - 1];
+         int j = 0;
+         for (Subscription s : current) {
+            if (s != subscription) {
+               updated[j++] = s;
+            }
+         }
+
+         Subscription[][] newSubs = subs.clone();
+         newSubs[index] = updated;
+         snapshot = new Snapshot(ids, newSubs);
+      }
+
+      subscription.active = false;
+      subscriptionCount--;
+   }
+
+   private static int binarySearch(int[] ids, int sensorId) {
+      int low = 0;
+      int high = ids.length - 1;
+      while (low <= high) {
+         int mid = (low + high) >>> 1;
+         if (ids[mid] < sensorId) {
+            low = mid + 1;
+         } else if (ids[mid] > sensorId) {
+            high = mid - 1;
+         } else {
+            return mid;
+         }
+      }
+      return -(low + 1);
+   }
+}
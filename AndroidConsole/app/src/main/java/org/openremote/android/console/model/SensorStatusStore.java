@@ -0,0 +1,164 @@
+/* OpenRemote, the Home of the Digital Home.
+* Copyright 2008-2011, OpenRemote Inc.
+*
+* See the contributors.txt file in the distribution for a
+* full listing of individual contributors.
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Affero General Public License as
+* published by the Free Software Foundation, either version 3 of the
+* License, or (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Affero General Public License for more details.
+*
+* You should have received a copy of the GNU Affero General Public License
+* along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.openremote.android.console.model;
+
+/**
+ * Latest status of each sensor keyed by the primitive sensor id.
+ *
+ * Written by the polling thread a response at a time and read by the UI
+ * thread; every update publishes a new immutable table so reads are lock
+ * free and never see half a response.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorStatusStore {
+   private static final int[] NO_IDS = new int[0];
+   private static final int INITIAL_CAPACITY = 64;
+   private static SensorStatusStore instance;
+
+   /**
+    * Open addressing table; a null value marks an empty slot.
+    */
+   private static final class Table {
+      final int[] ids;
+      final String[] values;
+      final int size;
+
+      Table(int[] ids, String[] values, int size) {
+         this.ids = ids;
+         this.values = values;
+         this.size = size;
+      }
+
+      int indexOf(int sensorId) {
+         int mask = ids.length - 1;
+         int index = hash(sensorId) & mask;
+         while (values[index] != null && ids[index] != sensorId) {
+            index = (index + 1) & mask;
+         }
+         return index;
+      }
+   }
+
+   private volatile Table table = new Table(new int[INITIAL_CAPACITY], new String[INITIAL_CAPACITY], 0);
+
+   /**
+    * Gets the store shared by the polling helpers and the views.
+    */
+   public static synchronized SensorStatusStore getInstance() {
+      if (instance == null) {
+         instance = new SensorStatusStore();
+      }
+      return instance;
+   }
+
+   /**
+    * Gets the status of the sensor or null if no status has been received.
+    */
+   public String get(int sensorId) {
+      Table t = table;
+      return t.values[t.indexOf(sensorId)];
+   }
+
+   public boolean contains(int sensorId) {
+      return get(sensorId) != null;
+   }
+
+   public int size() {
+      return table.size;
+   }
+
+   /**
+    * Stores a batch of statuses, e.g. all the statuses of one polling response.
+    *
+    * @param sensorIds the sensor ids
+    * @param values the status of each sensor, must not be null
+    * @param count the number of statuses in the arrays
+    *
+    * @return the ids of the sensors whose status changed, in batch order
+    */
+   public synchronized int[] update(int[] sensorIds, String[] values, int count) {
+      Table current = table;
+      int capacity = current.ids.length;
+      while ((current.size + count) * 2 > capacity) {
+         capacity <<= 1;
+      }
+
+      Table next;
+      if (capacity == current.ids.length) {
+         next = new Table(current.ids.clone(), current.values.clone(), current.size);
+      } else {
+         next = new Table(new int[capacity], new String[capacity], current.size);
+         for (int i = 0; i < current.ids.length; i++) {
+            if (current.values[i] != null) {
+               int index = next.indexOf(current.ids[i]);
+               next.ids[index] = current.ids[i];
+               next.values[index] = current.values[i];
+            }
+         }
+      }
+
+      int[] changed = null;
+      int changedCount = 0;
+      int size = next.size;
+      for (int i = 0; i < count; i++) {
+         int index = next.indexOf(sensorIds[i]);
+         String previous = next.values[index];
+         if (values[i].equals(previous)) {
+            continue;
+         }
+         if (previous == null) {
+            next.ids[index] = sensorIds[i];
+            size++;
+         }
+         next.values[index] = values[i];
+
+         if (changed == null) {
+            changed = new int[count - i];
+         }
+         changed[changedCount++] = sensorIds[i];
+      }
+
+      if (changed == null) {
+         return NO_IDS;
+      }
+
+      table = new Table(next.ids, next.values, size);
+      if (changedCount < changed.length) {
+         int[] trimmed = new int[changedCount];
+         System.arraycopy(changed, 0, trimmed, 0, changedCount);
+         changed = trimmed;
+      }
+      return changed;
+   }
+
+   /**
+    * Removes all statuses, e.g. when switching controller.
+    */
+   public synchronized void clear() {
+      table = new Table(new int[INITIAL_CAPACITY], new String[INITIAL_CAPACITY], 0);
+   }
+
+   private static int hash(int sensorId) {
+      // Spread sequential ids
+      int h = sensorId * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+}
@@ -0,0 +1,269 @@
+/* OpenRemote, the Home of the Digital Home.
+* Copyright 2008-2011, OpenRemote Inc.
+*
+* See the contributors.txt file in the distribution for a
+* full listing of individual contributors.
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Affero General Public License as
+* published by the Free Software Foundation, either version 3 of the
+* License, or (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Affero General Public License for more details.
+*
+* You should have received a copy of the GNU Affero General Public License
+* along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.openremote.android.console.net;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openremote.android.console.Constants;
+
+import android.util.Log;
+
+/**
+ * Runs controller requests on a bounded pool of worker threads instead of a
+ * new thread per request.
+ *
+ * Tasks submitted with the same key (e.g. the id of the control that sent
+ * the command) run one at a time in submission order, tasks with different
+ * keys run in parallel. A key can only have a limited number of pending
+ * tasks so a control that repeats its command faster than the controller
+ * answers is rejected rather than queueing without bound.
+ *
+ * Also provides the scheduler that is shared by button repeat and long press
+ * timers.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class CommandDispatcher
+{
+  public final static String LOG_CATEGORY = Constants.LOG_CATEGORY + "CommandDispatcher";
+
+  public static final int DEFAULT_MAX_THREADS = 4;
+  public static final int DEFAULT_MAX_PENDING_PER_KEY = 16;
+
+  /**
+   * How long in seconds an idle worker thread is kept
+   */
+  private static final int KEEP_ALIVE = 30;
+
+  private static CommandDispatcher instance;
+
+  private final ThreadPoolExecutor executor;
+  private final ScheduledExecutorService scheduler;
+  private final int maxPendingPerKey;
+  private final Map<Object, SerialQueue> queues = new HashMap<Object, SerialQueue>();
+
+  /**
+   * Returns the dispatcher shared by the whole app
+   */
+  public static synchronized CommandDispatcher getInstance()
+  {
+    if (instance == null)
+    {
+      instance = new CommandDispatcher();
+    }
+    return instance;
+  }
+
+  public CommandDispatcher()
+  {
+    this(DEFAULT_MAX_THREADS, DEFAULT_MAX_PENDING_PER_KEY);
+  }
+
+  public CommandDispatcher(int maxThreads, int maxPendingPerKey)
+  {
+    this.maxPendingPerKey = maxPendingPerKey;
+    executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("CommandDispatcher"));
+    executor.allowCoreThreadTimeOut(true);
+    scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("CommandScheduler"));
+  }
+
+  /**
+   * Runs the task on a worker thread with no ordering guarantee
+   */
+  public void execute(Runnable task)
+  {
+    executor.execute(task);
+  }
+
+  /**
+   * Runs the task on a worker thread after any tasks previously submitted
+   * with the same key have completed
+   *
+   * @param key   the ordering key or null for no ordering
+   * @param task  the task to run
+   *
+   * @throws RejectedExecutionException if the key already has the maximum
+   *         number of pending tasks or the dispatcher has been shut down
+   */
+  public void execute(Object key, Runnable task)
+  {
+    if (key == null)
+    {
+      execute(task);
+      return;
+    }
+
+    synchronized (queues)
+    {
+      SerialQueue queue = queues.get(key);
+      if (queue == null)
+      {
+        queue = new SerialQueue(key);
+        queues.put(key, queue);
+      }
+
+      if (queue.tasks.size() >= maxPendingPerKey)
+      {
+        throw new RejectedExecutionException("Too many pending tasks for " + key);
+      }
+
+      queue.tasks.add(task);
+      if (!queue.scheduled)
+      {
+        schedule(queue);
+      }
+    }
+  }
+
+  /**
+   * Number of tasks with the key that are waiting to run
+   */
+  public int getPendingCount(Object key)
+  {
+    synchronized (queues)
+    {
+      SerialQueue queue = queues.get(key);
+      return queue != null ? queue.tasks.size() : 0;
+    }
+  }
+
+  /**
+   * Returns the scheduler for delayed and repeating tasks (button repeat and
+   * long press); scheduled tasks must be short and should hand requests to
+   * {@link #execute(Object, Runnable)}
+   */
+  public ScheduledExecutorService getScheduler()
+  {
+    return scheduler;
+  }
+
+  public void shutdown()
+  {
+    scheduler.shutdownNow();
+    executor.shutdown();
+  }
+
+  private void schedule(SerialQueue queue)
+  {
+    try
+    {
+      queue.scheduled = true;
+      executor.execute(queue);
+    }
+    catch (RejectedExecutionException e)
+    {
+      queue.scheduled = false;
+      queue.tasks.clear();
+      queues.remove(queue.key);
+      throw e;
+    }
+  }
+
+  /**
+   * Tasks of a key; runs one task per turn on the pool and resubmits itself
+   * while tasks remain so busy keys don't starve the others
+   */
+  private class SerialQueue implements Runnable
+  {
+    private final Object key;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+    private boolean scheduled;
+
+    SerialQueue(Object key)
+    {
+      this.key = key;
+    }
+
+    @Override
+    public void run()
+    {
+      Runnable task;
+      synchronized (queues)
+      {
+        task = tasks.poll();
+      }
+
+      try
+      {
+        if (task != null)
+        {
+          task.run();
+        }
+      }
+      catch (RuntimeException e)
+      {
+        Log.e(LOG_CATEGORY, "Task for " + key + " failed", e);
+      }
+      finally
+      {
+        synchronized (queues)
+        {
+          if (tasks.isEmpty())
+          {
+            scheduled = false;
+            queues.remove(key);
+          }
+          else
+          {
+            try
+            {
+              schedule(this);
+            }
+            catch (RejectedExecutionException e)
+            {
+              Log.w(LOG_CATEGORY, "Dropped pending tasks for " + key + ", dispatcher shut down");
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static class DaemonThreadFactory implements ThreadFactory
+  {
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger();
+
+    DaemonThreadFactory(String name)
+    {
+      this.name = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+      Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
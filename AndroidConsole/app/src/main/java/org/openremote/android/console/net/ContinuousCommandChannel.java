@@ -0,0 +1,341 @@
+/* OpenRemote, the Home of the Digital Home.
+* Copyright 2008-2011, OpenRemote Inc.
+*
+* See the contributors.txt file in the distribution for a
+* full listing of individual contributors.
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Affero General Public License as
+* published by the Free Software Foundation, either version 3 of the
+* License, or (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Affero General Public License for more details.
+*
+* You should have received a copy of the GNU Affero General Public License
+* along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.openremote.android.console.net;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.openremote.android.console.Constants;
+import org.xml.sax.InputSource;
+
+/**
+ * Command channel for continuous controls (sliders, colour pickers) that
+ * produce a stream of values while they are dragged.
+ *
+ * At most one request per channel is in flight; values offered while a
+ * request is in flight replace each other so only the latest is sent when
+ * it completes. An optional minimum interval limits the request rate while
+ * dragging. The final value (touch up) is always sent, as soon as the
+ * request in flight completes and without waiting for the interval. A value
+ * is only skipped if it equals the value of the request that was in flight
+ * and succeeded; the controller may have changed since any earlier request.
+ * If a request fails and no later value has been offered its value is
+ * resent, at most {@link #MAX_RESENDS} times.
+ *
+ * Results are forwarded to the delegate given to the constructor.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ContinuousCommandChannel
+{
+  /**
+   * Sends a command value to the controller and reports the result to the
+   * given delegate
+   */
+  public interface CommandSender
+  {
+    void send(String value, ORConnectionDelegate delegate);
+  }
+
+  /**
+   * Time in milliseconds after which a request that never reported back (ORConnection drops
+   * requests it can't build) no longer blocks the channel
+   */
+  public static final long IN_FLIGHT_TIMEOUT = 2 * Constants.HTTP_CONNECTION_TIMEOUT;
+
+  /**
+   * Number of times the value of a failed request is resent when no later value replaced it
+   */
+  public static final int MAX_RESENDS = 2;
+
+  private final CommandSender sender;
+  private final ORConnectionDelegate delegate;
+  private final long minInterval;
+  private final ScheduledExecutorService scheduler;
+
+  private String pending;
+  private String inFlightValue;
+  private boolean inFlightFinal;
+  private boolean inFlight;
+  private boolean flushing;
+  private ScheduledFuture<?> wakeUp;
+  private long wakeUpTime;
+  private long lastSendTime;
+  private long sequence;
+  private int resendCount;
+  private long sentCount;
+  private long coalescedCount;
+
+  /**
+   * Forwards the results of one request to the delegate and then lets the
+   * channel send the next value
+   */
+  private class Completion implements ORConnectionDelegate
+  {
+    private final long requestSequence;
+
+    Completion(long requestSequence)
+    {
+      this.requestSequence = requestSequence;
+    }
+
+    @Override
+    public void urlConnectionDidFailWithException(Exception e)
+    {
+      try
+      {
+        delegate.urlConnectionDidFailWithException(e);
+      }
+      finally
+      {
+        completed(requestSequence, false);
+      }
+    }
+
+    @Override
+    public void urlConnectionDidReceiveResponse(HttpResponse httpResponse)
+    {
+      int responseCode = httpResponse.getStatusLine().getStatusCode();
+      try
+      {
+        delegate.urlConnectionDidReceiveResponse(httpResponse);
+      }
+      finally
+      {
+        completed(requestSequence, responseCode == 200 || responseCode == 204);
+      }
+    }
+
+    @Override
+    public void urlConnectionDidReceiveData(InputSource inStream)
+    {
+      delegate.urlConnectionDidReceiveData(inStream);
+    }
+  }
+
+  private final Runnable delayedSend = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      synchronized (ContinuousCommandChannel.this)
+      {
+        wakeUp = null;
+      }
+      dispatch();
+    }
+  };
+
+  public ContinuousCommandChannel(CommandSender sender, ORConnectionDelegate delegate, long minInterval)
+  {
+    this(sender, delegate, minInterval, CommandDispatcher.getInstance().getScheduler());
+  }
+
+  /**
+   * @param sender       sends the requests
+   * @param delegate     receives the result of each request
+   * @param minInterval  minimum time in milliseconds between the start of two
+   *                     requests while dragging, 0 for no limit
+   * @param scheduler    runs delayed sends
+   */
+  public ContinuousCommandChannel(CommandSender sender, ORConnectionDelegate delegate,
+      long minInterval, ScheduledExecutorService scheduler)
+  {
+    this.sender = sender;
+    this.delegate = delegate;
+    this.minInterval = minInterval;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Offers an intermediate value; replaces any value that hasn't been sent yet
+   */
+  public void send(String value)
+  {
+    synchronized (this)
+    {
+      if (pending != null)
+      {
+        coalescedCount++;
+      }
+      pending = value;
+      resendCount = 0;
+    }
+    dispatch();
+  }
+
+  /**
+   * Offers the final value of a gesture; it is sent without waiting for the
+   * minimum interval
+   */
+  public void sendFinal(String value)
+  {
+    synchronized (this)
+    {
+      if (pending != null)
+      {
+        coalescedCount++;
+      }
+      pending = value;
+      resendCount = 0;
+      flushing = true;
+    }
+    dispatch();
+  }
+
+  /**
+   * Ends a gesture whose final value has already been offered; the pending
+   * value, if any, is sent without waiting for the minimum interval
+   */
+  public void flush()
+  {
+    synchronized (this)
+    {
+      if (pending == null)
+      {
+        return;
+      }
+      flushing = true;
+    }
+    dispatch();
+  }
+
+  /**
+   * Number of requests sent
+   */
+  public synchronized long getSentCount()
+  {
+    return sentCount;
+  }
+
+  /**
+   * Number of values replaced by a later value before being sent
+   */
+  public synchronized long getCoalescedCount()
+  {
+    return coalescedCount;
+  }
+
+  public synchronized boolean isInFlight()
+  {
+    return inFlight;
+  }
+
+  private void dispatch()
+  {
+    String value;
+    Completion completion;
+
+    synchronized (this)
+    {
+      long now = System.currentTimeMillis();
+      if (pending == null)
+      {
+        return;
+      }
+
+      if (inFlight && now - lastSendTime < IN_FLIGHT_TIMEOUT)
+      {
+        // Nothing else completes a request that never reports back
+        scheduleWakeUp(now, lastSendTime + IN_FLIGHT_TIMEOUT - now);
+        return;
+      }
+
+      long wait = lastSendTime + minInterval - now;
+      if (!flushing && wait > 0)
+      {
+        scheduleWakeUp(now, wait);
+        return;
+      }
+
+      value = pending;
+      pending = null;
+      inFlight = true;
+      inFlightValue = value;
+      inFlightFinal = flushing;
+      flushing = false;
+      lastSendTime = now;
+      sentCount++;
+      completion = new Completion(++sequence);
+    }
+
+    try
+    {
+      sender.send(value, completion);
+    }
+    catch (RuntimeException e)
+    {
+      completed(completion.requestSequence, false);
+      throw e;
+    }
+  }
+
+  private void completed(long requestSequence, boolean success)
+  {
+    synchronized (this)
+    {
+      if (requestSequence != sequence)
+      {
+        // A request that had timed out; a later one is in flight
+        return;
+      }
+      inFlight = false;
+      if (success)
+      {
+        resendCount = 0;
+        if (pending != null && pending.equals(inFlightValue))
+        {
+          // The controller already has this value
+          pending = null;
+          flushing = false;
+        }
+      }
+      else if (pending == null && resendCount < MAX_RESENDS)
+      {
+        // Nothing replaced the failed value so it may never have been applied
+        resendCount++;
+        pending = inFlightValue;
+        flushing = inFlightFinal;
+      }
+      inFlightValue = null;
+    }
+    dispatch();
+  }
+
+  /**
+   * Schedules a dispatch after the delay unless one is already due by then
+   */
+  private void scheduleWakeUp(long now, long delay)
+  {
+    if (wakeUp != null && wakeUpTime <= now + delay)
+    {
+      return;
+    }
+    if (wakeUp != null)
+    {
+      wakeUp.cancel(false);
+    }
+    wakeUpTime = now + delay;
+    wakeUp = scheduler.schedule(delayedSend, delay, TimeUnit.MILLISECONDS);
+  }
+}
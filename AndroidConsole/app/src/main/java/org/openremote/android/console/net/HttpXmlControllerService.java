@@ -36,11 +36,6 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.conn.HttpHostConnectException;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
 import org.openremote.android.console.Constants;
 import org.openremote.android.console.ControllerDataHelper;
 import org.openremote.android.console.ControllerObject;
@@ -76,11 +71,13 @@ public class HttpXmlControllerService implements ControllerService
   public static final String LOG_CATEGORY = Constants.LOG_CATEGORY + "HttpXmlControllerService";
 
   private Context ctx;
+  private ORHttpTransport transport;
 
   @Inject
-  public HttpXmlControllerService(Context ctx)
+  public HttpXmlControllerService(Context ctx, ORHttpTransport transport)
   {
     this.ctx = ctx;
+    this.transport = transport;
   }
 
   /**
@@ -92,56 +89,36 @@ public class HttpXmlControllerService implements ControllerService
   }
 
   /**
-   * Returns a default HttpClient.  Additional methods could return more specialized HttpClient
-   * instances, such as one that has longer timeout values.
+   * Returns the app wide pooled HttpClient; timeouts are set per request so the same client
+   * serves requests with different timeout values.
    */
-  protected HttpClient getHttpClient(Integer timeout)
+  protected HttpClient getHttpClient()
   {
-    timeout = timeout == null ? Constants.HTTP_CONNECTION_TIMEOUT : timeout;
-    HttpParams params = new BasicHttpParams();
-    HttpConnectionParams.setConnectionTimeout(params, timeout);
-    HttpConnectionParams.setSoTimeout(params, timeout);
-    return new DefaultHttpClient(params);
+    return transport.getHttpClient();
   }
 
   /**
-   * Constructs an HttpGet object given a URL which specifies that self-signed SSL certificates
-   * should be accepted.
+   * Constructs an HttpGet object given a URL, self-signed SSL certificates are accepted by the
+   * shared transport.
    *
    * TODO add HTTP authentication header if needed
    *
-   * @param httpClient the HttpClient instance that will be used for the request
    * @param url the URL that will be used for the request
+   * @param timeout connection and socket timeout of the request or null for the default
    */
-  protected HttpGet getHttpGetRequest(HttpClient httpClient, URL url)
+  protected HttpGet getHttpGetRequest(URL url, Integer timeout)
   {
     HttpGet request = new HttpGet(url.toString());
     SecurityUtil.addCredentialToHttpRequest(ctx, request);
-
-    // accept self-signed SSL certificates
-    if ("https".equals(url.getProtocol()))
-    {
-      Scheme sch = new Scheme(url.getProtocol(), new SelfCertificateSSLSocketFactory(),
-          url.getPort());
-      httpClient.getConnectionManager().getSchemeRegistry().register(sch);
-    }
-
+    ORHttpTransport.setTimeout(request, timeout == null ? Constants.HTTP_CONNECTION_TIMEOUT : timeout);
     return request;
   }
 
-  protected HttpPost getHttpPostRequest(HttpClient httpClient, URL url)
+  protected HttpPost getHttpPostRequest(URL url, Integer timeout)
   {
     HttpPost request = new HttpPost(url.toString());
     SecurityUtil.addCredentialToHttpRequest(ctx, request);
-
-    // accept self-signed SSL certificates
-    if ("https".equals(url.getProtocol()))
-    {
-      Scheme sch = new Scheme(url.getProtocol(), new SelfCertificateSSLSocketFactory(),
-          url.getPort());
-      httpClient.getConnectionManager().getSchemeRegistry().register(sch);
-    }
-
+    ORHttpTransport.setTimeout(request, timeout == null ? Constants.HTTP_CONNECTION_TIMEOUT : timeout);
     return request;
   }
 
@@ -234,8 +211,8 @@ public class HttpXmlControllerService implements ControllerService
 	  Log.e(LOG_CATEGORY, "getControllerUrl().toString(): "+getControllerUrl().toString());
 	  
     URL url = new URL(getControllerUrl().toString() + "/rest/servers");
-    HttpClient httpClient = getHttpClient(null);
-    HttpGet request = getHttpGetRequest(httpClient, url);
+    HttpClient httpClient = getHttpClient();
+    HttpGet request = getHttpGetRequest(url, null);
 
   /*  HttpClient httpClient = new DefaultHttpClient(params);
     String url = AppSettingsModel.getSecuredServer(context);
@@ -256,6 +233,11 @@ public class HttpXmlControllerService implements ControllerService
 
     int statusCode = response.getStatusLine().getStatusCode();
 
+    if (statusCode != HttpURLConnection.HTTP_OK)
+    {
+      ORHttpTransport.release(response);
+    }
+
     if (statusCode == HttpURLConnection.HTTP_UNAUTHORIZED)
     {
       throw new ControllerAuthenticationFailureException("received HTTP unauthorized (401) " +
@@ -303,8 +285,8 @@ public class HttpXmlControllerService implements ControllerService
     String encodedPanelName = URLEncoder.encode(panelName, Constants.UTF8_ENCODING);
 
     URL url = new URL(getControllerUrl().toString() + "/rest/panel/" + encodedPanelName);
-    HttpClient httpClient = getHttpClient(Constants.PANEL_GET_TIMEOUT);
-    HttpGet request = getHttpGetRequest(httpClient, url);
+    HttpClient httpClient = getHttpClient();
+    HttpGet request = getHttpGetRequest(url, Constants.PANEL_GET_TIMEOUT);
 
     HttpResponse response = null;
     try
@@ -322,6 +304,11 @@ public class HttpXmlControllerService implements ControllerService
 
     int statusCode = response.getStatusLine().getStatusCode();
 
+    if (statusCode != HttpURLConnection.HTTP_OK)
+    {
+      ORHttpTransport.release(response);
+    }
+
     if (statusCode == HttpURLConnection.HTTP_UNAUTHORIZED)
     {
       throw new ControllerAuthenticationFailureException("controller authentication required");
@@ -351,8 +338,8 @@ public class HttpXmlControllerService implements ControllerService
     String encodedResourceName = URLEncoder.encode(resourceName, Constants.UTF8_ENCODING);
 
     URL url = new URL(getControllerUrl().toString() + "/resources/" + encodedResourceName);
-    HttpClient httpClient = getHttpClient(Constants.RESOURCE_GET_TIMEOUT);
-    HttpGet request = getHttpGetRequest(httpClient, url);
+    HttpClient httpClient = getHttpClient();
+    HttpGet request = getHttpGetRequest(url, Constants.RESOURCE_GET_TIMEOUT);
 
     HttpResponse response = null;
     try
@@ -368,6 +355,11 @@ public class HttpXmlControllerService implements ControllerService
 
     int statusCode = response.getStatusLine().getStatusCode();
 
+    if (statusCode != HttpURLConnection.HTTP_OK)
+    {
+      ORHttpTransport.release(response);
+    }
+
     if (statusCode == HttpURLConnection.HTTP_UNAUTHORIZED)
     {
       throw new ControllerAuthenticationFailureException("controller authentication required");
@@ -390,8 +382,8 @@ public class HttpXmlControllerService implements ControllerService
 
     URL url = new URL(getControllerUrl().toString() + "/rest/control/" +
         Integer.toString(controlId) + "/" + encodedCommand);
-    HttpClient httpClient = getHttpClient(null);
-    HttpPost request = getHttpPostRequest(httpClient, url);
+    HttpClient httpClient = getHttpClient();
+    HttpPost request = getHttpPostRequest(url, null);
 
     HttpResponse response = null;
     Log.i("HttpXmlControllerService", "sendWriteCommand");
@@ -408,6 +400,8 @@ public class HttpXmlControllerService implements ControllerService
       //sendWriteCommand(controlId, command);//why is this happening on catch?
     }
     
+    // The response body isn't used
+    ORHttpTransport.release(response);
     int statusCode = response.getStatusLine().getStatusCode();
     Log.i("HttpXmlControllerService statusCode", "statusCode");
     if (statusCode == HttpURLConnection.HTTP_UNAUTHORIZED)
@@ -442,11 +436,12 @@ public class HttpXmlControllerService implements ControllerService
     try
     {
       URL url = new URL(getControllerUrl().toString() + "/rest/commands");
-      HttpClient httpClient = getHttpClient(Constants.HTTP_CONNECTION_TIMEOUT);
-      HttpPost request = getHttpPostRequest(httpClient, url);
+      HttpClient httpClient = getHttpClient();
+      HttpPost request = getHttpPostRequest(url, Constants.HTTP_CONNECTION_TIMEOUT);
 
       HttpResponse response = null;
       response = httpClient.execute(request);
+      ORHttpTransport.release(response);
 
       return response.getStatusLine().getStatusCode() == 400 ? 2 : 1;
     }
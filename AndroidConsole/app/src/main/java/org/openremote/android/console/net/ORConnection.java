@@ -29,6 +29,7 @@ import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.concurrent.RejectedExecutionException;
 
 
 import org.apache.http.Header;
@@ -40,11 +41,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.util.EntityUtils;
 import org.openremote.android.console.Constants;
 import org.openremote.android.console.exceptions.ORConnectionException;
@@ -89,6 +86,7 @@ public class ORConnection
   protected ORConnectionDelegate delegate;
   private Context context;
   protected Handler handler;
+  private Object dispatchKey;
 
 
   // Constructors ---------------------------------------------------------------------------------
@@ -108,26 +106,34 @@ public class ORConnection
   public ORConnection (ORHttpMethod httpMethod, boolean useHTTPAuth,
                        String url, ORConnectionDelegate delegateParam, Context context)
   {
+    this(httpMethod, useHTTPAuth, url, delegateParam, context, null);
+  }
+
+  /**
+   * As above but requests with the same dispatch key are sent one at a time in the order the
+   * connections were created.
+   *
+   * @param dispatchKey           ordering key, e.g. the id of the control sending a command, or
+   *                              null if the request doesn't need to be ordered
+   *
+   * @see CommandDispatcher
+   */
+  protected ORConnection (ORHttpMethod httpMethod, boolean useHTTPAuth,
+                       String url, ORConnectionDelegate delegateParam, Context context,
+                       Object dispatchKey)
+  {
+    this.dispatchKey = dispatchKey;
     initHandler(context);
 
     delegate = delegateParam;
     this.context = context;
 
-    HttpParams params = new BasicHttpParams();
-    HttpConnectionParams.setConnectionTimeout(params, Constants.HTTP_CONNECTION_TIMEOUT);
-    HttpConnectionParams.setSoTimeout(params, Constants.HTTP_CONNECTION_TIMEOUT);
-
-    httpClient = new DefaultHttpClient(params);
+    httpClient = ORHttpTransport.getInstance().getHttpClient();
 
     try
     {
        URL targetUrl = new URL(url);
        targetUrl.toURI();
-       if ("https".equals(targetUrl.getProtocol()))
-       {
-          Scheme sch = new Scheme(targetUrl.getProtocol(), new SelfCertificateSSLSocketFactory(), targetUrl.getPort());
-          httpClient.getConnectionManager().getSchemeRegistry().register(sch);
-       }
     }
 
     catch (MalformedURLException e)
@@ -154,6 +160,8 @@ public class ORConnection
        return;
     }
 
+    ORHttpTransport.setTimeout(httpRequest, Constants.HTTP_CONNECTION_TIMEOUT);
+
     if (useHTTPAuth)
     {
        SecurityUtil.addCredentialToHttpRequest(context, httpRequest);
@@ -179,13 +187,14 @@ public class ORConnection
      };
    }
 
-   /** Execute the http request.*/
+   /** Execute the http request on the shared {@link CommandDispatcher}.*/
    public void execute() {
-      new Thread(new Runnable() {
+      Runnable request = new Runnable() {
          public void run() {
             try {
             	Log.i(LOG_CATEGORY, "execute() httpRequest: " + httpRequest);
                httpResponse = httpClient.execute(httpRequest);
+               bufferEntity(httpResponse);
                Log.i(LOG_CATEGORY, "after execute() httpRequest: " + httpRequest);
                handler.sendEmptyMessage(SUCCESS);
             } catch (SocketTimeoutException e) {
@@ -196,9 +205,27 @@ public class ORConnection
                handler.sendEmptyMessage(ERROR);
             }
          }
-      }).start(); 
+      };
+
+      try {
+         CommandDispatcher.getInstance().execute(dispatchKey, request);
+      } catch (RejectedExecutionException e) {
+         Log.w(LOG_CATEGORY, "Request rejected, too many pending for " + dispatchKey + ": " + httpRequest);
+         handler.sendEmptyMessage(ERROR);
+      }
    }
    
+   /**
+    * Reads the response entity into memory so that the pooled connection is released straight
+    * away, whether or not the delegate reads the content.
+    */
+   private static void bufferEntity(HttpResponse response) throws IOException {
+      HttpEntity entity = response.getEntity();
+      if (entity != null) {
+         response.setEntity(new BufferedHttpEntity(entity));
+      }
+   }
+
    /** Deal with the response while httpconnection of android console to controller success. */
    protected void dealWithResponse() {
       connectionDidReceiveResponse();//doesnt do anything with good status code
@@ -307,12 +334,7 @@ public class ORConnection
     HttpRequestBase request = null;
     HttpResponse response = null;
 
-    HttpParams params = new BasicHttpParams();
-
-    HttpConnectionParams.setConnectionTimeout(params, timeout);
-    HttpConnectionParams.setSoTimeout(params, timeout);
-
-    HttpClient client = new DefaultHttpClient(params);
+    HttpClient client = ORHttpTransport.getInstance().getHttpClient();
 
     switch (httpMethod)
     {
@@ -335,16 +357,7 @@ public class ORConnection
     }
 
 
-    if ("https".equals(targetURL.getProtocol()))
-    {
-      Scheme sch = new Scheme(
-          targetURL.getProtocol(),
-          new SelfCertificateSSLSocketFactory(),
-          targetURL.getPort()
-      );
-
-      client.getConnectionManager().getSchemeRegistry().register(sch);
-    }
+    ORHttpTransport.setTimeout(request, timeout);
     
  /*   HttpHead method = new HttpHead("http://www.apache.org/");
     // execute method and handle any error responses.
@@ -358,6 +371,10 @@ public class ORConnection
 
     response = client.execute(request);
 
+    // Callers usually only look at the status so buffer the entity to return the connection
+    // to the pool
+    bufferEntity(response);
+
     return response;
   }
 
@@ -0,0 +1,207 @@
+/* OpenRemote, the Home of the Digital Home.
+* Copyright 2008-2011, OpenRemote Inc.
+*
+* See the contributors.txt file in the distribution for a
+* full listing of individual contributors.
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Affero General Public License as
+* published by the Free Software Foundation, either version 3 of the
+* License, or (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Affero General Public License for more details.
+*
+* You should have received a copy of the GNU Affero General Public License
+* along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.openremote.android.console.net;
+
+import java.io.IOException;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HttpContext;
+import org.openremote.android.console.Constants;
+
+import android.util.Log;
+
+/**
+ * App wide HTTP transport; every request to the controller goes through one
+ * {@link HttpClient} backed by a thread safe pooled connection manager so TCP
+ * and TLS connections are kept alive and reused instead of being opened (and
+ * handshaken) for every request.
+ *
+ * The client is shared so timeouts must be set on the request with
+ * {@link #setTimeout(HttpRequest, int)} rather than on the client. A pooled
+ * connection is only returned to the pool once the response entity has been
+ * read to the end or {@link #release(HttpResponse) released}.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ORHttpTransport
+{
+  public final static String LOG_CATEGORY = Constants.LOG_CATEGORY + "HttpTransport";
+
+  public static final int DEFAULT_MAX_CONNECTIONS = 16;
+
+  /**
+   * Allows a long poll per screen to be open alongside control commands
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 6;
+
+  /**
+   * How long in milliseconds an idle connection is kept open when the
+   * controller doesn't send a Keep-Alive timeout
+   */
+  public static final long DEFAULT_KEEP_ALIVE = 30 * 1000;
+
+  private static ORHttpTransport instance;
+
+  private final ThreadSafeClientConnManager connectionManager;
+  private final DefaultHttpClient httpClient;
+
+  /**
+   * Returns the transport shared by the whole app; the same instance is bound
+   * in the {@link org.openremote.android.console.OpenRemoteModule}
+   */
+  public static synchronized ORHttpTransport getInstance()
+  {
+    if (instance == null)
+    {
+      instance = new ORHttpTransport();
+    }
+    return instance;
+  }
+
+  public ORHttpTransport()
+  {
+    this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_KEEP_ALIVE);
+  }
+
+  public ORHttpTransport(int maxConnections, int maxConnectionsPerRoute, final long keepAlive)
+  {
+    HttpParams params = new BasicHttpParams();
+    HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+    HttpConnectionParams.setConnectionTimeout(params, Constants.HTTP_CONNECTION_TIMEOUT);
+    HttpConnectionParams.setSoTimeout(params, Constants.HTTP_CONNECTION_TIMEOUT);
+    ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+    ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerRoute));
+    // Don't wait forever for a free connection if the pool is exhausted
+    ConnManagerParams.setTimeout(params, Constants.HTTP_CONNECTION_TIMEOUT);
+
+    SchemeRegistry schemes = new SchemeRegistry();
+    schemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+    // accept self-signed SSL certificates
+    schemes.register(new Scheme("https", new SelfCertificateSSLSocketFactory(), 443));
+
+    connectionManager = new ThreadSafeClientConnManager(params, schemes);
+    httpClient = new DefaultHttpClient(connectionManager, params);
+
+    // Use the controller's Keep-Alive timeout when it sends one but never keep
+    // an idle connection longer than keepAlive
+    httpClient.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+      private final ConnectionKeepAliveStrategy defaultStrategy = new DefaultConnectionKeepAliveStrategy();
+
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context)
+      {
+        long duration = defaultStrategy.getKeepAliveDuration(response, context);
+        return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+      }
+    });
+  }
+
+  /**
+   * Returns the shared client; the client must not be shut down by the caller
+   */
+  public HttpClient getHttpClient()
+  {
+    return httpClient;
+  }
+
+  /**
+   * Number of open connections (leased and idle) held by the pool
+   */
+  public int getConnectionsInPool()
+  {
+    return connectionManager.getConnectionsInPool();
+  }
+
+  /**
+   * Closes connections that have expired or have been idle longer than the
+   * keep alive duration
+   */
+  public void closeIdleConnections()
+  {
+    connectionManager.closeExpiredConnections();
+  }
+
+  /**
+   * Closes all connections; the transport can't be used afterwards
+   */
+  public void shutdown()
+  {
+    connectionManager.shutdown();
+  }
+
+  /**
+   * Sets the connection and socket timeout of a single request
+   */
+  public static void setTimeout(HttpRequest request, int timeout)
+  {
+    setTimeout(request, timeout, timeout);
+  }
+
+  public static void setTimeout(HttpRequest request, int connectionTimeout, int socketTimeout)
+  {
+    HttpParams params = request.getParams();
+    HttpConnectionParams.setConnectionTimeout(params, connectionTimeout);
+    HttpConnectionParams.setSoTimeout(params, socketTimeout);
+  }
+
+  /**
+   * Consumes whatever is left of the response entity so that the connection
+   * goes back to the pool; must be called for responses whose content isn't
+   * read to the end
+   */
+  public static void release(HttpResponse response)
+  {
+    if (response == null)
+    {
+      return;
+    }
+
+    HttpEntity entity = response.getEntity();
+    if (entity != null)
+    {
+      try
+      {
+        entity.consumeContent();
+      }
+      catch (IOException e)
+      {
+        Log.w(LOG_CATEGORY, "Failed to release connection", e);
+      }
+    }
+  }
+}
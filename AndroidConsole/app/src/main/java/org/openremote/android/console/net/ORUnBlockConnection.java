@@ -23,35 +23,40 @@ import org.openremote.android.console.exceptions.ORConnectionException;
 
 import android.content.Context;
 import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Message;
 
 /**
- * Connection class that creates a thread for its message handler.
+ * Connection that can be created from any thread, e.g. a button repeat timer, as the callbacks
+ * are always delivered to the delegate on the main (UI) thread rather than on the creating
+ * thread's looper. Requests created with the same dispatch key are sent in order.
  *
- * The only significant difference between this an its parent class appears to be that
- * a handler is created in a new thread, with a pseudo-random id.  Do we really
- * need such a class?
- *
- * TODO Determine whether this class is needed.  If so, name it something more easily parseable.
+ * TODO name it something more easily parseable.
  */
 public class ORUnBlockConnection extends ORConnection {
 
    public ORUnBlockConnection(final Context context, ORHttpMethod httpMethod, boolean isNeedHttpBasicAuth, String url,
          ORConnectionDelegate delegateParam) {
-      super(httpMethod, isNeedHttpBasicAuth, url, delegateParam, context);
-      
+      this(context, httpMethod, isNeedHttpBasicAuth, url, delegateParam, null);
+   }
+
+   /**
+    * @param dispatchKey ordering key, commands of a control use the control's id so they reach
+    *                    the controller in order
+    */
+   public ORUnBlockConnection(final Context context, ORHttpMethod httpMethod, boolean isNeedHttpBasicAuth, String url,
+         ORConnectionDelegate delegateParam, Object dispatchKey) {
+      super(httpMethod, isNeedHttpBasicAuth, url, delegateParam, context, dispatchKey);
    }
    
    /**
-    * Initialize handler by a random thread looper.
+    * Initialize handler with the main looper; the delegates are views so the callbacks must run
+    * on the UI thread.
     * 
     * @see org.openremote.android.console.net.ORConnection#initHandler(android.content.Context)
     */
    protected void initHandler(final Context context) {
-      HandlerThread handlerThread = new HandlerThread(Math.random()+"");  
-      handlerThread.start();  
-      handler = new Handler(handlerThread.getLooper()) {
+      handler = new Handler(Looper.getMainLooper()) {
          @Override
          public void handleMessage(Message msg) {
             int statusCode = msg.what;
@@ -31,14 +31,9 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
 import org.openremote.android.console.Constants;
 import org.openremote.android.console.model.ControllerException;
-import org.openremote.android.console.net.SelfCertificateSSLSocketFactory;
+import org.openremote.android.console.net.ORHttpTransport;
 
 import android.content.Context;
 import android.util.Log;
@@ -109,18 +104,13 @@ public class HTTPUtil {
     * @return the int
     */
    private static int downLoadFile(Context context, String serverUrl, String fileName) {
-      HttpParams params = new BasicHttpParams();
-      HttpConnectionParams.setConnectionTimeout(params, Constants.HTTP_CONNECTION_TIMEOUT);
-      HttpConnectionParams.setSoTimeout(params, Constants.HTTP_CONNECTION_TIMEOUT);
-      HttpClient client = new DefaultHttpClient(params);
+      HttpClient client = ORHttpTransport.getInstance().getHttpClient();
       int statusCode = ControllerException.CONTROLLER_UNAVAILABLE;
       try {
-         URL uri = new URL(serverUrl);
-         if ("https".equals(uri.getProtocol())) {
-            Scheme sch = new Scheme(uri.getProtocol(), new SelfCertificateSSLSocketFactory(), uri.getPort());
-            client.getConnectionManager().getSchemeRegistry().register(sch);
-         }
+         // validate the URL
+         new URL(serverUrl);
          HttpGet get = new HttpGet(serverUrl);
+         ORHttpTransport.setTimeout(get, Constants.HTTP_CONNECTION_TIMEOUT);
          SecurityUtil.addCredentialToHttpRequest(context, get);
          HttpResponse response = client.execute(get);
          statusCode = response.getStatusLine().getStatusCode();
@@ -134,6 +124,8 @@ public class HTTPUtil {
             }
             fOut.close();
             is.close();
+         } else {
+            ORHttpTransport.release(response);
          }
       } catch (MalformedURLException e) {
          Log.e("OpenRemote-HTTPUtil", "Create URL fail:" + serverUrl);
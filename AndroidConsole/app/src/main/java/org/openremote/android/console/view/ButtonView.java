@@ -22,8 +22,9 @@ package org.openremote.android.console.view;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpResponse;
 import org.openremote.android.console.Constants;
@@ -35,6 +36,7 @@ import org.openremote.android.console.model.ControllerException;
 import org.openremote.android.console.model.ListenerConstant;
 import org.openremote.android.console.model.ORListenerManager;
 import org.openremote.android.console.model.ViewHelper;
+import org.openremote.android.console.net.CommandDispatcher;
 import org.openremote.android.console.util.ImageUtil;
 
 import android.content.Context;
@@ -59,7 +61,7 @@ public class ButtonView extends ControlView {
    private Button uiButton;
    private BitmapDrawable defaultImage;
    private BitmapDrawable pressedImage;
-   private Timer longPressTimer;
+   private ScheduledFuture<?> longPressTimer;
    
    /** The Constant REPEAT_CMD_INTERVAL. */
    public final static long REPEAT_CMD_INTERVAL = 300;
@@ -122,13 +124,11 @@ public class ButtonView extends ControlView {
                  if (button.isHasControlCommand()) {
                     sendPressCommand();
                     if (button.isRepeat()) {
-                       Timer timer = new Timer();
-                       timer.schedule(new TimerTask() {
+                       setTimer(getScheduler().scheduleAtFixedRate(new Runnable() {
                           public void run() {
                              sendPressCommand();
                           }
-                       }, REPEAT_CMD_INTERVAL, REPEAT_CMD_INTERVAL);
-                       setTimer(timer);
+                       }, REPEAT_CMD_INTERVAL, REPEAT_CMD_INTERVAL, TimeUnit.MILLISECONDS));
                     }
                  }
               } else if (event.getAction() == MotionEvent.ACTION_UP) {
@@ -169,24 +169,20 @@ public class ButtonView extends ControlView {
                 
                 // If repeat defined then setup timer
                 if (button.getRepeatCommandName() != null && !button.getRepeatCommandName().equals("")) {
-                  Timer timer = new Timer();
-                  timer.schedule(new TimerTask() {
+                  setTimer(getScheduler().scheduleAtFixedRate(new Runnable() {
                      public void run() {
                          sendNamedCommand(button.getRepeatCommandName());
                      }
-                  }, button.getRepeatInterval(), button.getRepeatInterval());
-                  setTimer(timer);
+                  }, button.getRepeatInterval(), button.getRepeatInterval(), TimeUnit.MILLISECONDS));
                }
                 
                 // If long press defined then setup timer
                 if (button.getLongPressCommandName() != null && !button.getLongPressCommandName().equals("")) {
-                  Timer timer = new Timer();
-                  timer. schedule(new TimerTask() {
+                  longPressTimer = getScheduler().schedule(new Runnable() {
                      public void run() {
                         sendNamedCommand(button.getLongPressCommandName());
                      }
-                  }, button.getLongPressDelay());
-                  longPressTimer = timer;
+                  }, button.getLongPressDelay(), TimeUnit.MILLISECONDS);
                 }
                 
              } else if (event.getAction() == MotionEvent.ACTION_UP) {
@@ -219,11 +215,15 @@ public class ButtonView extends ControlView {
    private void cancelTimers() {
      cancelTimer();
      if (longPressTimer != null) {
-       longPressTimer.cancel();
+       longPressTimer.cancel(false);
        longPressTimer = null;
      }
    }
 
+   private ScheduledExecutorService getScheduler() {
+     return CommandDispatcher.getInstance().getScheduler();
+   }
+
    private void sendPressCommand() {
       sendCommandRequest("click");
    }
@@ -22,6 +22,7 @@ package org.openremote.android.console.view;
 import org.openremote.android.console.Constants;
 import org.openremote.android.console.bindings.ColorPicker;
 import org.openremote.android.console.bindings.Image;
+import org.openremote.android.console.net.ContinuousCommandChannel;
 import org.openremote.android.console.util.ImageUtil;
 
 import android.content.Context;
@@ -34,7 +35,8 @@ import android.widget.ImageView;
 
 /**
  * The view display a image, it supports to detect point color on the image, then send the detected color to controller.
- * The touch up event or touch move event would trigger to send the color.
+ * The touch up event or touch move event would trigger to send the color; while dragging only the latest color is
+ * sent once the previous command has completed and the color under the touch up is always sent last.
  */
 public class ColorPickerView extends ControlView {
 
@@ -43,6 +45,7 @@ public class ColorPickerView extends ControlView {
    private int lastXposition;
    private int lastYposition;
    public static final int MIN_VALID_MOVE_DISTANCE = 2;
+   private final ContinuousCommandChannel commandChannel = createCommandChannel(CONTINUOUS_COMMAND_INTERVAL);
    
    public ColorPickerView(Context context, ColorPicker colorPicker) {
       super(context);
@@ -79,12 +82,14 @@ public class ColorPickerView extends ControlView {
              */
             if (event.getAction() == MotionEvent.ACTION_MOVE) {
                if (Math.abs(lastXposition - x) > MIN_VALID_MOVE_DISTANCE || Math.abs(lastYposition - y) > MIN_VALID_MOVE_DISTANCE){
-                  colorPicked(bd, x, y);
+                  colorPicked(bd, x, y, false);
                   lastXposition = x;
                   lastYposition = y;
                }
             } else if(event.getAction() == MotionEvent.ACTION_UP) {
-               colorPicked(bd, x, y);
+               colorPicked(bd, x, y, true);
+            } else if (event.getAction() == MotionEvent.ACTION_CANCEL) {
+               commandChannel.flush();
             }
             return true;
          }
@@ -93,12 +98,20 @@ public class ColorPickerView extends ControlView {
           * @param bd the bitmapDrawable of the image.
           * @param x the X coordinate of the event.
           * @param y the Y coordinate of the event.
+          * @param last true for the touch up event
           */
-         private void colorPicked(final BitmapDrawable bd, int x, int y) {
+         private void colorPicked(final BitmapDrawable bd, int x, int y, boolean last) {
             if (x >= 0 && x < bd.getIntrinsicWidth() && y >= 0 && y < bd.getIntrinsicHeight()) {
                int color = bd.getBitmap().getPixel(x, y);
                String colorStrs = String.format("%02x%02x%02x", Color.red(color), Color.green(color), Color.blue(color));
-               sendCommandRequest(colorStrs);
+               if (last) {
+                  commandChannel.sendFinal(colorStrs);
+               } else {
+                  commandChannel.send(colorStrs);
+               }
+            } else if (last) {
+               // Released outside the image, send the last color picked inside it
+               commandChannel.flush();
             }
          }
            
@@ -20,7 +20,7 @@
 package org.openremote.android.console.view;
 
 import java.io.InputStream;
-import java.util.Timer;
+import java.util.concurrent.ScheduledFuture;
 
 import org.apache.http.HttpResponse;
 import org.openremote.android.console.Constants;
@@ -35,6 +35,7 @@ import org.openremote.android.console.exceptions.ORConnectionException;
 import org.openremote.android.console.model.AppSettingsModel;
 import org.openremote.android.console.model.ControllerException;
 import org.openremote.android.console.model.ViewHelper;
+import org.openremote.android.console.net.ContinuousCommandChannel;
 import org.openremote.android.console.net.ControllerService;
 import org.openremote.android.console.net.ORConnectionDelegate;
 import org.openremote.android.console.net.ORHttpMethod;
@@ -54,8 +55,11 @@ import android.util.Log;
 public class ControlView extends ComponentView implements ORConnectionDelegate {
    public static final String LOG_CATEGORY = Constants.LOG_CATEGORY + "ControlView";
 
-   /** The repeat send command timer. */
-   private Timer timer;
+   /** Minimum time in milliseconds between commands sent while a continuous control is dragged. */
+   public static final long CONTINUOUS_COMMAND_INTERVAL = 100;
+
+   /** The repeat send command task. */
+   private ScheduledFuture<?> timer;
 
    private ControllerService controllerService;
 
@@ -125,10 +129,22 @@ public class ControlView extends ComponentView implements ORConnectionDelegate {
     * @return true, if successful
     */
    public boolean sendCommandRequest(String commandType) {
+      return sendCommandRequest(commandType, this);
+   }
+
+   /**
+    * Send command request to controller by command type, reporting the result to the delegate.
+    *
+    * @param commandType the command type
+    * @param delegate receives the result of the request
+    *
+    * @return true, if successful
+    */
+   protected boolean sendCommandRequest(String commandType, ORConnectionDelegate delegate) {
 	   Log.i("ControlView", "sendWriteCommand");
 	   
 	      new ORUnBlockConnection(this.context, ORHttpMethod.POST, true, AppSettingsModel.getSecuredServer(getContext())
-	              + "/rest/control/" + getComponent().getComponentId() + "/" + commandType, this);
+	              + "/rest/control/" + getComponent().getComponentId() + "/" + commandType, delegate, getDispatchKey());
 	        return true;
 	        
  /*     try {
@@ -159,7 +175,7 @@ public class ControlView extends ComponentView implements ORConnectionDelegate {
      Log.i("ControlView", "sendWriteCommand");
      
         new ORUnBlockConnection(this.context, ORHttpMethod.POST, true, AppSettingsModel.getSecuredServer(getContext())
-                + "/rest/commands?name=" + commandName, this);
+                + "/rest/commands?name=" + commandName, this, getDispatchKey());
           return true;
           
  /*     try {
@@ -179,17 +195,43 @@ public class ControlView extends ComponentView implements ORConnectionDelegate {
       return true;*/
    }
    
+   /**
+    * Creates a command channel for a control that sends a stream of values while it is dragged;
+    * at most one command is in flight and only the latest pending value is sent.
+    *
+    * @param minInterval minimum time in milliseconds between commands while dragging
+    */
+   protected ContinuousCommandChannel createCommandChannel(long minInterval) {
+      return new ContinuousCommandChannel(new ContinuousCommandChannel.CommandSender() {
+         public void send(String value, ORConnectionDelegate delegate) {
+            sendCommandRequest(value, delegate);
+         }
+      }, this, minInterval);
+   }
+
+   /**
+    * Commands of a control are sent one at a time in the order they were issued, commands of
+    * different controls are sent in parallel.
+    */
+   protected Object getDispatchKey() {
+      return Integer.valueOf(getComponent().getComponentId());
+   }
+
    /**
     * Cancel repeat send command.
     */
    protected void cancelTimer() {
       if (timer != null) {
-         timer.cancel();
+         timer.cancel(false);
       }
       timer = null;
    }
 
-   protected void setTimer(Timer timer) {
+   /**
+    * Set the repeat send command task, scheduled on the shared
+    * {@link org.openremote.android.console.net.CommandDispatcher#getScheduler() scheduler}.
+    */
+   protected void setTimer(ScheduledFuture<?> timer) {
       this.timer = timer;
    }
 
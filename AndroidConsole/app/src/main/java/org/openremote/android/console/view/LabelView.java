@@ -22,11 +22,7 @@ package org.openremote.android.console.view;
 import org.openremote.android.console.bindings.Label;
 import org.openremote.android.console.bindings.Screen;
 import org.openremote.android.console.bindings.Sensor;
-import org.openremote.android.console.model.ListenerConstant;
-import org.openremote.android.console.model.OREvent;
-import org.openremote.android.console.model.OREventListener;
-import org.openremote.android.console.model.ORListenerManager;
-import org.openremote.android.console.model.PollingStatusParser;
+import org.openremote.android.console.model.SensorEventBus;
 
 import android.content.Context;
 import android.graphics.Color;
@@ -111,9 +107,8 @@ public class LabelView extends ComponentView implements SensoryDelegate {
       final Sensor sensor = ((Label)getComponent()).getSensor();
       final Integer sensorId = sensor.getSensorId();
       if (sensorId > 0) {
-         ORListenerManager.getInstance().addOREventListener(ListenerConstant.ListenerPollingStatusIdFormat + sensorId, new OREventListener() {
-            public void handleEvent(OREvent event) {
-               String newState = PollingStatusParser.statusMap.get(sensorId.toString());
+         SensorEventBus.getInstance().subscribe(this, sensorId, new SensorEventBus.SensorListener() {
+            public void onSensorChanged(int sensorId, String newState) {
                text = sensor.getStateValue(newState);
                if (text == null) {
                   text = newState;
@@ -22,11 +22,7 @@ package org.openremote.android.console.view;
 import org.openremote.android.console.Constants;
 import org.openremote.android.console.bindings.Image;
 import org.openremote.android.console.bindings.Label;
-import org.openremote.android.console.model.ListenerConstant;
-import org.openremote.android.console.model.OREvent;
-import org.openremote.android.console.model.OREventListener;
-import org.openremote.android.console.model.ORListenerManager;
-import org.openremote.android.console.model.PollingStatusParser;
+import org.openremote.android.console.model.SensorEventBus;
 import org.openremote.android.console.util.ImageUtil;
 
 import android.content.Context;
@@ -95,9 +91,9 @@ public class ORImageView extends ComponentView implements SensoryDelegate {
       }
       final Integer sensorId = id;
       if (sensorId > 0) {
-         ORListenerManager.getInstance().addOREventListener(ListenerConstant.ListenerPollingStatusIdFormat + sensorId, new OREventListener() {
-            public void handleEvent(OREvent event) {
-               newStatus = PollingStatusParser.statusMap.get(sensorId.toString());
+         SensorEventBus.getInstance().subscribe(this, sensorId, new SensorEventBus.SensorListener() {
+            public void onSensorChanged(int sensorId, String status) {
+               newStatus = status;
                handler.sendEmptyMessage(0);
             }
          });
@@ -24,11 +24,7 @@ import org.openremote.android.console.Constants;
 import org.openremote.android.console.R;
 import org.openremote.android.console.bindings.Sensor;
 import org.openremote.android.console.bindings.Web;
-import org.openremote.android.console.model.ListenerConstant;
-import org.openremote.android.console.model.OREvent;
-import org.openremote.android.console.model.OREventListener;
-import org.openremote.android.console.model.ORListenerManager;
-import org.openremote.android.console.model.PollingStatusParser;
+import org.openremote.android.console.model.SensorEventBus;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Color;
@@ -234,12 +230,10 @@ public class ORWebView extends ComponentView implements SensoryDelegate
     final Integer sensorId = sensor.getSensorId();
     if (sensorId > 0)
     {
-      ORListenerManager.getInstance().addOREventListener(
-          ListenerConstant.ListenerPollingStatusIdFormat + sensorId, new OREventListener()
+      SensorEventBus.getInstance().subscribe(this, sensorId, new SensorEventBus.SensorListener()
           {
-            public void handleEvent(OREvent event)
+            public void onSensorChanged(int sensorId, String newUrl)
             {
-              String newUrl = PollingStatusParser.statusMap.get(sensorId.toString());
               if (currentUrl != newUrl)
               {
                 currentUrl = newUrl;
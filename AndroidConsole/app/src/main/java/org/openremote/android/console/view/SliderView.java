@@ -26,11 +26,8 @@ import org.openremote.android.console.R;
 import org.openremote.android.console.bindings.Image;
 import org.openremote.android.console.bindings.Screen;
 import org.openremote.android.console.bindings.Slider;
-import org.openremote.android.console.model.ListenerConstant;
-import org.openremote.android.console.model.OREvent;
-import org.openremote.android.console.model.OREventListener;
-import org.openremote.android.console.model.ORListenerManager;
-import org.openremote.android.console.model.PollingStatusParser;
+import org.openremote.android.console.model.SensorEventBus;
+import org.openremote.android.console.net.ContinuousCommandChannel;
 import org.openremote.android.console.util.ImageUtil;
 
 import android.content.Context;
@@ -85,6 +82,8 @@ public class SliderView extends SensoryControlView implements View.OnTouchListen
 	private int halfThumb = 0;
 	private int value = 0;
 	private double valuePerPixel = 0;
+	/** Sends the values while the thumb is dragged, latest value wins. */
+	private final ContinuousCommandChannel commandChannel = createCommandChannel(CONTINUOUS_COMMAND_INTERVAL);
 
 	protected SliderView(Context context, Slider slider) {
 		super(context);
@@ -376,6 +375,7 @@ public class SliderView extends SensoryControlView implements View.OnTouchListen
 	      	 thumbPos += isVertical ? -1 * ((int) event.getY() - halfThumb) : (int) event.getX() - halfThumb;
 	     		 thumbPos = thumbPos < 0 ? 0 : thumbPos > thumbRange ? thumbRange : thumbPos;
 		    	 updateThumbPos();
+		    	 updateValueFromPos(false);
 	       }
 	       break;
 	
@@ -399,10 +399,12 @@ public class SliderView extends SensoryControlView implements View.OnTouchListen
 	    	 
 	    	 thumbPos = thumbPos < 0 ? 0 : thumbPos > thumbRange ? thumbRange : thumbPos;
 	    	 updateThumbPos();
-	    	 updateValueFromPos();
+	    	 updateValueFromPos(true);
 	       break;
 	
 	     case MotionEvent.ACTION_CANCEL:
+	       // Don't leave the controller on an intermediate value
+	       commandChannel.flush();
 	        break;
      }
      
@@ -430,23 +432,32 @@ public class SliderView extends SensoryControlView implements View.OnTouchListen
   }
   
   /*
-   * Update the value from the thumb position
+   * Update the value from the thumb position, last is true when the thumb has been released
    */
-  private void updateValueFromPos() {
+  private void updateValueFromPos(boolean last) {
   	int newValue = (int)Math.round(valuePerPixel * thumbPos) + minValue;
-  	setValue(newValue, false);
+  	setValue(newValue, false, last);
   }
   
   private void setValue(int newValue, boolean fromPolling) {
+  	setValue(newValue, fromPolling, true);
+  }
+
+  private void setValue(int newValue, boolean fromPolling, boolean last) {
   	newValue = newValue < minValue ? minValue : newValue > maxValue ? maxValue : newValue;
   	if (newValue != value) {
   		value = newValue;
    		Log.i("OpenRemote-SLIDER", "Set value: " + value);
    		if (fromPolling) {
    			updatePosFromValue();
+   		} else if (last) {
+   			commandChannel.sendFinal(String.valueOf(value));
    		} else {
-   			sendCommandRequest(String.valueOf(value));
+   			commandChannel.send(String.valueOf(value));
    		}
+  	} else if (!fromPolling && last) {
+  		// Released on the value already offered while dragging
+  		commandChannel.flush();
   	}
   }
 
@@ -464,21 +475,20 @@ public class SliderView extends SensoryControlView implements View.OnTouchListen
 		final Integer sensorId = ((Slider) getComponent()).getSensor().getSensorId();
 		Log.i("OpenRemote-SLIDER", "sensor id is " + sensorId);
 		if (sensorId != null && sensorId > 0) {
-			ORListenerManager.getInstance().addOREventListener(
-					ListenerConstant.ListenerPollingStatusIdFormat + sensorId, new OREventListener() {
-						public void handleEvent(OREvent event) {
-							String value = PollingStatusParser.statusMap.get(sensorId.toString()).toLowerCase();
-							int valueInt = 0;
-							try {
-								valueInt = Integer.parseInt(value);
-							} catch (NumberFormatException e) {
-								Log.e("OpenRemote-SLIDER", "The returned format of polling value " + value
-										+ " for slider is wrong", e);
-								return;
-							}
-							pollingValueUIHandler.sendEmptyMessage(valueInt);
-						}
-					});
+			SensorEventBus.getInstance().subscribe(this, sensorId, new SensorEventBus.SensorListener() {
+				public void onSensorChanged(int sensorId, String status) {
+					String value = status.toLowerCase();
+					int valueInt = 0;
+					try {
+						valueInt = Integer.parseInt(value);
+					} catch (NumberFormatException e) {
+						Log.e("OpenRemote-SLIDER", "The returned format of polling value " + value
+								+ " for slider is wrong", e);
+						return;
+					}
+					pollingValueUIHandler.sendEmptyMessage(valueInt);
+				}
+			});
 		}
 	}
 
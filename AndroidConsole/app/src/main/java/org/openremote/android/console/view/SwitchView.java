@@ -22,11 +22,7 @@ package org.openremote.android.console.view;
 import org.openremote.android.console.Constants;
 import org.openremote.android.console.R;
 import org.openremote.android.console.bindings.Switch;
-import org.openremote.android.console.model.ListenerConstant;
-import org.openremote.android.console.model.OREvent;
-import org.openremote.android.console.model.OREventListener;
-import org.openremote.android.console.model.ORListenerManager;
-import org.openremote.android.console.model.PollingStatusParser;
+import org.openremote.android.console.model.SensorEventBus;
 import org.openremote.android.console.util.ImageUtil;
 
 import android.content.Context;
@@ -143,9 +139,9 @@ public class SwitchView extends SensoryControlView {
    public void addPollingSensoryListener() {
       final Integer sensorId = ((Switch)getComponent()).getSensor().getSensorId();
       if (sensorId > 0) {
-         ORListenerManager.getInstance().addOREventListener(ListenerConstant.ListenerPollingStatusIdFormat + sensorId, new OREventListener() {
-            public void handleEvent(OREvent event) {
-               String value = PollingStatusParser.statusMap.get(sensorId.toString()).toLowerCase();
+         SensorEventBus.getInstance().subscribe(this, sensorId, new SensorEventBus.SensorListener() {
+            public void onSensorChanged(int sensorId, String status) {
+               String value = status.toLowerCase();
                if (isOn && Switch.OFF.equals(value)) {
                   isOn = false;
                } else if (!isOn && Switch.ON.equals(value)) {
@@ -0,0 +1,141 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.openremote.android.test.console.model;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.openremote.android.console.Constants;
+import org.openremote.android.console.model.PollingStatusParser;
+import org.openremote.android.console.model.SensorStatusStore;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import android.util.Log;
+
+/**
+ * Compares decoding a 2,000 sensor polling response with the pull parser and
+ * int keyed store against the previous DOM and String keyed map approach;
+ * the timings are logged.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class PollingStatusParserBenchmark extends TestCase {
+   private static final String LOG_CATEGORY = Constants.LOG_CATEGORY + "PollingStatusParserBenchmark";
+   private static final int SENSORS = 2000;
+   private static final int WARM_UP = 20;
+   private static final int ITERATIONS = 100;
+
+   private byte[] response;
+
+   @Override
+   protected void setUp() throws Exception {
+      response = buildResponse(0);
+   }
+
+   /**
+    * Polling response with a status for each sensor, the value of every
+    * second sensor depends on the round.
+    */
+   private static byte[] buildResponse(int round) throws Exception {
+      StringBuilder xml = new StringBuilder(SENSORS * 40);
+      xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      xml.append("<openremote xmlns=\"http://www.openremote.org\">\n");
+      for (int i = 1; i <= SENSORS; i++) {
+         xml.append("  <status id=\"").append(i).append("\">");
+         xml.append(i % 2 == 0 ? "value" + (i + round) : "on");
+         xml.append("</status>\n");
+      }
+      xml.append("</openremote>\n");
+      return xml.toString().getBytes("UTF-8");
+   }
+
+   public void testDecode2000Sensors() throws Exception {
+      SensorStatusStore store = new SensorStatusStore();
+      PollingStatusParser.Statuses statuses = PollingStatusParser.decode(new ByteArrayInputStream(response));
+      assertEquals(SENSORS, statuses.size());
+      assertEquals(SENSORS, PollingStatusParser.store(statuses, store).length);
+      assertEquals("value2", store.get(2));
+      assertEquals("on", store.get(SENSORS - 1));
+
+      // Nothing changed
+      assertEquals(0, PollingStatusParser.store(statuses, store).length);
+
+      // Half the sensors changed
+      statuses = PollingStatusParser.decode(new ByteArrayInputStream(buildResponse(1)));
+      int[] changed = PollingStatusParser.store(statuses, store);
+      assertEquals(SENSORS / 2, changed.length);
+      assertEquals(2, changed[0]);
+   }
+
+   public void testBenchmarkPullParserAgainstDom() throws Exception {
+      SensorStatusStore store = new SensorStatusStore();
+      HashMap<String, String> statusMap = new HashMap<String, String>();
+
+      for (int i = 0; i < WARM_UP; i++) {
+         decodeWithPullParser(store);
+         decodeWithDom(statusMap);
+      }
+
+      long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+         decodeWithPullParser(store);
+      }
+      long pull = (System.nanoTime() - start) / ITERATIONS;
+
+      start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+         decodeWithDom(statusMap);
+      }
+      long dom = (System.nanoTime() - start) / ITERATIONS;
+
+      Log.i(LOG_CATEGORY, SENSORS + " sensors: pull parser " + pull / 1000 + "us, DOM " + dom / 1000
+            + "us per response");
+      assertEquals(SENSORS, store.size());
+      assertEquals(SENSORS, statusMap.size());
+   }
+
+   private void decodeWithPullParser(SensorStatusStore store) throws Exception {
+      PollingStatusParser.Statuses statuses = PollingStatusParser.decode(new ByteArrayInputStream(response));
+      PollingStatusParser.store(statuses, store);
+   }
+
+   /**
+    * The decoding previously done by PollingStatusParser.
+    */
+   private void decodeWithDom(HashMap<String, String> statusMap) throws Exception {
+      DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      Document dom = builder.parse(new ByteArrayInputStream(response));
+      NodeList nodeList = dom.getDocumentElement().getElementsByTagName("status");
+      for (int i = 0; i < nodeList.getLength(); i++) {
+         String id = nodeList.item(i).getAttributes().getNamedItem("id").getNodeValue();
+         Node statusNode = nodeList.item(i).getFirstChild();
+         statusMap.put(id, statusNode != null ? statusNode.getNodeValue() : "");
+      }
+   }
+}
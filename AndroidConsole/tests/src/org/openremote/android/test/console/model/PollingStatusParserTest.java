@@ -21,9 +21,9 @@ package org.openremote.android.test.console.model;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
 
 import org.openremote.android.console.model.PollingStatusParser;
+import org.openremote.android.console.model.SensorStatusStore;
 
 import android.content.Context;
 import android.test.InstrumentationTestCase;
@@ -43,14 +43,18 @@ public class PollingStatusParserTest extends InstrumentationTestCase {
          InputStream is = ctx.getAssets().open("fixture/polling_status.xml");
          PollingStatusParser.parse(is);
          
-         HashMap<String, String> statusMap = PollingStatusParser.statusMap;
+         SensorStatusStore store = SensorStatusStore.getInstance();
          
-         String[] keys = {"573", "574", "575", "576"};
+         int[] keys = {573, 574, 575, 576};
          String[] values = {"on", "off", "20", "60"};
          
          for (int i = 0; i < 4; i ++) {
-            assertEquals(values[i], statusMap.get(keys[i]));
+            assertEquals(values[i], store.get(keys[i]));
          }
+
+         // Unchanged statuses aren't reported again
+         is = ctx.getAssets().open("fixture/polling_status.xml");
+         assertEquals(0, PollingStatusParser.parse(is).length);
          
       } catch (IOException e) {
          fail("Failed reading fixture/polling_status.xml!");
@@ -0,0 +1,222 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2011, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.android.test.console.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openremote.android.console.AppSettingsActivity;
+import org.openremote.android.console.model.SensorEventBus;
+import org.openremote.android.console.model.SensorStatusStore;
+
+import android.test.ActivityInstrumentationTestCase2;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+/**
+ * Tests for {@link org.openremote.android.console.model.SensorEventBus} class.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorEventBusTest extends ActivityInstrumentationTestCase2<AppSettingsActivity>
+{
+  private static final int SCREENS = 500;
+  private static final int SENSORS_PER_SCREEN = 10;
+
+  private SensorStatusStore store;
+  private SensorEventBus bus;
+
+  public SensorEventBusTest()
+  {
+    super("org.openremote.android.console", AppSettingsActivity.class);
+  }
+
+  public void setUp() throws Exception
+  {
+    super.setUp();
+    store = new SensorStatusStore();
+    bus = new SensorEventBus(store);
+  }
+
+  /**
+   * Tests that a batch only reaches the subscribers of the changed sensors
+   * and that cancelled subscriptions are dropped.
+   */
+  public void testPublish()
+  {
+    RecordingListener listener = new RecordingListener();
+    SensorEventBus.Subscription first = bus.subscribe(1, listener);
+    bus.subscribe(2, listener);
+    bus.subscribe(2, listener);
+    assertEquals(3, bus.getSubscriptionCount());
+    assertEquals(2, bus.getSubscriptionCount(2));
+
+    int[] changed = store.update(new int[] { 1, 2, 3 }, new String[] { "on", "50", "x" }, 3);
+    bus.publish(changed);
+    assertEquals("1=on,2=50,2=50,", listener.events.toString());
+
+    first.cancel();
+    assertFalse(first.isActive());
+    assertEquals(0, bus.getSubscriptionCount(1));
+
+    listener.events.setLength(0);
+    bus.publish(store.update(new int[] { 1 }, new String[] { "off" }, 1));
+    assertEquals("", listener.events.toString());
+  }
+
+  /**
+   * Flips through screens of sensor views and checks that the subscriptions
+   * of each screen go away when it is removed from the window.
+   */
+  public void testScreenFlipDoesNotLeak() throws Throwable
+  {
+    final ViewGroup content = (ViewGroup) getActivity().findViewById(android.R.id.content);
+    final RecordingListener listener = new RecordingListener();
+
+    runTestOnUiThread(new Runnable()
+    {
+      public void run()
+      {
+        List<View> screens = new ArrayList<View>();
+
+        for (int i = 0; i < SCREENS; i++)
+        {
+          FrameLayout screen = new FrameLayout(getActivity());
+          for (int j = 0; j < SENSORS_PER_SCREEN; j++)
+          {
+            View view = new View(getActivity());
+            bus.subscribe(view, j + 1, listener);
+            screen.addView(view);
+          }
+
+          content.addView(screen);
+          assertEquals(SENSORS_PER_SCREEN, bus.getSubscriptionCount());
+
+          content.removeView(screen);
+          assertEquals(0, bus.getSubscriptionCount());
+
+          // Keep a few screens around to re-attach
+          if (i % 100 == 0)
+          {
+            screens.add(screen);
+          }
+        }
+
+        // A screen shown again is resubscribed and catches up with the store
+        store.update(new int[] { 1 }, new String[] { "on" }, 1);
+        content.addView(screens.get(0));
+        assertEquals(SENSORS_PER_SCREEN, bus.getSubscriptionCount());
+        assertEquals("1=on,", listener.events.toString());
+        content.removeView(screens.get(0));
+      }
+    });
+
+    assertEquals(0, bus.getSubscriptionCount());
+  }
+
+  /**
+   * Publishes batches while other sensors are subscribed and cancelled, so
+   * ids are inserted and removed around the published ones; every status
+   * must reach the views of its own sensor.
+   */
+  public void testConcurrentPublishAndSubscribe() throws Exception
+  {
+    final int sensorCount = 20;
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final int[] changed = new int[sensorCount];
+    String[] values = new String[sensorCount];
+    for (int i = 0; i < sensorCount; i++)
+    {
+      changed[i] = i * 2 + 1;
+      values[i] = String.valueOf(changed[i]);
+    }
+    store.update(changed, values, sensorCount);
+
+    SensorEventBus.SensorListener checking = new SensorEventBus.SensorListener()
+    {
+      public void onSensorChanged(int sensorId, String status)
+      {
+        if (!String.valueOf(sensorId).equals(status))
+        {
+          failure.compareAndSet(null, new AssertionError(sensorId + " got " + status));
+        }
+      }
+    };
+    for (int sensorId : changed)
+    {
+      bus.subscribe(sensorId, checking);
+    }
+
+    Thread publisher = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          while (!isInterrupted())
+          {
+            bus.publish(changed);
+          }
+        }
+        catch (Throwable t)
+        {
+          failure.compareAndSet(null, t);
+        }
+      }
+    };
+    publisher.start();
+
+    try
+    {
+      for (int i = 0; i < 10000 && failure.get() == null; i++)
+      {
+        // Even ids sit between the published odd ones, plus one past the end
+        int sensorId = (i % (sensorCount + 1)) * 2;
+        SensorEventBus.Subscription subscription = bus.subscribe(sensorId, checking);
+        subscription.cancel();
+      }
+    }
+    finally
+    {
+      publisher.interrupt();
+      publisher.join();
+    }
+
+    if (failure.get() != null)
+    {
+      throw new AssertionError(failure.get());
+    }
+    assertEquals(sensorCount, bus.getSubscriptionCount());
+  }
+
+  private static class RecordingListener implements SensorEventBus.SensorListener
+  {
+    private final StringBuilder events = new StringBuilder();
+
+    public void onSensorChanged(int sensorId, String status)
+    {
+      events.append(sensorId).append('=').append(status).append(',');
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.openremote.android.test.console.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.openremote.android.console.net.CommandDispatcher;
+
+/**
+ * Tests for {@link CommandDispatcher} ordering and bounds.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class CommandDispatcherTest extends TestCase
+{
+  private CommandDispatcher dispatcher;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    dispatcher = new CommandDispatcher(4, 100);
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    dispatcher.shutdown();
+  }
+
+  public void testTasksOfAKeyRunInOrder() throws Exception
+  {
+    final List<Integer> first = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<Integer> second = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch done = new CountDownLatch(100);
+
+    for (int i = 0; i < 50; i++)
+    {
+      final int index = i;
+      dispatcher.execute(1, new Runnable()
+      {
+        public void run()
+        {
+          first.add(index);
+          done.countDown();
+        }
+      });
+      dispatcher.execute(2, new Runnable()
+      {
+        public void run()
+        {
+          second.add(index);
+          done.countDown();
+        }
+      });
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    for (int i = 0; i < 50; i++)
+    {
+      assertEquals(i, first.get(i).intValue());
+      assertEquals(i, second.get(i).intValue());
+    }
+  }
+
+  public void testDifferentKeysRunInParallel() throws Exception
+  {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch otherRan = new CountDownLatch(1);
+
+    dispatcher.execute(1, new Runnable()
+    {
+      public void run()
+      {
+        blocked.countDown();
+        try
+        {
+          release.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+    // Queued behind the blocked task
+    dispatcher.execute(1, new Runnable()
+    {
+      public void run()
+      {
+      }
+    });
+    dispatcher.execute(2, new Runnable()
+    {
+      public void run()
+      {
+        otherRan.countDown();
+      }
+    });
+
+    assertTrue(otherRan.await(5, TimeUnit.SECONDS));
+    assertEquals(1, dispatcher.getPendingCount(1));
+    release.countDown();
+  }
+
+  public void testPendingTasksPerKeyAreBounded() throws Exception
+  {
+    CommandDispatcher bounded = new CommandDispatcher(1, 2);
+    final CountDownLatch release = new CountDownLatch(1);
+    Runnable blocker = new Runnable()
+    {
+      public void run()
+      {
+        try
+        {
+          release.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+
+    try
+    {
+      bounded.execute(1, blocker);
+      bounded.execute(1, blocker);
+      try
+      {
+        bounded.execute(1, blocker);
+        bounded.execute(1, blocker);
+        fail("Expected tasks beyond the pending bound to be rejected");
+      }
+      catch (RejectedExecutionException e)
+      {
+        // expected
+      }
+      // Other keys aren't affected
+      bounded.execute(2, blocker);
+    }
+    finally
+    {
+      release.countDown();
+      bounded.shutdown();
+    }
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.openremote.android.test.console.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.openremote.android.console.net.ContinuousCommandChannel;
+import org.openremote.android.console.net.ORConnectionDelegate;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests for {@link ContinuousCommandChannel}; requests are completed by the test so the
+ * channel's coalescing can be observed.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ContinuousCommandChannelTest extends TestCase
+{
+  private final List<String> sent = new ArrayList<String>();
+  private final List<ORConnectionDelegate> inFlight = new ArrayList<ORConnectionDelegate>();
+  private final List<Integer> responses = new ArrayList<Integer>();
+  private ScheduledExecutorService scheduler;
+
+  private final ContinuousCommandChannel.CommandSender sender = new ContinuousCommandChannel.CommandSender()
+  {
+    public synchronized void send(String value, ORConnectionDelegate delegate)
+    {
+      sent.add(value);
+      inFlight.add(delegate);
+    }
+  };
+
+  private final ORConnectionDelegate delegate = new ORConnectionDelegate()
+  {
+    public void urlConnectionDidFailWithException(Exception e)
+    {
+      responses.add(-1);
+    }
+
+    public void urlConnectionDidReceiveResponse(HttpResponse httpResponse)
+    {
+      responses.add(httpResponse.getStatusLine().getStatusCode());
+    }
+
+    public void urlConnectionDidReceiveData(InputSource inStream)
+    {
+    }
+  };
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    scheduler.shutdownNow();
+  }
+
+  private void complete(int statusCode)
+  {
+    ORConnectionDelegate request;
+    synchronized (sender)
+    {
+      request = inFlight.remove(0);
+    }
+    request.urlConnectionDidReceiveResponse(new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null));
+  }
+
+  public void testOnlyLatestValueSentAfterRequestCompletes()
+  {
+    ContinuousCommandChannel channel = new ContinuousCommandChannel(sender, delegate, 0, scheduler);
+
+    for (int i = 1; i <= 10; i++)
+    {
+      channel.send(String.valueOf(i));
+    }
+
+    assertEquals(1, sent.size());
+    assertEquals("1", sent.get(0));
+
+    complete(200);
+    assertEquals(2, sent.size());
+    assertEquals("10", sent.get(1));
+    assertEquals(8, channel.getCoalescedCount());
+
+    complete(200);
+    assertFalse(channel.isInFlight());
+    assertEquals(2, responses.size());
+  }
+
+  public void testFinalValueIgnoresInterval()
+  {
+    ContinuousCommandChannel channel = new ContinuousCommandChannel(sender, delegate, 60 * 1000, scheduler);
+
+    channel.send("1");
+    complete(200);
+
+    // Held back by the interval
+    channel.send("2");
+    channel.send("3");
+    assertEquals(1, sent.size());
+
+    channel.sendFinal("4");
+    assertEquals(2, sent.size());
+    assertEquals("4", sent.get(1));
+  }
+
+  public void testIntervalDelaysIntermediateValues() throws Exception
+  {
+    ContinuousCommandChannel channel = new ContinuousCommandChannel(sender, delegate, 200, scheduler);
+
+    channel.send("1");
+    complete(200);
+    channel.send("2");
+    assertEquals(1, sent.size());
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (channel.getSentCount() < 2 && System.currentTimeMillis() < deadline)
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(2, channel.getSentCount());
+    assertEquals("2", sent.get(1));
+  }
+
+  public void testValueOfInFlightRequestIsSkipped()
+  {
+    ContinuousCommandChannel channel = new ContinuousCommandChannel(sender, delegate, 0, scheduler);
+
+    channel.send("1");
+    channel.send("2");
+    channel.sendFinal("1");
+    complete(200);
+
+    // The controller already has the final value
+    assertEquals(1, sent.size());
+    assertFalse(channel.isInFlight());
+  }
+
+  public void testFailedValueIsResent()
+  {
+    ContinuousCommandChannel channel = new ContinuousCommandChannel(sender, delegate, 0, scheduler);
+
+    channel.send("1");
+    channel.sendFinal("1");
+    complete(500);
+    assertEquals(2, sent.size());
+    assertEquals("1", sent.get(1));
+  }
+
+  public void testFailedFinalValueIsResent()
+  {
+    ContinuousCommandChannel channel = new ContinuousCommandChannel(sender, delegate, 60 * 1000, scheduler);
+
+    channel.sendFinal("1");
+    complete(500);
+
+    // Resent straight away as a final value isn't held back by the interval
+    assertEquals(2, sent.size());
+    assertEquals("1", sent.get(1));
+    complete(200);
+    assertEquals(2, sent.size());
+    assertFalse(channel.isInFlight());
+  }
+
+  public void testResendsOfFailedValueAreBounded()
+  {
+    ContinuousCommandChannel channel = new ContinuousCommandChannel(sender, delegate, 0, scheduler);
+
+    channel.sendFinal("1");
+    for (int i = 0; i < ContinuousCommandChannel.MAX_RESENDS; i++)
+    {
+      complete(500);
+    }
+    assertEquals(1 + ContinuousCommandChannel.MAX_RESENDS, sent.size());
+
+    // Gives up on the value
+    complete(500);
+    assertEquals(1 + ContinuousCommandChannel.MAX_RESENDS, sent.size());
+    assertFalse(channel.isInFlight());
+
+    // A new value is sent and may be resent again
+    channel.sendFinal("2");
+    complete(500);
+    assertEquals(3 + ContinuousCommandChannel.MAX_RESENDS, sent.size());
+    assertEquals("2", sent.get(sent.size() - 1));
+  }
+
+  public void testLaterGestureResendsSameValue()
+  {
+    ContinuousCommandChannel channel = new ContinuousCommandChannel(sender, delegate, 0, scheduler);
+
+    channel.sendFinal("1");
+    complete(200);
+
+    // The value may have been changed on the controller since
+    channel.sendFinal("1");
+    assertEquals(2, sent.size());
+    assertEquals("1", sent.get(1));
+  }
+
+  public void testStalledRequestSchedulesWakeUp()
+  {
+    final List<Long> delays = new ArrayList<Long>();
+    scheduler.shutdownNow();
+    scheduler = new ScheduledThreadPoolExecutor(1)
+    {
+      @Override
+      public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+      {
+        delays.add(unit.toMillis(delay));
+        return super.schedule(command, delay, unit);
+      }
+    };
+    ContinuousCommandChannel channel = new ContinuousCommandChannel(sender, delegate, 0, scheduler);
+
+    channel.send("1");
+    channel.send("2");
+    channel.send("3");
+
+    // One wake-up to send the pending value if the request never reports back
+    assertEquals(1, delays.size());
+    assertTrue(delays.get(0) > ContinuousCommandChannel.IN_FLIGHT_TIMEOUT - 1000);
+    assertTrue(delays.get(0) <= ContinuousCommandChannel.IN_FLIGHT_TIMEOUT);
+
+    complete(200);
+    assertEquals(2, sent.size());
+    assertEquals("3", sent.get(1));
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.openremote.android.test.console.net;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.openremote.android.console.net.ORHttpTransport;
+
+/**
+ * Tests for {@link ORHttpTransport} against a minimal local HTTP/1.1 server that counts the
+ * TCP connections it accepts.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ORHttpTransportTest extends TestCase
+{
+  private static final String BODY = "<openremote/>";
+
+  private ServerSocket serverSocket;
+  private final AtomicInteger acceptedConnections = new AtomicInteger();
+  private final AtomicInteger requests = new AtomicInteger();
+  private ORHttpTransport transport;
+  private String url;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    url = "http://127.0.0.1:" + serverSocket.getLocalPort() + "/controller/rest/panels";
+    transport = new ORHttpTransport();
+
+    Thread acceptor = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        while (!serverSocket.isClosed())
+        {
+          try
+          {
+            final Socket socket = serverSocket.accept();
+            acceptedConnections.incrementAndGet();
+            Thread handler = new Thread(new Runnable()
+            {
+              public void run()
+              {
+                serve(socket);
+              }
+            });
+            handler.setDaemon(true);
+            handler.start();
+          }
+          catch (IOException e)
+          {
+            // Server closed
+          }
+        }
+      }
+    });
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    transport.shutdown();
+    serverSocket.close();
+  }
+
+  /**
+   * Answers every request on the connection with a keep-alive response until the client closes it
+   */
+  private void serve(Socket socket)
+  {
+    try
+    {
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+      OutputStream out = socket.getOutputStream();
+      String line;
+      while ((line = in.readLine()) != null)
+      {
+        if (line.length() > 0)
+        {
+          continue;
+        }
+
+        // End of the request headers
+        requests.incrementAndGet();
+        byte[] body = BODY.getBytes("US-ASCII");
+        String head = "HTTP/1.1 200 OK\r\n" +
+            "Content-Type: application/xml\r\n" +
+            "Content-Length: " + body.length + "\r\n" +
+            "Connection: keep-alive\r\n\r\n";
+        out.write(head.getBytes("US-ASCII"));
+        out.write(body);
+        out.flush();
+      }
+      socket.close();
+    }
+    catch (IOException e)
+    {
+      // Connection closed
+    }
+  }
+
+  public void testSequentialRequestsReuseConnection() throws Exception
+  {
+    for (int i = 0; i < 10; i++)
+    {
+      HttpGet request = new HttpGet(url);
+      ORHttpTransport.setTimeout(request, 5000);
+      HttpResponse response = transport.getHttpClient().execute(request);
+      assertEquals(200, response.getStatusLine().getStatusCode());
+      assertEquals(BODY, EntityUtils.toString(response.getEntity()));
+    }
+
+    assertEquals(10, requests.get());
+    assertEquals(1, acceptedConnections.get());
+    assertEquals(1, transport.getConnectionsInPool());
+  }
+
+  public void testReleasedResponseReturnsConnectionToPool() throws Exception
+  {
+    for (int i = 0; i < 10; i++)
+    {
+      HttpResponse response = transport.getHttpClient().execute(new HttpGet(url));
+      assertEquals(200, response.getStatusLine().getStatusCode());
+      // Only the status is of interest
+      ORHttpTransport.release(response);
+    }
+
+    assertEquals(10, requests.get());
+    assertEquals(1, acceptedConnections.get());
+  }
+
+  public void testSharedInstance()
+  {
+    assertSame(ORHttpTransport.getInstance(), ORHttpTransport.getInstance());
+  }
+}
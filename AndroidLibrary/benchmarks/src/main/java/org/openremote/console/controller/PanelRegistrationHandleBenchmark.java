@@ -0,0 +1,96 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openremote.console.controller.benchmark.Fixtures;
+import org.openremote.console.controller.benchmark.Fixtures.PanelSize;
+import org.openremote.entities.controller.ControllerResponseCode;
+import org.openremote.entities.panel.Panel;
+import org.openremote.entities.util.JacksonProcessor;
+
+/**
+ * Throughput of {@link PanelRegistrationHandle#onSensorsChanged(SensorValueMap)}
+ * dispatching sensor updates to the widgets of a registered panel. Updates
+ * alternate between two value sets so the widgets see an actual change on
+ * every call.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PanelRegistrationHandleBenchmark {
+  @Param({ "SMALL", "MEDIUM", "LARGE" })
+  PanelSize panelSize;
+
+  /**
+   * Percentage of the panel's sensors included in each update
+   */
+  @Param({ "10", "100" })
+  int changedPercent;
+
+  private PanelRegistrationHandle handle;
+  private SensorValueMap[] updates;
+  private int round;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    Panel panel = JacksonProcessor.unMarshall(new String(Fixtures.panelJson(panelSize), "UTF-8"),
+            Panel.class);
+    handle = new PanelRegistrationHandle(panel, new AsyncRegistrationCallback() {
+      @Override
+      public void onSuccess() {
+      }
+
+      @Override
+      public void onFailure(ControllerResponseCode error) {
+      }
+    });
+
+    int sensorCount = panelSize.getWidgetCount();
+    int changedCount = Math.max(1, sensorCount * changedPercent / 100);
+    updates = new SensorValueMap[] { Fixtures.sensorValues(changedCount, 0),
+        Fixtures.sensorValues(changedCount, 1) };
+  }
+
+  @Benchmark
+  public PanelRegistrationHandle onSensorsChanged() {
+    handle.onSensorsChanged(updates[round++ & 1]);
+    return handle;
+  }
+}
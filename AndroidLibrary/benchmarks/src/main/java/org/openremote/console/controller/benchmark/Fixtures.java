@@ -0,0 +1,250 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.benchmark;
+
+import java.io.UnsupportedEncodingException;
+
+import org.openremote.console.controller.SensorIdSet;
+import org.openremote.console.controller.SensorValueMap;
+
+/**
+ * Generates controller response payloads in the wire formats the connectors
+ * receive (sensor status JSON, panel layout JSON, device list JSON and
+ * controller.xml) so that benchmarks can run over realistic data at any size
+ * without checking megabytes of captures into the tree.
+ *
+ * Payloads are deterministic for a given size so results are comparable
+ * between runs.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public final class Fixtures {
+  /**
+   * Sensor IDs used by the fixtures start at this value
+   */
+  public static final int FIRST_SENSOR_ID = 1000;
+  public static final int FIRST_COMMAND_ID = 100000;
+
+  /**
+   * Panel sizes used by the panel benchmarks
+   */
+  public enum PanelSize {
+    SMALL(1, 20),
+    MEDIUM(10, 50),
+    LARGE(50, 100);
+
+    private final int screenCount;
+    private final int widgetsPerScreen;
+
+    private PanelSize(int screenCount, int widgetsPerScreen) {
+      this.screenCount = screenCount;
+      this.widgetsPerScreen = widgetsPerScreen;
+    }
+
+    public int getScreenCount() {
+      return screenCount;
+    }
+
+    public int getWidgetsPerScreen() {
+      return widgetsPerScreen;
+    }
+
+    public int getWidgetCount() {
+      return screenCount * widgetsPerScreen;
+    }
+  }
+
+  private Fixtures() {
+  }
+
+  /**
+   * Get the IDs of the specified number of sensors
+   */
+  public static SensorIdSet sensorIds(int sensorCount) {
+    SensorIdSet sensorIds = new SensorIdSet(sensorCount);
+    for (int i = 0; i < sensorCount; i++) {
+      sensorIds.add(FIRST_SENSOR_ID + i);
+    }
+    return sensorIds;
+  }
+
+  /**
+   * Get a value map for the specified number of sensors; round is used to
+   * vary the values between polls
+   */
+  public static SensorValueMap sensorValues(int sensorCount, int round) {
+    SensorValueMap sensorValues = new SensorValueMap(sensorCount);
+    for (int i = 0; i < sensorCount; i++) {
+      sensorValues.put(FIRST_SENSOR_ID + i, sensorValue(i, round));
+    }
+    return sensorValues;
+  }
+
+  /**
+   * <code>rest/polling</code> response for the specified number of sensors
+   */
+  public static byte[] sensorStatusJson(int sensorCount) {
+    StringBuilder json = new StringBuilder(sensorCount * 40 + 16).append("{\"status\":[");
+    for (int i = 0; i < sensorCount; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("{\"id\":\"").append(FIRST_SENSOR_ID + i).append("\",\"content\":\"")
+              .append(sensorValue(i, 0)).append("\"}");
+    }
+    return bytes(json.append("]}"));
+  }
+
+  /**
+   * <code>rest/panel</code> response; every widget other than buttons is
+   * linked to its own sensor so a panel of n widgets monitors roughly 4n/5
+   * sensors
+   */
+  public static byte[] panelJson(PanelSize size) {
+    StringBuilder json = new StringBuilder(size.getWidgetCount() * 160 + 256);
+    json.append("{\"screens\":{\"screen\":[");
+    int widgetId = 1;
+
+    for (int screen = 0; screen < size.getScreenCount(); screen++) {
+      if (screen > 0) {
+        json.append(',');
+      }
+      json.append("{\"id\":").append(screen + 1).append(",\"name\":\"Screen ").append(screen + 1)
+              .append("\",\"absolute\":[");
+
+      for (int i = 0; i < size.getWidgetsPerScreen(); i++, widgetId++) {
+        if (i > 0) {
+          json.append(',');
+        }
+        json.append("{\"left\":").append((i % 10) * 50).append(",\"top\":").append((i / 10) * 50)
+                .append(",\"width\":50,\"height\":50,");
+        appendWidget(json, widgetId);
+        json.append('}');
+      }
+      json.append("]}");
+    }
+
+    json.append("]},\"groups\":{\"group\":[{\"id\":1,\"name\":\"Default\",\"include\":[");
+    for (int screen = 0; screen < size.getScreenCount(); screen++) {
+      if (screen > 0) {
+        json.append(',');
+      }
+      json.append("{\"type\":\"screen\",\"ref\":").append(screen + 1).append('}');
+    }
+    return bytes(json.append("]}]}}"));
+  }
+
+  /**
+   * <code>rest/devices</code> response for the specified number of devices
+   */
+  public static byte[] deviceListJson(int deviceCount) {
+    StringBuilder json = new StringBuilder(deviceCount * 24 + 2).append('[');
+    for (int i = 0; i < deviceCount; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("{\"name\":\"Device ").append(i + 1).append("\"}");
+    }
+    return bytes(json.append(']'));
+  }
+
+  /**
+   * controller.xml with the specified number of components (a mix of
+   * switches, sliders and buttons)
+   */
+  public static byte[] controllerXml(int componentCount) {
+    StringBuilder xml = new StringBuilder(componentCount * 200 + 256);
+    xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+            .append("<openremote xmlns=\"http://www.openremote.org\">\n<components>\n");
+
+    for (int i = 0; i < componentCount; i++) {
+      int sensorId = FIRST_SENSOR_ID + i;
+      int commandId = FIRST_COMMAND_ID + i * 2;
+
+      switch (i % 3) {
+      case 0:
+        xml.append("<switch id=\"").append(i + 1).append("\">")
+                .append("<include type=\"sensor\" ref=\"").append(sensorId).append("\"/>")
+                .append("<on><include type=\"command\" ref=\"").append(commandId).append("\"/></on>")
+                .append("<off><include type=\"command\" ref=\"").append(commandId + 1)
+                .append("\"/></off></switch>\n");
+        break;
+      case 1:
+        xml.append("<slider id=\"").append(i + 1).append("\">")
+                .append("<include type=\"sensor\" ref=\"").append(sensorId).append("\"/>")
+                .append("<setValue><include type=\"command\" ref=\"").append(commandId)
+                .append("\"/></setValue></slider>\n");
+        break;
+      default:
+        xml.append("<button id=\"").append(i + 1).append("\">")
+                .append("<include type=\"command\" ref=\"").append(commandId)
+                .append("\"/></button>\n");
+      }
+    }
+
+    return bytes(xml.append("</components>\n</openremote>\n"));
+  }
+
+  private static void appendWidget(StringBuilder json, int widgetId) {
+    int sensorId = FIRST_SENSOR_ID + widgetId - 1;
+
+    switch (widgetId % 5) {
+    case 0:
+      json.append("\"button\":{\"id\":").append(widgetId).append(",\"name\":\"Button ")
+              .append(widgetId).append("\",\"hasControlCommand\":true}");
+      return;
+    case 1:
+      json.append("\"label\":{\"id\":").append(widgetId).append(",\"text\":\"Label ")
+              .append(widgetId).append('"');
+      break;
+    case 2:
+      json.append("\"switch\":{\"id\":").append(widgetId);
+      break;
+    case 3:
+      json.append("\"slider\":{\"id\":").append(widgetId).append(",\"min\":{\"value\":0},\"max\":{\"value\":100}");
+      break;
+    default:
+      json.append("\"image\":{\"id\":").append(widgetId).append(",\"src\":\"image")
+              .append(widgetId).append(".png\"");
+    }
+
+    json.append(",\"link\":{\"type\":\"sensor\",\"ref\":").append(sensorId).append("}}");
+  }
+
+  private static String sensorValue(int index, int round) {
+    switch (index % 3) {
+    case 0:
+      return (index + round) % 2 == 0 ? "on" : "off";
+    case 1:
+      return Integer.toString((index + round) % 100);
+    default:
+      return "Value " + (index + round);
+    }
+  }
+
+  private static byte[] bytes(CharSequence value) {
+    try {
+      return value.toString().getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
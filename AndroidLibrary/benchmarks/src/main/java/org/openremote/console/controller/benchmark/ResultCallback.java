@@ -0,0 +1,57 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.benchmark;
+
+import org.openremote.entities.controller.AsyncControllerCallback;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * Callback that keeps the last result so it can be returned from a benchmark
+ * method (and consumed by JMH); a failure means the fixture is broken so it
+ * is thrown rather than silently measured.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ *
+ * @param <T>
+ *          result type
+ */
+public class ResultCallback<T> implements AsyncControllerCallback<T> {
+  private T result;
+
+  @Override
+  public void onSuccess(T result) {
+    this.result = result;
+  }
+
+  @Override
+  public void onFailure(ControllerResponseCode error) {
+    throw new IllegalStateException("Benchmark request failed: " + error);
+  }
+
+  /**
+   * Get the last result and reset the callback
+   */
+  public T takeResult() {
+    T last = result;
+    result = null;
+    return last;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.net.URI;
+import java.util.Map;
+
+import org.openremote.console.controller.auth.Credentials;
+import org.openremote.entities.controller.AsyncControllerCallback;
+
+/**
+ * Connector that never touches the network; benchmarks feed recorded
+ * responses straight into {@link HttpConnector#handleResponse} and build
+ * request URIs with {@link HttpConnector#buildRequestUri}.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+class BenchmarkConnector extends HttpConnector {
+  @Override
+  protected void doRequest(URI uri, Map<String, String> headers, String content,
+          ControllerCallback callback, Integer timeout) {
+  }
+
+  @Override
+  public void setCredentials(Credentials credentials) {
+    this.credentials = credentials;
+  }
+
+  @Override
+  public void logout(AsyncControllerCallback<Boolean> callback) {
+    callback.onSuccess(true);
+  }
+
+  @Override
+  public boolean isDiscoveryRunning() {
+    return false;
+  }
+}
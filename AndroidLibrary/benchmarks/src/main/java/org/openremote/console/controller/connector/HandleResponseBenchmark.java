@@ -0,0 +1,170 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.SensorValueMap;
+import org.openremote.console.controller.benchmark.Fixtures;
+import org.openremote.console.controller.benchmark.Fixtures.PanelSize;
+import org.openremote.console.controller.benchmark.ResultCallback;
+import org.openremote.console.controller.connector.HttpConnector.ControllerCallback;
+import org.openremote.console.controller.connector.HttpConnector.RestCommand;
+import org.openremote.entities.controller.DeviceInfo;
+import org.openremote.entities.panel.Panel;
+
+/**
+ * Throughput of {@link HttpConnector#handleResponse} for the responses that
+ * dominate console traffic: sensor polling, panel layout, device list and
+ * controller.xml. Each state class carries its own size parameter so a
+ * benchmark is only run over the sizes that are relevant to it.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandleResponseBenchmark {
+  private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+  @State(Scope.Thread)
+  public static class SensorPolling {
+    @Param({ "10", "100", "1000", "5000" })
+    int sensorCount;
+
+    BenchmarkConnector connector;
+    byte[] response;
+    SensorValueMap sensorValues;
+    ResultCallback<SensorValueMap> callback;
+
+    @Setup
+    public void setup() throws Exception {
+      connector = createConnector();
+      response = Fixtures.sensorStatusJson(sensorCount);
+      // Re-used across polls in the same way as the sensor monitor does
+      sensorValues = new SensorValueMap(sensorCount);
+      callback = new ResultCallback<SensorValueMap>();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class PanelLayout {
+    @Param({ "SMALL", "MEDIUM", "LARGE" })
+    PanelSize panelSize;
+
+    BenchmarkConnector connector;
+    byte[] response;
+    ResultCallback<Panel> callback;
+
+    @Setup
+    public void setup() throws Exception {
+      connector = createConnector();
+      response = Fixtures.panelJson(panelSize);
+      callback = new ResultCallback<Panel>();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class DeviceList {
+    @Param({ "10", "100", "1000" })
+    int deviceCount;
+
+    BenchmarkConnector connector;
+    byte[] response;
+    ResultCallback<List<DeviceInfo>> callback;
+
+    @Setup
+    public void setup() throws Exception {
+      connector = createConnector();
+      response = Fixtures.deviceListJson(deviceCount);
+      callback = new ResultCallback<List<DeviceInfo>>();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ControllerXml {
+    @Param({ "10", "500", "5000" })
+    int componentCount;
+
+    BenchmarkConnector connector;
+    byte[] response;
+    ResultCallback<List<Controller.WidgetCommandInfo<?>>> callback;
+
+    @Setup
+    public void setup() throws Exception {
+      connector = createConnector();
+      response = Fixtures.controllerXml(componentCount);
+      callback = new ResultCallback<List<Controller.WidgetCommandInfo<?>>>();
+    }
+  }
+
+  @Benchmark
+  public SensorValueMap sensorPolling(SensorPolling state) {
+    state.connector.handleResponse(new ControllerCallback(RestCommand.DO_SENSOR_POLLING,
+            state.callback, state.sensorValues), 200, NO_HEADERS, state.response);
+    return state.callback.takeResult();
+  }
+
+  @Benchmark
+  public Panel panelLayout(PanelLayout state) {
+    state.connector.handleResponse(new ControllerCallback(RestCommand.GET_PANEL_LAYOUT,
+            state.callback), 200, NO_HEADERS, state.response);
+    return state.callback.takeResult();
+  }
+
+  @Benchmark
+  public List<DeviceInfo> deviceList(DeviceList state) {
+    state.connector.handleResponse(new ControllerCallback(RestCommand.GET_DEVICE_LIST,
+            state.callback), 200, NO_HEADERS, state.response);
+    return state.callback.takeResult();
+  }
+
+  @Benchmark
+  public List<Controller.WidgetCommandInfo<?>> controllerXml(ControllerXml state) {
+    state.connector.handleResponse(new ControllerCallback(RestCommand.GET_XML, state.callback),
+            200, NO_HEADERS, state.response);
+    return state.callback.takeResult();
+  }
+
+  static BenchmarkConnector createConnector() throws Exception {
+    BenchmarkConnector connector = new BenchmarkConnector();
+    connector.setControllerUrl(new URL("http://192.168.1.10:8688/controller"));
+    return connector;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.net.URI;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openremote.console.controller.SensorIdSet;
+import org.openremote.console.controller.benchmark.Fixtures;
+import org.openremote.console.controller.connector.HttpConnector.RestCommand;
+
+/**
+ * Throughput of {@link HttpConnector#buildRequestUri} for the polling URI
+ * (which grows with the number of monitored sensors) and the fixed size
+ * panel and control command URIs. The polling benchmark includes joining the
+ * sensor IDs as that is part of building every polling request.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestUriBenchmark {
+
+  @State(Scope.Thread)
+  public static class Connector {
+    BenchmarkConnector connector;
+
+    @Setup
+    public void setup() throws Exception {
+      connector = HandleResponseBenchmark.createConnector();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Polling {
+    @Param({ "10", "100", "1000", "5000" })
+    int sensorCount;
+
+    BenchmarkConnector connector;
+    String uuid;
+    SensorIdSet sensorIds;
+
+    @Setup
+    public void setup() throws Exception {
+      connector = HandleResponseBenchmark.createConnector();
+      uuid = UUID.randomUUID().toString().replace("-", "");
+      sensorIds = Fixtures.sensorIds(sensorCount);
+    }
+  }
+
+  @Benchmark
+  public URI pollingUri(Polling state) {
+    return state.connector.buildRequestUri(new String[] { state.uuid, state.sensorIds.join(',') },
+            RestCommand.DO_SENSOR_POLLING);
+  }
+
+  @Benchmark
+  public URI panelLayoutUri(Connector state) {
+    return state.connector.buildRequestUri(new String[] { "Living Room" },
+            RestCommand.GET_PANEL_LAYOUT);
+  }
+
+  @Benchmark
+  public URI controlCommandUri(Connector state) {
+    return state.connector.buildRequestUri(new String[] { "1234", "ON" },
+            RestCommand.SEND_CONTROL_COMMAND);
+  }
+}
@@ -27,8 +27,13 @@ import java.util.List;
 import java.util.Map;
 
 import org.openremote.console.controller.auth.Credentials;
-import org.openremote.console.controller.connector.AndroidHttpConnector;
+import org.openremote.console.controller.connector.ConnectorMetrics;
+import org.openremote.console.controller.connector.ConnectorMetricsSnapshot;
 import org.openremote.console.controller.connector.ControllerConnector;
+import org.openremote.console.controller.connector.HttpConnector;
+import org.openremote.console.controller.connector.HttpTransport;
+import org.openremote.console.controller.connector.PanelCache;
+import org.openremote.console.controller.connector.ResourceCache;
 import org.openremote.console.controller.connector.SingleThreadHttpConnector;
 import org.openremote.entities.panel.*;
 import org.openremote.entities.controller.AsyncControllerCallback;
@@ -46,6 +51,11 @@ import org.openremote.entities.controller.DeviceInfo;
  * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
  */
 public class Controller {
+  /**
+   * Default maximum number of device requests in flight for
+   * {@link #getDevices(List, AsyncControllerCallback)}
+   */
+  public static final int DEFAULT_DEVICE_CONCURRENCY = 4;
   // TODO: Inject the appropriate connector
   private ControllerConnector connector;
   // private ControllerConnector connector = new SingleThreadHttpConnector();
@@ -54,12 +64,22 @@ public class Controller {
   private ControllerInfo controllerInfo;
   private List<DeviceRegistrationHandle> registeredDevices = new ArrayList<DeviceRegistrationHandle>();
   private List<PanelRegistrationHandle> registeredPanels = new ArrayList<PanelRegistrationHandle>();
+  private List<SensorRegistrationHandle> registeredSensors = new ArrayList<SensorRegistrationHandle>();
+  private SensorMonitor sensorMonitor;
+  private WidgetCommandInfoIndex widgetCommandInfoIndex;
   private static Class<?> connectorClazz = SingleThreadHttpConnector.class;
 
   public static class Builder {
     Credentials credentials;
     ControllerInfo controllerInfo;
     ControllerConnector connector;
+    ReconnectPolicy reconnectPolicy;
+    boolean alwaysDeliverSensorValues;
+    PanelCache panelCache;
+    ResourceCache resourceCache;
+    Long commandCoalescingWindow;
+    ConnectorMetrics metrics;
+    HttpTransport transport;
     
     public Builder(String url) {
       this(new ControllerInfo(url));
@@ -79,9 +99,91 @@ public class Controller {
       return this;
     }
     
+    public Builder setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+      this.reconnectPolicy = reconnectPolicy;
+      return this;
+    }
+    
+    public Builder setAlwaysDeliverSensorValues(boolean alwaysDeliverSensorValues) {
+      this.alwaysDeliverSensorValues = alwaysDeliverSensorValues;
+      return this;
+    }
+    
+    /**
+     * Set the cache used for panel list and panel layout payloads; only
+     * applies to {@link HttpConnector} based connectors
+     */
+    public Builder setPanelCache(PanelCache panelCache) {
+      this.panelCache = panelCache;
+      return this;
+    }
+    
+    /**
+     * Set the cache used for resource data; only applies to
+     * {@link HttpConnector} based connectors
+     */
+    public Builder setResourceCache(ResourceCache resourceCache) {
+      this.resourceCache = resourceCache;
+      return this;
+    }
+    
+    /**
+     * Enable latest wins coalescing of control commands; only applies to
+     * {@link HttpConnector} based connectors
+     * 
+     * @see HttpConnector#setCommandCoalescingWindow(long)
+     */
+    public Builder setCommandCoalescingWindow(long commandCoalescingWindow) {
+      this.commandCoalescingWindow = commandCoalescingWindow;
+      return this;
+    }
+    
+    /**
+     * Set the sink that request metrics are reported to; only applies to
+     * {@link HttpConnector} based connectors
+     * 
+     * @see HttpConnector#setMetrics(ConnectorMetrics)
+     */
+    public Builder setMetrics(ConnectorMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+    
+    /**
+     * Set the transport shared with other controllers so they use one
+     * connection pool and I/O executor; only applies to {@link HttpConnector}
+     * based connectors
+     * 
+     * @see HttpConnector#setTransport(HttpTransport)
+     */
+    public Builder setTransport(HttpTransport transport) {
+      this.transport = transport;
+      return this;
+    }
+    
     public Controller build() {
-      Controller controller = new Controller(getConnector());
+      ControllerConnector connector = getConnector();
+      if (transport != null && connector instanceof HttpConnector) {
+        ((HttpConnector) connector).setTransport(transport);
+      }
+      if (panelCache != null && connector instanceof HttpConnector) {
+        ((HttpConnector) connector).setPanelCache(panelCache);
+      }
+      if (resourceCache != null && connector instanceof HttpConnector) {
+        ((HttpConnector) connector).setResourceCache(resourceCache);
+      }
+      if (commandCoalescingWindow != null && connector instanceof HttpConnector) {
+        ((HttpConnector) connector).setCommandCoalescingWindow(commandCoalescingWindow);
+      }
+      if (metrics != null && connector instanceof HttpConnector) {
+        ((HttpConnector) connector).setMetrics(metrics);
+      }
+      Controller controller = new Controller(connector);
       controller.setCredentials(credentials);
+      if (reconnectPolicy != null) {
+        controller.setReconnectPolicy(reconnectPolicy);
+      }
+      controller.setAlwaysDeliverSensorValues(alwaysDeliverSensorValues);
       controller.setControllerInfo(controllerInfo);
       return controller;
     }
@@ -148,6 +250,7 @@ public class Controller {
   
   protected Controller(ControllerConnector connector) {
     this.connector = connector;
+    this.sensorMonitor = new SensorMonitor(this, connector);
   }
 
   public static void setConnectorType(Class<?> connectorClass) {
@@ -196,6 +299,93 @@ public class Controller {
     return connector.getCredentials();
   }
 
+  /**
+   * Set the {@link ReconnectPolicy} used to delay re-polling the controller
+   * after a sensor monitoring request fails
+   * 
+   * @param reconnectPolicy
+   */
+  public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+    if (reconnectPolicy != null) {
+      sensorMonitor.setReconnectPolicy(reconnectPolicy);
+    }
+  }
+
+  /**
+   * Get the {@link ReconnectPolicy} used for sensor monitoring retries
+   * 
+   * @return current {@link ReconnectPolicy}
+   */
+  public ReconnectPolicy getReconnectPolicy() {
+    return sensorMonitor.getReconnectPolicy();
+  }
+
+  /**
+   * Get the number of sensor monitoring polls that have been re-armed after a
+   * failure
+   * 
+   * @return retry count
+   */
+  public long getSensorRetryCount() {
+    return sensorMonitor.getRetryCount();
+  }
+
+  /**
+   * Get the number of sensor monitoring retries that were delayed or
+   * coalesced by the {@link ReconnectPolicy} rather than sent immediately
+   * 
+   * @return suppressed retry count
+   */
+  public long getSuppressedSensorRetryCount() {
+    return sensorMonitor.getSuppressedRetryCount();
+  }
+
+  /**
+   * Get a snapshot of the request metrics (per command latency, bytes,
+   * errors and in flight count) reported by the connector
+   * 
+   * @return snapshot or {@link ConnectorMetricsSnapshot#EMPTY} if no metrics
+   *         sink is set
+   */
+  public ConnectorMetricsSnapshot getMetricsSnapshot() {
+    if (connector instanceof HttpConnector) {
+      return ((HttpConnector) connector).getMetrics().getSnapshot();
+    }
+    return ConnectorMetricsSnapshot.EMPTY;
+  }
+
+  /**
+   * Sets whether registrations are notified of every sensor value returned by
+   * the controller; by default only values that differ from the last known
+   * value are delivered.
+   * 
+   * @param alwaysDeliverSensorValues
+   */
+  public void setAlwaysDeliverSensorValues(boolean alwaysDeliverSensorValues) {
+    sensorMonitor.setAlwaysDeliver(alwaysDeliverSensorValues);
+  }
+
+  /**
+   * Indicates whether registrations are notified of every sensor value
+   * returned by the controller rather than only changed values
+   * 
+   * @return is always deliver enabled
+   */
+  public boolean isAlwaysDeliverSensorValues() {
+    return sensorMonitor.isAlwaysDeliver();
+  }
+
+  /**
+   * Get the last known value of a monitored sensor without waiting for a
+   * poll; useful for rendering UI immediately.
+   * 
+   * @param sensorId
+   * @return last known sensor value or null if the value is not known
+   */
+  public String getLastSensorValue(int sensorId) {
+    return sensorMonitor.getLastSensorValue(sensorId);
+  }
+
   // /**
   // * Sets whether or not the connection to the controller will be
   // automatically re-established
@@ -323,9 +513,35 @@ public class Controller {
     return registration;
   }
 
+  /**
+   * Registers an arbitrary set of sensors with this controller; the sensor
+   * updates are consumed by subscribing to the handle's
+   * {@link RegistrationHandle#getSensorPublisher() publisher}. The
+   * registration shares the controller's sensor monitoring with any
+   * registered panels and devices.
+   * 
+   * @param sensorIds
+   * @param callback
+   */
+  public synchronized SensorRegistrationHandle registerSensors(SensorIdSet sensorIds,
+          AsyncRegistrationCallback callback) {
+    if (sensorIds == null) {
+      callback.onFailure(ControllerResponseCode.UNKNOWN_ERROR);
+      return null;
+    }
+
+    SensorRegistrationHandle registration = new SensorRegistrationHandle(sensorIds, callback);
+    registeredSensors.add(registration);
+    registration.setIsRegistered(true);
+
+    doRegistration(registration, true);
+    return registration;
+  }
+
   protected void doRegistration(final RegistrationHandle registration, final boolean firstRun) {
-    final List<Integer> sensorIds = registration.getSensorIds();
-    final AsyncControllerCallback<Map<Integer, String>> monitorCallback = new AsyncControllerCallback<Map<Integer, String>>() {
+    final SensorIdSet sensorIds = registration.getSensorIdSet();
+    registration.setSensorMonitor(sensorMonitor);
+    final AsyncControllerCallback<SensorValueMap> monitorCallback = new AsyncControllerCallback<SensorValueMap>() {
       
       @Override
       public void onFailure(ControllerResponseCode error) {
@@ -333,28 +549,46 @@ public class Controller {
           // Pass error back to registration callback
           registration.getCallback().onFailure(error);
         } else if (isConnected() && registration.isRegistered()) {
-          monitorSensors(registration);
+          sensorMonitor.subscribe(registration);
+          sensorMonitor.start();
         }
       }
 
       @Override
-      public void onSuccess(Map<Integer, String> result) {
+      public void onSuccess(SensorValueMap result) {
+        if (registration.isRegistered() && result != null) {
+          SensorValueMap changedValues = new SensorValueMap(result.size());
+          sensorMonitor.updateSnapshot(result, changedValues);
+
+          if (!firstRun) {
+            sensorMonitor.subscribe(registration);
+          }
+          // The snapshot is shared so every handle monitoring a changed
+          // sensor must get the change; the next poll won't see it again
+          if (!changedValues.isEmpty()) {
+            sensorMonitor.dispatch(changedValues);
+          }
+          // A new registration needs all of its initial values
+          if (firstRun && !result.isEmpty()) {
+            registration.onSensorsChanged(result);
+          }
+        }
+
+        // Registered once the initial values have been delivered
         if (firstRun) {
           registration.getCallback().onSuccess();
         }
 
         if (registration.isRegistered()) {
-          registration.onSensorsChanged(result);
-          if (isConnected()) {
-            monitorSensors(registration);
-          }
+          sensorMonitor.subscribe(registration);
+          sensorMonitor.start();
         }
       }
     };
 
     // Get initial sensor values
-    if (sensorIds != null && sensorIds.size() > 0) {
-      connector.getSensorValues(sensorIds, monitorCallback);
+    if (!sensorIds.isEmpty()) {
+      connector.getSensorValues(sensorIds, new SensorValueMap(sensorIds.size()), monitorCallback);
     } else {
       if (firstRun) {
         // Just call registration onSuccess callback
@@ -363,36 +597,6 @@ public class Controller {
     }
   }
 
-  protected void monitorSensors(final RegistrationHandle registration) {
-    final List<Integer> sensorIds = registration.getSensorIds();
-    final AsyncControllerCallback<Map<Integer, String>> monitorCallback = new AsyncControllerCallback<Map<Integer, String>>() {
-      @Override
-      public void onFailure(ControllerResponseCode error) {
-        // Pass error back to registration callback
-        registration.getCallback().onFailure(error);
-        
-        if (isConnected() && registration.isRegistered()) {
-          monitorSensors(registration);
-        }
-      }
-
-      @Override
-      public void onSuccess(Map<Integer, String> result) {
-        if (registration.isRegistered()) {
-          if (result != null) {
-            // Pass through to registration handle
-            registration.onSensorsChanged(result);
-          }
-          if (isConnected()) {
-            monitorSensors(registration);
-          }
-        }
-      }
-    };
-
-    connector.monitorSensors(registration.uuid, sensorIds, monitorCallback);
-  }
-
   /**
    * Unregisters a panel from the controller; no more sensor change
    * notifications will be received and it will not be possible to send commands
@@ -408,6 +612,7 @@ public class Controller {
 
     registeredPanels.remove(registrationHandle);
     registrationHandle.setIsRegistered(false);
+    sensorMonitor.unsubscribe(registrationHandle);
     Panel panel = registrationHandle.getPanel();
 
     // Disconnect command sender and resource locator
@@ -433,6 +638,7 @@ public class Controller {
       }
     }
 
+    registrationHandle.completePublisher();
     registrationHandle.getCallback().onFailure(ControllerResponseCode.UNREGISTERED);
   }
 
@@ -451,10 +657,32 @@ public class Controller {
 
     registeredDevices.remove(registrationHandle);
     registrationHandle.setIsRegistered(false);
+    sensorMonitor.unsubscribe(registrationHandle);
 
     // Disconnect command sender and resource locator
     registrationHandle.getDevice().setCommandSender(null);
 
+    registrationHandle.completePublisher();
+    registrationHandle.getCallback().onFailure(ControllerResponseCode.UNREGISTERED);
+  }
+
+  /**
+   * Unregisters a set of sensors from the controller; subscribers of the
+   * handle's publisher are completed once their pending updates have been
+   * delivered
+   * 
+   * @param registrationHandle
+   */
+  public void unregisterSensors(SensorRegistrationHandle registrationHandle) {
+    if (registrationHandle == null || !registeredSensors.contains(registrationHandle)) {
+      return;
+    }
+
+    registeredSensors.remove(registrationHandle);
+    registrationHandle.setIsRegistered(false);
+    sensorMonitor.unsubscribe(registrationHandle);
+
+    registrationHandle.completePublisher();
     registrationHandle.getCallback().onFailure(ControllerResponseCode.UNREGISTERED);
   }
 
@@ -518,12 +746,16 @@ public class Controller {
       @Override
       public void onSuccess(ControllerConnectionStatus result) {
         // Restart any existing sensor monitors
+        sensorMonitor.resetBackoff();
         for (PanelRegistrationHandle panelReg : registeredPanels) {
           doRegistration(panelReg, false);
         }
         for (DeviceRegistrationHandle deviceReg : registeredDevices) {
           doRegistration(deviceReg, false);
         }
+        for (SensorRegistrationHandle sensorReg : registeredSensors) {
+          doRegistration(sensorReg, false);
+        }
         callback.onSuccess(result);
       }
 
@@ -540,6 +772,7 @@ public class Controller {
    * occurred.
    */
   public void disconnect() {
+    sensorMonitor.stop();
     connector.disconnect();
   }
 
@@ -594,14 +827,124 @@ public class Controller {
     connector.getDevice(deviceName, callback);
   }
   
-//  public void getDevices(List<String> deviceNames, AsyncControllerCallback<List<Device>> callback) {
-//    connector.getDevices(deviceNames, callback);
-//  }
+  /**
+   * Get the current values of the specified sensors from this controller
+   * 
+   * @param sensorIds
+   * @param callback
+   */
+  public void getSensorValues(List<Integer> sensorIds,
+          AsyncControllerCallback<Map<Integer, String>> callback) {
+    connector.getSensorValues(sensorIds, callback);
+  }
 
+  /**
+   * Get the current values of the specified sensors from this controller
+   * without boxing the sensor IDs; the values are decoded into the supplied
+   * {@link SensorValueMap} so it can be re-used between calls
+   * 
+   * @param sensorIds
+   * @param sensorValues
+   * @param callback
+   */
+  public void getSensorValues(SensorIdSet sensorIds, SensorValueMap sensorValues,
+          AsyncControllerCallback<SensorValueMap> callback) {
+    connector.getSensorValues(sensorIds, sensorValues, callback);
+  }
+  
+  /**
+   * Get the specified {@link org.openremote.entities.controller.Device}s from
+   * this controller; the devices are requested in parallel with at most
+   * {@link #DEFAULT_DEVICE_CONCURRENCY} requests in flight. Devices that
+   * can't be retrieved are reported individually in the response.
+   * 
+   * @param deviceNames
+   * @param callback
+   */
+  public void getDevices(List<String> deviceNames, AsyncControllerCallback<DevicesResponse> callback) {
+    getDevices(deviceNames, DEFAULT_DEVICE_CONCURRENCY, callback);
+  }
 
+  /**
+   * Get the specified {@link org.openremote.entities.controller.Device}s from
+   * this controller with at most maxConcurrency requests in flight
+   * 
+   * @param deviceNames
+   * @param maxConcurrency
+   * @param callback
+   */
+  public void getDevices(List<String> deviceNames, int maxConcurrency,
+          AsyncControllerCallback<DevicesResponse> callback) {
+    connector.getDevices(deviceNames, maxConcurrency, callback);
+  }
+
+
+  /**
+   * Get the {@link WidgetCommandInfo} of the switch, slider and button
+   * components defined in this controller's controller.xml; the returned list
+   * is shared and must not be modified.
+   * 
+   * @param callback
+   */
+  // Raw WidgetCommandInfo kept for compatibility with existing callers
+  @SuppressWarnings({ "rawtypes", "unchecked" })
   public void getWidgetsCommandsInfo(AsyncControllerCallback<List<WidgetCommandInfo>> callback) {
-    connector.getWidgetsCommandInfo(callback);
-  } 
+    final AsyncControllerCallback<List<WidgetCommandInfo<?>>> infosCallback =
+            (AsyncControllerCallback) callback;
+    getWidgetCommandInfoIndex(new AsyncControllerCallback<WidgetCommandInfoIndex>() {
+      @Override
+      public void onSuccess(WidgetCommandInfoIndex result) {
+        infosCallback.onSuccess(result.getWidgetCommandInfos());
+      }
+
+      @Override
+      public void onFailure(ControllerResponseCode error) {
+        infosCallback.onFailure(error);
+      }
+    });
+  }
+
+  /**
+   * Get the {@link WidgetCommandInfoIndex} for this controller; the
+   * controller.xml is only downloaded and parsed again if it has changed since
+   * the last call.
+   * 
+   * @param callback
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public void getWidgetCommandInfoIndex(final AsyncControllerCallback<WidgetCommandInfoIndex> callback) {
+    AsyncControllerCallback<List<WidgetCommandInfo<?>>> infosCallback =
+            new AsyncControllerCallback<List<WidgetCommandInfo<?>>>() {
+      @Override
+      public void onSuccess(List<WidgetCommandInfo<?>> result) {
+        WidgetCommandInfoIndex index;
+        synchronized (Controller.this) {
+          if (widgetCommandInfoIndex == null
+                  || widgetCommandInfoIndex.getWidgetCommandInfos() != result) {
+            widgetCommandInfoIndex = new WidgetCommandInfoIndex(result);
+          }
+          index = widgetCommandInfoIndex;
+        }
+        callback.onSuccess(index);
+      }
+
+      @Override
+      public void onFailure(ControllerResponseCode error) {
+        callback.onFailure(error);
+      }
+    };
+    connector.getWidgetsCommandInfo((AsyncControllerCallback) infosCallback);
+  }
+
+  /**
+   * Get the most recently loaded {@link WidgetCommandInfoIndex} without
+   * contacting the controller
+   * 
+   * @return cached index or null if it hasn't been loaded yet
+   */
+  public synchronized WidgetCommandInfoIndex getCachedWidgetCommandInfoIndex() {
+    return widgetCommandInfoIndex;
+  }
   
   /**
    * Logout from the controller (i.e. remove current credentials)
@@ -611,4 +954,167 @@ public class Controller {
   public void logout(AsyncControllerCallback<Boolean> callback) {
     connector.logout(callback);
   }
+
+  // Future based versions of the callback methods
+
+  /**
+   * @see #connect(AsyncControllerCallback)
+   */
+  public ControllerFuture<ControllerConnectionStatus> connect() {
+    ControllerFuture<ControllerConnectionStatus> future = new ControllerFuture<ControllerConnectionStatus>();
+    connect(future);
+    return future;
+  }
+
+  /**
+   * @see #getPanelList(AsyncControllerCallback)
+   */
+  public ControllerFuture<List<PanelInfo>> getPanelList() {
+    ControllerFuture<List<PanelInfo>> future = new ControllerFuture<List<PanelInfo>>();
+    getPanelList(future);
+    return future;
+  }
+
+  /**
+   * @see #getPanel(String, AsyncControllerCallback)
+   */
+  public ControllerFuture<Panel> getPanel(String panelName) {
+    ControllerFuture<Panel> future = new ControllerFuture<Panel>();
+    getPanel(panelName, future);
+    return future;
+  }
+
+  /**
+   * @see #getDeviceList(AsyncControllerCallback)
+   */
+  public ControllerFuture<List<DeviceInfo>> getDeviceList() {
+    ControllerFuture<List<DeviceInfo>> future = new ControllerFuture<List<DeviceInfo>>();
+    getDeviceList(future);
+    return future;
+  }
+
+  /**
+   * @see #getDevice(String, AsyncControllerCallback)
+   */
+  public ControllerFuture<Device> getDevice(String deviceName) {
+    ControllerFuture<Device> future = new ControllerFuture<Device>();
+    getDevice(deviceName, future);
+    return future;
+  }
+
+  /**
+   * @see #getDevices(List, AsyncControllerCallback)
+   */
+  public ControllerFuture<DevicesResponse> getDevices(List<String> deviceNames) {
+    return getDevices(deviceNames, DEFAULT_DEVICE_CONCURRENCY);
+  }
+
+  /**
+   * @see #getDevices(List, int, AsyncControllerCallback)
+   */
+  public ControllerFuture<DevicesResponse> getDevices(List<String> deviceNames, int maxConcurrency) {
+    ControllerFuture<DevicesResponse> future = new ControllerFuture<DevicesResponse>();
+    getDevices(deviceNames, maxConcurrency, future);
+    return future;
+  }
+
+  /**
+   * @see #getSensorValues(List, AsyncControllerCallback)
+   */
+  public ControllerFuture<Map<Integer, String>> getSensorValues(List<Integer> sensorIds) {
+    ControllerFuture<Map<Integer, String>> future = new ControllerFuture<Map<Integer, String>>();
+    getSensorValues(sensorIds, future);
+    return future;
+  }
+
+  /**
+   * @see #getWidgetsCommandsInfo(AsyncControllerCallback)
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public ControllerFuture<List<WidgetCommandInfo<?>>> getWidgetsCommandsInfo() {
+    ControllerFuture<List<WidgetCommandInfo<?>>> future = new ControllerFuture<List<WidgetCommandInfo<?>>>();
+    getWidgetsCommandsInfo((AsyncControllerCallback) future);
+    return future;
+  }
+
+  /**
+   * Register the panel; the future completes with the registration handle
+   * once the initial sensor values have been retrieved. Later monitoring
+   * failures aren't reported through the future.
+   * 
+   * @see #registerPanel(Panel, AsyncRegistrationCallback)
+   */
+  public ControllerFuture<PanelRegistrationHandle> registerPanel(Panel panel) {
+    RegistrationFuture<PanelRegistrationHandle> future = new RegistrationFuture<PanelRegistrationHandle>();
+    future.setHandle(registerPanel(panel, future));
+    return future;
+  }
+
+  /**
+   * Register the device; the future completes with the registration handle
+   * once the initial sensor values have been retrieved. Later monitoring
+   * failures aren't reported through the future.
+   * 
+   * @see #registerDevice(Device, AsyncRegistrationCallback)
+   */
+  public ControllerFuture<DeviceRegistrationHandle> registerDevice(Device device) {
+    RegistrationFuture<DeviceRegistrationHandle> future = new RegistrationFuture<DeviceRegistrationHandle>();
+    future.setHandle(registerDevice(device, future));
+    return future;
+  }
+
+  /**
+   * Register the sensors; the future completes with the registration handle
+   * once the initial sensor values have been retrieved
+   * 
+   * @see #registerSensors(SensorIdSet, AsyncRegistrationCallback)
+   */
+  public ControllerFuture<SensorRegistrationHandle> registerSensors(SensorIdSet sensorIds) {
+    RegistrationFuture<SensorRegistrationHandle> future = new RegistrationFuture<SensorRegistrationHandle>();
+    future.setHandle(registerSensors(sensorIds, future));
+    return future;
+  }
+
+  /**
+   * @see #logout(AsyncControllerCallback)
+   */
+  public ControllerFuture<Boolean> logout() {
+    ControllerFuture<Boolean> future = new ControllerFuture<Boolean>();
+    logout(future);
+    return future;
+  }
+
+  /**
+   * Completes with the registration handle once both the handle has been
+   * returned and the registration has succeeded; a synchronous connector can
+   * report success before the handle is returned
+   */
+  private static class RegistrationFuture<H> extends ControllerFuture<H> implements
+          AsyncRegistrationCallback {
+    private H handle;
+    private boolean registered;
+
+    void setHandle(H handle) {
+      synchronized (this) {
+        this.handle = handle;
+        if (!registered || handle == null) {
+          return;
+        }
+      }
+      onSuccess(handle);
+    }
+
+    @Override
+    public void onSuccess() {
+      H registeredHandle;
+      synchronized (this) {
+        registered = true;
+        registeredHandle = handle;
+        if (registeredHandle == null) {
+          return;
+        }
+      }
+      onSuccess(registeredHandle);
+    }
+  }
 }
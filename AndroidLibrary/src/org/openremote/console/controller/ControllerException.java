@@ -0,0 +1,45 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * Exception that carries the {@link ControllerResponseCode} of a failed
+ * request; used as the cause of the {@link java.util.concurrent.ExecutionException}
+ * thrown by {@link ControllerFuture#get()}
+ * 
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ * 
+ */
+public class ControllerException extends Exception {
+  private static final long serialVersionUID = -2791542180447722532L;
+  private final ControllerResponseCode responseCode;
+
+  public ControllerException(ControllerResponseCode responseCode) {
+    super(String.valueOf(responseCode));
+    this.responseCode = responseCode;
+  }
+
+  public ControllerResponseCode getResponseCode() {
+    return responseCode;
+  }
+}
@@ -0,0 +1,338 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openremote.entities.controller.AsyncControllerCallback;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * Result of an asynchronous {@link Controller} request. This is the future
+ * based alternative to passing an {@link AsyncControllerCallback}. The
+ * future is itself a callback, so it can be passed to any method that takes
+ * one.
+ *
+ * Requests can be composed without nesting callbacks:
+ *
+ * <pre>
+ * controller.connect().then(new Continuation&lt;ControllerConnectionStatus, Panel&gt;() {
+ *   public ControllerFuture&lt;Panel&gt; apply(ControllerConnectionStatus status) {
+ *     return controller.getPanel(&quot;panel&quot;);
+ *   }
+ * }).then(...);
+ * </pre>
+ *
+ * Callbacks added with {@link #addCallback(AsyncControllerCallback)} run
+ * on the thread that completes the future, which is the connector's callback
+ * thread, or immediately on the caller's thread if the future is already
+ * done. The first completion wins and later ones are ignored. Cancelling
+ * only detaches the future; the request itself still runs. The futures
+ * chained from a cancelled future with {@link #then(Continuation)},
+ * {@link #all(List)} or {@link #addCallback(AsyncControllerCallback)} are
+ * cancelled too, so waiting on them throws {@link CancellationException}.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ *
+ * @param <T>
+ *          result type
+ */
+public class ControllerFuture<T> implements Future<T>, AsyncControllerCallback<T> {
+  private static final Logger LOG = Logger.getLogger(ControllerFuture.class.getName());
+
+  /**
+   * Starts the next request of a chain from the result of the previous one
+   */
+  public interface Continuation<T, U> {
+    /**
+     * @return future of the next request; null completes the chain with a
+     *         null result
+     */
+    ControllerFuture<U> apply(T result);
+  }
+
+  /**
+   * Callback that chains another future to this one and cancels it when this
+   * future is cancelled
+   */
+  private interface ChainedCallback<T> extends AsyncControllerCallback<T> {
+    void onCancel();
+  }
+
+  private boolean done;
+  private boolean cancelled;
+  private T result;
+  private ControllerResponseCode error;
+  private List<AsyncControllerCallback<? super T>> callbacks;
+
+  /**
+   * Get a future that has already succeeded
+   */
+  public static <T> ControllerFuture<T> success(T result) {
+    ControllerFuture<T> future = new ControllerFuture<T>();
+    future.onSuccess(result);
+    return future;
+  }
+
+  /**
+   * Get a future that has already failed
+   */
+  public static <T> ControllerFuture<T> failure(ControllerResponseCode error) {
+    ControllerFuture<T> future = new ControllerFuture<T>();
+    future.onFailure(error);
+    return future;
+  }
+
+  /**
+   * Get a future that succeeds with the results of all the futures (in the
+   * same order) once they have all succeeded, or fails as soon as any of them
+   * fails
+   */
+  public static <T> ControllerFuture<List<T>> all(List<? extends ControllerFuture<? extends T>> futures) {
+    final ControllerFuture<List<T>> all = new ControllerFuture<List<T>>();
+    final int count = futures.size();
+    final Object[] results = new Object[count];
+    final int[] remaining = { count };
+
+    if (count == 0) {
+      all.onSuccess(new ArrayList<T>());
+      return all;
+    }
+
+    for (int i = 0; i < count; i++) {
+      final int index = i;
+      futures.get(i).addCallback(new ChainedCallback<T>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSuccess(T result) {
+          synchronized (results) {
+            results[index] = result;
+            if (--remaining[0] > 0) {
+              return;
+            }
+          }
+          all.onSuccess((List<T>) Arrays.asList(results));
+        }
+
+        @Override
+        public void onFailure(ControllerResponseCode error) {
+          all.onFailure(error);
+        }
+
+        @Override
+        public void onCancel() {
+          all.cancel(false);
+        }
+      });
+    }
+
+    return all;
+  }
+
+  @Override
+  public void onSuccess(T result) {
+    complete(result, null, false);
+  }
+
+  @Override
+  public void onFailure(ControllerResponseCode error) {
+    complete(null, error != null ? error : ControllerResponseCode.UNKNOWN_ERROR, false);
+  }
+
+  /**
+   * Add a callback to be called when this future completes; called straight
+   * away if the future is already done. Callbacks of a cancelled future are
+   * not called, except that a {@link ControllerFuture} passed as the callback
+   * is cancelled.
+   *
+   * @return this future
+   */
+  public ControllerFuture<T> addCallback(AsyncControllerCallback<? super T> callback) {
+    synchronized (this) {
+      if (!done) {
+        if (callbacks == null) {
+          callbacks = new ArrayList<AsyncControllerCallback<? super T>>(1);
+        }
+        callbacks.add(callback);
+        return this;
+      }
+    }
+
+    deliver(callback);
+    return this;
+  }
+
+  /**
+   * Start the next request when this one succeeds
+   *
+   * @return future of the next request; fails with this future's error if
+   *         this request fails and is cancelled if this future or the
+   *         continuation's future is cancelled
+   */
+  public <U> ControllerFuture<U> then(final Continuation<? super T, U> continuation) {
+    final ControllerFuture<U> next = new ControllerFuture<U>();
+
+    addCallback(new ChainedCallback<T>() {
+      @Override
+      public void onSuccess(T result) {
+        ControllerFuture<U> future;
+        try {
+          future = continuation.apply(result);
+        } catch (RuntimeException e) {
+          LOG.log(Level.WARNING, "Continuation failed", e);
+          next.onFailure(ControllerResponseCode.UNKNOWN_ERROR);
+          return;
+        }
+
+        if (future == null) {
+          next.onSuccess(null);
+        } else {
+          future.addCallback(next);
+        }
+      }
+
+      @Override
+      public void onFailure(ControllerResponseCode error) {
+        next.onFailure(error);
+      }
+
+      @Override
+      public void onCancel() {
+        next.cancel(false);
+      }
+    });
+
+    return next;
+  }
+
+  /**
+   * Get the error the request failed with
+   *
+   * @return error or null if the request hasn't failed
+   */
+  public synchronized ControllerResponseCode getError() {
+    return error;
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return complete(null, null, true);
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return done;
+  }
+
+  /**
+   * @throws ExecutionException
+   *           with a {@link ControllerException} cause if the request failed
+   */
+  @Override
+  public synchronized T get() throws InterruptedException, ExecutionException {
+    while (!done) {
+      wait();
+    }
+    return getResult();
+  }
+
+  /**
+   * @throws ExecutionException
+   *           with a {@link ControllerException} cause if the request failed
+   */
+  @Override
+  public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException,
+          ExecutionException, TimeoutException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!done) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        throw new TimeoutException();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return getResult();
+  }
+
+  private T getResult() throws ExecutionException {
+    if (cancelled) {
+      throw new CancellationException();
+    }
+    if (error != null) {
+      throw new ExecutionException(new ControllerException(error));
+    }
+    return result;
+  }
+
+  private boolean complete(T result, ControllerResponseCode error, boolean cancelled) {
+    List<AsyncControllerCallback<? super T>> toNotify;
+
+    synchronized (this) {
+      if (done) {
+        return false;
+      }
+      done = true;
+      this.result = result;
+      this.error = error;
+      this.cancelled = cancelled;
+      toNotify = callbacks;
+      callbacks = null;
+      notifyAll();
+    }
+
+    if (toNotify != null) {
+      for (AsyncControllerCallback<? super T> callback : toNotify) {
+        deliver(callback);
+      }
+    }
+    return true;
+  }
+
+  private void deliver(AsyncControllerCallback<? super T> callback) {
+    if (cancelled) {
+      if (callback instanceof ControllerFuture) {
+        ((ControllerFuture<?>) callback).cancel(false);
+      } else if (callback instanceof ChainedCallback) {
+        ((ChainedCallback<?>) callback).onCancel();
+      }
+      return;
+    }
+    if (error != null) {
+      callback.onFailure(error);
+    } else {
+      callback.onSuccess(result);
+    }
+  }
+}
@@ -1,20 +1,31 @@
 package org.openremote.console.controller;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.openremote.entities.controller.Device;
 import org.openremote.entities.controller.Sensor;
 
 public class DeviceRegistrationHandle extends RegistrationHandle {
   private Device device;
-  private List<Integer> sensorIds;
+  private final SensorDispatchTable<Sensor> dispatchTable;
 
   DeviceRegistrationHandle(Device device, AsyncRegistrationCallback callback) {
     super(callback);
     this.device = device;
+    this.dispatchTable = buildDispatchTable(device);
+  }
+
+  private static SensorDispatchTable<Sensor> buildDispatchTable(Device device) {
+    SensorDispatchTable.Builder<Sensor> builder = new SensorDispatchTable.Builder<Sensor>();
+
+    if (device.getSensors() != null) {
+      for (Sensor sensor : device.getSensors()) {
+        builder.add(sensor.getId(), sensor);
+      }
+    }
+
+    return builder.build();
   }
 
   public Device getDevice() {
@@ -23,27 +34,29 @@ public class DeviceRegistrationHandle extends RegistrationHandle {
 
   @Override
   public void onSensorsChanged(Map<Integer, String> result) {
-    for (Entry<Integer, String> entry : result.entrySet()) {
-      if (device.getSensors() != null) {
-        for (Sensor sensor : device.getSensors()) {
-          if (sensor.getId() == entry.getKey()) {
-            sensor.setValue(entry.getValue());
-          }
-        }
+    onSensorsChanged(SensorValueMap.of(result));
+  }
+
+  @Override
+  public void onSensorsChanged(SensorValueMap result) {
+    for (int slot = result.nextSlot(-1); slot >= 0; slot = result.nextSlot(slot)) {
+      int sensorId = result.keyAt(slot);
+      int count = dispatchTable.getSubscriberCount(sensorId);
+      for (int i = 0; i < count; i++) {
+        dispatchTable.getSubscriber(sensorId, i).setValue(result.valueAt(slot));
       }
     }
+
+    publish(result);
   }
 
   @Override
   List<Integer> getSensorIds() {
-    if (sensorIds == null) {
-      sensorIds = new ArrayList<Integer>();
-      if (device.getSensors() != null) {
-        for (Sensor sensor : device.getSensors()) {
-          sensorIds.add(sensor.getId());
-        }
-      }
-    }
-    return sensorIds;
+    return dispatchTable.getSensorIdList();
+  }
+
+  @Override
+  SensorIdSet getSensorIdSet() {
+    return dispatchTable.getSensorIds();
   }
 }
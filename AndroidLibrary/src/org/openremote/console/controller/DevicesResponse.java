@@ -0,0 +1,81 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openremote.entities.controller.ControllerResponseCode;
+import org.openremote.entities.controller.Device;
+
+/**
+ * Result of requesting several devices at once; each device is fetched
+ * individually so the devices that were retrieved are returned alongside the
+ * error of each device that couldn't be.
+ * 
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class DevicesResponse {
+  private final Map<String, Device> devices = new LinkedHashMap<String, Device>();
+  private final Map<String, ControllerResponseCode> errors = new LinkedHashMap<String, ControllerResponseCode>();
+
+  public DevicesResponse() {
+  }
+
+  public synchronized void addDevice(String deviceName, Device device) {
+    devices.put(deviceName, device);
+  }
+
+  public synchronized void addError(String deviceName, ControllerResponseCode error) {
+    errors.put(deviceName, error);
+  }
+
+  /**
+   * Get the devices that were retrieved in the order they were requested
+   */
+  public synchronized List<Device> getDevices() {
+    return new ArrayList<Device>(devices.values());
+  }
+
+  /**
+   * Get the named device
+   * 
+   * @return device or null if it wasn't retrieved
+   */
+  public synchronized Device getDevice(String deviceName) {
+    return devices.get(deviceName);
+  }
+
+  /**
+   * Get the error of each device that couldn't be retrieved keyed by device
+   * name
+   */
+  public synchronized Map<String, ControllerResponseCode> getErrors() {
+    return Collections.unmodifiableMap(new LinkedHashMap<String, ControllerResponseCode>(errors));
+  }
+
+  public synchronized boolean hasErrors() {
+    return !errors.isEmpty();
+  }
+}
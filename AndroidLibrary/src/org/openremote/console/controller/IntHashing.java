@@ -0,0 +1,66 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+/**
+ * Hashing helpers shared by the primitive int keyed collections
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+final class IntHashing {
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  private IntHashing() {
+  }
+
+  /**
+   * Spread the key bits so that sequential sensor IDs don't cluster
+   */
+  static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Power of two capacity that holds the expected size below the load factor
+   */
+  static int capacityFor(int expectedSize) {
+    int capacity = 4;
+    while (capacity < MAX_CAPACITY && thresholdFor(capacity) < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Number of entries allowed before resizing (load factor of 0.75)
+   */
+  static int thresholdFor(int capacity) {
+    return capacity - (capacity >>> 2);
+  }
+
+  /**
+   * Indicates if slot lies cyclically within (from, to]
+   */
+  static boolean isBetween(int from, int slot, int to) {
+    return from <= to ? from < slot && slot <= to : from < slot || slot <= to;
+  }
+}
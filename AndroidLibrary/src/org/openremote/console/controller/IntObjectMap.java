@@ -0,0 +1,273 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Open addressing (linear probing) hash map with primitive int keys so that
+ * sensor IDs don't need to be boxed. Clearing the map keeps the allocated
+ * capacity so an instance can be reused across poll cycles.
+ *
+ * Entries are iterated using slot cursors without allocating an iterator:
+ *
+ * <pre>
+ * for (int slot = map.nextSlot(-1); slot &gt;= 0; slot = map.nextSlot(slot)) {
+ *   int key = map.keyAt(slot);
+ *   V value = map.valueAt(slot);
+ * }
+ * </pre>
+ *
+ * The map must not be modified while iterating. Instances are not thread
+ * safe.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ *
+ * @param <V>
+ *          value type
+ */
+public class IntObjectMap<V> {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private int[] keys;
+  private Object[] values;
+  private boolean[] used;
+  private int mask;
+  private int size;
+  private int resizeThreshold;
+
+  public IntObjectMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param expectedSize
+   *          number of entries the map should hold without resizing
+   */
+  public IntObjectMap(int expectedSize) {
+    allocate(IntHashing.capacityFor(expectedSize));
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(int key) {
+    return findSlot(key) >= 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(int key) {
+    int slot = findSlot(key);
+    return slot >= 0 ? (V) values[slot] : null;
+  }
+
+  /**
+   * Put the value for the key
+   *
+   * @return previous value or null
+   */
+  @SuppressWarnings("unchecked")
+  public V put(int key, V value) {
+    int slot = IntHashing.hash(key) & mask;
+    while (used[slot]) {
+      if (keys[slot] == key) {
+        V previous = (V) values[slot];
+        values[slot] = value;
+        return previous;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    keys[slot] = key;
+    values[slot] = value;
+    used[slot] = true;
+    if (++size > resizeThreshold) {
+      rehash(keys.length << 1);
+    }
+    return null;
+  }
+
+  /**
+   * Remove the entry for the key
+   *
+   * @return removed value or null
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(int key) {
+    int slot = findSlot(key);
+    if (slot < 0) {
+      return null;
+    }
+
+    V previous = (V) values[slot];
+    removeSlot(slot);
+    return previous;
+  }
+
+  /**
+   * Removes all entries; the allocated capacity is kept for reuse
+   */
+  public void clear() {
+    if (size == 0) {
+      return;
+    }
+    for (int i = 0; i < used.length; i++) {
+      used[i] = false;
+      values[i] = null;
+    }
+    size = 0;
+  }
+
+  /**
+   * Get the next occupied slot after the specified slot
+   *
+   * @param slot
+   *          current slot or -1 to start iterating
+   * @return next occupied slot or -1 if there are no more entries
+   */
+  public int nextSlot(int slot) {
+    for (int i = slot + 1; i < used.length; i++) {
+      if (used[i]) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public int keyAt(int slot) {
+    return keys[slot];
+  }
+
+  @SuppressWarnings("unchecked")
+  public V valueAt(int slot) {
+    return (V) values[slot];
+  }
+
+  /**
+   * Copy all entries into the specified map
+   */
+  public void putAll(IntObjectMap<? extends V> map) {
+    for (int slot = map.nextSlot(-1); slot >= 0; slot = map.nextSlot(slot)) {
+      put(map.keyAt(slot), map.valueAt(slot));
+    }
+  }
+
+  /**
+   * Copy all entries from a boxed map
+   */
+  public void putAll(Map<Integer, ? extends V> map) {
+    for (Map.Entry<Integer, ? extends V> entry : map.entrySet()) {
+      if (entry.getKey() != null) {
+        put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Get a boxed copy of this map
+   */
+  public Map<Integer, V> toMap() {
+    Map<Integer, V> map = new HashMap<Integer, V>(size * 2);
+    for (int slot = nextSlot(-1); slot >= 0; slot = nextSlot(slot)) {
+      map.put(keys[slot], valueAt(slot));
+    }
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int slot = nextSlot(-1); slot >= 0; slot = nextSlot(slot)) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(keys[slot]).append('=').append(values[slot]);
+    }
+    return sb.append('}').toString();
+  }
+
+  private int findSlot(int key) {
+    int slot = IntHashing.hash(key) & mask;
+    while (used[slot]) {
+      if (keys[slot] == key) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void removeSlot(int slot) {
+    // Backward shift deletion keeps probe chains intact without tombstones
+    int gap = slot;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      if (!used[next]) {
+        break;
+      }
+      int ideal = IntHashing.hash(keys[next]) & mask;
+      if (IntHashing.isBetween(gap, ideal, next)) {
+        continue;
+      }
+      keys[gap] = keys[next];
+      values[gap] = values[next];
+      gap = next;
+    }
+
+    used[gap] = false;
+    values[gap] = null;
+    size--;
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new Object[capacity];
+    used = new boolean[capacity];
+    mask = capacity - 1;
+    resizeThreshold = IntHashing.thresholdFor(capacity);
+  }
+
+  private void rehash(int capacity) {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    boolean[] oldUsed = used;
+    allocate(capacity);
+
+    for (int i = 0; i < oldUsed.length; i++) {
+      if (oldUsed[i]) {
+        int slot = IntHashing.hash(oldKeys[i]) & mask;
+        while (used[slot]) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+        used[slot] = true;
+      }
+    }
+  }
+}
@@ -1,9 +1,7 @@
 package org.openremote.console.controller;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.openremote.entities.panel.Panel;
 import org.openremote.entities.panel.SensorLink;
@@ -12,55 +10,66 @@ import org.openremote.entities.panel.Widget;
 
 public class PanelRegistrationHandle extends RegistrationHandle {
   private Panel panel;
-  private List<Integer> sensorIds;
-  private List<SensoryWidget> monitoredWidgets;
+  private final SensorDispatchTable<SensoryWidget> dispatchTable;
 
   PanelRegistrationHandle(Panel panel, AsyncRegistrationCallback callback) {
     super(callback);
     this.panel = panel;
+    this.dispatchTable = buildDispatchTable(panel);
   }
 
-  public Panel getPanel() {
-    return panel;
-  }
-
-  @Override
-  public List<Integer> getSensorIds() {
-    if (sensorIds == null) {
-      // Get sensor and widget info
-      List<Widget> widgets = panel.getWidgets();
-      monitoredWidgets = new ArrayList<SensoryWidget>();
-      sensorIds = new ArrayList<Integer>();
+  private static SensorDispatchTable<SensoryWidget> buildDispatchTable(Panel panel) {
+    SensorDispatchTable.Builder<SensoryWidget> builder = new SensorDispatchTable.Builder<SensoryWidget>();
+    List<Widget> widgets = panel.getWidgets();
 
-      // Get sensory widgets first
-      if (widgets != null) {
-        for (Widget widget : widgets) {
-          if (widget instanceof SensoryWidget) {
-            monitoredWidgets.add((SensoryWidget) widget);
-            for (SensorLink link : ((SensoryWidget) widget).getSensorLinks()) {
-              if (!sensorIds.contains(link.getRef())) {
-                sensorIds.add(link.getRef());
-              }
+    if (widgets != null) {
+      for (Widget widget : widgets) {
+        if (widget instanceof SensoryWidget) {
+          SensoryWidget sensoryWidget = (SensoryWidget) widget;
+          List<SensorLink> links = sensoryWidget.getSensorLinks();
+          if (links != null) {
+            for (SensorLink link : links) {
+              builder.add(link.getRef(), sensoryWidget);
             }
           }
         }
       }
     }
 
-    return sensorIds;
+    return builder.build();
+  }
+
+  public Panel getPanel() {
+    return panel;
+  }
+
+  @Override
+  public List<Integer> getSensorIds() {
+    return dispatchTable.getSensorIdList();
+  }
+
+  @Override
+  SensorIdSet getSensorIdSet() {
+    return dispatchTable.getSensorIds();
   }
 
   @Override
   public void onSensorsChanged(Map<Integer, String> result) {
-    // Call on sensor changed for each changed sensor
-    for (Entry<Integer, String> entry : result.entrySet()) {
-      for (SensoryWidget widget : monitoredWidgets) {
-        for (SensorLink link : widget.getSensorLinks()) {
-          if (entry.getKey().equals(link.getRef())) {
-            widget.onSensorValueChanged(link.getRef(), entry.getValue());
-          }
-        }
+    onSensorsChanged(SensorValueMap.of(result));
+  }
+
+  @Override
+  public void onSensorsChanged(SensorValueMap result) {
+    // Call on sensor changed for each widget linked to each changed sensor
+    for (int slot = result.nextSlot(-1); slot >= 0; slot = result.nextSlot(slot)) {
+      int sensorId = result.keyAt(slot);
+      int count = dispatchTable.getSubscriberCount(sensorId);
+      for (int i = 0; i < count; i++) {
+        dispatchTable.getSubscriber(sensorId, i).onSensorValueChanged(sensorId,
+                result.valueAt(slot));
       }
     }
+
+    publish(result);
   }
 }
@@ -0,0 +1,116 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff policy used when re-arming failed sensor monitoring
+ * requests. The delay before retry n (starting at 0) is
+ * <code>initialDelay * multiplier^n</code> capped at <code>maxDelay</code>;
+ * a random jitter of up to <code>jitter</code> (fraction of the delay) is
+ * then subtracted so that many consoles don't retry in lock step when a
+ * controller restarts.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ReconnectPolicy {
+  public static final long DEFAULT_INITIAL_DELAY = 1000;
+  public static final long DEFAULT_MAX_DELAY = 60000;
+  public static final double DEFAULT_MULTIPLIER = 2.0;
+  public static final double DEFAULT_JITTER = 0.5;
+
+  private final long initialDelay;
+  private final long maxDelay;
+  private final double multiplier;
+  private final double jitter;
+  private final Random random = new Random();
+
+  /**
+   * Creates a policy using the default values
+   */
+  public ReconnectPolicy() {
+    this(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MULTIPLIER, DEFAULT_JITTER);
+  }
+
+  /**
+   * @param initialDelay
+   *          delay in milliseconds before the first retry
+   * @param maxDelay
+   *          maximum delay in milliseconds between retries
+   * @param multiplier
+   *          factor the delay grows by after each failed attempt (>= 1)
+   * @param jitter
+   *          fraction of the delay (0 - 1) that is randomised
+   */
+  public ReconnectPolicy(long initialDelay, long maxDelay, double multiplier, double jitter) {
+    if (initialDelay < 0 || maxDelay < initialDelay) {
+      throw new IllegalArgumentException("Delays must satisfy 0 <= initialDelay <= maxDelay");
+    }
+    if (multiplier < 1) {
+      throw new IllegalArgumentException("Multiplier must be >= 1");
+    }
+    if (jitter < 0 || jitter > 1) {
+      throw new IllegalArgumentException("Jitter must be between 0 and 1");
+    }
+    this.initialDelay = initialDelay;
+    this.maxDelay = maxDelay;
+    this.multiplier = multiplier;
+    this.jitter = jitter;
+  }
+
+  public long getInitialDelay() {
+    return initialDelay;
+  }
+
+  public long getMaxDelay() {
+    return maxDelay;
+  }
+
+  public double getMultiplier() {
+    return multiplier;
+  }
+
+  public double getJitter() {
+    return jitter;
+  }
+
+  /**
+   * Get the delay in milliseconds to wait before the specified retry attempt
+   *
+   * @param attempt
+   *          number of consecutive failed attempts so far (0 based)
+   * @return delay in milliseconds
+   */
+  public long getDelay(int attempt) {
+    double delay = initialDelay * Math.pow(multiplier, attempt);
+    if (delay > maxDelay || Double.isInfinite(delay)) {
+      delay = maxDelay;
+    }
+
+    double randomFactor;
+    synchronized (random) {
+      randomFactor = random.nextDouble();
+    }
+
+    return (long) (delay - (delay * jitter * randomFactor));
+  }
+}
@@ -2,12 +2,12 @@ package org.openremote.console.controller;
 
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 abstract class RegistrationHandle {
   private AsyncRegistrationCallback callback;
   private boolean registered;
-  String uuid = UUID.randomUUID().toString().replace("-", "");
+  private SensorPublisher sensorPublisher;
+  private SensorMonitor sensorMonitor;
 
   RegistrationHandle(AsyncRegistrationCallback callback) {
     this.callback = callback;
@@ -25,7 +25,61 @@ abstract class RegistrationHandle {
     this.registered = registered;
   }
 
+  /**
+   * Set the monitor whose last known values seed this registration's
+   * publisher
+   */
+  synchronized void setSensorMonitor(SensorMonitor sensorMonitor) {
+    this.sensorMonitor = sensorMonitor;
+  }
+
+  /**
+   * Get the publisher of this registration's sensor updates; subscribers
+   * receive updates on demand (conflated per sensor when they fall behind)
+   * and are completed when the registration is removed. The publisher is
+   * created on first use with the last known values of the sensors.
+   */
+  public synchronized SensorPublisher getSensorPublisher() {
+    if (sensorPublisher == null) {
+      sensorPublisher = new SensorPublisher();
+      if (sensorMonitor != null) {
+        SensorValueMap lastValues = new SensorValueMap();
+        sensorMonitor.getLastSensorValues(getSensorIdSet(), lastValues);
+        sensorPublisher.seed(lastValues);
+      }
+    }
+    return sensorPublisher;
+  }
+
+  /**
+   * Pass the changed values to the publisher if anything has subscribed to
+   * this registration's updates
+   */
+  void publish(SensorValueMap sensorValues) {
+    SensorPublisher publisher;
+    synchronized (this) {
+      publisher = sensorPublisher;
+    }
+    if (publisher != null) {
+      publisher.publish(sensorValues);
+    }
+  }
+
+  void completePublisher() {
+    SensorPublisher publisher;
+    synchronized (this) {
+      publisher = sensorPublisher;
+    }
+    if (publisher != null) {
+      publisher.complete();
+    }
+  }
+
   abstract List<Integer> getSensorIds();
 
+  abstract SensorIdSet getSensorIdSet();
+
   abstract void onSensorsChanged(Map<Integer, String> sensorValues);
+
+  abstract void onSensorsChanged(SensorValueMap sensorValues);
 }
@@ -0,0 +1,106 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable sensor ID to subscriber index built once when a registration is
+ * created; looking up the subscribers of a changed sensor is O(1) so
+ * dispatching a poll result costs O(changes + subscribers) rather than
+ * scanning every widget/sensor.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ *
+ * @param <T>
+ *          subscriber type
+ */
+final class SensorDispatchTable<T> {
+  private final IntObjectMap<Object[]> subscribers;
+  private final SensorIdSet sensorIds;
+  private final List<Integer> sensorIdList;
+
+  private SensorDispatchTable(IntObjectMap<Object[]> subscribers, SensorIdSet sensorIds,
+          List<Integer> sensorIdList) {
+    this.subscribers = subscribers;
+    this.sensorIds = sensorIds;
+    this.sensorIdList = sensorIdList;
+  }
+
+  /**
+   * Get the distinct sensor IDs in the order they were first added
+   */
+  List<Integer> getSensorIdList() {
+    return sensorIdList;
+  }
+
+  /**
+   * Get the distinct sensor IDs; callers must not modify the returned set
+   */
+  SensorIdSet getSensorIds() {
+    return sensorIds;
+  }
+
+  int getSubscriberCount(int sensorId) {
+    Object[] entries = subscribers.get(sensorId);
+    return entries != null ? entries.length : 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  T getSubscriber(int sensorId, int index) {
+    return (T) subscribers.get(sensorId)[index];
+  }
+
+  static class Builder<T> {
+    private final IntObjectMap<List<T>> subscribers = new IntObjectMap<List<T>>();
+    private final List<Integer> sensorIdList = new ArrayList<Integer>();
+
+    /**
+     * Add a subscriber for the sensor; a subscriber added more than once for
+     * the same sensor will be notified once per addition
+     */
+    Builder<T> add(int sensorId, T subscriber) {
+      List<T> entries = subscribers.get(sensorId);
+      if (entries == null) {
+        entries = new ArrayList<T>(1);
+        subscribers.put(sensorId, entries);
+        sensorIdList.add(sensorId);
+      }
+      entries.add(subscriber);
+      return this;
+    }
+
+    SensorDispatchTable<T> build() {
+      IntObjectMap<Object[]> table = new IntObjectMap<Object[]>(subscribers.size());
+      SensorIdSet sensorIds = new SensorIdSet(subscribers.size());
+
+      for (int slot = subscribers.nextSlot(-1); slot >= 0; slot = subscribers.nextSlot(slot)) {
+        table.put(subscribers.keyAt(slot), subscribers.valueAt(slot).toArray());
+        sensorIds.add(subscribers.keyAt(slot));
+      }
+
+      return new SensorDispatchTable<T>(table, sensorIds, Collections
+              .unmodifiableList(new ArrayList<Integer>(sensorIdList)));
+    }
+  }
+}
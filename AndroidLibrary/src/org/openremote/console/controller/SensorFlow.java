@@ -0,0 +1,74 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+/**
+ * Interfaces for demand driven streams of sensor updates. They mirror
+ * <code>java.util.concurrent.Flow</code> (Java 9), which isn't available on
+ * the platforms this library targets, so on newer runtimes an adapter
+ * is a one to one mapping of the methods.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public final class SensorFlow {
+  private SensorFlow() {
+  }
+
+  /**
+   * Producer of items that are delivered to subscribers on demand
+   */
+  public interface Publisher<T> {
+    /**
+     * Add the subscriber; {@link Subscriber#onSubscribe(Subscription)} is
+     * called before any other method
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+  }
+
+  /**
+   * Receiver of items; methods are called one at a time for a subscription
+   * and never on the thread that produced the item
+   */
+  public interface Subscriber<T> {
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T item);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+  }
+
+  /**
+   * Link between a publisher and a subscriber used to signal demand
+   */
+  public interface Subscription {
+    /**
+     * Add n (> 0) items to the demand; {@link Long#MAX_VALUE} is unbounded
+     */
+    void request(long n);
+
+    /**
+     * Stop receiving items; items that haven't been delivered are discarded
+     */
+    void cancel();
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set of sensor IDs using open addressing (linear probing) over a primitive
+ * int array so that sensor IDs don't need to be boxed. Clearing the set keeps
+ * the allocated capacity so an instance can be reused across poll cycles.
+ *
+ * Iteration uses the same slot cursors as {@link IntObjectMap}; the set must
+ * not be modified while iterating. Instances are not thread safe.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorIdSet {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private int[] ids;
+  private boolean[] used;
+  private int mask;
+  private int size;
+  private int resizeThreshold;
+
+  public SensorIdSet() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param expectedSize
+   *          number of IDs the set should hold without resizing
+   */
+  public SensorIdSet(int expectedSize) {
+    allocate(IntHashing.capacityFor(expectedSize));
+  }
+
+  /**
+   * Create a sensor ID set from a boxed list; duplicates and null entries are
+   * ignored
+   */
+  public static SensorIdSet of(List<Integer> sensorIds) {
+    SensorIdSet set = new SensorIdSet(sensorIds != null ? sensorIds.size() : 0);
+    if (sensorIds != null) {
+      for (Integer sensorId : sensorIds) {
+        if (sensorId != null) {
+          set.add(sensorId);
+        }
+      }
+    }
+    return set;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains(int id) {
+    return findSlot(id) >= 0;
+  }
+
+  /**
+   * Add the ID to the set
+   *
+   * @return true if the ID wasn't already in the set
+   */
+  public boolean add(int id) {
+    int slot = IntHashing.hash(id) & mask;
+    while (used[slot]) {
+      if (ids[slot] == id) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    ids[slot] = id;
+    used[slot] = true;
+    if (++size > resizeThreshold) {
+      rehash(ids.length << 1);
+    }
+    return true;
+  }
+
+  public void addAll(SensorIdSet set) {
+    for (int slot = set.nextSlot(-1); slot >= 0; slot = set.nextSlot(slot)) {
+      add(set.idAt(slot));
+    }
+  }
+
+  /**
+   * Remove the ID from the set
+   *
+   * @return true if the ID was in the set
+   */
+  public boolean remove(int id) {
+    int slot = findSlot(id);
+    if (slot < 0) {
+      return false;
+    }
+
+    // Backward shift deletion keeps probe chains intact without tombstones
+    int gap = slot;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      if (!used[next]) {
+        break;
+      }
+      int ideal = IntHashing.hash(ids[next]) & mask;
+      if (IntHashing.isBetween(gap, ideal, next)) {
+        continue;
+      }
+      ids[gap] = ids[next];
+      gap = next;
+    }
+
+    used[gap] = false;
+    size--;
+    return true;
+  }
+
+  /**
+   * Removes all IDs; the allocated capacity is kept for reuse
+   */
+  public void clear() {
+    if (size == 0) {
+      return;
+    }
+    for (int i = 0; i < used.length; i++) {
+      used[i] = false;
+    }
+    size = 0;
+  }
+
+  /**
+   * Get the next occupied slot after the specified slot
+   *
+   * @param slot
+   *          current slot or -1 to start iterating
+   * @return next occupied slot or -1 if there are no more IDs
+   */
+  public int nextSlot(int slot) {
+    for (int i = slot + 1; i < used.length; i++) {
+      if (used[i]) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public int idAt(int slot) {
+    return ids[slot];
+  }
+
+  public int[] toArray() {
+    int[] result = new int[size];
+    int i = 0;
+    for (int slot = nextSlot(-1); slot >= 0; slot = nextSlot(slot)) {
+      result[i++] = ids[slot];
+    }
+    return result;
+  }
+
+  /**
+   * Get a boxed copy of this set
+   */
+  public List<Integer> toList() {
+    List<Integer> list = new ArrayList<Integer>(size);
+    for (int slot = nextSlot(-1); slot >= 0; slot = nextSlot(slot)) {
+      list.add(ids[slot]);
+    }
+    return list;
+  }
+
+  /**
+   * Get the IDs as a string using the specified separator (e.g. for building
+   * request URLs)
+   */
+  public String join(char separator) {
+    StringBuilder sb = new StringBuilder(size * 4);
+    for (int slot = nextSlot(-1); slot >= 0; slot = nextSlot(slot)) {
+      if (sb.length() > 0) {
+        sb.append(separator);
+      }
+      sb.append(ids[slot]);
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "[" + join(',') + "]";
+  }
+
+  private int findSlot(int id) {
+    int slot = IntHashing.hash(id) & mask;
+    while (used[slot]) {
+      if (ids[slot] == id) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void allocate(int capacity) {
+    ids = new int[capacity];
+    used = new boolean[capacity];
+    mask = capacity - 1;
+    resizeThreshold = IntHashing.thresholdFor(capacity);
+  }
+
+  private void rehash(int capacity) {
+    int[] oldIds = ids;
+    boolean[] oldUsed = used;
+    allocate(capacity);
+
+    for (int i = 0; i < oldUsed.length; i++) {
+      if (oldUsed[i]) {
+        int slot = IntHashing.hash(oldIds[i]) & mask;
+        while (used[slot]) {
+          slot = (slot + 1) & mask;
+        }
+        ids[slot] = oldIds[i];
+        used[slot] = true;
+      }
+    }
+  }
+}
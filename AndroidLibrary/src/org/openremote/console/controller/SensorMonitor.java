@@ -0,0 +1,504 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openremote.console.controller.connector.ControllerConnector;
+import org.openremote.entities.controller.AsyncControllerCallback;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * Multiplexes the sensor monitoring of all registrations of a
+ * {@link Controller} onto a single long-poll; the sensor IDs of every
+ * subscribed {@link RegistrationHandle} are merged into one polling request
+ * and the results are fanned back out to the handles that are interested in
+ * each sensor.
+ *
+ * When subscribing or unsubscribing a handle changes the monitored sensor set
+ * the in flight long-poll is aborted and reissued with the new set. Every
+ * (re)start of the poll loop begins a new poll generation; results and
+ * retries belonging to an older generation are discarded so only one poll
+ * loop is ever active. Each generation polls with its own uuid so an aborted
+ * poll that the controller is still holding can't consume the changes meant
+ * for the new generation.
+ *
+ * The last known value of every monitored sensor is kept in a snapshot and,
+ * unless always deliver is enabled, handles are only notified of values that
+ * differ from the snapshot.
+ *
+ * Failed polls are re-armed on a scheduler using the {@link ReconnectPolicy}
+ * rather than being retried immediately; the backoff is reset as soon as a
+ * poll succeeds. The scheduler is shared by all monitors as a retry only
+ * reissues an asynchronous poll; a pending retry is cancelled when the last
+ * handle is unsubscribed or the controller is disconnected.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+class SensorMonitor {
+  private static final ScheduledExecutorService RETRY_SCHEDULER = Executors
+          .newSingleThreadScheduledExecutor(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "SensorMonitor-retry-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  private final Controller controller;
+  private final ControllerConnector connector;
+  private final String uuid = UUID.randomUUID().toString().replace("-", "");
+  private final IntObjectMap<List<RegistrationHandle>> sensorIndex = new IntObjectMap<List<RegistrationHandle>>();
+  private final List<RegistrationHandle> handles = new ArrayList<RegistrationHandle>();
+  // Re-used across the poll cycles of a poll generation
+  private SensorIdSet pollSensorIds = new SensorIdSet();
+  private SensorValueMap pollSensorValues = new SensorValueMap();
+  private SensorValueMap pollChangedValues = new SensorValueMap();
+  private final SensorValueMap lastSensorValues = new SensorValueMap();
+  private boolean alwaysDeliver;
+  private boolean polling;
+  private int generation;
+  private String pollUuid;
+  private ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+  private ScheduledFuture<?> pendingRetry;
+  private int failedAttempts;
+  private long retryCount;
+  private long suppressedRetryCount;
+
+  SensorMonitor(Controller controller, ControllerConnector connector) {
+    this.controller = controller;
+    this.connector = connector;
+  }
+
+  synchronized void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+    this.reconnectPolicy = reconnectPolicy;
+  }
+
+  synchronized ReconnectPolicy getReconnectPolicy() {
+    return reconnectPolicy;
+  }
+
+  synchronized void setAlwaysDeliver(boolean alwaysDeliver) {
+    this.alwaysDeliver = alwaysDeliver;
+  }
+
+  synchronized boolean isAlwaysDeliver() {
+    return alwaysDeliver;
+  }
+
+  /**
+   * Get the last known value of the sensor
+   *
+   * @return last value or null if the sensor value isn't known
+   */
+  synchronized String getLastSensorValue(int sensorId) {
+    return lastSensorValues.get(sensorId);
+  }
+
+  /**
+   * Copies the last known values of the sensors into sensorValues; sensors
+   * whose value isn't known are skipped
+   */
+  synchronized void getLastSensorValues(SensorIdSet sensorIds, SensorValueMap sensorValues) {
+    for (int slot = sensorIds.nextSlot(-1); slot >= 0; slot = sensorIds.nextSlot(slot)) {
+      int sensorId = sensorIds.idAt(slot);
+      if (lastSensorValues.containsKey(sensorId)) {
+        sensorValues.put(sensorId, lastSensorValues.get(sensorId));
+      }
+    }
+  }
+
+  /**
+   * Records the sensor values in the snapshot and copies the values that
+   * differ from the previous snapshot (or all values when always deliver is
+   * enabled) into changedValues
+   */
+  synchronized void updateSnapshot(SensorValueMap sensorValues, SensorValueMap changedValues) {
+    changedValues.clear();
+
+    for (int slot = sensorValues.nextSlot(-1); slot >= 0; slot = sensorValues.nextSlot(slot)) {
+      int sensorId = sensorValues.keyAt(slot);
+      String value = sensorValues.valueAt(slot);
+      boolean known = lastSensorValues.containsKey(sensorId);
+      String previous = lastSensorValues.put(sensorId, value);
+
+      if (alwaysDeliver || !known || (previous == null ? value != null : !previous.equals(value))) {
+        changedValues.put(sensorId, value);
+      }
+    }
+  }
+
+  /**
+   * Adds the handle's sensors to the monitored set; if this adds sensors that
+   * weren't already monitored the in flight poll is reissued
+   */
+  void subscribe(RegistrationHandle handle) {
+    int pollGeneration;
+    String staleUuid;
+
+    synchronized (this) {
+      if (handles.contains(handle)) {
+        return;
+      }
+
+      handles.add(handle);
+      SensorIdSet sensorIds = handle.getSensorIdSet();
+      boolean sensorsAdded = false;
+
+      for (int slot = sensorIds.nextSlot(-1); slot >= 0; slot = sensorIds.nextSlot(slot)) {
+        int sensorId = sensorIds.idAt(slot);
+        List<RegistrationHandle> subscribers = sensorIndex.get(sensorId);
+        if (subscribers == null) {
+          subscribers = new ArrayList<RegistrationHandle>(1);
+          sensorIndex.put(sensorId, subscribers);
+          sensorsAdded = true;
+        }
+        subscribers.add(handle);
+      }
+
+      if (!sensorsAdded || !isReissueNeeded()) {
+        return;
+      }
+      staleUuid = nextGeneration();
+      pollGeneration = generation;
+    }
+
+    startGeneration(pollGeneration, staleUuid);
+  }
+
+  /**
+   * Removes the handle's sensors from the monitored set; sensors still used by
+   * other handles remain monitored. If this removes sensors from the
+   * monitored set the in flight poll is reissued.
+   */
+  void unsubscribe(RegistrationHandle handle) {
+    int pollGeneration;
+    String staleUuid;
+
+    synchronized (this) {
+      if (!handles.remove(handle)) {
+        return;
+      }
+
+      SensorIdSet sensorIds = handle.getSensorIdSet();
+      boolean sensorsRemoved = false;
+
+      for (int slot = sensorIds.nextSlot(-1); slot >= 0; slot = sensorIds.nextSlot(slot)) {
+        int sensorId = sensorIds.idAt(slot);
+        List<RegistrationHandle> subscribers = sensorIndex.get(sensorId);
+        if (subscribers != null) {
+          subscribers.remove(handle);
+          if (subscribers.isEmpty()) {
+            sensorIndex.remove(sensorId);
+            lastSensorValues.remove(sensorId);
+            sensorsRemoved = true;
+          }
+        }
+      }
+
+      if (sensorIndex.isEmpty()) {
+        // Nothing left to monitor so don't leave a retry armed
+        cancelRetry();
+      }
+      if (!sensorsRemoved || !isReissueNeeded()) {
+        return;
+      }
+      staleUuid = nextGeneration();
+      pollGeneration = generation;
+    }
+
+    startGeneration(pollGeneration, staleUuid);
+  }
+
+  /**
+   * Indicates whether a long-poll is in flight that has to be reissued for a
+   * change of the sensor set; a pending retry picks up the new set by itself
+   */
+  private boolean isReissueNeeded() {
+    return polling && pendingRetry == null;
+  }
+
+  /**
+   * Starts a new poll generation with its own uuid and poll buffers (the
+   * aborted request may still be writing to the old ones)
+   *
+   * @return the uuid of the previous generation
+   */
+  private String nextGeneration() {
+    String staleUuid = pollUuid;
+    generation++;
+    pollUuid = uuid + "-" + generation;
+    pollSensorIds = new SensorIdSet();
+    pollSensorValues = new SensorValueMap();
+    pollChangedValues = new SensorValueMap();
+    return staleUuid;
+  }
+
+  /**
+   * Aborts the previous generation's long-poll (if still in flight) and polls
+   * with the current sensor set
+   */
+  private void startGeneration(int pollGeneration, String staleUuid) {
+    if (staleUuid != null) {
+      connector.cancelMonitorSensors(staleUuid);
+    }
+    poll(pollGeneration);
+  }
+
+  /**
+   * Starts the poll loop if it isn't already running and there is something
+   * to monitor
+   */
+  void start() {
+    int pollGeneration;
+    String staleUuid;
+
+    synchronized (this) {
+      if (pendingRetry != null) {
+        // A retry is already scheduled so don't hit the controller early
+        suppressedRetryCount++;
+        return;
+      }
+      if (polling || sensorIndex.isEmpty() || !controller.isConnected()) {
+        return;
+      }
+      polling = true;
+      staleUuid = nextGeneration();
+      pollGeneration = generation;
+    }
+
+    startGeneration(pollGeneration, staleUuid);
+  }
+
+  /**
+   * Clears the backoff state and restarts the poll loop straight away; used
+   * when the connection to the controller has been re-established as a poll
+   * of the old connection may have been cancelled without completing
+   */
+  void resetBackoff() {
+    int pollGeneration;
+    String staleUuid;
+
+    synchronized (this) {
+      failedAttempts = 0;
+      cancelRetry();
+      if (sensorIndex.isEmpty() || !controller.isConnected()) {
+        polling = false;
+        return;
+      }
+      // A poll or retry that has already started belongs to the old
+      // generation and will stop when it sees the new one
+      polling = true;
+      staleUuid = nextGeneration();
+      pollGeneration = generation;
+    }
+
+    startGeneration(pollGeneration, staleUuid);
+  }
+
+  /**
+   * Cancels any pending retry; used when the controller is disconnected. An
+   * in flight poll still reports its failure to the handles and then stops as
+   * the controller is no longer connected.
+   */
+  synchronized void stop() {
+    cancelRetry();
+    failedAttempts = 0;
+    polling = false;
+  }
+
+  private void cancelRetry() {
+    if (pendingRetry != null) {
+      pendingRetry.cancel(false);
+      pendingRetry = null;
+    }
+  }
+
+  synchronized boolean isPolling() {
+    return polling;
+  }
+
+  /**
+   * Number of polls that have been re-armed after a failure
+   */
+  synchronized long getRetryCount() {
+    return retryCount;
+  }
+
+  /**
+   * Number of re-poll requests that were deferred or coalesced by the backoff
+   * policy instead of being sent to the controller immediately
+   */
+  synchronized long getSuppressedRetryCount() {
+    return suppressedRetryCount;
+  }
+
+  private void poll(final int pollGeneration) {
+    final String requestUuid;
+    final SensorIdSet sensorIds;
+    final SensorValueMap sensorValues;
+    final SensorValueMap changedValues;
+
+    synchronized (this) {
+      if (pollGeneration != generation) {
+        return;
+      }
+      if (sensorIndex.isEmpty() || !controller.isConnected()) {
+        polling = false;
+        return;
+      }
+
+      requestUuid = pollUuid;
+      sensorIds = pollSensorIds;
+      sensorValues = pollSensorValues;
+      changedValues = pollChangedValues;
+      sensorIds.clear();
+      for (int slot = sensorIndex.nextSlot(-1); slot >= 0; slot = sensorIndex.nextSlot(slot)) {
+        sensorIds.add(sensorIndex.keyAt(slot));
+      }
+    }
+
+    connector.monitorSensors(requestUuid, sensorIds, sensorValues,
+            new AsyncControllerCallback<SensorValueMap>() {
+      @Override
+      public void onFailure(ControllerResponseCode error) {
+        if (!isCurrent(pollGeneration)) {
+          return;
+        }
+
+        // Pass error back to each registration callback
+        for (RegistrationHandle handle : getHandles()) {
+          handle.getCallback().onFailure(error);
+        }
+
+        scheduleRetry(pollGeneration);
+      }
+
+      @Override
+      public void onSuccess(SensorValueMap result) {
+        synchronized (SensorMonitor.this) {
+          if (pollGeneration != generation) {
+            return;
+          }
+          failedAttempts = 0;
+        }
+
+        if (result != null) {
+          updateSnapshot(result, changedValues);
+          if (!changedValues.isEmpty()) {
+            dispatch(changedValues);
+          }
+        }
+
+        poll(pollGeneration);
+      }
+    });
+  }
+
+  private synchronized boolean isCurrent(int pollGeneration) {
+    return pollGeneration == generation;
+  }
+
+  private synchronized void scheduleRetry(final int pollGeneration) {
+    if (pollGeneration != generation) {
+      return;
+    }
+    if (sensorIndex.isEmpty() || !controller.isConnected()) {
+      polling = false;
+      return;
+    }
+
+    long delay = reconnectPolicy.getDelay(failedAttempts++);
+    retryCount++;
+    if (delay > 0) {
+      suppressedRetryCount++;
+    }
+
+    pendingRetry = RETRY_SCHEDULER.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (SensorMonitor.this) {
+          if (pollGeneration != generation) {
+            return;
+          }
+          pendingRetry = null;
+        }
+        poll(pollGeneration);
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Splits the sensor values by subscribed handle and passes each handle only
+   * the values of the sensors it monitors; the split values are built per
+   * call as a reissued poll or a registration may dispatch concurrently with
+   * the poll loop
+   */
+  void dispatch(SensorValueMap sensorValues) {
+    List<RegistrationHandle> changedHandles = new ArrayList<RegistrationHandle>();
+    List<SensorValueMap> changedHandleValues = new ArrayList<SensorValueMap>();
+
+    synchronized (this) {
+      for (int slot = sensorValues.nextSlot(-1); slot >= 0; slot = sensorValues.nextSlot(slot)) {
+        List<RegistrationHandle> subscribers = sensorIndex.get(sensorValues.keyAt(slot));
+        if (subscribers == null) {
+          continue;
+        }
+
+        for (int i = 0; i < subscribers.size(); i++) {
+          RegistrationHandle handle = subscribers.get(i);
+          int index = changedHandles.indexOf(handle);
+          SensorValueMap handleValues;
+          if (index < 0) {
+            handleValues = new SensorValueMap();
+            changedHandles.add(handle);
+            changedHandleValues.add(handleValues);
+          } else {
+            handleValues = changedHandleValues.get(index);
+          }
+          handleValues.put(sensorValues.keyAt(slot), sensorValues.valueAt(slot));
+        }
+      }
+    }
+
+    for (int i = 0; i < changedHandles.size(); i++) {
+      RegistrationHandle handle = changedHandles.get(i);
+      if (handle.isRegistered()) {
+        handle.onSensorsChanged(changedHandleValues.get(i));
+      }
+    }
+  }
+
+  private synchronized List<RegistrationHandle> getHandles() {
+    return new ArrayList<RegistrationHandle>(handles);
+  }
+}
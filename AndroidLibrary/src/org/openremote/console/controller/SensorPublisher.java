@@ -0,0 +1,394 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the sensor updates of a registration to any number of
+ * subscribers, honouring each subscriber's demand.
+ *
+ * Updates are handed over on the poll thread but delivered on an executor,
+ * so a slow subscriber doesn't stall sensor monitoring. Each subscription
+ * holds at most one undelivered value per sensor. An update for a sensor
+ * that already has a pending value replaces it (latest value wins), so a
+ * subscriber that falls behind uses memory bounded by the number of
+ * sensors rather than the number of updates.
+ *
+ * New subscribers first receive the last known value of each sensor. When
+ * the registration is removed, subscribers get
+ * {@link SensorFlow.Subscriber#onComplete()} once their pending values
+ * have been delivered.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorPublisher implements SensorFlow.Publisher<SensorUpdate> {
+  private static final Logger LOG = Logger.getLogger(SensorPublisher.class.getName());
+  // Maximum number of updates taken from a subscription per lock acquisition
+  private static final int BATCH_SIZE = 64;
+  private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "SensorPublisher-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final Executor executor;
+  private final List<SensorSubscription> subscriptions = new CopyOnWriteArrayList<SensorSubscription>();
+  private final SensorValueMap latestValues = new SensorValueMap();
+  private final AtomicLong publishedCount = new AtomicLong();
+  private final AtomicLong deliveredCount = new AtomicLong();
+  private final AtomicLong conflatedCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private boolean completed;
+
+  SensorPublisher() {
+    this(DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * @param executor
+   *          executor that subscriber methods are called on
+   */
+  SensorPublisher(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(SensorFlow.Subscriber<? super SensorUpdate> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber must not be null");
+    }
+
+    SensorSubscription subscription = new SensorSubscription(subscriber);
+
+    synchronized (this) {
+      subscription.pending.putAll(latestValues);
+      if (completed) {
+        subscription.completed = true;
+      } else {
+        subscriptions.add(subscription);
+      }
+    }
+
+    subscription.schedule();
+  }
+
+  /**
+   * Number of sensor updates received from the controller
+   */
+  public long getPublishedCount() {
+    return publishedCount.get();
+  }
+
+  /**
+   * Number of updates passed to subscribers
+   */
+  public long getDeliveredCount() {
+    return deliveredCount.get();
+  }
+
+  /**
+   * Number of undelivered updates that were replaced by a newer value of the
+   * same sensor because a subscriber was behind
+   */
+  public long getConflatedCount() {
+    return conflatedCount.get();
+  }
+
+  /**
+   * Number of undelivered updates that were discarded because their
+   * subscription was cancelled
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  public int getSubscriberCount() {
+    return subscriptions.size();
+  }
+
+  /**
+   * Set the last known values of sensors that haven't been published yet;
+   * seeded values aren't counted as published
+   */
+  synchronized void seed(SensorValueMap sensorValues) {
+    for (int slot = sensorValues.nextSlot(-1); slot >= 0; slot = sensorValues.nextSlot(slot)) {
+      if (!latestValues.containsKey(sensorValues.keyAt(slot))) {
+        latestValues.put(sensorValues.keyAt(slot), sensorValues.valueAt(slot));
+      }
+    }
+  }
+
+  /**
+   * Offer the changed values to every subscriber; the map is copied so it can
+   * be re-used by the caller
+   */
+  void publish(SensorValueMap sensorValues) {
+    if (sensorValues.isEmpty()) {
+      return;
+    }
+
+    synchronized (this) {
+      if (completed) {
+        return;
+      }
+      latestValues.putAll(sensorValues);
+    }
+
+    publishedCount.addAndGet(sensorValues.size());
+    for (SensorSubscription subscription : subscriptions) {
+      subscription.offer(sensorValues);
+    }
+  }
+
+  /**
+   * Complete every subscription; called when the registration is removed
+   */
+  void complete() {
+    synchronized (this) {
+      if (completed) {
+        return;
+      }
+      completed = true;
+    }
+
+    for (SensorSubscription subscription : subscriptions) {
+      subscription.complete();
+    }
+  }
+
+  /**
+   * Per subscriber state; all subscriber methods are called from
+   * {@link #run()} which is never scheduled more than once at a time
+   */
+  private class SensorSubscription implements SensorFlow.Subscription, Runnable {
+    private final SensorFlow.Subscriber<? super SensorUpdate> subscriber;
+    // Latest undelivered value of each sensor
+    final SensorValueMap pending = new SensorValueMap();
+    private final int[] batchIds = new int[BATCH_SIZE];
+    private final String[] batchValues = new String[BATCH_SIZE];
+    private long demand;
+    private boolean scheduled;
+    private boolean subscribed;
+    private volatile boolean cancelled;
+    boolean completed;
+    private Throwable error;
+
+    SensorSubscription(SensorFlow.Subscriber<? super SensorUpdate> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        if (n <= 0) {
+          error = new IllegalArgumentException("Requested items must be > 0");
+        } else {
+          demand += n;
+          if (demand < 0) {
+            demand = Long.MAX_VALUE;
+          }
+        }
+      }
+
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      int discarded;
+
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        cancelled = true;
+        discarded = pending.size();
+        pending.clear();
+      }
+
+      droppedCount.addAndGet(discarded);
+      subscriptions.remove(this);
+    }
+
+    void offer(SensorValueMap sensorValues) {
+      int conflated = 0;
+
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        for (int slot = sensorValues.nextSlot(-1); slot >= 0; slot = sensorValues.nextSlot(slot)) {
+          int size = pending.size();
+          pending.put(sensorValues.keyAt(slot), sensorValues.valueAt(slot));
+          if (pending.size() == size) {
+            conflated++;
+          }
+        }
+      }
+
+      if (conflated > 0) {
+        conflatedCount.addAndGet(conflated);
+      }
+      schedule();
+    }
+
+    void complete() {
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        completed = true;
+      }
+
+      schedule();
+    }
+
+    void schedule() {
+      synchronized (this) {
+        if (scheduled || cancelled) {
+          return;
+        }
+        // Nothing to signal until there is demand or a terminal event
+        if (subscribed && error == null && !completed && (demand == 0 || pending.isEmpty())) {
+          return;
+        }
+        scheduled = true;
+      }
+
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        LOG.log(Level.WARNING, "Sensor update delivery rejected", e);
+        synchronized (this) {
+          scheduled = false;
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      boolean signalSubscribe;
+      synchronized (this) {
+        signalSubscribe = !subscribed;
+        subscribed = true;
+      }
+
+      try {
+        if (signalSubscribe) {
+          subscriber.onSubscribe(this);
+        }
+
+        while (true) {
+          int count = 0;
+          Throwable signalError = null;
+          boolean signalComplete = false;
+
+          synchronized (this) {
+            if (cancelled) {
+              scheduled = false;
+              return;
+            }
+
+            if (error != null) {
+              signalError = error;
+              cancelled = true;
+            } else {
+              count = takeBatch();
+              if (count == 0) {
+                if (completed && pending.isEmpty()) {
+                  signalComplete = true;
+                  cancelled = true;
+                } else {
+                  scheduled = false;
+                  return;
+                }
+              }
+            }
+          }
+
+          if (signalError != null || signalComplete) {
+            subscriptions.remove(this);
+            if (signalError != null) {
+              subscriber.onError(signalError);
+            } else {
+              subscriber.onComplete();
+            }
+            return;
+          }
+
+          for (int i = 0; i < count; i++) {
+            if (cancelled) {
+              droppedCount.addAndGet(count - i);
+              break;
+            }
+            subscriber.onNext(new SensorUpdate(batchIds[i], batchValues[i]));
+            deliveredCount.incrementAndGet();
+          }
+        }
+      } catch (RuntimeException e) {
+        // Subscribers must not throw so treat it as a cancellation
+        LOG.log(Level.WARNING, "Sensor subscriber failed; cancelling subscription", e);
+        cancel();
+      }
+    }
+
+    /**
+     * Move up to the demanded number of pending values into the batch
+     * arrays
+     */
+    private int takeBatch() {
+      int limit = (int) Math.min(demand, BATCH_SIZE);
+      int count = 0;
+
+      for (int slot = pending.nextSlot(-1); slot >= 0 && count < limit; slot = pending.nextSlot(slot)) {
+        batchIds[count] = pending.keyAt(slot);
+        batchValues[count] = pending.valueAt(slot);
+        count++;
+      }
+      for (int i = 0; i < count; i++) {
+        pending.remove(batchIds[i]);
+      }
+
+      if (demand != Long.MAX_VALUE) {
+        demand -= count;
+      }
+      return count;
+    }
+  }
+}
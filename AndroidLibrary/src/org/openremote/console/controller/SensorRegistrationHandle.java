@@ -0,0 +1,39 @@
+package org.openremote.console.controller;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registration of an arbitrary set of sensors that aren't tied to a panel or
+ * device; updates are consumed through {@link #getSensorPublisher()}
+ * 
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorRegistrationHandle extends RegistrationHandle {
+  private final SensorIdSet sensorIds = new SensorIdSet();
+
+  SensorRegistrationHandle(SensorIdSet sensorIds, AsyncRegistrationCallback callback) {
+    super(callback);
+    this.sensorIds.addAll(sensorIds);
+  }
+
+  @Override
+  public List<Integer> getSensorIds() {
+    return sensorIds.toList();
+  }
+
+  @Override
+  SensorIdSet getSensorIdSet() {
+    return sensorIds;
+  }
+
+  @Override
+  public void onSensorsChanged(Map<Integer, String> result) {
+    onSensorsChanged(SensorValueMap.of(result));
+  }
+
+  @Override
+  public void onSensorsChanged(SensorValueMap result) {
+    publish(result);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+/**
+ * Sensor value change delivered by a {@link SensorPublisher}
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public final class SensorUpdate {
+  private final int sensorId;
+  private final String value;
+
+  public SensorUpdate(int sensorId, String value) {
+    this.sensorId = sensorId;
+    this.value = value;
+  }
+
+  public int getSensorId() {
+    return sensorId;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return sensorId + "=" + value;
+  }
+}
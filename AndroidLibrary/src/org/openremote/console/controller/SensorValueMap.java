@@ -0,0 +1,52 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.Map;
+
+/**
+ * Map of sensor ID to sensor value keyed by primitive int so that sensor
+ * values can be decoded and dispatched without boxing; a single instance can
+ * be cleared and reused across poll cycles.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorValueMap extends IntObjectMap<String> {
+
+  public SensorValueMap() {
+    super();
+  }
+
+  public SensorValueMap(int expectedSize) {
+    super(expectedSize);
+  }
+
+  /**
+   * Create a sensor value map from a boxed map
+   */
+  public static SensorValueMap of(Map<Integer, String> sensorValues) {
+    SensorValueMap map = new SensorValueMap(sensorValues != null ? sensorValues.size() : 0);
+    if (sensorValues != null) {
+      map.putAll(sensorValues);
+    }
+    return map;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable index of the
+ * {@link org.openremote.console.controller.Controller.WidgetCommandInfo} parsed
+ * from a controller's <code>controller.xml</code> allowing O(1) lookup by
+ * sensor ID and command ID.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class WidgetCommandInfoIndex {
+  private final List<Controller.WidgetCommandInfo<?>> widgetCommandInfos;
+  private final IntObjectMap<List<Controller.WidgetCommandInfo<?>>> bySensorId = new IntObjectMap<List<Controller.WidgetCommandInfo<?>>>();
+  private final IntObjectMap<List<Controller.WidgetCommandInfo<?>>> byCommandId = new IntObjectMap<List<Controller.WidgetCommandInfo<?>>>();
+
+  WidgetCommandInfoIndex(List<Controller.WidgetCommandInfo<?>> widgetCommandInfos) {
+    this.widgetCommandInfos = widgetCommandInfos;
+
+    for (Controller.WidgetCommandInfo<?> info : widgetCommandInfos) {
+      if (!"button".equals(info.getWidgetType())) {
+        add(bySensorId, info.getSensorId(), info);
+      }
+      add(byCommandId, info.getCommandId1(), info);
+      if ("switch".equals(info.getWidgetType()) && info.getCommandId2() != info.getCommandId1()) {
+        add(byCommandId, info.getCommandId2(), info);
+      }
+    }
+  }
+
+  /**
+   * Get all widget command info in document order
+   */
+  public List<Controller.WidgetCommandInfo<?>> getWidgetCommandInfos() {
+    return widgetCommandInfos;
+  }
+
+  /**
+   * Get the widgets that are linked to the specified sensor
+   *
+   * @return matching widget command info (empty if none)
+   */
+  public List<Controller.WidgetCommandInfo<?>> findBySensorId(int sensorId) {
+    List<Controller.WidgetCommandInfo<?>> infos = bySensorId.get(sensorId);
+    return infos != null ? infos : Collections.<Controller.WidgetCommandInfo<?>> emptyList();
+  }
+
+  /**
+   * Get the widgets that send the specified command
+   *
+   * @return matching widget command info (empty if none)
+   */
+  public List<Controller.WidgetCommandInfo<?>> findByCommandId(int commandId) {
+    List<Controller.WidgetCommandInfo<?>> infos = byCommandId.get(commandId);
+    return infos != null ? infos : Collections.<Controller.WidgetCommandInfo<?>> emptyList();
+  }
+
+  private static void add(IntObjectMap<List<Controller.WidgetCommandInfo<?>>> index, int id,
+          Controller.WidgetCommandInfo<?> info) {
+    List<Controller.WidgetCommandInfo<?>> infos = index.get(id);
+    if (infos == null) {
+      infos = new ArrayList<Controller.WidgetCommandInfo<?>>(1);
+      index.put(id, infos);
+    }
+    infos.add(info);
+  }
+}
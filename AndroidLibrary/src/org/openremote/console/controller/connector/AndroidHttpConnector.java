@@ -20,9 +20,8 @@
  */
 package org.openremote.console.controller.connector;
 
-import com.loopj.android.http.AsyncHttpResponseHandler;
+import com.loopj.android.http.RequestHandle;
 import com.loopj.android.http.RequestParams;
-import com.loopj.android.http.ResponseHandlerInterface;
 import org.apache.http.Header;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.entity.ContentType;
@@ -38,6 +37,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -45,21 +45,67 @@ import java.util.Map;
  * Android specific connector capable of calling callback on the UI thread via
  * the Android Looper Handler
  * 
+ * Requests are sent through a client owned by the connector or, when an
+ * {@link HttpTransport} is set, through the client shared by every connector
+ * using the transport; the timeout and credentials are passed with each
+ * request so connectors sharing a client keep their own settings.
+ * 
  * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
  */
 public class AndroidHttpConnector extends HttpConnector {
-  private final CustomAsyncHttpClient client = new CustomAsyncHttpClient();
+  private static final HttpTransport.ClientFactory<CustomAsyncHttpClient> CLIENT_FACTORY = new HttpTransport.ClientFactory<CustomAsyncHttpClient>() {
+    @Override
+    public CustomAsyncHttpClient createClient(HttpTransport transport) {
+      return new CustomAsyncHttpClient(transport);
+    }
+  };
+  private CustomAsyncHttpClient client;
+  // Requests started by this connector; the client may be shared so only
+  // these are cancelled on disconnect
+  private final List<RequestHandle> requests = new ArrayList<RequestHandle>();
+  private final ControllerDiscoveryEngine discoveryEngine = ControllerDiscoveryEngine.getDefault();
   // private Timer heartBeatTimer;
   private AsyncControllerCallback<ControllerConnectionStatus> connectCallback;
 
   public AndroidHttpConnector() {
-    client.addHeader("Accept", "application/json");
-    client.setTimeout(getTimeout());
   }
-  
+
+  private synchronized CustomAsyncHttpClient getClient() {
+    if (client == null) {
+      HttpTransport transport = getTransport();
+      client = transport != null ? transport.getClient(CustomAsyncHttpClient.class,
+              CLIENT_FACTORY) : new CustomAsyncHttpClient();
+    }
+    return client;
+  }
+
+  private void addRequest(ControllerCallback callback, final RequestHandle request) {
+    callback.setCanceller(new Runnable() {
+      @Override
+      public void run() {
+        request.cancel(true);
+      }
+    });
+
+    synchronized (requests) {
+      Iterator<RequestHandle> it = requests.iterator();
+      while (it.hasNext()) {
+        if (it.next().isFinished()) {
+          it.remove();
+        }
+      }
+      requests.add(request);
+    }
+  }
+
   private void doDisconnect() {
     // Terminate any open polling connections
-    client.cancelAllRequests(true);
+    synchronized (requests) {
+      for (RequestHandle request : requests) {
+        request.cancel(true);
+      }
+      requests.clear();
+    }
 
     connected = false;
     
@@ -73,44 +119,13 @@ public class AndroidHttpConnector extends HttpConnector {
   protected void doRequest(URI uri, Map<String, String> headers, String content,
           final ControllerCallback callback, Integer timeout) {
     if (callback.command == RestCommand.DISCOVERY) {
-      int tcpPort = (Integer) callback.data;
-      client.startDiscovery(
-          tcpPort,
-          timeout,
-          new ControllerDiscoveryResponseHandler() {
-              @Override
-              public void sendStartMessage() {
-                  // Called when discovery is started
-                  AsyncControllerDiscoveryCallback discoveryCallback = (AsyncControllerDiscoveryCallback) callback.callback;
-                  discoveryCallback.onDiscoveryStarted();
-              }
-
-              @Override
-              public void sendFinishMessage() {
-                  // This will be called when discovery is stopped
-                  AsyncControllerDiscoveryCallback discoveryCallback = (AsyncControllerDiscoveryCallback) callback.callback;
-                  discoveryCallback.onDiscoveryStopped();
-              }
-
-              @Override
-              public void sendSuccessMessage(byte[] responseBody) {
-                  // Called each time a controller is discovered
-                  handleResponse(callback, 0, null, responseBody);
-              }
-
-              @Override
-              public void sendFailureMessage(Exception ex) {
-                  // Called when discovery cannot be started
-                  AsyncControllerDiscoveryCallback discoveryCallback = (AsyncControllerDiscoveryCallback) callback.callback;
-                  discoveryCallback.onStartDiscoveryFailed(ControllerResponseCode.UNKNOWN_ERROR);
-              }
-          }
-      );
+      discoveryEngine.startDiscovery((AsyncControllerDiscoveryCallback) callback.callback,
+              (Integer) callback.data, timeout);
       return;
     }
 
     if (callback.command == RestCommand.STOP_DISCOVERY) {
-      client.stopDiscovery();
+      discoveryEngine.stopDiscovery();
       return;
     }
 
@@ -126,40 +141,67 @@ public class AndroidHttpConnector extends HttpConnector {
       doHead = true;
     }
 
-    if (callback.command == RestCommand.GET_XML) {
+    if (callback.command == RestCommand.GET_XML || callback.command == RestCommand.GET_PANEL_LIST
+            || callback.command == RestCommand.GET_PANEL_LAYOUT) {
+      // GET so that cached payloads can be revalidated
       doGet = true;
     }
 
-      ResponseHandlerInterface handler = new AsyncHttpResponseHandler() {
+    // The logout request still has to authenticate so it carries the
+    // credentials that were cleared when it was sent
+    Credentials requestCredentials = callback.command == RestCommand.LOGOUT ? (Credentials) callback.data
+            : credentials;
+
+    CustomAsyncHttpClient client = getClient();
+    CustomAsyncHttpClient.RequestHandler handler = new CustomAsyncHttpClient.RequestHandler(
+            getPriority(callback.command), timeout != null ? timeout : getTimeout(),
+            requestCredentials) {
 
       @Override
       public void onCancel() {
+        if (callback.isCancelled()) {
+          return;
+        }
 
+        // Aborted by a disconnect; resource requests and control commands
+        // may be shared by several callers (see the command coalescer) so
+        // they must still complete
+        if (callback.command == RestCommand.GET_RESOURCE_DATA
+                || callback.command == RestCommand.GET_RESOURCE_DETAILS
+                || callback.command == RestCommand.SEND_CONTROL_COMMAND) {
+          callback.callback.onFailure(ControllerResponseCode.DISCONNECTED);
+        } else {
+          // Nothing waits on the others but the metrics must see the abort
+          callback.cancel();
+        }
       }
 
       @Override
       public void onSuccess(int code, Header[] headers, byte[] response) {
-        if (callback.command == RestCommand.LOGOUT) {
-          client.clearCredentialsProvider();
-          return;
-        }
-
         if (callback.command == RestCommand.CONNECT) {
           connectCallback = (AsyncControllerCallback<ControllerConnectionStatus>) callback.callback;
         }
 
-        Map<String,String> headerMap = new HashMap<String, String>();
-        for (Header header : headers) {
-            headerMap.put(header.getName(), header.getValue());
-        }
-
-        handleResponse(callback, code, headerMap, response);
+        handleResponse(callback, code, getHeaderMap(headers), response);
       }
 
       @Override
       public void onFailure(int arg0, Header[] arg1, byte[] arg2, Throwable exception) {
+        if (callback.isCancelled()) {
+          return;
+        }
+
+        // Loopj reports 304 Not Modified as a failure; let the connector serve
+        // the cached result
+        if (arg0 == 304) {
+          handleResponse(callback, arg0, getHeaderMap(arg1), arg2);
+          return;
+        }
+
+        // A 504 is the controller's normal long-poll timeout so it shouldn't
+        // trigger the sensor monitor backoff
         if (callback.command == RestCommand.DO_SENSOR_POLLING
-                && exception.getCause() instanceof ConnectTimeoutException) {
+                && (arg0 == 504 || exception.getCause() instanceof ConnectTimeoutException)) {
           callback.callback.onSuccess(null);
         } else {
           callback.callback.onFailure(ControllerResponseCode.UNKNOWN_ERROR);
@@ -168,47 +210,70 @@ public class AndroidHttpConnector extends HttpConnector {
     };
 
     if (doHead) {
-      client.setTimeout(timeout);
       try {
-        client.head(uri.toURL().toString(), handler);
+        addRequest(callback, client.head(uri.toURL().toString(), handler));
       } catch (MalformedURLException e) {
         callback.callback.onFailure(ControllerResponseCode.INVALID_URL);
       }
     } else if (doGet) {
-        client.setTimeout(timeout);
         try {
-            client.get(null, uri.toURL().toString(), prepareHeaders(headers), new RequestParams(), handler);
+            addRequest(callback, client.get(null, uri.toURL().toString(), prepareHeaders(headers), new RequestParams(), handler));
         } catch (MalformedURLException e) {
             callback.callback.onFailure(ControllerResponseCode.INVALID_URL);
         }
     } else {
-      client.setTimeout(timeout);
       try {
-        client.post(null, uri.toURL().toString(), prepareHeaders(headers), prepareEntity(content), "application/json", handler);
+        addRequest(callback, client.post(null, uri.toURL().toString(), prepareHeaders(headers), prepareEntity(content), "application/json", handler));
       } catch (MalformedURLException e) {
         callback.callback.onFailure(ControllerResponseCode.INVALID_URL);
       }
     }
   }
 
+  /**
+   * Get the scheduler that runs this connector's requests (shared with the
+   * other connectors of the transport if one is set); exposes the queue depth
+   * and wait time of each priority class
+   */
+  public RequestScheduler getRequestScheduler() {
+    return getClient().getScheduler();
+  }
+
+  /**
+   * Get the scheduling priority of the command's requests
+   */
+  protected RequestScheduler.Priority getPriority(RestCommand command) {
+    switch (command) {
+    case SEND_CONTROL_COMMAND:
+    case SEND_NAMED_COMMAND:
+    case CONNECT:
+    case LOGIN:
+    case LOGOUT:
+      return RequestScheduler.Priority.INTERACTIVE;
+    case GET_SENSOR_STATUS:
+    case DO_SENSOR_POLLING:
+      return RequestScheduler.Priority.SENSOR;
+    case GET_RESOURCE_DETAILS:
+    case GET_RESOURCE_DATA:
+      return RequestScheduler.Priority.BULK;
+    default:
+      return RequestScheduler.Priority.PANEL;
+    }
+  }
+
   @Override
   public void setCredentials(Credentials credentials) {
     this.credentials = credentials;
-
-    client.clearCredentialsProvider();
-
-    if (credentials != null) {
-      client.setBasicAuth(credentials.getUsername(), credentials.getPassword());
-    }
   }
 
   @Override
   public void logout(AsyncControllerCallback<Boolean> callback) {
+    Credentials loggedIn = credentials;
     credentials = null;
 
     if (controllerUrl != null) {
-      doRequest(buildRequestUri(RestCommand.LOGOUT), null, null, new ControllerCallback(
-              RestCommand.LOGOUT, callback), getTimeout());
+      sendRequest(buildRequestUri(RestCommand.LOGOUT), null, null, new ControllerCallback(
+              RestCommand.LOGOUT, callback, loggedIn), getTimeout());
     } else {
       callback.onSuccess(true);
     }
@@ -216,9 +281,19 @@ public class AndroidHttpConnector extends HttpConnector {
 
   @Override
   public boolean isDiscoveryRunning() {
-    return client.isDiscoveryRunning();
+    return discoveryEngine.isDiscoveryRunning();
   }
 
+    protected Map<String, String> getHeaderMap(Header[] headers) {
+        Map<String,String> headerMap = new HashMap<String, String>();
+        if (headers != null) {
+            for (Header header : headers) {
+                headerMap.put(header.getName(), header.getValue());
+            }
+        }
+        return headerMap;
+    }
+
     protected Header[] prepareHeaders(Map<String, String> headers) {
         Header[] headerArr = null;
         if (headers != null) {
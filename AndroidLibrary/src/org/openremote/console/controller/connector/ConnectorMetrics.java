@@ -0,0 +1,105 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import org.openremote.console.controller.connector.HttpConnector.RestCommand;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * Instrumentation sink fed by {@link HttpConnector} for every request sent to
+ * the controller. A request is reported as started when it is handed to the
+ * transport and as completed when its callback is invoked (successfully or
+ * otherwise); all times are in nanoseconds.
+ *
+ * The default is {@link #NO_OP} which the connector recognises so that no
+ * timing or callback wrapping is done at all. {@link RecordingConnectorMetrics}
+ * aggregates the values and can be extended to forward them elsewhere.
+ *
+ * Implementations must be thread safe and must not block.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public interface ConnectorMetrics {
+
+  /**
+   * Metrics sink that discards everything
+   */
+  public static final ConnectorMetrics NO_OP = new ConnectorMetrics() {
+    @Override
+    public void onRequestStarted(RestCommand command, long bytesOut) {
+    }
+
+    @Override
+    public void onRequestCompleted(RestCommand command, long latency, long parseTime,
+            long bytesIn, ControllerResponseCode error) {
+    }
+
+    @Override
+    public void onRequestCancelled(RestCommand command, long latency) {
+    }
+
+    @Override
+    public ConnectorMetricsSnapshot getSnapshot() {
+      return ConnectorMetricsSnapshot.EMPTY;
+    }
+  };
+
+  /**
+   * @param command
+   *          command of the request
+   * @param bytesOut
+   *          length of the request URI and content
+   */
+  void onRequestStarted(RestCommand command, long bytesOut);
+
+  /**
+   * @param command
+   *          command of the request
+   * @param latency
+   *          time from the request being started until its callback was
+   *          invoked
+   * @param parseTime
+   *          time from the response arriving until the callback was invoked
+   *          (0 if the request failed without a response)
+   * @param bytesIn
+   *          length of the response data
+   * @param error
+   *          failure code or null if the request succeeded
+   */
+  void onRequestCompleted(RestCommand command, long latency, long parseTime, long bytesIn,
+          ControllerResponseCode error);
+
+  /**
+   * The request was aborted (cancelled or disconnected) so its callback won't
+   * be invoked
+   *
+   * @param command
+   *          command of the request
+   * @param latency
+   *          time from the request being started until it was aborted
+   */
+  void onRequestCancelled(RestCommand command, long latency);
+
+  /**
+   * Get a point in time copy of the recorded values
+   */
+  ConnectorMetricsSnapshot getSnapshot();
+}
@@ -0,0 +1,249 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.openremote.console.controller.connector.HttpConnector.RestCommand;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * Immutable copy of the values recorded by a {@link ConnectorMetrics} sink,
+ * per {@link RestCommand}; commands that haven't been used are omitted.
+ *
+ * Latencies are bucketed into a histogram whose upper bounds double from
+ * 1ms ({@link #getLatencyBucketBounds()}); the last bucket holds everything
+ * above the largest bound.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ConnectorMetricsSnapshot {
+  public static final ConnectorMetricsSnapshot EMPTY = new ConnectorMetricsSnapshot(
+          new EnumMap<RestCommand, CommandMetrics>(RestCommand.class), 0);
+
+  private static final long[] LATENCY_BUCKET_BOUNDS = new long[17];
+
+  static {
+    for (int i = 0; i < LATENCY_BUCKET_BOUNDS.length; i++) {
+      LATENCY_BUCKET_BOUNDS[i] = 1L << i;
+    }
+  }
+
+  private final Map<RestCommand, CommandMetrics> commands;
+  private final long timestamp;
+
+  /**
+   * Values recorded for a single command
+   */
+  public static class CommandMetrics {
+    private final long requestCount;
+    private final long failureCount;
+    private final long cancelledCount;
+    private final int inFlightCount;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long totalLatency;
+    private final long maxLatency;
+    private final long totalParseTime;
+    private final long[] latencyHistogram;
+    private final Map<ControllerResponseCode, Long> errorCounts;
+
+    CommandMetrics(long requestCount, long failureCount, long cancelledCount, int inFlightCount,
+            long bytesIn, long bytesOut, long totalLatency, long maxLatency, long totalParseTime,
+            long[] latencyHistogram, Map<ControllerResponseCode, Long> errorCounts) {
+      this.requestCount = requestCount;
+      this.failureCount = failureCount;
+      this.cancelledCount = cancelledCount;
+      this.inFlightCount = inFlightCount;
+      this.bytesIn = bytesIn;
+      this.bytesOut = bytesOut;
+      this.totalLatency = totalLatency;
+      this.maxLatency = maxLatency;
+      this.totalParseTime = totalParseTime;
+      this.latencyHistogram = latencyHistogram;
+      this.errorCounts = Collections.unmodifiableMap(errorCounts);
+    }
+
+    /**
+     * Number of completed requests
+     */
+    public long getRequestCount() {
+      return requestCount;
+    }
+
+    /**
+     * Number of completed requests that failed
+     */
+    public long getFailureCount() {
+      return failureCount;
+    }
+
+    /**
+     * Number of requests aborted before they completed; these aren't included
+     * in the request count
+     */
+    public long getCancelledCount() {
+      return cancelledCount;
+    }
+
+    /**
+     * Number of requests started but not yet completed
+     */
+    public int getInFlightCount() {
+      return inFlightCount;
+    }
+
+    public long getBytesIn() {
+      return bytesIn;
+    }
+
+    public long getBytesOut() {
+      return bytesOut;
+    }
+
+    /**
+     * Sum of the latencies of the completed requests in nanoseconds
+     */
+    public long getTotalLatency() {
+      return totalLatency;
+    }
+
+    /**
+     * Mean latency in nanoseconds
+     */
+    public long getAverageLatency() {
+      return requestCount > 0 ? totalLatency / requestCount : 0;
+    }
+
+    /**
+     * Maximum latency in nanoseconds
+     */
+    public long getMaxLatency() {
+      return maxLatency;
+    }
+
+    /**
+     * Sum of the response parse times in nanoseconds
+     */
+    public long getTotalParseTime() {
+      return totalParseTime;
+    }
+
+    /**
+     * Get the number of requests in each latency bucket; the array has one
+     * more element than {@link ConnectorMetricsSnapshot#getLatencyBucketBounds()}
+     */
+    public long[] getLatencyHistogram() {
+      return latencyHistogram.clone();
+    }
+
+    /**
+     * Estimate a latency percentile from the histogram
+     *
+     * @param percentile
+     *          percentile (0 - 100)
+     * @return upper bound in milliseconds of the bucket holding the
+     *         percentile, -1 if it is above the largest bound or 0 if there
+     *         are no requests
+     */
+    public long getLatencyPercentile(double percentile) {
+      if (requestCount == 0) {
+        return 0;
+      }
+      long target = (long) Math.ceil(percentile / 100 * requestCount);
+      long count = 0;
+      for (int i = 0; i < LATENCY_BUCKET_BOUNDS.length; i++) {
+        count += latencyHistogram[i];
+        if (count >= target) {
+          return LATENCY_BUCKET_BOUNDS[i];
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Get the number of failures by response code
+     */
+    public Map<ControllerResponseCode, Long> getErrorCounts() {
+      return errorCounts;
+    }
+  }
+
+  ConnectorMetricsSnapshot(Map<RestCommand, CommandMetrics> commands, long timestamp) {
+    this.commands = Collections.unmodifiableMap(commands);
+    this.timestamp = timestamp;
+  }
+
+  /**
+   * Get the upper bounds (inclusive) in milliseconds of the latency histogram
+   * buckets
+   */
+  public static long[] getLatencyBucketBounds() {
+    return LATENCY_BUCKET_BOUNDS.clone();
+  }
+
+  static int getLatencyBucket(long latency) {
+    long millis = (latency + 999999) / 1000000;
+    if (millis <= 1) {
+      return 0;
+    }
+    int bucket = 64 - Long.numberOfLeadingZeros(millis - 1);
+    return Math.min(bucket, LATENCY_BUCKET_BOUNDS.length);
+  }
+
+  static int getLatencyBucketCount() {
+    return LATENCY_BUCKET_BOUNDS.length + 1;
+  }
+
+  /**
+   * Time the snapshot was taken (milliseconds since the epoch)
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Get the metrics of each command that has been used
+   */
+  public Map<RestCommand, CommandMetrics> getCommands() {
+    return commands;
+  }
+
+  /**
+   * @return metrics for the command or null if it hasn't been used
+   */
+  public CommandMetrics getCommandMetrics(RestCommand command) {
+    return commands.get(command);
+  }
+
+  /**
+   * Number of requests in flight across all commands
+   */
+  public int getInFlightCount() {
+    int count = 0;
+    for (CommandMetrics metrics : commands.values()) {
+      count += metrics.getInFlightCount();
+    }
+    return count;
+  }
+}
@@ -0,0 +1,332 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openremote.console.controller.IntObjectMap;
+import org.openremote.entities.controller.AsyncControllerCallback;
+import org.openremote.entities.controller.ControlCommand;
+import org.openremote.entities.controller.ControlCommandResponse;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * Latest wins coalescing of control commands per sender; used for continuous
+ * controls (sliders, colour pickers) that generate a command for every move
+ * event.
+ *
+ * At most one command per sender is in flight. Commands issued while a
+ * command for the same sender is in flight (or within the coalescing window
+ * of the previous send) are queued and a newer command replaces the queued
+ * one, so only the latest value is sent once the in flight command completes.
+ *
+ * The callbacks of superseded commands are not dropped; they are merged with
+ * the command that replaced them and receive the outcome of that command.
+ *
+ * Requests aborted without calling back (e.g. on disconnect) must be released
+ * with {@link #cancelAll(ControllerResponseCode)} otherwise their senders
+ * stay in flight.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+class ControlCommandCoalescer {
+  /**
+   * Sends a command to the controller
+   */
+  interface Sender {
+    void send(ControlCommand command, AsyncControllerCallback<ControlCommandResponse> callback);
+  }
+
+  private static class SenderState {
+    Send inFlight;
+    long lastSendTime;
+    ControlCommand queued;
+    List<AsyncControllerCallback<ControlCommandResponse>> queuedCallbacks = new ArrayList<AsyncControllerCallback<ControlCommandResponse>>(
+            2);
+    ScheduledFuture<?> scheduledSend;
+  }
+
+  private final Sender sender;
+  private final IntObjectMap<SenderState> senders = new IntObjectMap<SenderState>();
+  private long window;
+  private ScheduledExecutorService scheduler;
+  private long droppedCount;
+  private long mergedCount;
+
+  /**
+   * @param sender
+   *          sends commands to the controller
+   * @param window
+   *          minimum interval in milliseconds between sends for the same
+   *          sender
+   */
+  ControlCommandCoalescer(Sender sender, long window) {
+    this.sender = sender;
+    this.window = window;
+  }
+
+  synchronized void setWindow(long window) {
+    this.window = window;
+  }
+
+  synchronized long getWindow() {
+    return window;
+  }
+
+  /**
+   * Number of queued commands that were replaced by a newer command and never
+   * sent
+   */
+  synchronized long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /**
+   * Number of sends that also completed the callbacks of superseded commands
+   */
+  synchronized long getMergedCount() {
+    return mergedCount;
+  }
+
+  void send(ControlCommand command, AsyncControllerCallback<ControlCommandResponse> callback) {
+    Send send;
+
+    synchronized (this) {
+      SenderState state = senders.get(command.getSenderId());
+      if (state == null) {
+        state = new SenderState();
+        senders.put(command.getSenderId(), state);
+      }
+
+      if (state.queued != null) {
+        droppedCount++;
+      }
+      state.queued = command;
+      state.queuedCallbacks.add(callback);
+
+      if (state.inFlight != null || state.scheduledSend != null) {
+        return;
+      }
+
+      long delay = getSendDelay(state);
+      if (delay > 0) {
+        schedule(command.getSenderId(), state, delay);
+        return;
+      }
+
+      send = takeQueued(command.getSenderId(), state);
+    }
+
+    doSend(send);
+  }
+
+  /**
+   * Fail the queued and in flight commands of every sender and forget their
+   * state; responses that arrive later for the in flight commands are
+   * ignored
+   */
+  void cancelAll(ControllerResponseCode error) {
+    List<Send> cancelled = new ArrayList<Send>();
+
+    synchronized (this) {
+      for (int slot = senders.nextSlot(-1); slot >= 0; slot = senders.nextSlot(slot)) {
+        SenderState state = senders.valueAt(slot);
+        if (state.scheduledSend != null) {
+          state.scheduledSend.cancel(false);
+          state.scheduledSend = null;
+        }
+        if (state.inFlight != null) {
+          cancelled.add(state.inFlight);
+          state.inFlight = null;
+        }
+        if (state.queued != null) {
+          cancelled.add(new Send(senders.keyAt(slot), state, state.queued, state.queuedCallbacks));
+          state.queued = null;
+          state.queuedCallbacks = new ArrayList<AsyncControllerCallback<ControlCommandResponse>>(2);
+        }
+      }
+      senders.clear();
+    }
+
+    for (Send send : cancelled) {
+      send.complete(null, error, false);
+    }
+  }
+
+  private long getSendDelay(SenderState state) {
+    return state.lastSendTime + window - System.currentTimeMillis();
+  }
+
+  private Send takeQueued(int senderId, SenderState state) {
+    List<AsyncControllerCallback<ControlCommandResponse>> callbacks = state.queuedCallbacks;
+    if (callbacks.size() > 1) {
+      mergedCount++;
+    }
+    Send send = new Send(senderId, state, state.queued, callbacks);
+    state.queued = null;
+    state.queuedCallbacks = new ArrayList<AsyncControllerCallback<ControlCommandResponse>>(2);
+    state.inFlight = send;
+    state.lastSendTime = System.currentTimeMillis();
+    return send;
+  }
+
+  private void schedule(final int senderId, final SenderState state, long delay) {
+    state.scheduledSend = getScheduler().schedule(new Runnable() {
+      @Override
+      public void run() {
+        sendQueued(senderId, state, null);
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Send the sender's queued command once nothing is in flight or scheduled
+   *
+   * @param expected
+   *          state the caller was created for; ignored if the sender's state
+   *          has since been cancelled or replaced
+   * @param completed
+   *          the in flight send that completed or null when called by the
+   *          scheduler
+   */
+  private void sendQueued(int senderId, SenderState expected, Send completed) {
+    Send send;
+
+    synchronized (this) {
+      SenderState state = senders.get(senderId);
+      if (state == null || state != expected) {
+        return;
+      }
+      if (completed == null) {
+        state.scheduledSend = null;
+      } else if (state.inFlight == completed) {
+        state.inFlight = null;
+      }
+
+      if (state.inFlight != null || state.scheduledSend != null) {
+        return;
+      }
+
+      if (state.queued == null) {
+        // Nothing more to send for this sender; the state is kept until the
+        // window has passed so the next command still honours it
+        if (getSendDelay(state) <= 0) {
+          senders.remove(senderId);
+        }
+        return;
+      }
+
+      long delay = getSendDelay(state);
+      if (delay > 0) {
+        schedule(senderId, state, delay);
+        return;
+      }
+
+      send = takeQueued(senderId, state);
+    }
+
+    doSend(send);
+  }
+
+  private void doSend(Send send) {
+    try {
+      sender.send(send.command, send);
+    } catch (RuntimeException e) {
+      send.complete(null, ControllerResponseCode.UNKNOWN_ERROR, true);
+      throw e;
+    }
+  }
+
+  /**
+   * A command sent on behalf of one or more callers; only the first outcome
+   * is delivered
+   */
+  private class Send implements AsyncControllerCallback<ControlCommandResponse> {
+    final int senderId;
+    final SenderState state;
+    final ControlCommand command;
+    final List<AsyncControllerCallback<ControlCommandResponse>> callbacks;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    Send(int senderId, SenderState state, ControlCommand command,
+            List<AsyncControllerCallback<ControlCommandResponse>> callbacks) {
+      this.senderId = senderId;
+      this.state = state;
+      this.command = command;
+      this.callbacks = callbacks;
+    }
+
+    @Override
+    public void onSuccess(ControlCommandResponse result) {
+      complete(result, null, true);
+    }
+
+    @Override
+    public void onFailure(ControllerResponseCode error) {
+      complete(null, error, true);
+    }
+
+    void complete(ControlCommandResponse result, ControllerResponseCode error, boolean sendNext) {
+      if (!completed.compareAndSet(false, true)) {
+        return;
+      }
+
+      try {
+        for (AsyncControllerCallback<ControlCommandResponse> callback : callbacks) {
+          if (callback == null) {
+            continue;
+          }
+          if (error == null) {
+            callback.onSuccess(result);
+          } else {
+            callback.onFailure(error);
+          }
+        }
+      } finally {
+        // A throwing callback mustn't leave the sender in flight
+        if (sendNext) {
+          sendQueued(senderId, state, this);
+        }
+      }
+    }
+  }
+
+  private synchronized ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "ControlCommandCoalescer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return scheduler;
+  }
+}
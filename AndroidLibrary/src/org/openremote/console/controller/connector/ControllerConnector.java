@@ -27,6 +27,9 @@ import java.util.Map;
 import org.openremote.console.controller.AsyncControllerDiscoveryCallback;
 import org.openremote.console.controller.Controller;
 import org.openremote.console.controller.ControllerConnectionStatus;
+import org.openremote.console.controller.DevicesResponse;
+import org.openremote.console.controller.SensorIdSet;
+import org.openremote.console.controller.SensorValueMap;
 import org.openremote.console.controller.auth.Credentials;
 import org.openremote.entities.panel.Panel;
 import org.openremote.entities.panel.PanelInfo;
@@ -207,6 +210,54 @@ public interface ControllerConnector extends CommandSender, ResourceLocator {
   void getSensorValues(List<Integer> sensorIds,
           AsyncControllerCallback<Map<Integer, String>> callback);
 
+  /**
+   * Primitive keyed variant of
+   * {@link #monitorSensors(String, List, AsyncControllerCallback)}; changed
+   * sensor values are written into the supplied {@link SensorValueMap} which is
+   * then passed to the callback, so the same map can be reused for every poll
+   * cycle. The map is only valid until the next request using it is made.
+   * 
+   * @param uuid
+   *          Unique identifier for this monitor request to allow tracking
+   *          between sensor polls
+   * @param sensorIds
+   *          Set of sensor IDs to monitor
+   * @param sensorValues
+   *          Map to decode the sensor values into (it is cleared first)
+   * @param callback
+   *          {@link AsyncControllerCallback} callback for handling the response
+   *          asynchronously
+   */
+  void monitorSensors(String uuid, SensorIdSet sensorIds, SensorValueMap sensorValues,
+          AsyncControllerCallback<SensorValueMap> callback);
+
+  /**
+   * Aborts the in flight sensor monitor request made with the specified uuid
+   * (if any); the callback of an aborted request isn't called. Used to reissue
+   * a long-poll straight away when the monitored sensor set changes.
+   * 
+   * @param uuid
+   *          Unique identifier the monitor request was made with
+   */
+  void cancelMonitorSensors(String uuid);
+
+  /**
+   * Primitive keyed variant of
+   * {@link #getSensorValues(List, AsyncControllerCallback)}; sensor values are
+   * written into the supplied {@link SensorValueMap} which is then passed to
+   * the callback.
+   * 
+   * @param sensorIds
+   *          Set of sensor IDs to get values for
+   * @param sensorValues
+   *          Map to decode the sensor values into (it is cleared first)
+   * @param callback
+   *          {@link AsyncControllerCallback} callback for handling the response
+   *          asynchronously
+   */
+  void getSensorValues(SensorIdSet sensorIds, SensorValueMap sensorValues,
+          AsyncControllerCallback<SensorValueMap> callback);
+
   /**
    * Logs out of the controller. *
    * 
@@ -261,14 +312,18 @@ public interface ControllerConnector extends CommandSender, ResourceLocator {
    */
   void getDevice(String deviceName, AsyncControllerCallback<Device> callback);
   
-//  /**
-//   * Returns {@link java.util.List} of {@link org.openremote.entities.controller.Device}
-//   * that match the supplied device names.
-//   * 
-//   * @param deviceNames
-//   * @param callback
-//   */
-//  void getDevices(List<String> deviceNames, AsyncControllerCallback<List<Device>> callback);
+  /**
+   * Returns the {@link org.openremote.entities.controller.Device}s that match
+   * the supplied device names; each device is requested individually with at
+   * most maxConcurrency requests in flight and the response contains the
+   * error of any device that couldn't be retrieved.
+   * 
+   * @param deviceNames
+   * @param maxConcurrency
+   * @param callback
+   */
+  void getDevices(List<String> deviceNames, int maxConcurrency,
+          AsyncControllerCallback<DevicesResponse> callback);
   
   //
   // /**
@@ -287,5 +342,7 @@ public interface ControllerConnector extends CommandSender, ResourceLocator {
   // */
   // boolean isAutoReconnect();
   
+  // Raw WidgetCommandInfo kept for compatibility with existing implementations
+  @SuppressWarnings("rawtypes")
   void getWidgetsCommandInfo(AsyncControllerCallback<List<Controller.WidgetCommandInfo>> callback);
 }
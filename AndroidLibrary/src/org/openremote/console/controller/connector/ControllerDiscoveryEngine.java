@@ -0,0 +1,431 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openremote.console.controller.AsyncControllerDiscoveryCallback;
+import org.openremote.entities.controller.ControllerInfo;
+import org.openremote.entities.controller.ControllerResponseCode;
+import org.openremote.entities.util.JacksonProcessor;
+
+/**
+ * Long lived controller discovery engine; sends multicast probes using a
+ * single reused socket on a configurable schedule and collects the TCP
+ * responses using a {@link ControllerDiscoveryReceiver}.
+ *
+ * Discovered controllers are kept in a cache for the configured time to live;
+ * when discovery is started cached controllers are reported straight away and
+ * probing is deferred until the oldest entry becomes stale.
+ *
+ * Only one discovery session can run at a time.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ControllerDiscoveryEngine {
+  private static final Logger LOG = Logger.getLogger(ControllerDiscoveryEngine.class.getName());
+  public static final String DEFAULT_MULTICAST_ADDRESS = "224.0.1.100";
+  public static final int DEFAULT_MULTICAST_PORT = 3333;
+  public static final long DEFAULT_TTL = 5 * 60 * 1000;
+  private static final long[] DEFAULT_PROBE_INTERVALS = { 1000, 2000, 4000, 8000, 16000, 32000,
+      60000 };
+  private static ControllerDiscoveryEngine defaultEngine;
+
+  private String multicastAddress = DEFAULT_MULTICAST_ADDRESS;
+  private int multicastPort = DEFAULT_MULTICAST_PORT;
+  private byte[] probePayload = new byte[512];
+  private long[] probeIntervals = DEFAULT_PROBE_INTERVALS;
+  private List<NetworkInterface> networkInterfaces = Collections.emptyList();
+  private long ttl = DEFAULT_TTL;
+  private final Map<String, CachedController> cache = new LinkedHashMap<String, CachedController>();
+  private MulticastSocket socket;
+  private ScheduledExecutorService scheduler;
+  private Session session;
+  private long probeCount;
+
+  private static class CachedController {
+    final ControllerInfo controllerInfo;
+    final long foundTime;
+
+    CachedController(ControllerInfo controllerInfo, long foundTime) {
+      this.controllerInfo = controllerInfo;
+      this.foundTime = foundTime;
+    }
+  }
+
+  private class Session implements ControllerDiscoveryResponseHandler {
+    final AsyncControllerDiscoveryCallback callback;
+    final Set<String> reported = new HashSet<String>();
+    ControllerDiscoveryReceiver receiver;
+    ScheduledFuture<?> probeFuture;
+    ScheduledFuture<?> stopFuture;
+
+    Session(AsyncControllerDiscoveryCallback callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public void sendStartMessage() {
+    }
+
+    @Override
+    public void sendFinishMessage() {
+    }
+
+    @Override
+    public void sendSuccessMessage(byte[] responseBody) {
+      onResponse(this, responseBody);
+    }
+
+    @Override
+    public void sendFailureMessage(Exception ex) {
+    }
+  }
+
+  /**
+   * Get the shared discovery engine
+   */
+  public static synchronized ControllerDiscoveryEngine getDefault() {
+    if (defaultEngine == null) {
+      defaultEngine = new ControllerDiscoveryEngine();
+    }
+    return defaultEngine;
+  }
+
+  public synchronized void setMulticastAddress(String multicastAddress, int multicastPort) {
+    this.multicastAddress = multicastAddress;
+    this.multicastPort = multicastPort;
+  }
+
+  public synchronized String getMulticastAddress() {
+    return multicastAddress;
+  }
+
+  public synchronized int getMulticastPort() {
+    return multicastPort;
+  }
+
+  public synchronized void setProbePayload(byte[] probePayload) {
+    this.probePayload = probePayload;
+  }
+
+  /**
+   * Set the delays in milliseconds between consecutive probes; the last delay
+   * is repeated until discovery stops
+   */
+  public synchronized void setProbeIntervals(long[] probeIntervals) {
+    if (probeIntervals == null || probeIntervals.length == 0) {
+      throw new IllegalArgumentException("At least one probe interval must be specified");
+    }
+    this.probeIntervals = probeIntervals.clone();
+  }
+
+  public synchronized long[] getProbeIntervals() {
+    return probeIntervals.clone();
+  }
+
+  /**
+   * Set the network interfaces probes are sent from; an empty list uses the
+   * system default interface
+   */
+  public synchronized void setNetworkInterfaces(List<NetworkInterface> networkInterfaces) {
+    this.networkInterfaces = networkInterfaces != null ? new ArrayList<NetworkInterface>(
+            networkInterfaces) : Collections.<NetworkInterface> emptyList();
+  }
+
+  public synchronized List<NetworkInterface> getNetworkInterfaces() {
+    return Collections.unmodifiableList(networkInterfaces);
+  }
+
+  /**
+   * Set how long in milliseconds a discovered controller is considered
+   * current without being seen again
+   */
+  public synchronized void setTtl(long ttl) {
+    this.ttl = ttl;
+  }
+
+  public synchronized long getTtl() {
+    return ttl;
+  }
+
+  /**
+   * Number of multicast probes sent
+   */
+  public synchronized long getProbeCount() {
+    return probeCount;
+  }
+
+  /**
+   * Get the controllers found within the time to live
+   */
+  public synchronized List<ControllerInfo> getCachedControllers() {
+    purgeStale();
+    List<ControllerInfo> controllers = new ArrayList<ControllerInfo>(cache.size());
+    for (CachedController cached : cache.values()) {
+      controllers.add(cached.controllerInfo);
+    }
+    return controllers;
+  }
+
+  public synchronized void clearCache() {
+    cache.clear();
+  }
+
+  public synchronized boolean isDiscoveryRunning() {
+    return session != null;
+  }
+
+  /**
+   * Start discovery; cached controllers are reported immediately and new
+   * responses as they arrive. Does nothing if discovery is already running.
+   *
+   * @param callback
+   * @param tcpPort
+   *          port to receive controller responses on
+   * @param searchDuration
+   *          duration in milliseconds or null to run until
+   *          {@link #stopDiscovery()} is called
+   */
+  public void startDiscovery(AsyncControllerDiscoveryCallback callback, int tcpPort,
+          Integer searchDuration) {
+    Session newSession = new Session(callback);
+    List<ControllerInfo> cachedControllers;
+
+    synchronized (this) {
+      if (session != null) {
+        return;
+      }
+
+      try {
+        newSession.receiver = new ControllerDiscoveryReceiver(newSession, tcpPort);
+      } catch (IOException e) {
+        LOG.log(Level.INFO, "Failed to start discovery receiver", e);
+        callback.onStartDiscoveryFailed(ControllerResponseCode.UNKNOWN_ERROR);
+        return;
+      }
+
+      session = newSession;
+      cachedControllers = getCachedControllers();
+      for (ControllerInfo controllerInfo : cachedControllers) {
+        newSession.reported.add(controllerInfo.getUrl());
+      }
+
+      newSession.receiver.setName("ControllerDiscoveryReceiver");
+      newSession.receiver.setDaemon(true);
+      newSession.receiver.start();
+      scheduleProbe(newSession, 0, getInitialProbeDelay());
+
+      if (searchDuration != null) {
+        newSession.stopFuture = getScheduler().schedule(new Runnable() {
+          @Override
+          public void run() {
+            stopDiscovery();
+          }
+        }, searchDuration, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    callback.onDiscoveryStarted();
+    for (ControllerInfo controllerInfo : cachedControllers) {
+      callback.onControllerFound(controllerInfo);
+    }
+  }
+
+  /**
+   * Stop the running discovery session
+   */
+  public void stopDiscovery() {
+    Session stopped;
+
+    synchronized (this) {
+      stopped = session;
+      session = null;
+      if (stopped == null) {
+        return;
+      }
+
+      if (stopped.probeFuture != null) {
+        stopped.probeFuture.cancel(false);
+      }
+      if (stopped.stopFuture != null) {
+        stopped.stopFuture.cancel(false);
+      }
+    }
+
+    stopped.receiver.cancel();
+    stopped.callback.onDiscoveryStopped();
+  }
+
+  /**
+   * Stop discovery and release the socket and scheduler
+   */
+  public void shutdown() {
+    stopDiscovery();
+
+    synchronized (this) {
+      if (socket != null) {
+        socket.close();
+        socket = null;
+      }
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+        scheduler = null;
+      }
+    }
+  }
+
+  /**
+   * Probing starts straight away unless every cached controller is still
+   * current in which case it starts when the oldest entry becomes stale
+   */
+  private long getInitialProbeDelay() {
+    if (cache.isEmpty()) {
+      return 0;
+    }
+
+    long oldest = Long.MAX_VALUE;
+    for (CachedController cached : cache.values()) {
+      oldest = Math.min(oldest, cached.foundTime);
+    }
+    return Math.max(0, oldest + ttl - System.currentTimeMillis());
+  }
+
+  private void scheduleProbe(final Session probeSession, final int probeNumber, long delay) {
+    probeSession.probeFuture = getScheduler().schedule(new Runnable() {
+      @Override
+      public void run() {
+        long[] intervals;
+
+        synchronized (ControllerDiscoveryEngine.this) {
+          if (session != probeSession) {
+            return;
+          }
+          sendProbe();
+          intervals = probeIntervals;
+          scheduleProbe(probeSession, probeNumber + 1,
+                  intervals[Math.min(probeNumber, intervals.length - 1)]);
+        }
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void sendProbe() {
+    try {
+      if (socket == null) {
+        socket = new MulticastSocket();
+      }
+
+      DatagramPacket packet = new DatagramPacket(probePayload, probePayload.length,
+              InetAddress.getByName(multicastAddress), multicastPort);
+
+      if (networkInterfaces.isEmpty()) {
+        socket.send(packet);
+      } else {
+        for (NetworkInterface networkInterface : networkInterfaces) {
+          socket.setNetworkInterface(networkInterface);
+          socket.send(packet);
+        }
+      }
+      probeCount++;
+    } catch (IOException e) {
+      LOG.log(Level.INFO, "Failed to send discovery probe", e);
+      if (socket != null) {
+        // Socket may be unusable after a network change
+        socket.close();
+        socket = null;
+      }
+    }
+  }
+
+  private void onResponse(Session responseSession, byte[] responseBody) {
+    ControllerInfo controllerInfo;
+    try {
+      String response = new String(responseBody, "UTF-8");
+      if (response.indexOf("{") == 0) {
+        controllerInfo = JacksonProcessor.unMarshall(response, ControllerInfo.class);
+      } else {
+        // Assume v1 protocol where just the url is returned
+        controllerInfo = new ControllerInfo(response);
+      }
+    } catch (Exception e) {
+      LOG.log(Level.INFO, "Invalid discovery response", e);
+      return;
+    }
+
+    if (controllerInfo == null || controllerInfo.getUrl() == null) {
+      return;
+    }
+
+    synchronized (this) {
+      cache.put(controllerInfo.getUrl(),
+              new CachedController(controllerInfo, System.currentTimeMillis()));
+      if (session != responseSession || !responseSession.reported.add(controllerInfo.getUrl())) {
+        return;
+      }
+    }
+
+    responseSession.callback.onControllerFound(controllerInfo);
+  }
+
+  private void purgeStale() {
+    long now = System.currentTimeMillis();
+    Iterator<CachedController> it = cache.values().iterator();
+    while (it.hasNext()) {
+      if (now - it.next().foundTime >= ttl) {
+        it.remove();
+      }
+    }
+  }
+
+  private ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "ControllerDiscoveryEngine");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return scheduler;
+  }
+}
@@ -19,79 +19,193 @@
  */
 package org.openremote.console.controller.connector;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 
 /**
  * Controller auto discovery; this is a TCP server receiving responses from
  * Controllers.
  * 
+ * All connections are handled on this thread using a {@link Selector}; each
+ * response is read without blocking into a pooled buffer and reported as soon
+ * as the controller closes the connection. Duplicate responses are ignored.
+ * 
  * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
  * 
  */
 public class ControllerDiscoveryReceiver extends Thread {
+  private static final int READ_BUFFER_SIZE = 4096;
+  private static final int MAX_RESPONSE_SIZE = 64 * 1024;
+  private static final int MAX_POOLED_BUFFERS = 16;
+  // Many controllers respond at once
+  private static final int ACCEPT_BACKLOG = 256;
   private final ControllerDiscoveryResponseHandler responseHandler;
-  private ServerSocket serverSocket;
-  private boolean cancelled;
-  private List<String> responses = new ArrayList<String>();
+  private final ServerSocketChannel serverChannel;
+  private final Selector selector;
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+  private final ArrayDeque<ResponseBuffer> bufferPool = new ArrayDeque<ResponseBuffer>();
+  private volatile boolean cancelled;
+  private final Set<String> responses = new HashSet<String>();
+
+  /**
+   * Accumulates the bytes of a single response
+   */
+  private static class ResponseBuffer {
+    byte[] data = new byte[256];
+    int length;
+
+    boolean append(ByteBuffer buffer) {
+      int count = buffer.remaining();
+      if (length + count > MAX_RESPONSE_SIZE) {
+        return false;
+      }
+      if (length + count > data.length) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, length + count));
+      }
+      buffer.get(data, length, count);
+      length += count;
+      return true;
+    }
+  }
 
   public ControllerDiscoveryReceiver(ControllerDiscoveryResponseHandler responseHandler, int tcpPort)
           throws IOException {
     this.responseHandler = responseHandler;
-    serverSocket = new ServerSocket(tcpPort);
+    selector = Selector.open();
+    try {
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.socket().setReuseAddress(true);
+      serverChannel.socket().bind(new InetSocketAddress(tcpPort), ACCEPT_BACKLOG);
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      selector.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Get the TCP port the receiver is listening on
+   */
+  public int getLocalPort() {
+    return serverChannel.socket().getLocalPort();
   }
 
   @Override
   public void run() {
-    // Start TCP server and wait for incoming connections
+    // Wait for incoming connections and read the responses
     try {
       while (!cancelled) {
-          final Socket socket = serverSocket.accept();
-          new Thread() {
-              @Override
-              public void run() {
-                  try {
-                      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                      String inputLine;
-                      String response = "";
-                      while ((inputLine = in.readLine()) != null) {
-                          response += inputLine;
-                      }
-                      socket.close();
-                      processResponse(response);
-                  } catch (IOException e) {
-                      e.printStackTrace();
-                  }
-              }
-          }.start();
+        selector.select();
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+
+          if (!key.isValid()) {
+            continue;
+          }
+
+          if (key.isAcceptable()) {
+            accept();
+          } else if (key.isReadable()) {
+            read(key);
+          }
+        }
       }
     } catch (Exception e) {
+    } finally {
+      close();
     }
   }
 
   public void cancel() {
     cancelled = true;
-    if (serverSocket != null) {
-      try {
-        serverSocket.close();
-      } catch (IOException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-      }
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
     }
+    selector.wakeup();
     this.interrupt();
   }
 
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = serverChannel.accept()) != null) {
+      channel.configureBlocking(false);
+      ResponseBuffer buffer = bufferPool.poll();
+      channel.register(selector, SelectionKey.OP_READ, buffer != null ? buffer
+              : new ResponseBuffer());
+    }
+  }
+
+  private void read(SelectionKey key) {
+    SocketChannel channel = (SocketChannel) key.channel();
+    ResponseBuffer buffer = (ResponseBuffer) key.attachment();
+    int read;
+
+    try {
+      while ((read = channel.read(readBuffer)) > 0) {
+        readBuffer.flip();
+        boolean appended = buffer.append(readBuffer);
+        readBuffer.clear();
+        if (!appended) {
+          // Not a controller response
+          closeChannel(key, buffer);
+          return;
+        }
+      }
+    } catch (IOException e) {
+      readBuffer.clear();
+      closeChannel(key, buffer);
+      return;
+    }
+
+    if (read < 0) {
+      processResponse(buffer);
+      closeChannel(key, buffer);
+    }
+  }
+
+  private void processResponse(ResponseBuffer buffer) {
+    // Line breaks aren't part of the response
+    int length = 0;
+    for (int i = 0; i < buffer.length; i++) {
+      byte b = buffer.data[i];
+      if (b != '\n' && b != '\r') {
+        buffer.data[length++] = b;
+      }
+    }
+
+    if (length == 0) {
+      return;
+    }
+
+    String response;
+    try {
+      response = new String(buffer.data, 0, length, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      return;
+    }
+
+    processResponse(response);
+  }
+
   synchronized protected void processResponse(String response) {
     // Check response isn't empty or hasn't already been received
-    if (!response.isEmpty() && !responses.contains(response)) {
-      responses.add(response);
+    if (!response.isEmpty() && responses.add(response)) {
       try {
         responseHandler.sendSuccessMessage(response.getBytes("UTF-8"));
       } catch (UnsupportedEncodingException e) {
@@ -100,4 +214,34 @@ public class ControllerDiscoveryReceiver extends Thread {
       }
     }
   }
+
+  private void closeChannel(SelectionKey key, ResponseBuffer buffer) {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException e) {
+    }
+
+    buffer.length = 0;
+    if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+      bufferPool.add(buffer);
+    }
+  }
+
+  private void close() {
+    for (SelectionKey key : selector.keys()) {
+      try {
+        key.channel().close();
+      } catch (IOException e) {
+      }
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+    }
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+    }
+  }
 }
@@ -0,0 +1,227 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.openremote.console.controller.Controller;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Single pass streaming parser that extracts
+ * {@link org.openremote.console.controller.Controller.WidgetCommandInfo} from
+ * <code>controller.xml</code> without building a DOM. SAX is used rather than
+ * StAX as it is available on both Android and the JVM.
+ *
+ * Only the direct children of the first <code>components</code> element are
+ * considered; switch, slider and button components are supported.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+final class ControllerXmlParser {
+  private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+
+  private ControllerXmlParser() {
+  }
+
+  static List<Controller.WidgetCommandInfo<?>> parse(byte[] xml) throws Exception {
+    SAXParser parser;
+    synchronized (PARSER_FACTORY) {
+      parser = PARSER_FACTORY.newSAXParser();
+    }
+    ComponentHandler handler = new ComponentHandler();
+    parser.parse(new InputSource(new ByteArrayInputStream(xml)), handler);
+
+    if (!handler.componentsFound) {
+      throw new SAXException("No components element found");
+    }
+
+    return handler.widgetCommands;
+  }
+
+  private static class ComponentHandler extends DefaultHandler {
+    private final List<Controller.WidgetCommandInfo<?>> widgetCommands = new ArrayList<Controller.WidgetCommandInfo<?>>();
+    private boolean componentsFound;
+    private int depth;
+    private int componentsDepth = -1;
+
+    // Current component state
+    private String componentType;
+    private int componentDepth;
+    private Integer commandId1;
+    private Integer commandId2;
+    private Integer sensorId;
+    private String commandGroup;
+    private int commandGroupDepth;
+    private boolean commandGroupChildSeen;
+    private boolean onSeen;
+    private boolean offSeen;
+    private boolean setValueSeen;
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes)
+            throws SAXException {
+      depth++;
+      String name = getName(localName, qName);
+
+      if (componentsDepth < 0) {
+        if (!componentsFound && "components".equals(name)) {
+          componentsFound = true;
+          componentsDepth = depth;
+        }
+        return;
+      }
+
+      if (depth == componentsDepth + 1) {
+        startComponent(name);
+        return;
+      }
+
+      if (componentType == null) {
+        return;
+      }
+
+      // First element child of the first on/off/setValue element
+      if (commandGroup != null && !commandGroupChildSeen && depth == commandGroupDepth + 1) {
+        commandGroupChildSeen = true;
+        int ref = getRef(attributes);
+        if ("off".equals(commandGroup)) {
+          commandId2 = ref;
+        } else {
+          commandId1 = ref;
+        }
+      }
+
+      if ("button".equals(componentType)) {
+        if (commandId1 == null && "include".equals(name)) {
+          commandId1 = getRef(attributes);
+        }
+        return;
+      }
+
+      if (depth == componentDepth + 1 && sensorId == null && "include".equalsIgnoreCase(name)) {
+        sensorId = getRef(attributes);
+      }
+
+      if ("switch".equals(componentType)) {
+        if (!onSeen && "on".equals(name)) {
+          onSeen = true;
+          startCommandGroup(name);
+        } else if (!offSeen && "off".equals(name)) {
+          offSeen = true;
+          startCommandGroup(name);
+        }
+      } else if (!setValueSeen && "setValue".equals(name)) {
+        setValueSeen = true;
+        startCommandGroup(name);
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+      if (componentsDepth > 0) {
+        if (depth == componentsDepth) {
+          componentsDepth = -1;
+        } else if (depth == componentDepth && componentType != null) {
+          endComponent();
+        } else if (commandGroup != null && depth == commandGroupDepth) {
+          commandGroup = null;
+        }
+      }
+      depth--;
+    }
+
+    private void startComponent(String name) {
+      componentType = null;
+      if ("switch".equalsIgnoreCase(name)) {
+        componentType = "switch";
+      } else if ("slider".equalsIgnoreCase(name)) {
+        componentType = "slider";
+      } else if ("button".equalsIgnoreCase(name)) {
+        componentType = "button";
+      }
+
+      componentDepth = depth;
+      commandId1 = null;
+      commandId2 = null;
+      sensorId = null;
+      commandGroup = null;
+      onSeen = false;
+      offSeen = false;
+      setValueSeen = false;
+    }
+
+    private void startCommandGroup(String name) {
+      commandGroup = name;
+      commandGroupDepth = depth;
+      commandGroupChildSeen = false;
+    }
+
+    private void endComponent() throws SAXException {
+      Controller.WidgetCommandInfo<?> widgetInfo;
+
+      if ("switch".equals(componentType)) {
+        if (commandId1 == null || commandId2 == null || sensorId == null) {
+          throw new SAXException("Invalid switch component");
+        }
+        widgetInfo = new Controller.WidgetCommandInfo<Boolean>(Boolean.class);
+        widgetInfo.setCommandId2(commandId2);
+        widgetInfo.setSensorId(sensorId);
+      } else if ("slider".equals(componentType)) {
+        if (commandId1 == null || sensorId == null) {
+          throw new SAXException("Invalid slider component");
+        }
+        widgetInfo = new Controller.WidgetCommandInfo<Integer>(Integer.class);
+        widgetInfo.setSensorId(sensorId);
+      } else {
+        if (commandId1 == null) {
+          throw new SAXException("Invalid button component");
+        }
+        widgetInfo = new Controller.WidgetCommandInfo<Void>(null);
+      }
+
+      widgetInfo.setWidgetType(componentType);
+      widgetInfo.setCommandId1(commandId1);
+      widgetCommands.add(widgetInfo);
+      componentType = null;
+    }
+
+    private static String getName(String localName, String qName) {
+      return localName != null && localName.length() > 0 ? localName : qName;
+    }
+
+    private static int getRef(Attributes attributes) throws SAXException {
+      try {
+        return Integer.parseInt(attributes.getValue("ref"));
+      } catch (NumberFormatException e) {
+        throw new SAXException("Invalid ref attribute", e);
+      }
+    }
+  }
+}
@@ -19,16 +19,26 @@
  */
 package org.openremote.console.controller.connector;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.protocol.HttpContext;
+import org.openremote.console.controller.auth.Credentials;
+
+import android.content.Context;
 
 import com.loopj.android.http.AsyncHttpClient;
+import com.loopj.android.http.AsyncHttpRequest;
+import com.loopj.android.http.AsyncHttpResponseHandler;
 import com.loopj.android.http.ResponseHandlerInterface;
 
 /**
- * This is a custom implementation of the Loopj AsyncHttpClient to add
- * capability for controller discovery (this re-uses the existing Loopj
- * infrastructure).
+ * This is a custom implementation of the Loopj AsyncHttpClient that runs
+ * requests on a {@link RequestScheduler} according to their priority.
+ * 
+ * A client can be shared by several connectors (see {@link HttpTransport}) so
+ * the timeout and credentials are taken from the {@link RequestHandler} of
+ * each request rather than from the client wide settings.
  * 
  * Android Asynchronous Http Client Copyright (c) 2011 James Smith
  * <james@loopj.com> http://loopj.com
@@ -43,36 +53,110 @@ import com.loopj.android.http.ResponseHandlerInterface;
  * 
  */
 class CustomAsyncHttpClient extends AsyncHttpClient {
-  private ExecutorService threadPool;
-  private ControllerDiscoveryServer discoveryServer;
+  private final RequestScheduler scheduler;
+
+  /**
+   * Response handler that carries the per request settings
+   */
+  abstract static class RequestHandler extends AsyncHttpResponseHandler {
+    private final RequestScheduler.Priority priority;
+    private final int timeout;
+    private final Credentials credentials;
 
+    RequestHandler(RequestScheduler.Priority priority, int timeout, Credentials credentials) {
+      this.priority = priority;
+      this.timeout = timeout;
+      this.credentials = credentials;
+    }
+  }
+
+  /**
+   * Creates a client with its own scheduler
+   */
   public CustomAsyncHttpClient() {
-    threadPool = Executors.newFixedThreadPool(3);
+    this(new RequestScheduler());
   }
 
   /**
-   * Starts controller discovery
+   * Creates a client that uses the transport's scheduler and connection
+   * limits
    */
-  public void startDiscovery(int tcpPort, Integer discoveryDuration,
-                             final ControllerDiscoveryResponseHandler responseHandler) {
-    if (discoveryServer != null)
-      return;
+  // Loopj builds its DefaultHttpClient on the connection manager params API
+  // that httpclient 4.3 deprecates; the pool can only be sized through it.
+  // The deprecated types are fully qualified as imports can't be suppressed
+  @SuppressWarnings("deprecation")
+  public CustomAsyncHttpClient(HttpTransport transport) {
+    this(transport.getRequestScheduler());
+    // The connection manager shares the client's params so the limits apply
+    // to the pool
+    org.apache.http.params.HttpParams params = getHttpClient().getParams();
+    org.apache.http.conn.params.ConnManagerParams.setMaxTotalConnections(params,
+            transport.getMaxConnections());
+    org.apache.http.conn.params.ConnManagerParams.setMaxConnectionsPerRoute(params,
+            new org.apache.http.conn.params.ConnPerRouteBean(
+                    transport.getMaxConnectionsPerHost()));
+  }
 
-    discoveryServer = new ControllerDiscoveryServer(tcpPort, discoveryDuration, responseHandler);
-    threadPool.submit(discoveryServer);
+  private CustomAsyncHttpClient(RequestScheduler scheduler) {
+    this.scheduler = scheduler;
+    setThreadPool(scheduler);
+    addHeader("Accept", "application/json");
   }
 
   /**
-   * Force stop controller discovery if it is running
+   * Get the scheduler that runs this client's requests
    */
-  public void stopDiscovery() {
-    if (discoveryServer != null) {
-      discoveryServer.cancel();
+  public RequestScheduler getScheduler() {
+    return scheduler;
+  }
+
+  // Overrides the Loopj hook which is defined in terms of the deprecated
+  // DefaultHttpClient and per request HttpParams
+  @SuppressWarnings("deprecation")
+  @Override
+  protected AsyncHttpRequest newAsyncHttpRequest(
+          org.apache.http.impl.client.DefaultHttpClient client,
+          HttpContext httpContext, HttpUriRequest uriRequest, String contentType,
+          ResponseHandlerInterface responseHandler, Context context) {
+    RequestScheduler.Priority priority = null;
+
+    if (responseHandler instanceof RequestHandler) {
+      RequestHandler handler = (RequestHandler) responseHandler;
+      priority = handler.priority;
+
+      // Request params override the client params
+      org.apache.http.params.HttpParams params = uriRequest.getParams();
+      org.apache.http.params.HttpConnectionParams.setConnectionTimeout(params, handler.timeout);
+      org.apache.http.params.HttpConnectionParams.setSoTimeout(params, handler.timeout);
+
+      if (handler.credentials != null) {
+        uriRequest.addHeader(BasicScheme.authenticate(new UsernamePasswordCredentials(
+                handler.credentials.getUsername(), handler.credentials.getPassword()), "UTF-8",
+                false));
+      }
     }
-    discoveryServer = null;
+
+    return new PrioritizedAsyncHttpRequest(client, httpContext, uriRequest, responseHandler,
+            priority);
   }
 
-  public boolean isDiscoveryRunning() {
-    return discoveryServer != null;
+  // AsyncHttpRequest only accepts the deprecated AbstractHttpClient
+  @SuppressWarnings("deprecation")
+  private static class PrioritizedAsyncHttpRequest extends AsyncHttpRequest implements
+          RequestScheduler.Prioritized {
+    private final RequestScheduler.Priority priority;
+
+    PrioritizedAsyncHttpRequest(org.apache.http.impl.client.AbstractHttpClient client,
+            HttpContext context,
+            HttpUriRequest request, ResponseHandlerInterface responseHandler,
+            RequestScheduler.Priority priority) {
+      super(client, context, request, responseHandler);
+      this.priority = priority;
+    }
+
+    @Override
+    public RequestScheduler.Priority getPriority() {
+      return priority;
+    }
   }
 }
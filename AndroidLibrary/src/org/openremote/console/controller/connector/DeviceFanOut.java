@@ -0,0 +1,140 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.openremote.console.controller.DevicesResponse;
+import org.openremote.entities.controller.AsyncControllerCallback;
+import org.openremote.entities.controller.ControllerResponseCode;
+import org.openremote.entities.controller.Device;
+
+/**
+ * Fetches several devices with individual <code>GET_DEVICE</code> requests
+ * keeping at most <code>maxConcurrency</code> requests in flight; the
+ * callback is called once every device has either been retrieved or failed.
+ *
+ * Requests are started from a loop rather than from the completion callbacks
+ * so connectors that complete requests on the calling thread don't recurse
+ * once per device.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+class DeviceFanOut {
+  private final ControllerConnector connector;
+  private final List<String> deviceNames;
+  private final int maxConcurrency;
+  private final AsyncControllerCallback<DevicesResponse> callback;
+  private final Device[] devices;
+  private final ControllerResponseCode[] errors;
+  private int next;
+  private int inFlight;
+  private int completed;
+  private boolean dispatching;
+
+  DeviceFanOut(ControllerConnector connector, List<String> deviceNames, int maxConcurrency,
+          AsyncControllerCallback<DevicesResponse> callback) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("Max concurrency must be >= 1");
+    }
+    this.connector = connector;
+    // Each device is only requested once
+    this.deviceNames = new ArrayList<String>(new LinkedHashSet<String>(deviceNames));
+    this.maxConcurrency = maxConcurrency;
+    this.callback = callback;
+    devices = new Device[this.deviceNames.size()];
+    errors = new ControllerResponseCode[this.deviceNames.size()];
+  }
+
+  void start() {
+    if (deviceNames.isEmpty()) {
+      callback.onSuccess(new DevicesResponse());
+      return;
+    }
+    dispatch();
+  }
+
+  private void dispatch() {
+    synchronized (this) {
+      if (dispatching) {
+        // The running loop picks up the free slot
+        return;
+      }
+      dispatching = true;
+    }
+
+    while (true) {
+      final int index;
+
+      synchronized (this) {
+        if (next >= deviceNames.size() || inFlight >= maxConcurrency) {
+          dispatching = false;
+          return;
+        }
+        index = next++;
+        inFlight++;
+      }
+
+      connector.getDevice(deviceNames.get(index), new AsyncControllerCallback<Device>() {
+        @Override
+        public void onSuccess(Device device) {
+          onCompleted(index, device, null);
+        }
+
+        @Override
+        public void onFailure(ControllerResponseCode error) {
+          onCompleted(index, null, error != null ? error : ControllerResponseCode.UNKNOWN_ERROR);
+        }
+      });
+    }
+  }
+
+  private void onCompleted(int index, Device device, ControllerResponseCode error) {
+    boolean done;
+
+    synchronized (this) {
+      devices[index] = device;
+      errors[index] = error;
+      inFlight--;
+      done = ++completed == deviceNames.size();
+    }
+
+    if (done) {
+      callback.onSuccess(buildResponse());
+    } else {
+      dispatch();
+    }
+  }
+
+  private synchronized DevicesResponse buildResponse() {
+    DevicesResponse response = new DevicesResponse();
+    for (int i = 0; i < devices.length; i++) {
+      if (errors[i] != null) {
+        response.addError(deviceNames.get(i), errors[i]);
+      } else {
+        response.addDevice(deviceNames.get(i), devices[i]);
+      }
+    }
+    return response;
+  }
+}
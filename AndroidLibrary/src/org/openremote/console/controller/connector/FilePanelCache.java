@@ -0,0 +1,110 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.io.File;
+
+/**
+ * {@link PanelCache} that stores each payload in its own file in the
+ * specified directory so that panels survive an application restart. The
+ * total size of the cached payloads is bounded; the least recently used
+ * entries are evicted once the maximum size is exceeded.
+ *
+ * Payloads are read lazily on first use and then kept in memory so repeated
+ * lookups don't touch the disk.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class FilePanelCache implements PanelCache {
+  public static final long DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+  private static final String FILE_SUFFIX = ".panel";
+
+  private final FileStore store;
+
+  public FilePanelCache(File directory) {
+    this(directory, DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * @param directory
+   *          directory to store cached payloads in (created if it doesn't
+   *          exist)
+   * @param maxSize
+   *          maximum total size in bytes of the cached files
+   */
+  public FilePanelCache(File directory, long maxSize) {
+    store = new FileStore(directory, FILE_SUFFIX, maxSize, true);
+  }
+
+  public File getDirectory() {
+    return store.getDirectory();
+  }
+
+  public long getMaxSize() {
+    return store.getMaxSize();
+  }
+
+  /**
+   * Total size in bytes of the cached files
+   */
+  public long getSize() {
+    return store.getSize();
+  }
+
+  @Override
+  public Entry get(String key) {
+    FileStore.Record record = store.get(key);
+    return record != null ? new Entry(record.data, record.metadata[0], record.metadata[1]) : null;
+  }
+
+  @Override
+  public void put(String key, Entry entry) {
+    store.put(key, new FileStore.Record(new String[] { entry.getEntityTag(),
+        entry.getLastModified() }, entry.getData()));
+  }
+
+  @Override
+  public void remove(String key) {
+    store.remove(key);
+  }
+
+  @Override
+  public void clear() {
+    store.clear();
+  }
+
+  @Override
+  public long getHitCount() {
+    return store.getHitCount();
+  }
+
+  @Override
+  public long getMissCount() {
+    return store.getMissCount();
+  }
+
+  /**
+   * Number of entries evicted to keep the cache within its maximum size
+   */
+  public long getEvictionCount() {
+    return store.getEvictionCount();
+  }
+}
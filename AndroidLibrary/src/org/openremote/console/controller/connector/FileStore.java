@@ -0,0 +1,360 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Size bounded store of keyed payloads (with string metadata) kept one file
+ * per key in a directory; the least recently used files are evicted once the
+ * maximum size is exceeded. This is the disk tier shared by the panel and
+ * resource caches.
+ *
+ * The index is built lazily from the file headers the first time the store is
+ * used; payloads are only read on demand. The access order is kept in memory
+ * and persisted as the files' modified times, at most once a minute per file
+ * so hits don't each write to the disk. Instances are thread safe but do disk
+ * I/O, so they shouldn't be used on the UI thread.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+class FileStore {
+  private static final Logger LOG = Logger.getLogger(FileStore.class.getName());
+  private static final int FILE_VERSION = 1;
+  // Minimum time between updates of a file's modified time on access
+  private static final long TOUCH_INTERVAL = 60 * 1000;
+
+  private final File directory;
+  private final String fileSuffix;
+  private final long maxSize;
+  private final boolean retainRecords;
+  // Access ordered so iteration starts with the least recently used file
+  private final LinkedHashMap<String, StoredFile> index = new LinkedHashMap<String, StoredFile>(16,
+          0.75f, true);
+  private boolean loaded;
+  private long size;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * Stored payload and its metadata
+   */
+  static class Record {
+    final String[] metadata;
+    final byte[] data;
+
+    Record(String[] metadata, byte[] data) {
+      this.metadata = metadata;
+      this.data = data;
+    }
+  }
+
+  private static class StoredFile {
+    final File file;
+    final long size;
+    long touchedTime;
+    Record record;
+
+    StoredFile(File file, long size, long touchedTime, Record record) {
+      this.file = file;
+      this.size = size;
+      this.touchedTime = touchedTime;
+      this.record = record;
+    }
+  }
+
+  /**
+   * @param directory
+   *          directory to store files in (created if it doesn't exist)
+   * @param fileSuffix
+   *          suffix of the files owned by this store
+   * @param maxSize
+   *          maximum total size in bytes of the stored files
+   * @param retainRecords
+   *          keep records in memory once they have been read
+   */
+  FileStore(File directory, String fileSuffix, long maxSize, boolean retainRecords) {
+    if (directory == null) {
+      throw new IllegalArgumentException("Cache directory must be specified");
+    }
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Maximum cache size must be > 0");
+    }
+    this.directory = directory;
+    this.fileSuffix = fileSuffix;
+    this.maxSize = maxSize;
+    this.retainRecords = retainRecords;
+  }
+
+  File getDirectory() {
+    return directory;
+  }
+
+  long getMaxSize() {
+    return maxSize;
+  }
+
+  synchronized long getSize() {
+    load();
+    return size;
+  }
+
+  synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  synchronized long getMissCount() {
+    return missCount;
+  }
+
+  synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  synchronized Record get(String key) {
+    load();
+    StoredFile storedFile = index.get(key);
+    Record record = null;
+
+    if (storedFile != null) {
+      record = storedFile.record != null ? storedFile.record : read(storedFile.file, key);
+      if (record == null) {
+        removeStoredFile(key);
+      } else if (retainRecords) {
+        storedFile.record = record;
+      }
+    }
+
+    if (record == null) {
+      missCount++;
+      return null;
+    }
+
+    hitCount++;
+    // Persist the access order for the next time the index is loaded
+    long now = System.currentTimeMillis();
+    if (now - storedFile.touchedTime >= TOUCH_INTERVAL && storedFile.file.setLastModified(now)) {
+      storedFile.touchedTime = now;
+    }
+    return record;
+  }
+
+  synchronized void put(String key, Record record) {
+    load();
+    File file = new File(directory, getFileName(key));
+    File tempFile = new File(directory, file.getName() + ".tmp");
+
+    try {
+      write(tempFile, key, record);
+    } catch (IOException e) {
+      LOG.log(Level.INFO, "Failed to write cache file", e);
+      tempFile.delete();
+      return;
+    }
+
+    removeStoredFile(key);
+    if (!tempFile.renameTo(file)) {
+      tempFile.delete();
+      return;
+    }
+
+    StoredFile storedFile = new StoredFile(file, file.length(), file.lastModified(),
+            retainRecords ? record : null);
+    index.put(key, storedFile);
+    size += storedFile.size;
+    trimToSize();
+  }
+
+  synchronized void remove(String key) {
+    load();
+    removeStoredFile(key);
+  }
+
+  synchronized void clear() {
+    load();
+    for (StoredFile storedFile : index.values()) {
+      storedFile.file.delete();
+    }
+    index.clear();
+    size = 0;
+  }
+
+  private void removeStoredFile(String key) {
+    StoredFile storedFile = index.remove(key);
+    if (storedFile != null) {
+      storedFile.file.delete();
+      size -= storedFile.size;
+    }
+  }
+
+  private void trimToSize() {
+    Iterator<Map.Entry<String, StoredFile>> it = index.entrySet().iterator();
+    while (size > maxSize && it.hasNext()) {
+      StoredFile storedFile = it.next().getValue();
+      it.remove();
+      storedFile.file.delete();
+      size -= storedFile.size;
+      evictionCount++;
+    }
+  }
+
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      LOG.info("Failed to create cache directory: " + directory);
+      return;
+    }
+
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    // Each file's modified time is read once rather than on every comparison
+    List<StoredFile> storeFiles = new ArrayList<StoredFile>(files.length);
+    for (File file : files) {
+      if (file.getName().endsWith(fileSuffix + ".tmp")) {
+        file.delete();
+      } else if (file.getName().endsWith(fileSuffix)) {
+        storeFiles.add(new StoredFile(file, file.length(), file.lastModified(), null));
+      }
+    }
+    Collections.sort(storeFiles, new Comparator<StoredFile>() {
+      @Override
+      public int compare(StoredFile file1, StoredFile file2) {
+        return file1.touchedTime < file2.touchedTime ? -1
+                : (file1.touchedTime == file2.touchedTime ? 0 : 1);
+      }
+    });
+
+    for (StoredFile storedFile : storeFiles) {
+      String key = readKey(storedFile.file);
+      if (key == null) {
+        storedFile.file.delete();
+        continue;
+      }
+
+      index.put(key, storedFile);
+      size += storedFile.size;
+    }
+
+    trimToSize();
+  }
+
+  private String getFileName(String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+      StringBuilder sb = new StringBuilder(digest.length * 2 + fileSuffix.length());
+      for (byte b : digest) {
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+        sb.append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.append(fileSuffix).toString();
+    } catch (Exception e) {
+      return Integer.toHexString(key.hashCode()) + fileSuffix;
+    }
+  }
+
+  private static void write(File file, String key, Record record) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            file)));
+    try {
+      out.writeInt(FILE_VERSION);
+      out.writeUTF(key);
+      out.writeInt(record.metadata.length);
+      for (String value : record.metadata) {
+        out.writeBoolean(value != null);
+        if (value != null) {
+          out.writeUTF(value);
+        }
+      }
+      out.writeInt(record.data.length);
+      out.write(record.data);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static String readKey(File file) {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      return in.readInt() == FILE_VERSION ? in.readUTF() : null;
+    } catch (IOException e) {
+      return null;
+    } finally {
+      close(in);
+    }
+  }
+
+  private static Record read(File file, String key) {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != FILE_VERSION || !key.equals(in.readUTF())) {
+        return null;
+      }
+      String[] metadata = new String[in.readInt()];
+      for (int i = 0; i < metadata.length; i++) {
+        metadata[i] = in.readBoolean() ? in.readUTF() : null;
+      }
+      byte[] data = new byte[in.readInt()];
+      in.readFully(data);
+      return new Record(metadata, data);
+    } catch (IOException e) {
+      LOG.log(Level.INFO, "Failed to read cache file", e);
+      return null;
+    } finally {
+      close(in);
+    }
+  }
+
+  private static void close(DataInputStream in) {
+    if (in != null) {
+      try {
+        in.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+}
@@ -20,26 +20,33 @@
  */
 package org.openremote.console.controller.connector;
 
-import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import org.openremote.console.controller.AsyncControllerDiscoveryCallback;
 import org.openremote.console.controller.Controller;
 import org.openremote.console.controller.ControllerConnectionStatus;
+import org.openremote.console.controller.DevicesResponse;
+import org.openremote.console.controller.SensorIdSet;
+import org.openremote.console.controller.SensorValueMap;
 import org.openremote.console.controller.auth.Credentials;
 import org.openremote.entities.panel.Panel;
 import org.openremote.entities.panel.PanelInfo;
@@ -57,13 +64,6 @@ import org.openremote.entities.controller.ControllerResponseCode;
 import org.openremote.entities.controller.Device;
 import org.openremote.entities.controller.DeviceInfo;
 import org.openremote.entities.controller.PanelInfoList;
-import org.openremote.entities.controller.SensorStatus;
-import org.openremote.entities.controller.SensorStatusList;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
 /**
  * Base class for HTTP connector implementations. This uses the HTTP REST API
@@ -75,6 +75,18 @@ import org.xml.sax.InputSource;
 public abstract class HttpConnector implements ControllerConnector {
 
     private static final Logger LOG = Logger.getLogger(HttpConnector.class.getName());
+    // Runs cache lookups that may read the disk so they never block the
+    // caller, which is usually the UI thread
+    private static final Executor CACHE_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "HttpConnector-cache-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
 
     public enum RestCommand {
     GET_PANEL_LIST("rest/panels/"),
@@ -108,6 +120,28 @@ public abstract class HttpConnector implements ControllerConnector {
   protected URL controllerUrl;
   protected Credentials credentials;
   private int timeout;
+  // Last parsed controller XML and its validators for conditional requests
+  private List<Controller.WidgetCommandInfo<?>> widgetCommandInfos;
+  private String widgetCommandInfosEntityTag;
+  private String widgetCommandInfosLastModified;
+  private PanelCache panelCache;
+  private ResourceCache resourceCache;
+  private ControlCommandCoalescer commandCoalescer;
+  private long commandCoalescingWindow = -1;
+  private volatile ConnectorMetrics metrics = ConnectorMetrics.NO_OP;
+  private HttpTransport transport;
+  // In flight sensor monitor requests keyed by monitor uuid
+  private final Map<String, ControllerCallback> sensorPolls = new HashMap<String, ControllerCallback>();
+  // Callbacks waiting on an in progress resource download keyed by URI
+  private final Map<String, List<AsyncControllerCallback<ResourceDataResponse>>> pendingResources = new HashMap<String, List<AsyncControllerCallback<ResourceDataResponse>>>();
+  private static final ThreadLocal<SimpleDateFormat> HTTP_DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+    @Override
+    protected SimpleDateFormat initialValue() {
+      SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+      format.setTimeZone(TimeZone.getTimeZone("GMT"));
+      return format;
+    }
+  };
 
   protected HttpConnector() {
   }
@@ -153,7 +187,7 @@ public abstract class HttpConnector implements ControllerConnector {
     // Check URL is valid
     if (controllerUrl != null && !isConnected() && !connectInProgress) {
       connectInProgress = true;
-      doRequest(buildRequestUri(RestCommand.CONNECT), null, null, new ControllerCallback(
+      sendRequest(buildRequestUri(RestCommand.CONNECT), null, null, new ControllerCallback(
               RestCommand.CONNECT, new AsyncControllerCallback<ControllerConnectionStatus>() {
 
                 @Override
@@ -179,15 +213,91 @@ public abstract class HttpConnector implements ControllerConnector {
       return;
     }
 
-    doRequest(null, null, null, new ControllerCallback(RestCommand.DISCONNECT, null), timeout);
+    sendRequest(null, null, null, new ControllerCallback(RestCommand.DISCONNECT, null), timeout);
+
+    // The disconnect aborts the shared resource requests and coalesced
+    // commands without calling back so the callers waiting on them have to
+    // be told here
+    failPendingResources(ControllerResponseCode.DISCONNECTED);
+    ControlCommandCoalescer coalescer;
+    synchronized (this) {
+      coalescer = commandCoalescer;
+    }
+    if (coalescer != null) {
+      coalescer.cancelAll(ControllerResponseCode.DISCONNECTED);
+    }
+  }
+
+  /**
+   * Set the cache used to store panel list and panel layout payloads; cached
+   * payloads are revalidated with a conditional GET and served from the cache
+   * when they haven't changed
+   *
+   * @param panelCache
+   *          cache to use or null to disable panel caching
+   */
+  public synchronized void setPanelCache(PanelCache panelCache) {
+    this.panelCache = panelCache;
+  }
+
+  public synchronized PanelCache getPanelCache() {
+    return panelCache;
+  }
+
+  /**
+   * Set the cache used for resource data; cached resources are served without
+   * contacting the controller until their revalidate interval expires
+   *
+   * @param resourceCache
+   *          cache to use or null to disable resource caching
+   */
+  public synchronized void setResourceCache(ResourceCache resourceCache) {
+    this.resourceCache = resourceCache;
+  }
+
+  public synchronized ResourceCache getResourceCache() {
+    return resourceCache;
+  }
+
+  /**
+   * Set the sink that request latency, size, parse time and errors are
+   * reported to
+   *
+   * @param metrics
+   *          sink to use or null for {@link ConnectorMetrics#NO_OP} (the
+   *          default)
+   */
+  public void setMetrics(ConnectorMetrics metrics) {
+    this.metrics = metrics != null ? metrics : ConnectorMetrics.NO_OP;
+  }
+
+  public ConnectorMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Set the shared transport this connector's requests are sent through;
+   * must be set before the first request. Credentials and timeouts remain
+   * specific to this connector.
+   *
+   * @param transport
+   *          transport to use or null for a client owned by this connector
+   *          (the default)
+   */
+  public synchronized void setTransport(HttpTransport transport) {
+    this.transport = transport;
+  }
+
+  public synchronized HttpTransport getTransport() {
+    return transport;
   }
 
   @Override
   public void getPanelList(AsyncControllerCallback<List<PanelInfo>> callback) {
     // Check URL is valid
     if (controllerUrl != null) {
-      doRequest(buildRequestUri(RestCommand.GET_PANEL_LIST), null, null, new ControllerCallback(
-              RestCommand.GET_PANEL_LIST, callback), timeout);
+      doPanelRequest(buildRequestUri(RestCommand.GET_PANEL_LIST), RestCommand.GET_PANEL_LIST,
+              callback);
     }
   }
 
@@ -195,16 +305,49 @@ public abstract class HttpConnector implements ControllerConnector {
   public void getPanel(String panelName, AsyncControllerCallback<Panel> callback) {
     // Check URL is valid
     if (controllerUrl != null) {
-      doRequest(buildRequestUri(new String[] { panelName }, RestCommand.GET_PANEL_LAYOUT), null,
-              null, new ControllerCallback(RestCommand.GET_PANEL_LAYOUT, callback), timeout);
+      doPanelRequest(buildRequestUri(new String[] { panelName }, RestCommand.GET_PANEL_LAYOUT),
+              RestCommand.GET_PANEL_LAYOUT, callback);
     }
   }
 
+  private void doPanelRequest(final URI uri, final RestCommand command,
+          final AsyncControllerCallback<?> callback) {
+    final PanelCache cache = getPanelCache();
+
+    if (cache == null || uri == null) {
+      sendRequest(uri, null, null, new ControllerCallback(command, callback), timeout);
+      return;
+    }
+
+    // The lookup may read the cache directory so it runs off the caller's
+    // thread
+    CACHE_EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        PanelCacheRequest request = new PanelCacheRequest(cache, uri.toString());
+        Map<String, String> headers = null;
+
+        if (request.entry != null) {
+          headers = new HashMap<String, String>();
+          if (request.entry.getEntityTag() != null) {
+            headers.put("If-None-Match", request.entry.getEntityTag());
+          }
+          if (request.entry.getLastModified() != null) {
+            headers.put("If-Modified-Since", request.entry.getLastModified());
+          }
+        }
+
+        sendRequest(uri, headers, null, new ControllerCallback(command, callback, request),
+                timeout);
+      }
+    });
+  }
+
   @Override
   public void getDeviceList(AsyncControllerCallback<List<DeviceInfo>> callback) {
     // Check URL is valid
     if (controllerUrl != null) {
-      doRequest(buildRequestUri(RestCommand.GET_DEVICE_LIST), null, null, new ControllerCallback(
+      sendRequest(buildRequestUri(RestCommand.GET_DEVICE_LIST), null, null, new ControllerCallback(
               RestCommand.GET_DEVICE_LIST, callback), timeout);
     }
   }
@@ -213,60 +356,182 @@ public abstract class HttpConnector implements ControllerConnector {
   public void getDevice(String deviceName, AsyncControllerCallback<Device> callback) {
     // Check URL is valid
     if (controllerUrl != null) {
-      doRequest(buildRequestUri(new String[] { deviceName }, RestCommand.GET_DEVICE), null, null,
+      sendRequest(buildRequestUri(new String[] { deviceName }, RestCommand.GET_DEVICE), null, null,
               new ControllerCallback(RestCommand.GET_DEVICE, callback), timeout);
     }
   }
 
+  @Override
+  public void getDevices(List<String> deviceNames, int maxConcurrency,
+          AsyncControllerCallback<DevicesResponse> callback) {
+    if (controllerUrl == null) {
+      callback.onFailure(ControllerResponseCode.INVALID_URL);
+      return;
+    }
+    new DeviceFanOut(this, deviceNames, maxConcurrency, callback).start();
+  }
+
+  @SuppressWarnings("rawtypes")
   @Override
   public void getWidgetsCommandInfo(AsyncControllerCallback<List<Controller.WidgetCommandInfo>> callback) {
     if (controllerUrl != null) {
-      doRequest(buildRequestUri(RestCommand.GET_XML), null, null,
+      // Revalidate the previously parsed controller XML rather than
+      // downloading and parsing it again
+      Map<String, String> headers = null;
+      synchronized (this) {
+        if (widgetCommandInfos != null) {
+          headers = new HashMap<String, String>();
+          if (widgetCommandInfosEntityTag != null) {
+            headers.put("If-None-Match", widgetCommandInfosEntityTag);
+          }
+          if (widgetCommandInfosLastModified != null) {
+            headers.put("If-Modified-Since", widgetCommandInfosLastModified);
+          }
+        }
+      }
+      sendRequest(buildRequestUri(RestCommand.GET_XML), headers, null,
               new ControllerCallback(RestCommand.GET_XML, callback), timeout);
     }
-  };
+  }
 
   @Override
   public void monitorSensors(String uuid, List<Integer> sensorIds,
           AsyncControllerCallback<Map<Integer, String>> callback) {
+    monitorSensors(uuid, SensorIdSet.of(sensorIds), new SensorValueMap(sensorIds.size()),
+            new BoxedSensorValueCallback(callback));
+  }
+
+  @Override
+  public void monitorSensors(String uuid, SensorIdSet sensorIds, SensorValueMap sensorValues,
+          AsyncControllerCallback<SensorValueMap> callback) {
     // Check URL is valid
     if (controllerUrl != null) {
-      doRequest(
+      ControllerCallback controllerCallback = new ControllerCallback(
+              RestCommand.DO_SENSOR_POLLING, callback, sensorValues);
+      synchronized (sensorPolls) {
+        sensorPolls.put(uuid, controllerCallback);
+      }
+      sendRequest(
               buildRequestUri(
                       new String[] {
                           uuid,
-                          Arrays.toString(sensorIds.toArray()).replace(", ", ",").replace("]", "")
-                                  .replace("[", "")
+                          sensorIds.join(',')
                       },
                       RestCommand.DO_SENSOR_POLLING
               ),
               null,
               null,
-              new ControllerCallback(RestCommand.DO_SENSOR_POLLING, callback),
+              controllerCallback,
               55000
       );
     }
   }
 
+  @Override
+  public void cancelMonitorSensors(String uuid) {
+    ControllerCallback controllerCallback;
+    synchronized (sensorPolls) {
+      controllerCallback = sensorPolls.remove(uuid);
+    }
+    if (controllerCallback != null) {
+      controllerCallback.cancel();
+    }
+  }
+
   @Override
   public void getSensorValues(List<Integer> sensorIds,
           AsyncControllerCallback<Map<Integer, String>> callback) {
+    getSensorValues(SensorIdSet.of(sensorIds), new SensorValueMap(sensorIds.size()),
+            new BoxedSensorValueCallback(callback));
+  }
+
+  @Override
+  public void getSensorValues(SensorIdSet sensorIds, SensorValueMap sensorValues,
+          AsyncControllerCallback<SensorValueMap> callback) {
     // Check URL is valid
     if (controllerUrl != null) {
-      doRequest(
-              buildRequestUri(new String[] { Arrays.toString(sensorIds.toArray())
-                      .replace(", ", ",").replace("]", "").replace("[", "") },
+      sendRequest(
+              buildRequestUri(new String[] { sensorIds.join(',') },
                       RestCommand.GET_SENSOR_STATUS), null, null, new ControllerCallback(
-                      RestCommand.GET_SENSOR_STATUS, callback), timeout);
+                      RestCommand.GET_SENSOR_STATUS, callback, sensorValues), timeout);
+    }
+  }
+
+  /**
+   * Enable latest wins coalescing of control commands; while a command for a
+   * sender is in flight newer commands for that sender replace any queued
+   * command so only the latest value is sent. The callbacks of replaced
+   * commands receive the outcome of the command that replaced them.
+   *
+   * @param window
+   *          minimum interval in milliseconds between commands sent for the
+   *          same sender (0 to only coalesce while a command is in flight) or
+   *          a negative value to disable coalescing (the default)
+   */
+  public synchronized void setCommandCoalescingWindow(long window) {
+    commandCoalescingWindow = window;
+    if (commandCoalescer != null) {
+      commandCoalescer.setWindow(window);
     }
   }
 
+  public synchronized long getCommandCoalescingWindow() {
+    return commandCoalescingWindow;
+  }
+
+  /**
+   * Number of control commands that were superseded by a newer command for
+   * the same sender and never sent
+   */
+  public synchronized long getDroppedCommandCount() {
+    return commandCoalescer != null ? commandCoalescer.getDroppedCount() : 0;
+  }
+
+  /**
+   * Number of control commands sent on behalf of one or more superseded
+   * commands
+   */
+  public synchronized long getMergedCommandCount() {
+    return commandCoalescer != null ? commandCoalescer.getMergedCount() : 0;
+  }
+
   @Override
   public void sendControlCommand(ControlCommand command,
           AsyncControllerCallback<ControlCommandResponse> callback) {
+    ControlCommandCoalescer coalescer = null;
+
+    synchronized (this) {
+      if (commandCoalescingWindow >= 0) {
+        if (commandCoalescer == null) {
+          commandCoalescer = new ControlCommandCoalescer(new ControlCommandCoalescer.Sender() {
+            @Override
+            public void send(ControlCommand command,
+                    AsyncControllerCallback<ControlCommandResponse> callback) {
+              if (controllerUrl == null) {
+                // Must complete so the sender's queue isn't stalled
+                callback.onFailure(ControllerResponseCode.INVALID_URL);
+                return;
+              }
+              doSendControlCommand(command, callback);
+            }
+          }, commandCoalescingWindow);
+        }
+        coalescer = commandCoalescer;
+      }
+    }
+
+    if (coalescer != null) {
+      coalescer.send(command, callback);
+    } else {
+      doSendControlCommand(command, callback);
+    }
+  }
+
+  private void doSendControlCommand(ControlCommand command,
+          AsyncControllerCallback<ControlCommandResponse> callback) {
     // Check URL is valid
     if (controllerUrl != null) {
-      doRequest(
+      sendRequest(
               buildRequestUri(
                       new String[] { Integer.toString(command.getSenderId()), command.getData() },
                       RestCommand.SEND_CONTROL_COMMAND), null, null, new ControllerCallback(
@@ -299,7 +564,7 @@ public abstract class HttpConnector implements ControllerConnector {
       String content = parameter != null && !parameter.isEmpty() ? "{\"parameter\": \"" + parameter
               + "\"}" : null;
 
-      doRequest(uri, null, content, new ControllerCallback(RestCommand.SEND_NAMED_COMMAND,
+      sendRequest(uri, null, content, new ControllerCallback(RestCommand.SEND_NAMED_COMMAND,
               callback, command), timeout);
     }
   }
@@ -309,33 +574,181 @@ public abstract class HttpConnector implements ControllerConnector {
           AsyncControllerCallback<ResourceInfoDetails> callback) {
     // Check URL is valid
     if (controllerUrl != null) {
-      doRequest(buildRequestUri(new String[] { resourceName }, RestCommand.GET_RESOURCE_DETAILS),
+      ResourceCache cache = getResourceCache();
+      if (cache != null) {
+        // Only the memory tier is checked; a resource that is only on disk
+        // needs revalidating anyway
+        URI uri = buildRequestUri(new String[] { resourceName }, RestCommand.GET_RESOURCE_DATA);
+        ResourceCache.Resource cached = uri != null ? cache.getFromMemory(uri.toString()) : null;
+        if (cached != null && cache.isFresh(cached)) {
+          callback.onSuccess(cached.getDetails());
+          return;
+        }
+      }
+
+      sendRequest(buildRequestUri(new String[] { resourceName }, RestCommand.GET_RESOURCE_DETAILS),
               null, null, new ControllerCallback(RestCommand.GET_RESOURCE_DETAILS, callback, null),
               timeout);
     }
   }
 
   @Override
-  public void getResourceData(String resourceName,
+  public void getResourceData(final String resourceName,
           AsyncControllerCallback<ResourceDataResponse> callback) {
     // Check URL is valid
-    if (controllerUrl != null) {
-      doRequest(buildRequestUri(new String[] { resourceName }, RestCommand.GET_RESOURCE_DATA),
-              null, null, new ControllerCallback(RestCommand.GET_RESOURCE_DATA, callback,
-                      resourceName), timeout);
+    if (controllerUrl == null) {
+      return;
+    }
+
+    final URI uri = buildRequestUri(new String[] { resourceName }, RestCommand.GET_RESOURCE_DATA);
+    final ResourceCache cache = getResourceCache();
+
+    if (cache == null || uri == null) {
+      sendRequest(uri, null, null, new ControllerCallback(RestCommand.GET_RESOURCE_DATA, callback,
+              resourceName), timeout);
+      return;
+    }
+
+    final String key = uri.toString();
+    ResourceCache.Resource cached = cache.getFromMemory(key);
+    if (cached != null && cache.isFresh(cached)) {
+      callback.onSuccess(new ResourceDataResponse(resourceName, cached.getData(),
+              ControllerResponseCode.OK));
+      return;
+    }
+
+    // Concurrent requests for the same resource share one request
+    synchronized (pendingResources) {
+      List<AsyncControllerCallback<ResourceDataResponse>> callbacks = pendingResources.get(key);
+      if (callbacks != null) {
+        callbacks.add(callback);
+        return;
+      }
+      callbacks = new ArrayList<AsyncControllerCallback<ResourceDataResponse>>(2);
+      callbacks.add(callback);
+      pendingResources.put(key, callbacks);
+    }
+
+    if (cached != null) {
+      revalidateResource(uri, resourceName, cache, cached);
+    } else if (cache.hasDiskTier()) {
+      // Reading the disk tier mustn't block the caller's thread
+      CACHE_EXECUTOR.execute(new Runnable() {
+        @Override
+        public void run() {
+          ResourceCache.Resource stored = cache.get(key);
+          if (stored == null) {
+            downloadResource(uri, resourceName, cache);
+          } else if (cache.isFresh(stored)) {
+            completeResourceRequest(key, new ResourceDataResponse(resourceName, stored.getData(),
+                    ControllerResponseCode.OK), null);
+          } else {
+            revalidateResource(uri, resourceName, cache, stored);
+          }
+        }
+      });
+    } else {
+      downloadResource(uri, resourceName, cache);
+    }
+  }
+
+  /**
+   * Compare the resource details with the cached resource and only download
+   * the resource again if it has changed
+   */
+  private void revalidateResource(final URI uri, final String resourceName,
+          final ResourceCache cache, final ResourceCache.Resource cached) {
+    sendRequest(buildRequestUri(new String[] { resourceName }, RestCommand.GET_RESOURCE_DETAILS),
+            null, null, new ControllerCallback(RestCommand.GET_RESOURCE_DETAILS,
+                    new AsyncControllerCallback<ResourceInfoDetails>() {
+                      @Override
+                      public void onSuccess(ResourceInfoDetails result) {
+                        Date modifiedTime = result.getModifiedTime();
+                        String contentType = result.getContentType();
+                        if (modifiedTime != null && modifiedTime.equals(cached.getModifiedTime())
+                                && (contentType == null ? cached.getContentType() == null
+                                        : contentType.equals(cached.getContentType()))) {
+                          cache.markValidated(cached);
+                          completeResourceRequest(uri.toString(), new ResourceDataResponse(
+                                  resourceName, cached.getData(), ControllerResponseCode.OK), null);
+                        } else {
+                          downloadResource(uri, resourceName, cache);
+                        }
+                      }
+
+                      @Override
+                      public void onFailure(ControllerResponseCode error) {
+                        // Better to show the stale resource than nothing
+                        completeResourceRequest(uri.toString(), new ResourceDataResponse(
+                                resourceName, cached.getData(), ControllerResponseCode.OK), null);
+                      }
+                    }, null), timeout);
+  }
+
+  private void downloadResource(final URI uri, String resourceName, ResourceCache cache) {
+    sendRequest(uri, null, null, new ControllerCallback(RestCommand.GET_RESOURCE_DATA,
+            new AsyncControllerCallback<ResourceDataResponse>() {
+              @Override
+              public void onSuccess(ResourceDataResponse result) {
+                completeResourceRequest(uri.toString(), result, null);
+              }
+
+              @Override
+              public void onFailure(ControllerResponseCode error) {
+                completeResourceRequest(uri.toString(), null, error);
+              }
+            }, new ResourceCacheRequest(cache, uri.toString(), resourceName)), timeout);
+  }
+
+  private void completeResourceRequest(String key, ResourceDataResponse response,
+          ControllerResponseCode error) {
+    List<AsyncControllerCallback<ResourceDataResponse>> callbacks;
+    synchronized (pendingResources) {
+      callbacks = pendingResources.remove(key);
+    }
+
+    if (callbacks == null) {
+      return;
+    }
+
+    for (AsyncControllerCallback<ResourceDataResponse> callback : callbacks) {
+      if (error == null) {
+        callback.onSuccess(response);
+      } else {
+        callback.onFailure(error);
+      }
+    }
+  }
+
+  /**
+   * Fail every caller waiting on a shared resource request; used when the
+   * requests are aborted without calling back
+   */
+  protected void failPendingResources(ControllerResponseCode error) {
+    List<List<AsyncControllerCallback<ResourceDataResponse>>> pending;
+    synchronized (pendingResources) {
+      pending = new ArrayList<List<AsyncControllerCallback<ResourceDataResponse>>>(
+              pendingResources.values());
+      pendingResources.clear();
+    }
+
+    for (List<AsyncControllerCallback<ResourceDataResponse>> callbacks : pending) {
+      for (AsyncControllerCallback<ResourceDataResponse> callback : callbacks) {
+        callback.onFailure(error);
+      }
     }
   }
 
   @Override
   public void startDiscovery(AsyncControllerDiscoveryCallback callback, int tcpPort,
           Integer searchDuration) {
-    doRequest(null, null, null, new ControllerCallback(RestCommand.DISCOVERY, callback, tcpPort),
+    sendRequest(null, null, null, new ControllerCallback(RestCommand.DISCOVERY, callback, tcpPort),
             searchDuration);
   }
 
   @Override
   public void stopDiscovery() {
-    doRequest(null, null, null, new ControllerCallback(RestCommand.STOP_DISCOVERY, null), 0);
+    sendRequest(null, null, null, new ControllerCallback(RestCommand.STOP_DISCOVERY, null), 0);
   }
 
   // @Override
@@ -356,6 +769,8 @@ public abstract class HttpConnector implements ControllerConnector {
     RestCommand command;
     AsyncControllerCallback<?> callback;
     Object data;
+    private volatile boolean cancelled;
+    private Runnable canceller;
 
     public ControllerCallback(RestCommand command, AsyncControllerCallback<?> callback) {
       this(command, callback, null);
@@ -383,39 +798,180 @@ public abstract class HttpConnector implements ControllerConnector {
     public void setData(Object data) {
       this.data = data;
     }
+
+    /**
+     * Set how the request using this callback is aborted; if the callback has
+     * already been cancelled the request is aborted straight away
+     */
+    public void setCanceller(Runnable canceller) {
+      boolean abort;
+      synchronized (this) {
+        this.canceller = canceller;
+        abort = cancelled;
+      }
+      if (abort) {
+        canceller.run();
+      }
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * Aborts the request; the wrapped callback won't be called but the
+     * metrics sink is told of the abort
+     */
+    public void cancel() {
+      Runnable abort;
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        cancelled = true;
+        abort = canceller;
+      }
+      if (abort != null) {
+        abort.run();
+      }
+      if (callback instanceof MetricsCallback) {
+        ((MetricsCallback<?>) callback).cancel();
+      }
+    }
   };
 
-  // ---------------------------------------------------------------------
-  // HELPERS
-  // ---------------------------------------------------------------------
+  /**
+   * Reports the completion of a request to the metrics sink before passing
+   * the result on; only the first completion is reported as some callbacks
+   * are re-used (e.g. the connect callback is also told of a disconnect)
+   */
+  static class MetricsCallback<T> implements AsyncControllerCallback<T> {
+    private final ConnectorMetrics metrics;
+    private final RestCommand command;
+    private final AsyncControllerCallback<T> callback;
+    private final long startTime = System.nanoTime();
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile long responseTime;
+    private volatile long bytesIn;
+
+    MetricsCallback(ConnectorMetrics metrics, RestCommand command,
+            AsyncControllerCallback<T> callback) {
+      this.metrics = metrics;
+      this.command = command;
+      this.callback = callback;
+    }
 
-  private int getElementRefId(Element includeElement) {
-    return Integer.parseInt(includeElement.getAttribute("ref"));
-  }
+    void onResponse(byte[] responseData) {
+      responseTime = System.nanoTime();
+      bytesIn = responseData != null ? responseData.length : 0;
+    }
+
+    @Override
+    public void onSuccess(T result) {
+      complete(null);
+      callback.onSuccess(result);
+    }
 
-  private List<Element> getChildElements(Node node, String name) {
-    List<Element> elements = new ArrayList<Element>();
-    for (int i=0; i<node.getChildNodes().getLength(); i++) {
-      Node childNode = node.getChildNodes().item(i);
-      if (childNode.getNodeType() == Node.ELEMENT_NODE && childNode.getNodeName().equalsIgnoreCase(name)) {
-        elements.add((Element)childNode);
+    @Override
+    public void onFailure(ControllerResponseCode error) {
+      complete(error != null ? error : ControllerResponseCode.UNKNOWN_ERROR);
+      callback.onFailure(error);
+    }
+
+    /**
+     * Report that the request was aborted and the callback won't be invoked
+     */
+    void cancel() {
+      if (completed.compareAndSet(false, true)) {
+        metrics.onRequestCancelled(command, System.nanoTime() - startTime);
       }
     }
 
-    return elements;
+    private void complete(ControllerResponseCode error) {
+      if (!completed.compareAndSet(false, true)) {
+        return;
+      }
+      long now = System.nanoTime();
+      long response = responseTime;
+      metrics.onRequestCompleted(command, now - startTime, response != 0 ? now - response : 0,
+              bytesIn, error);
+    }
   }
 
-  private Element getFirstElement(Node node) {
-    NodeList nodes = node.getChildNodes();
-    if (nodes != null) {
-      for (int i=0; i< nodes.getLength(); i++) {
-        Node childNode = nodes.item(i);
-        if (childNode.getNodeType() == Node.ELEMENT_NODE) {
-          return (Element)childNode;
-        }
-      }
+  /**
+   * Adapts the primitive sensor value callbacks to the boxed API
+   */
+  private static class BoxedSensorValueCallback implements AsyncControllerCallback<SensorValueMap> {
+    private final AsyncControllerCallback<Map<Integer, String>> callback;
+
+    BoxedSensorValueCallback(AsyncControllerCallback<Map<Integer, String>> callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public void onFailure(ControllerResponseCode error) {
+      callback.onFailure(error);
+    }
+
+    @Override
+    public void onSuccess(SensorValueMap result) {
+      callback.onSuccess(result != null ? result.toMap() : null);
+    }
+  }
+
+  /**
+   * Panel cache state carried with a panel request
+   */
+  private static class PanelCacheRequest {
+    final PanelCache cache;
+    final String key;
+    final PanelCache.Entry entry;
+
+    PanelCacheRequest(PanelCache cache, String key) {
+      this.cache = cache;
+      this.key = key;
+      this.entry = cache.get(key);
     }
-    return null;
+  }
+
+  /**
+   * Resource cache state carried with a resource data request
+   */
+  private static class ResourceCacheRequest {
+    final ResourceCache cache;
+    final String key;
+    final String resourceName;
+
+    ResourceCacheRequest(ResourceCache cache, String key, String resourceName) {
+      this.cache = cache;
+      this.key = key;
+      this.resourceName = resourceName;
+    }
+  }
+
+  // ---------------------------------------------------------------------
+  // HELPERS
+  // ---------------------------------------------------------------------
+
+  /**
+   * Passes the request to {@link #doRequest}; when a metrics sink is set the
+   * callback is wrapped so the completion of the request is reported
+   */
+  @SuppressWarnings("unchecked")
+  protected void sendRequest(URI uri, Map<String, String> headers, String content,
+          ControllerCallback callback, Integer timeout) {
+    ConnectorMetrics requestMetrics = metrics;
+
+    // Local commands (disconnect, discovery) have no URI and aren't measured
+    if (requestMetrics != ConnectorMetrics.NO_OP && uri != null && callback.callback != null
+            && !(callback.callback instanceof MetricsCallback)) {
+      long bytesOut = uri.toString().length() + (content != null ? content.length() : 0);
+      callback.callback = new MetricsCallback<Object>(requestMetrics, callback.command,
+              (AsyncControllerCallback<Object>) callback.callback);
+      requestMetrics.onRequestStarted(callback.command, bytesOut);
+    }
+
+    doRequest(uri, headers, content, callback, timeout);
   }
 
   protected abstract void doRequest(URI uri, Map<String, String> headers, String content,
@@ -425,75 +981,66 @@ public abstract class HttpConnector implements ControllerConnector {
   @SuppressWarnings("unchecked")
   protected void handleResponse(ControllerCallback controllerCallback, int responseCode,
                                 Map<String, String> headers, byte[] responseData) {
+    if (controllerCallback.isCancelled()) {
+      return;
+    }
+
     RestCommand command = controllerCallback.command;
     AsyncControllerCallback<?> callback = controllerCallback.callback;
+
+    if (callback instanceof MetricsCallback) {
+      ((MetricsCallback<?>) callback).onResponse(responseData);
+    }
+
     Object data = controllerCallback.data;
     String responseStr = null;
 
-    if (command != RestCommand.GET_RESOURCE_DATA && command != RestCommand.GET_XML) {
-      try {
-        responseStr = responseData != null ? new String(responseData, "UTF-8") : null;
-      } catch (UnsupportedEncodingException e) {
-        e.printStackTrace();
-      }
+    // Sensor status responses are decoded straight from the bytes
+    if (command != RestCommand.GET_RESOURCE_DATA && command != RestCommand.GET_XML
+            && command != RestCommand.DO_SENSOR_POLLING && command != RestCommand.GET_SENSOR_STATUS) {
+      responseStr = getResponseString(responseData);
     }
 
     switch (command) {
-    case GET_XML:
+    case GET_XML: {
+      AsyncControllerCallback<List<Controller.WidgetCommandInfo<?>>> getXml = (AsyncControllerCallback<List<Controller.WidgetCommandInfo<?>>>) callback;
+
+      if (responseCode == 304) {
+        // Controller XML hasn't changed since it was last parsed
+        List<Controller.WidgetCommandInfo<?>> cached;
+        synchronized (this) {
+          cached = widgetCommandInfos;
+        }
+        if (cached != null) {
+          getXml.onSuccess(cached);
+          return;
+        }
+      }
+
       if (responseCode != 200) {
         LOG.log(Level.INFO, "Unsuccessful response: " + responseCode);
         callback.onFailure(ControllerResponseCode.UNKNOWN_ERROR);
         return;
       }
 
-      List<Controller.WidgetCommandInfo> widgetCommands = new ArrayList<Controller.WidgetCommandInfo>();
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-
+      List<Controller.WidgetCommandInfo<?>> widgetCommands;
       try {
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        Document doc = dBuilder.parse(new InputSource(new ByteArrayInputStream(responseData)));
-        NodeList components = doc.getElementsByTagName("components").item(0).getChildNodes();
-        for (int i=0; i<components.getLength(); i++) {
-          Node node = components.item(i);
-          if (node.getNodeType() != Node.ELEMENT_NODE) {
-            continue;
-          }
-
-          Element component = (Element)components.item(i);
-          String componentType = component.getNodeName();
-          NodeList childNodes = component.getChildNodes();
-          Controller.WidgetCommandInfo widgetInfo = null;
-
-          if ("switch".equalsIgnoreCase(componentType)) {
-            widgetInfo = new Controller.WidgetCommandInfo(Boolean.class);
-            widgetInfo.setWidgetType("switch");
-            widgetInfo.setCommandId1(getElementRefId(getFirstElement(component.getElementsByTagName("on").item(0))));
-            widgetInfo.setCommandId2(getElementRefId(getFirstElement(component.getElementsByTagName("off").item(0))));
-            widgetInfo.setSensorId(getElementRefId(getChildElements((Node)component, "include").get(0)));
-          } else if ("slider".equalsIgnoreCase(componentType)) {
-            widgetInfo = new Controller.WidgetCommandInfo(Integer.class);
-            widgetInfo.setWidgetType("slider");
-            widgetInfo.setCommandId1(getElementRefId(getFirstElement(component.getElementsByTagName("setValue").item(0))));
-            widgetInfo.setSensorId(getElementRefId(getChildElements((Node)component, "include").get(0)));
-          } else if ("button".equalsIgnoreCase(componentType)) {
-            widgetInfo = new Controller.WidgetCommandInfo(null);
-            widgetInfo.setWidgetType("button");
-            widgetInfo.setCommandId1(getElementRefId((Element)component.getElementsByTagName("include").item(0)));
-          }
-
-          if (widgetInfo != null) {
-            widgetCommands.add(widgetInfo);
-          }
-        }
+        widgetCommands = Collections.unmodifiableList(ControllerXmlParser.parse(responseData));
       } catch (Exception e) {
         LOG.log(Level.INFO, "XML processing error", e);
         callback.onFailure(ControllerResponseCode.CONTROLLER_XML_INVALID);
         return;
       }
 
-      AsyncControllerCallback<List<Controller.WidgetCommandInfo>> getXml = (AsyncControllerCallback<List<Controller.WidgetCommandInfo>>) callback;
+      synchronized (this) {
+        widgetCommandInfos = widgetCommands;
+        widgetCommandInfosEntityTag = getHeader(headers, "ETag");
+        widgetCommandInfosLastModified = getHeader(headers, "Last-Modified");
+      }
+
       getXml.onSuccess(widgetCommands);
       break;
+    }
     case CONNECT: {
       if (responseCode != 200) {
         processError(callback, responseStr);
@@ -506,6 +1053,15 @@ public abstract class HttpConnector implements ControllerConnector {
       break;
     }
     case GET_PANEL_LIST: {
+      if (responseCode == 304 && data instanceof PanelCacheRequest
+              && ((PanelCacheRequest) data).entry != null) {
+        // Panel list hasn't changed so use the cached payload
+        responseData = ((PanelCacheRequest) data).entry.getData();
+        responseStr = getResponseString(responseData);
+        responseCode = 200;
+        data = null;
+      }
+
       if (responseCode != 200) {
         processError(callback, responseStr);
         return;
@@ -519,10 +1075,21 @@ public abstract class HttpConnector implements ControllerConnector {
         processError(callback, responseStr);
         return;
       }
+      cachePanelResponse(data, headers, responseData);
       cPL.onSuccess(panelInfoList.getPanelInfos());
       break;
     }
     case GET_PANEL_LAYOUT: {
+      if (responseCode == 304 && data instanceof PanelCacheRequest
+              && ((PanelCacheRequest) data).entry != null) {
+        // Panel hasn't changed so parse the cached payload; the parsed panel
+        // isn't shared as panels are mutated when they are registered
+        responseData = ((PanelCacheRequest) data).entry.getData();
+        responseStr = getResponseString(responseData);
+        responseCode = 200;
+        data = null;
+      }
+
       if (responseCode != 200) {
         processError(callback, responseStr);
         return;
@@ -536,6 +1103,7 @@ public abstract class HttpConnector implements ControllerConnector {
         processError(callback, responseStr);
         return;
       }
+      cachePanelResponse(data, headers, responseData);
 
       cPanel.onSuccess(panel);
       break;
@@ -610,61 +1178,78 @@ public abstract class HttpConnector implements ControllerConnector {
         return;
       }
 
-      if (data == null || !(data instanceof String)) {
+      String resourceName = null;
+      if (data instanceof ResourceCacheRequest) {
+        ResourceCacheRequest request = (ResourceCacheRequest) data;
+        resourceName = request.resourceName;
+        if (responseData != null) {
+          request.cache.put(request.key, responseData, getHeader(headers, "Content-Type"),
+                  parseHttpDate(getHeader(headers, "Last-Modified")));
+        }
+      } else if (data instanceof String) {
+        resourceName = (String) data;
+      } else {
         callback.onFailure(ControllerResponseCode.UNKNOWN_ERROR);
+        return;
       }
 
       AsyncControllerCallback<ResourceDataResponse> resourceDataCallback = (AsyncControllerCallback<ResourceDataResponse>) callback;
-      resourceDataCallback.onSuccess(new ResourceDataResponse((String) data, responseData,
+      resourceDataCallback.onSuccess(new ResourceDataResponse(resourceName, responseData,
               ControllerResponseCode.OK));
       break;
     }
     case DO_SENSOR_POLLING: {
       if (responseCode != 200 && responseCode != 504) {
-        processError(callback, responseStr);
+        processError(callback, getResponseString(responseData));
         return;
       }
 
-      AsyncControllerCallback<Map<Integer, String>> pollingCallback = (AsyncControllerCallback<Map<Integer, String>>) callback;
+      AsyncControllerCallback<SensorValueMap> pollingCallback = (AsyncControllerCallback<SensorValueMap>) callback;
       if (responseCode == 504) {
         pollingCallback.onSuccess(null);
       } else {
+        SensorValueMap sensorValues = getSensorValueMap(data);
+        ControllerResponseCode error = null;
         try {
-          SensorStatusList sensorStatusList = JacksonProcessor.unMarshall(responseStr,
-                  SensorStatusList.class);
-          pollingCallback.onSuccess(getSensorValueMap(sensorStatusList.getStatuses()));
+          error = SensorStatusDecoder.decode(responseData, sensorValues);
         } catch (Exception e) {
-          try {
-            // Controller can return 200 response with JSON Controller error
-            // that contains 504 timeout
-            ControllerError error = JacksonProcessor.unMarshall(responseStr, ControllerError.class);
-            if (error.getResponse() == ControllerResponseCode.TIME_OUT) {
-              pollingCallback.onSuccess(null);
-            } else {
-              processError(callback, responseStr);
-            }
-          } catch (Exception ex) {
-            processError(callback, responseStr);
-          }
+          processError(callback, getResponseString(responseData));
+          return;
+        }
+
+        if (error == null) {
+          pollingCallback.onSuccess(sensorValues);
+        } else if (error == ControllerResponseCode.TIME_OUT) {
+          // Controller can return 200 response with JSON Controller error
+          // that contains 504 timeout
+          pollingCallback.onSuccess(null);
+        } else {
+          callback.onFailure(error);
         }
       }
       break;
     }
     case GET_SENSOR_STATUS: {
       if (responseCode != 200) {
-        processError(callback, responseStr);
+        processError(callback, getResponseString(responseData));
         return;
       }
 
-      AsyncControllerCallback<Map<Integer, String>> statusCallback = (AsyncControllerCallback<Map<Integer, String>>) callback;
-      SensorStatusList sensorStatusList = null;
+      AsyncControllerCallback<SensorValueMap> statusCallback = (AsyncControllerCallback<SensorValueMap>) callback;
+      SensorValueMap sensorValues = getSensorValueMap(data);
+      ControllerResponseCode error = null;
       try {
-        sensorStatusList = JacksonProcessor.unMarshall(responseStr, SensorStatusList.class);
+        error = SensorStatusDecoder.decode(responseData, sensorValues);
       } catch (Exception e) {
-        processError(callback, responseStr);
+        processError(callback, getResponseString(responseData));
         return;
       }
-      statusCallback.onSuccess(getSensorValueMap(sensorStatusList.getStatuses()));
+
+      if (error != null) {
+        callback.onFailure(error);
+        return;
+      }
+      statusCallback.onSuccess(sensorValues);
       break;
     }
     case LOGOUT: {
@@ -684,22 +1269,9 @@ public abstract class HttpConnector implements ControllerConnector {
 
       AsyncControllerCallback<ResourceInfoDetails> resourceCallback = (AsyncControllerCallback<ResourceInfoDetails>) callback;
 
-      String contentType = null;
-      Date modifiedTime = null;
-
       // Look at headers
-      for (Map.Entry<String, String> header : headers.entrySet()) {
-        if (header.getKey().equalsIgnoreCase("content-type")) {
-          contentType = header.getValue();
-        } else if (header.getKey().equalsIgnoreCase("last-modified")) {
-          try {
-            modifiedTime = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz").parse(header
-                    .getValue());
-          } catch (Exception e) {
-            // TODO: Log exception
-          }
-        }
-      }
+      String contentType = getHeader(headers, "Content-Type");
+      Date modifiedTime = parseHttpDate(getHeader(headers, "Last-Modified"));
 
       // Set data
       resourceCallback.onSuccess(new ResourceInfoDetails(modifiedTime, contentType));
@@ -740,16 +1312,74 @@ public abstract class HttpConnector implements ControllerConnector {
     }
   }
 
-  private Map<Integer, String> getSensorValueMap(List<SensorStatus> statuses) {
-    if (statuses == null) {
+  /**
+   * Stores a successfully parsed panel payload in the panel cache if the
+   * response can be revalidated
+   */
+  private void cachePanelResponse(Object data, Map<String, String> headers, byte[] responseData) {
+    if (!(data instanceof PanelCacheRequest) || responseData == null) {
+      return;
+    }
+
+    PanelCacheRequest request = (PanelCacheRequest) data;
+    String entityTag = getHeader(headers, "ETag");
+    String lastModified = getHeader(headers, "Last-Modified");
+
+    if (entityTag != null || lastModified != null) {
+      request.cache.put(request.key, new PanelCache.Entry(responseData, entityTag, lastModified));
+    } else if (request.entry != null) {
+      request.cache.remove(request.key);
+    }
+  }
+
+  /**
+   * Case insensitive response header lookup
+   */
+  protected static String getHeader(Map<String, String> headers, String name) {
+    if (headers == null) {
       return null;
     }
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      if (header.getKey() != null && header.getKey().equalsIgnoreCase(name)) {
+        return header.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Parse an HTTP date header value
+   *
+   * @return parsed date or null if the value is missing or invalid
+   */
+  protected static Date parseHttpDate(String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return HTTP_DATE_FORMAT.get().parse(value);
+    } catch (Exception e) {
+      LOG.log(Level.FINE, "Invalid HTTP date: " + value);
+      return null;
+    }
+  }
 
-    Map<Integer, String> valueMap = new HashMap<Integer, String>();
-    for (SensorStatus status : statuses) {
-      valueMap.put(status.getSensorId(), status.getValue());
+  private SensorValueMap getSensorValueMap(Object data) {
+    if (data instanceof SensorValueMap) {
+      SensorValueMap sensorValues = (SensorValueMap) data;
+      sensorValues.clear();
+      return sensorValues;
+    }
+    return new SensorValueMap();
+  }
+
+  private String getResponseString(byte[] responseData) {
+    try {
+      return responseData != null ? new String(responseData, "UTF-8") : null;
+    } catch (UnsupportedEncodingException e) {
+      e.printStackTrace();
+      return null;
     }
-    return valueMap;
   }
 
   protected URI buildRequestUri(RestCommand command) {
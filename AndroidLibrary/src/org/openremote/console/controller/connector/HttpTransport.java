@@ -0,0 +1,166 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport context that can be shared by the connectors of many
+ * {@link org.openremote.console.controller.Controller} instances so they use
+ * one bounded connection pool and one I/O executor instead of a pool and set
+ * of threads per controller.
+ *
+ * The transport only holds shared resources; credentials and timeouts remain
+ * connector state and are applied to each request individually so controllers
+ * sharing a transport don't see each other's settings.
+ *
+ * Connector implementations obtain their HTTP client through
+ * {@link #getClient(Class, ClientFactory)} so that one client of each type is
+ * created per transport.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class HttpTransport {
+  private static final Logger LOG = Logger.getLogger(HttpTransport.class.getName());
+  public static final int DEFAULT_MAX_CONNECTIONS = 64;
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+  /**
+   * Creates the HTTP client of a connector implementation for a transport
+   */
+  public interface ClientFactory<T> {
+    T createClient(HttpTransport transport);
+  }
+
+  private final int maxConnections;
+  private final int maxConnectionsPerHost;
+  private final RequestScheduler scheduler;
+  private final Map<Class<?>, Object> clients = new HashMap<Class<?>, Object>();
+  private boolean shutdown;
+
+  /**
+   * Creates a transport using the default connection limits
+   */
+  public HttpTransport() {
+    this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST);
+  }
+
+  /**
+   * @param maxConnections
+   *          maximum number of open connections across all controllers
+   * @param maxConnectionsPerHost
+   *          maximum number of open connections to a single controller
+   */
+  public HttpTransport(int maxConnections, int maxConnectionsPerHost) {
+    if (maxConnectionsPerHost < 1 || maxConnections < maxConnectionsPerHost) {
+      throw new IllegalArgumentException(
+              "Limits must satisfy 1 <= maxConnectionsPerHost <= maxConnections");
+    }
+    this.maxConnections = maxConnections;
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    scheduler = new RequestScheduler();
+
+    // Every controller holds a long poll open so sensor requests get the
+    // connections that aren't reserved for the other priority classes
+    int reserved = 0;
+    for (RequestScheduler.Priority priority : RequestScheduler.Priority.values()) {
+      if (priority != RequestScheduler.Priority.SENSOR) {
+        reserved += scheduler.getConcurrencyLimit(priority);
+      }
+    }
+    scheduler.setConcurrencyLimit(RequestScheduler.Priority.SENSOR,
+            Math.max(RequestScheduler.Priority.SENSOR.getDefaultLimit(), maxConnections - reserved));
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  /**
+   * Get the executor that runs the requests of every connector using this
+   * transport
+   */
+  public RequestScheduler getRequestScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Get the shared client of the specified type, creating it using the
+   * factory if this is the first request for it
+   *
+   * @throws IllegalStateException
+   *           if the transport has been shut down
+   */
+  public synchronized <T> T getClient(Class<T> type, ClientFactory<T> factory) {
+    if (shutdown) {
+      throw new IllegalStateException("Transport has been shut down");
+    }
+
+    Object client = clients.get(type);
+    if (client == null) {
+      client = factory.createClient(this);
+      clients.put(type, client);
+    }
+    return type.cast(client);
+  }
+
+  public synchronized boolean isShutdown() {
+    return shutdown;
+  }
+
+  /**
+   * Stops the executor and closes the shared clients; requests that are
+   * still queued will fail and the transport cannot be used afterwards
+   */
+  public void shutdown() {
+    Object[] closing;
+
+    synchronized (this) {
+      if (shutdown) {
+        return;
+      }
+      shutdown = true;
+      closing = clients.values().toArray();
+      clients.clear();
+    }
+
+    scheduler.shutdown();
+
+    for (Object client : closing) {
+      if (client instanceof Closeable) {
+        try {
+          ((Closeable) client).close();
+        } catch (IOException e) {
+          LOG.log(Level.WARNING, "Failed to close transport client", e);
+        }
+      }
+    }
+  }
+}
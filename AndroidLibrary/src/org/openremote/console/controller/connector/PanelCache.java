@@ -0,0 +1,91 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+/**
+ * Cache of raw panel payloads (panel list and panel layout JSON) along with
+ * the validators needed to revalidate them using a conditional GET. The
+ * {@link HttpConnector} sends <code>If-None-Match</code>/
+ * <code>If-Modified-Since</code> for cached payloads and serves the cached
+ * bytes when the controller responds with 304 Not Modified.
+ *
+ * Implementations must be thread safe.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public interface PanelCache {
+
+  /**
+   * Cached payload and its validators
+   */
+  public static class Entry {
+    private final byte[] data;
+    private final String entityTag;
+    private final String lastModified;
+
+    public Entry(byte[] data, String entityTag, String lastModified) {
+      this.data = data;
+      this.entityTag = entityTag;
+      this.lastModified = lastModified;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+
+    /**
+     * @return ETag response header value or null
+     */
+    public String getEntityTag() {
+      return entityTag;
+    }
+
+    /**
+     * @return Last-Modified response header value or null
+     */
+    public String getLastModified() {
+      return lastModified;
+    }
+  }
+
+  /**
+   * Get the cached entry for the key
+   *
+   * @return cached entry or null if the key isn't cached
+   */
+  Entry get(String key);
+
+  void put(String key, Entry entry);
+
+  void remove(String key);
+
+  void clear();
+
+  /**
+   * Number of lookups that found a cached entry
+   */
+  long getHitCount();
+
+  /**
+   * Number of lookups that didn't find a cached entry
+   */
+  long getMissCount();
+}
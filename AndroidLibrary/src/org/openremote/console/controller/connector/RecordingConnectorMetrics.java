@@ -0,0 +1,144 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openremote.console.controller.connector.ConnectorMetricsSnapshot.CommandMetrics;
+import org.openremote.console.controller.connector.HttpConnector.RestCommand;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * {@link ConnectorMetrics} sink that aggregates the values per
+ * {@link RestCommand} using atomic counters (no locking on the request path)
+ * so they can be read with {@link #getSnapshot()}. Subclasses can override
+ * the callbacks to forward values to another monitoring system as long as
+ * they call the super implementation.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class RecordingConnectorMetrics implements ConnectorMetrics {
+  private static final ControllerResponseCode[] RESPONSE_CODES = ControllerResponseCode.values();
+
+  private final CommandStats[] stats;
+
+  private static class CommandStats {
+    final AtomicLong started = new AtomicLong();
+    final AtomicLong completed = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong cancelled = new AtomicLong();
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicLong bytesIn = new AtomicLong();
+    final AtomicLong bytesOut = new AtomicLong();
+    final AtomicLong totalLatency = new AtomicLong();
+    final AtomicLong maxLatency = new AtomicLong();
+    final AtomicLong totalParseTime = new AtomicLong();
+    final AtomicLongArray latencyHistogram = new AtomicLongArray(
+            ConnectorMetricsSnapshot.getLatencyBucketCount());
+    final AtomicLongArray errors = new AtomicLongArray(RESPONSE_CODES.length);
+  }
+
+  public RecordingConnectorMetrics() {
+    RestCommand[] commands = RestCommand.values();
+    stats = new CommandStats[commands.length];
+    for (int i = 0; i < stats.length; i++) {
+      stats[i] = new CommandStats();
+    }
+  }
+
+  @Override
+  public void onRequestStarted(RestCommand command, long bytesOut) {
+    CommandStats commandStats = stats[command.ordinal()];
+    commandStats.started.incrementAndGet();
+    commandStats.inFlight.incrementAndGet();
+    commandStats.bytesOut.addAndGet(bytesOut);
+  }
+
+  @Override
+  public void onRequestCompleted(RestCommand command, long latency, long parseTime,
+          long bytesIn, ControllerResponseCode error) {
+    CommandStats commandStats = stats[command.ordinal()];
+    commandStats.inFlight.decrementAndGet();
+    commandStats.completed.incrementAndGet();
+    commandStats.bytesIn.addAndGet(bytesIn);
+    commandStats.totalLatency.addAndGet(latency);
+    commandStats.totalParseTime.addAndGet(parseTime);
+    commandStats.latencyHistogram.incrementAndGet(ConnectorMetricsSnapshot.getLatencyBucket(latency));
+
+    long max = commandStats.maxLatency.get();
+    while (latency > max && !commandStats.maxLatency.compareAndSet(max, latency)) {
+      max = commandStats.maxLatency.get();
+    }
+
+    if (error != null) {
+      commandStats.failed.incrementAndGet();
+      commandStats.errors.incrementAndGet(error.ordinal());
+    }
+  }
+
+  @Override
+  public void onRequestCancelled(RestCommand command, long latency) {
+    CommandStats commandStats = stats[command.ordinal()];
+    commandStats.inFlight.decrementAndGet();
+    commandStats.cancelled.incrementAndGet();
+  }
+
+  @Override
+  public ConnectorMetricsSnapshot getSnapshot() {
+    RestCommand[] commands = RestCommand.values();
+    Map<RestCommand, CommandMetrics> metrics = new EnumMap<RestCommand, CommandMetrics>(
+            RestCommand.class);
+
+    for (int i = 0; i < commands.length; i++) {
+      CommandStats commandStats = stats[i];
+      if (commandStats.started.get() == 0) {
+        continue;
+      }
+
+      long[] histogram = new long[commandStats.latencyHistogram.length()];
+      for (int j = 0; j < histogram.length; j++) {
+        histogram[j] = commandStats.latencyHistogram.get(j);
+      }
+
+      Map<ControllerResponseCode, Long> errors = new EnumMap<ControllerResponseCode, Long>(
+              ControllerResponseCode.class);
+      for (int j = 0; j < RESPONSE_CODES.length; j++) {
+        long count = commandStats.errors.get(j);
+        if (count > 0) {
+          errors.put(RESPONSE_CODES[j], count);
+        }
+      }
+
+      metrics.put(commands[i], new CommandMetrics(commandStats.completed.get(),
+              commandStats.failed.get(), commandStats.cancelled.get(),
+              Math.max(0, commandStats.inFlight.get()),
+              commandStats.bytesIn.get(), commandStats.bytesOut.get(),
+              commandStats.totalLatency.get(), commandStats.maxLatency.get(),
+              commandStats.totalParseTime.get(), histogram, errors));
+    }
+
+    return new ConnectorMetricsSnapshot(metrics, System.currentTimeMillis());
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for HTTP requests that dispatches by priority class so that user
+ * triggered commands don't wait behind bulk downloads. Each
+ * {@link Priority} has its own queue and concurrency limit and queued
+ * requests are started highest priority first whenever a slot becomes free.
+ *
+ * Tasks that don't implement {@link Prioritized} are run with
+ * {@link Priority#PANEL} priority.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class RequestScheduler extends AbstractExecutorService {
+  /**
+   * Request priority classes in descending priority order
+   */
+  public enum Priority {
+    /**
+     * User triggered commands
+     */
+    INTERACTIVE(2),
+    /**
+     * Sensor status and long polling
+     */
+    SENSOR(4),
+    /**
+     * Panel, layout, device and controller XML requests
+     */
+    PANEL(2),
+    /**
+     * Resource (image) downloads
+     */
+    BULK(2);
+
+    private final int defaultLimit;
+
+    private Priority(int defaultLimit) {
+      this.defaultLimit = defaultLimit;
+    }
+
+    public int getDefaultLimit() {
+      return defaultLimit;
+    }
+  }
+
+  /**
+   * Implemented by tasks that know their priority
+   */
+  public interface Prioritized {
+    Priority getPriority();
+  }
+
+  private static class QueuedTask {
+    final Runnable task;
+    final long queuedTime;
+
+    QueuedTask(Runnable task, long queuedTime) {
+      this.task = task;
+      this.queuedTime = queuedTime;
+    }
+  }
+
+  private static class PrioritizedFutureTask<T> extends FutureTask<T> implements Prioritized {
+    private final Priority priority;
+
+    PrioritizedFutureTask(Runnable runnable, T value, Priority priority) {
+      super(runnable, value);
+      this.priority = priority;
+    }
+
+    PrioritizedFutureTask(Callable<T> callable, Priority priority) {
+      super(callable);
+      this.priority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+      return priority;
+    }
+  }
+
+  private static final Priority[] PRIORITIES = Priority.values();
+  private final ExecutorService executor;
+  private final List<ArrayDeque<QueuedTask>> queues = new ArrayList<ArrayDeque<QueuedTask>>();
+  private final int[] limits = new int[PRIORITIES.length];
+  private final int[] running = new int[PRIORITIES.length];
+  private final long[] startedCount = new long[PRIORITIES.length];
+  private final long[] totalWaitTime = new long[PRIORITIES.length];
+  private final long[] maxWaitTime = new long[PRIORITIES.length];
+  private boolean shutdown;
+
+  public RequestScheduler() {
+    executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "RequestScheduler-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    for (Priority priority : PRIORITIES) {
+      queues.add(new ArrayDeque<QueuedTask>());
+      limits[priority.ordinal()] = priority.getDefaultLimit();
+    }
+  }
+
+  /**
+   * Set the maximum number of requests of the priority class that can run
+   * concurrently
+   */
+  public synchronized void setConcurrencyLimit(Priority priority, int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Concurrency limit must be >= 1");
+    }
+    limits[priority.ordinal()] = limit;
+    dispatch();
+  }
+
+  public synchronized int getConcurrencyLimit(Priority priority) {
+    return limits[priority.ordinal()];
+  }
+
+  /**
+   * Number of requests of the priority class waiting to run
+   */
+  public synchronized int getQueueDepth(Priority priority) {
+    return queues.get(priority.ordinal()).size();
+  }
+
+  /**
+   * Number of requests of the priority class currently running
+   */
+  public synchronized int getRunningCount(Priority priority) {
+    return running[priority.ordinal()];
+  }
+
+  /**
+   * Average time in milliseconds requests of the priority class waited in the
+   * queue before being started
+   */
+  public synchronized long getAverageWaitTime(Priority priority) {
+    long started = startedCount[priority.ordinal()];
+    return started > 0 ? totalWaitTime[priority.ordinal()] / started : 0;
+  }
+
+  /**
+   * Longest time in milliseconds a request of the priority class waited in
+   * the queue before being started
+   */
+  public synchronized long getMaxWaitTime(Priority priority) {
+    return maxWaitTime[priority.ordinal()];
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    Priority priority = command instanceof Prioritized ? ((Prioritized) command).getPriority()
+            : null;
+    if (priority == null) {
+      priority = Priority.PANEL;
+    }
+
+    synchronized (this) {
+      if (shutdown) {
+        throw new RejectedExecutionException("Scheduler has been shut down");
+      }
+      queues.get(priority.ordinal()).add(new QueuedTask(command, System.currentTimeMillis()));
+      dispatch();
+    }
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+    // Keep the priority of the wrapped task
+    Priority priority = runnable instanceof Prioritized ? ((Prioritized) runnable).getPriority()
+            : null;
+    return new PrioritizedFutureTask<T>(runnable, value, priority);
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+    Priority priority = callable instanceof Prioritized ? ((Prioritized) callable).getPriority()
+            : null;
+    return new PrioritizedFutureTask<T>(callable, priority);
+  }
+
+  private void dispatch() {
+    for (int i = 0; i < PRIORITIES.length; i++) {
+      ArrayDeque<QueuedTask> queue = queues.get(i);
+      while (!queue.isEmpty() && running[i] < limits[i]) {
+        QueuedTask queued = queue.poll();
+        long waitTime = System.currentTimeMillis() - queued.queuedTime;
+        running[i]++;
+        startedCount[i]++;
+        totalWaitTime[i] += waitTime;
+        if (waitTime > maxWaitTime[i]) {
+          maxWaitTime[i] = waitTime;
+        }
+        executor.execute(new Slot(i, queued.task));
+      }
+    }
+  }
+
+  private class Slot implements Runnable {
+    private final int index;
+    private final Runnable task;
+
+    Slot(int index, Runnable task) {
+      this.index = index;
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      try {
+        task.run();
+      } finally {
+        synchronized (RequestScheduler.this) {
+          running[index]--;
+          dispatch();
+          terminateIfDrained();
+        }
+      }
+    }
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    shutdown = true;
+    terminateIfDrained();
+  }
+
+  /**
+   * Queued requests still run after shutdown so the underlying executor is
+   * only shut down once the queues are empty
+   */
+  private void terminateIfDrained() {
+    if (!shutdown) {
+      return;
+    }
+    for (ArrayDeque<QueuedTask> queue : queues) {
+      if (!queue.isEmpty()) {
+        return;
+      }
+    }
+    executor.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    List<Runnable> pending = new ArrayList<Runnable>();
+    synchronized (this) {
+      shutdown = true;
+      for (ArrayDeque<QueuedTask> queue : queues) {
+        for (QueuedTask queued : queue) {
+          pending.add(queued.task);
+        }
+        queue.clear();
+      }
+    }
+    executor.shutdownNow();
+    return pending;
+  }
+
+  @Override
+  public synchronized boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return executor.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return executor.awaitTermination(timeout, unit);
+  }
+}
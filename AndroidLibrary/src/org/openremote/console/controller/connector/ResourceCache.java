@@ -0,0 +1,281 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.io.File;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openremote.entities.panel.ResourceInfoDetails;
+
+/**
+ * Two tier cache of resource data (images etc.) used by the
+ * {@link HttpConnector}; a memory LRU bounded by the total number of bytes
+ * sits in front of an optional size bounded disk store.
+ *
+ * Each resource is stored with its content type and modified time. A resource
+ * validated within the revalidate interval is served without contacting the
+ * controller; after that it is revalidated using the resource details (HEAD)
+ * and only downloaded again if it has changed. Resources promoted from the
+ * disk tier are always revalidated before first use.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ResourceCache {
+  public static final long DEFAULT_MAX_MEMORY_SIZE = 2 * 1024 * 1024;
+  public static final long DEFAULT_MAX_DISK_SIZE = 16 * 1024 * 1024;
+  public static final long DEFAULT_REVALIDATE_INTERVAL = 5 * 60 * 1000;
+  private static final String FILE_SUFFIX = ".resource";
+
+  private final long maxMemorySize;
+  private final FileStore diskStore;
+  // Access ordered so iteration starts with the least recently used resource
+  private final LinkedHashMap<String, Resource> memory = new LinkedHashMap<String, Resource>(16,
+          0.75f, true);
+  private long memorySize;
+  private long revalidateInterval = DEFAULT_REVALIDATE_INTERVAL;
+  private long memoryHitCount;
+  private long diskHitCount;
+  private long missCount;
+
+  /**
+   * Cached resource data and details
+   */
+  public static class Resource {
+    private final byte[] data;
+    private final String contentType;
+    private final Date modifiedTime;
+    private volatile long validatedTime;
+
+    Resource(byte[] data, String contentType, Date modifiedTime, long validatedTime) {
+      this.data = data;
+      this.contentType = contentType;
+      this.modifiedTime = modifiedTime;
+      this.validatedTime = validatedTime;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public Date getModifiedTime() {
+      return modifiedTime;
+    }
+
+    /**
+     * Time (ms since epoch) the resource was last confirmed to be up to date
+     * with the controller
+     */
+    public long getValidatedTime() {
+      return validatedTime;
+    }
+
+    public ResourceInfoDetails getDetails() {
+      return new ResourceInfoDetails(modifiedTime, contentType);
+    }
+  }
+
+  /**
+   * Creates a memory only cache
+   */
+  public ResourceCache(long maxMemorySize) {
+    this(maxMemorySize, null, 0);
+  }
+
+  /**
+   * @param maxMemorySize
+   *          maximum total size in bytes of the resources held in memory
+   * @param directory
+   *          directory for the disk tier or null for a memory only cache
+   * @param maxDiskSize
+   *          maximum total size in bytes of the disk tier
+   */
+  public ResourceCache(long maxMemorySize, File directory, long maxDiskSize) {
+    if (maxMemorySize < 0) {
+      throw new IllegalArgumentException("Maximum memory size must be >= 0");
+    }
+    this.maxMemorySize = maxMemorySize;
+    diskStore = directory != null ? new FileStore(directory, FILE_SUFFIX, maxDiskSize, false)
+            : null;
+  }
+
+  public synchronized void setRevalidateInterval(long revalidateInterval) {
+    this.revalidateInterval = revalidateInterval;
+  }
+
+  /**
+   * Get the period in milliseconds after validation during which a resource
+   * is served without contacting the controller
+   */
+  public synchronized long getRevalidateInterval() {
+    return revalidateInterval;
+  }
+
+  /**
+   * Get the cached resource; resources found in the disk tier are promoted to
+   * the memory tier. This may read the disk so it shouldn't be called on the
+   * UI thread.
+   *
+   * @return cached resource or null if it isn't cached
+   */
+  public synchronized Resource get(String key) {
+    Resource resource = memory.get(key);
+    if (resource != null) {
+      memoryHitCount++;
+      return resource;
+    }
+
+    FileStore.Record record = diskStore != null ? diskStore.get(key) : null;
+    if (record == null) {
+      missCount++;
+      return null;
+    }
+
+    diskHitCount++;
+    Date modifiedTime = null;
+    if (record.metadata[1] != null) {
+      try {
+        modifiedTime = new Date(Long.parseLong(record.metadata[1]));
+      } catch (NumberFormatException e) {
+      }
+    }
+    resource = new Resource(record.data, record.metadata[0], modifiedTime, 0);
+    putInMemory(key, resource);
+    return resource;
+  }
+
+  /**
+   * Get the resource if it is held in memory; unlike {@link #get(String)}
+   * this never reads the disk tier, so it is safe to call on the UI thread
+   *
+   * @return cached resource or null if it isn't held in memory
+   */
+  public synchronized Resource getFromMemory(String key) {
+    Resource resource = memory.get(key);
+    if (resource != null) {
+      memoryHitCount++;
+    } else if (diskStore == null) {
+      missCount++;
+    }
+    return resource;
+  }
+
+  /**
+   * Determine whether resources missing from memory may be found on disk
+   */
+  public boolean hasDiskTier() {
+    return diskStore != null;
+  }
+
+  /**
+   * Store a freshly downloaded resource in both tiers
+   *
+   * @return the cached resource
+   */
+  public synchronized Resource put(String key, byte[] data, String contentType, Date modifiedTime) {
+    Resource resource = new Resource(data, contentType, modifiedTime, System.currentTimeMillis());
+    putInMemory(key, resource);
+
+    if (diskStore != null) {
+      diskStore.put(key, new FileStore.Record(new String[] { contentType,
+          modifiedTime != null ? Long.toString(modifiedTime.getTime()) : null }, data));
+    }
+    return resource;
+  }
+
+  public synchronized void remove(String key) {
+    Resource resource = memory.remove(key);
+    if (resource != null) {
+      memorySize -= resource.data.length;
+    }
+    if (diskStore != null) {
+      diskStore.remove(key);
+    }
+  }
+
+  public synchronized void clear() {
+    memory.clear();
+    memorySize = 0;
+    if (diskStore != null) {
+      diskStore.clear();
+    }
+  }
+
+  /**
+   * Determine whether the resource can be served without revalidation
+   */
+  public boolean isFresh(Resource resource) {
+    return System.currentTimeMillis() - resource.validatedTime < getRevalidateInterval();
+  }
+
+  /**
+   * Record that the resource has been confirmed to be up to date
+   */
+  public void markValidated(Resource resource) {
+    resource.validatedTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Total size in bytes of the resources held in memory
+   */
+  public synchronized long getMemorySize() {
+    return memorySize;
+  }
+
+  public synchronized long getMemoryHitCount() {
+    return memoryHitCount;
+  }
+
+  public synchronized long getDiskHitCount() {
+    return diskHitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  private void putInMemory(String key, Resource resource) {
+    Resource previous = memory.remove(key);
+    if (previous != null) {
+      memorySize -= previous.data.length;
+    }
+
+    // Resources larger than the memory tier are only kept on disk
+    if (resource.data.length > maxMemorySize) {
+      return;
+    }
+
+    memory.put(key, resource);
+    memorySize += resource.data.length;
+
+    Iterator<Map.Entry<String, Resource>> it = memory.entrySet().iterator();
+    while (memorySize > maxMemorySize && it.hasNext()) {
+      memorySize -= it.next().getValue().data.length;
+      it.remove();
+    }
+  }
+}
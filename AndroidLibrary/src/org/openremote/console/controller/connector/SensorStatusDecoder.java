@@ -0,0 +1,156 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.io.IOException;
+
+import org.openremote.console.controller.SensorValueMap;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Decodes sensor status responses (<code>rest/status</code> and
+ * <code>rest/polling</code>) straight from the response bytes using the
+ * Jackson streaming API; sensor id/value pairs are written directly into the
+ * supplied map without creating intermediate status objects and a controller
+ * error envelope is detected in the same pass.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+final class SensorStatusDecoder {
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private SensorStatusDecoder() {
+  }
+
+  /**
+   * Decode the response data into the specified value map
+   *
+   * @param responseData
+   *          raw JSON response
+   * @param sensorValues
+   *          map that sensor values are added to (primitive keyed so the ids
+   *          aren't boxed)
+   * @return null if the response was a sensor status list otherwise the
+   *         {@link ControllerResponseCode} of the error envelope
+   * @throws IOException
+   *           if the response is not valid JSON or not a recognised response
+   */
+  static ControllerResponseCode decode(byte[] responseData, SensorValueMap sensorValues)
+          throws IOException {
+    if (responseData == null || responseData.length == 0) {
+      throw new IOException("Empty sensor status response");
+    }
+
+    JsonParser parser = JSON_FACTORY.createParser(responseData);
+
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new JsonParseException("Expected sensor status object", parser.getCurrentLocation());
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+
+        if ("status".equals(name)) {
+          if (token == JsonToken.START_ARRAY) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+              readStatus(parser, sensorValues);
+            }
+          } else if (token == JsonToken.START_OBJECT) {
+            // Single status isn't wrapped in an array
+            readStatus(parser, sensorValues);
+          } else {
+            parser.skipChildren();
+          }
+        } else if ("error".equals(name)) {
+          return readError(parser, token);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } finally {
+      parser.close();
+    }
+
+    return null;
+  }
+
+  private static void readStatus(JsonParser parser, SensorValueMap sensorValues)
+          throws IOException {
+    boolean hasId = false;
+    int id = 0;
+    String value = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+
+      if ("id".equals(name) || "@id".equals(name)) {
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+          id = parser.getIntValue();
+        } else {
+          try {
+            id = Integer.parseInt(parser.getText().trim());
+          } catch (NumberFormatException e) {
+            throw new JsonParseException("Invalid sensor id", parser.getCurrentLocation(), e);
+          }
+        }
+        hasId = true;
+      } else if ("content".equals(name)) {
+        value = token == JsonToken.VALUE_NULL ? null : parser.getText();
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    if (hasId) {
+      sensorValues.put(id, value);
+    }
+  }
+
+  private static ControllerResponseCode readError(JsonParser parser, JsonToken token)
+          throws IOException {
+    if (token != JsonToken.START_OBJECT) {
+      throw new JsonParseException("Invalid error response", parser.getCurrentLocation());
+    }
+
+    ControllerResponseCode code = ControllerResponseCode.UNKNOWN_ERROR;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      parser.nextToken();
+
+      if ("code".equals(name)) {
+        code = ControllerResponseCode.getResponseCode(parser.getValueAsInt());
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    return code != null ? code : ControllerResponseCode.UNKNOWN_ERROR;
+  }
+}
@@ -40,9 +40,12 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.openremote.console.controller.auth.Credentials;
 import org.openremote.entities.controller.AsyncControllerCallback;
 import org.openremote.entities.controller.ControllerResponseCode;
@@ -50,14 +53,44 @@ import org.openremote.entities.controller.ControllerResponseCode;
 /**
  * Test controller connector that does things synchronously for ease of testing
  * 
+ * When an {@link HttpTransport} is set the connector sends its requests
+ * through the transport's pooled client; the credentials are passed with each
+ * request so they aren't shared with other connectors.
+ * 
  * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
  */
 public class SingleThreadHttpConnector extends HttpConnector {
   private final RequestConfig config = RequestConfig.custom().setSocketTimeout(getTimeout())
           .setConnectionRequestTimeout(getTimeout()).setConnectTimeout(getTimeout()).build();
   private final CredentialsProvider creds = new BasicCredentialsProvider();
-  private final HttpClient client = HttpClients.custom().setDefaultCredentialsProvider(creds)
-          .setDefaultRequestConfig(config).build();
+  private HttpClient client;
+
+  private static final HttpTransport.ClientFactory<CloseableHttpClient> POOLED_CLIENT_FACTORY = new HttpTransport.ClientFactory<CloseableHttpClient>() {
+    @Override
+    public CloseableHttpClient createClient(HttpTransport transport) {
+      PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+      connectionManager.setMaxTotal(transport.getMaxConnections());
+      connectionManager.setDefaultMaxPerRoute(transport.getMaxConnectionsPerHost());
+      return HttpClients.custom().setConnectionManager(connectionManager).build();
+    }
+  };
+
+  private synchronized HttpClient getClient() {
+    if (client == null) {
+      HttpTransport transport = getTransport();
+      client = transport != null ? transport.getClient(CloseableHttpClient.class,
+              POOLED_CLIENT_FACTORY) : createClient(config);
+    }
+    return client;
+  }
+
+  /**
+   * Creates the client owned by this connector when no {@link HttpTransport}
+   * is set
+   */
+  protected HttpClient createClient(RequestConfig config) {
+    return HttpClients.custom().setDefaultRequestConfig(config).build();
+  }
 
   @Override
   protected void doRequest(URI uri, Map<String, String> headers, String content,
@@ -69,7 +102,9 @@ public class SingleThreadHttpConnector extends HttpConnector {
       doHead = true;
     }
 
-    if (callback.command == RestCommand.GET_XML) {
+    if (callback.command == RestCommand.GET_XML || callback.command == RestCommand.GET_PANEL_LIST
+            || callback.command == RestCommand.GET_PANEL_LAYOUT) {
+      // GET so that cached payloads can be revalidated
       doGet = true;
     }
 
@@ -82,6 +117,9 @@ public class SingleThreadHttpConnector extends HttpConnector {
       http = httpHead;
     } else if(doGet) {
         HttpGet httpGet = new HttpGet(uri);
+        if (callback.command != RestCommand.GET_XML) {
+            httpGet.addHeader("Accept", "application/json");
+        }
         httpGet.setConfig(RequestConfig.custom().setSocketTimeout(timeout)
             .setConnectionRequestTimeout(timeout).setConnectTimeout(timeout).build());
         if (headers != null) {
@@ -111,11 +149,21 @@ public class SingleThreadHttpConnector extends HttpConnector {
       http = httpPost;
     }
 
+    final HttpUriRequest request = http;
+    callback.setCanceller(new Runnable() {
+      @Override
+      public void run() {
+        request.abort();
+      }
+    });
+
     HttpResponse response = null;
     byte[] responseData = null;
 
     try {
-      response = client.execute(http);
+      HttpClientContext context = HttpClientContext.create();
+      context.setCredentialsProvider(creds);
+      response = getClient().execute(http, context);
 
       if (response.getEntity() != null) {
         InputStream is = response.getEntity().getContent();
@@ -137,6 +185,9 @@ public class SingleThreadHttpConnector extends HttpConnector {
         creds.clear();
       }
     } catch (Exception e) {
+      if (callback.isCancelled()) {
+        return;
+      }
       if (callback.command == RestCommand.DO_SENSOR_POLLING && e instanceof SocketTimeoutException) {
           if (callback.callback != null) {
               callback.callback.onSuccess(null);
@@ -159,6 +210,7 @@ public class SingleThreadHttpConnector extends HttpConnector {
 
   @Override
   public void setCredentials(Credentials credentials) {
+    this.credentials = credentials;
     creds.clear();
     if (credentials != null) {
       creds.setCredentials(new AuthScope("localhost", 8080), new UsernamePasswordCredentials(
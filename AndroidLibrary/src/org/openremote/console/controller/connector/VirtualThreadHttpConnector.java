@@ -0,0 +1,113 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Blocking connector for headless JVM deployments. Requests use the same
+ * blocking HTTP client code as {@link SingleThreadHttpConnector}, but each
+ * request runs on its own virtual thread (Java 21 and later). A sensor long
+ * poll therefore no longer blocks the caller and doesn't tie up a platform
+ * thread, so one process can hold thousands of concurrent polls.
+ *
+ * The runtime is detected reflectively because the library targets older
+ * Java versions. On runtimes without virtual threads, requests run on a
+ * shared cached pool of daemon threads instead.
+ *
+ * To keep connections bounded when many controllers are monitored, share
+ * an {@link HttpTransport} whose limits cover the number of controllers.
+ * Without a transport each connector owns a pool of
+ * {@link HttpTransport#DEFAULT_MAX_CONNECTIONS_PER_HOST} connections so the
+ * sensor long poll doesn't leave other requests queuing for the one
+ * connection left in the client's default pool.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class VirtualThreadHttpConnector extends SingleThreadHttpConnector {
+  private static final Logger LOG = Logger.getLogger(VirtualThreadHttpConnector.class.getName());
+  private static final ExecutorService VIRTUAL_EXECUTOR = createVirtualExecutor();
+  private static final ExecutorService EXECUTOR = VIRTUAL_EXECUTOR != null ? VIRTUAL_EXECUTOR
+          : Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "VirtualThreadHttpConnector-"
+                      + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  private static ExecutorService createVirtualExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      LOG.fine("Virtual threads aren't available; using platform threads");
+    } catch (Exception e) {
+      LOG.log(Level.WARNING, "Failed to create virtual thread executor", e);
+    }
+    return null;
+  }
+
+  /**
+   * Indicates whether requests run on virtual threads or, if this runtime
+   * doesn't support them, on platform threads
+   */
+  public static boolean isVirtual() {
+    return VIRTUAL_EXECUTOR != null;
+  }
+
+  @Override
+  protected HttpClient createClient(RequestConfig config) {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(HttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    connectionManager.setDefaultMaxPerRoute(HttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    return HttpClients.custom().setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(config).build();
+  }
+
+  @Override
+  protected void doRequest(final URI uri, final Map<String, String> headers, final String content,
+          final ControllerCallback callback, final Integer timeout) {
+    EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        VirtualThreadHttpConnector.super.doRequest(uri, headers, content, callback, timeout);
+      }
+    });
+  }
+}
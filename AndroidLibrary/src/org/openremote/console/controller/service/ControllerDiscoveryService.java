@@ -20,13 +20,16 @@
  */
 package org.openremote.console.controller.service;
 
+import java.util.List;
+
 import org.openremote.console.controller.AsyncControllerDiscoveryCallback;
-import org.openremote.console.controller.connector.AndroidHttpConnector;
-import org.openremote.console.controller.connector.ControllerConnector;
+import org.openremote.console.controller.connector.ControllerDiscoveryEngine;
+import org.openremote.entities.controller.ControllerInfo;
 
 /**
  * Controller discovery service for asynchronously discovering controllers
- * within the current local area network.
+ * within the current local area network. Controllers found are cached so
+ * restarting discovery reports known controllers immediately.
  * 
  * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
  * 
@@ -34,22 +37,7 @@ import org.openremote.console.controller.connector.ControllerConnector;
 public class ControllerDiscoveryService {
   public static final int DEFAULT_SEARCH_DURATION = 5000;
   public static final int DEFAULT_TCP_PORT = 2346;
-  private static Class<?> connectorClazz = AndroidHttpConnector.class;
-  private static ControllerConnector connector;
-  // private static final ControllerConnector connector = new
-  // AndroidHttpConnector();
-
-  static {
-    try {
-      connector = (ControllerConnector) connectorClazz.newInstance();
-    } catch (InstantiationException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    } catch (IllegalAccessException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
-  }
+  private static final ControllerDiscoveryEngine engine = ControllerDiscoveryEngine.getDefault();
 
   private ControllerDiscoveryService() {
 
@@ -91,7 +79,7 @@ public class ControllerDiscoveryService {
 
   private static void startDiscovery(AsyncControllerDiscoveryCallback callback, int tcpPort,
           Integer searchDuration) {
-    connector.startDiscovery(callback, tcpPort, searchDuration);
+    engine.startDiscovery(callback, tcpPort, searchDuration);
   }
 
   /**
@@ -100,7 +88,7 @@ public class ControllerDiscoveryService {
    * method of the callback supplied when discovery started will be called.
    */
   public static void stopDiscovery() {
-    connector.stopDiscovery();
+    engine.stopDiscovery();
   }
 
   /**
@@ -109,6 +97,26 @@ public class ControllerDiscoveryService {
    * @return is controller discovery currently running
    */
   public static boolean isDiscoveryRunning() {
-    return connector.isDiscoveryRunning();
+    return engine.isDiscoveryRunning();
+  }
+
+  /**
+   * Get the discovery engine used by this service; allows the probe schedule,
+   * network interfaces and cache time to live to be configured
+   * 
+   * @return discovery engine
+   */
+  public static ControllerDiscoveryEngine getDiscoveryEngine() {
+    return engine;
+  }
+
+  /**
+   * Get the controllers discovered within the cache time to live without
+   * starting discovery
+   * 
+   * @return known controllers
+   */
+  public static List<ControllerInfo> getKnownControllers() {
+    return engine.getCachedControllers();
   }
 }
@@ -0,0 +1,175 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests of the open addressing {@link IntObjectMap} and {@link SensorValueMap}
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class IntObjectMapTest {
+  // Expected size of 4 gives a capacity of 8
+  private static final int SMALL_CAPACITY = 8;
+
+  @Test
+  public void putGetRemove() {
+    IntObjectMap<String> map = new IntObjectMap<String>();
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertNull(map.put(1, "a"));
+    Assert.assertEquals("a", map.put(1, "b"));
+    Assert.assertNull(map.put(-5, null));
+
+    Assert.assertEquals(2, map.size());
+    Assert.assertEquals("b", map.get(1));
+    Assert.assertTrue(map.containsKey(-5));
+    Assert.assertNull(map.get(-5));
+    Assert.assertFalse(map.containsKey(2));
+
+    Assert.assertEquals("b", map.remove(1));
+    Assert.assertNull(map.remove(1));
+    Assert.assertEquals(1, map.size());
+  }
+
+  @Test
+  public void removeKeepsWrappedProbeChainIntact() {
+    // Keys that all hash to the last slot so their probe chain wraps around
+    List<Integer> keys = keysForSlot(SMALL_CAPACITY - 1, 4);
+    IntObjectMap<String> map = new IntObjectMap<String>(4);
+    for (int key : keys) {
+      map.put(key, "v" + key);
+    }
+
+    // Removing from the start and middle of the chain shifts the rest back
+    map.remove(keys.get(0));
+    map.remove(keys.get(2));
+    Assert.assertEquals(2, map.size());
+    Assert.assertEquals("v" + keys.get(1), map.get(keys.get(1)));
+    Assert.assertEquals("v" + keys.get(3), map.get(keys.get(3)));
+    Assert.assertFalse(map.containsKey(keys.get(0)));
+    Assert.assertFalse(map.containsKey(keys.get(2)));
+    Assert.assertEquals(2, count(map));
+  }
+
+  @Test
+  public void resizeKeepsEntries() {
+    IntObjectMap<String> map = new IntObjectMap<String>(4);
+    for (int i = 0; i < 1000; i++) {
+      map.put(1000 + i, Integer.toString(i));
+    }
+
+    Assert.assertEquals(1000, map.size());
+    Assert.assertEquals(1000, count(map));
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(Integer.toString(i), map.get(1000 + i));
+    }
+  }
+
+  @Test
+  public void matchesHashMap() {
+    Random random = new Random(42);
+    IntObjectMap<String> map = new IntObjectMap<String>(4);
+    Map<Integer, String> expected = new HashMap<Integer, String>();
+
+    for (int i = 0; i < 20000; i++) {
+      int key = random.nextInt(256) - 128;
+      if (random.nextInt(3) == 0) {
+        Assert.assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        String value = Integer.toString(i);
+        Assert.assertEquals(expected.put(key, value), map.put(key, value));
+      }
+      Assert.assertEquals(expected.size(), map.size());
+    }
+
+    Assert.assertEquals(expected, map.toMap());
+    for (int key = -128; key < 128; key++) {
+      Assert.assertEquals(expected.containsKey(key), map.containsKey(key));
+    }
+  }
+
+  @Test
+  public void clearKeepsMapUsable() {
+    IntObjectMap<String> map = new IntObjectMap<String>();
+    for (int i = 0; i < 100; i++) {
+      map.put(i, "v");
+    }
+    map.clear();
+
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertEquals(-1, map.nextSlot(-1));
+    Assert.assertFalse(map.containsKey(5));
+    map.put(5, "again");
+    Assert.assertEquals("again", map.get(5));
+  }
+
+  @Test
+  public void sensorValueMapBoxedConversion() {
+    Map<Integer, String> boxed = new HashMap<Integer, String>();
+    boxed.put(1001, "on");
+    boxed.put(1002, null);
+    boxed.put(null, "ignored");
+
+    SensorValueMap map = SensorValueMap.of(boxed);
+    Assert.assertEquals(2, map.size());
+    Assert.assertEquals("on", map.get(1001));
+    Assert.assertTrue(map.containsKey(1002));
+
+    boxed.remove(null);
+    Assert.assertEquals(boxed, map.toMap());
+    Assert.assertTrue(SensorValueMap.of(null).isEmpty());
+
+    SensorValueMap copy = new SensorValueMap();
+    copy.putAll(map);
+    Assert.assertEquals(boxed, copy.toMap());
+  }
+
+  /**
+   * Find keys whose hash puts them in the specified slot of a map with
+   * {@link #SMALL_CAPACITY}
+   */
+  static List<Integer> keysForSlot(int slot, int count) {
+    List<Integer> keys = new ArrayList<Integer>(count);
+    for (int key = 0; keys.size() < count; key++) {
+      if ((IntHashing.hash(key) & (SMALL_CAPACITY - 1)) == slot) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  private static int count(IntObjectMap<?> map) {
+    int count = 0;
+    for (int slot = map.nextSlot(-1); slot >= 0; slot = map.nextSlot(slot)) {
+      Assert.assertTrue(map.containsKey(map.keyAt(slot)));
+      count++;
+    }
+    return count;
+  }
+}
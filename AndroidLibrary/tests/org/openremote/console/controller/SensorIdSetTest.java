@@ -0,0 +1,121 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests of the open addressing {@link SensorIdSet}
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorIdSetTest {
+
+  @Test
+  public void addContainsRemove() {
+    SensorIdSet set = new SensorIdSet();
+    Assert.assertTrue(set.add(7));
+    Assert.assertFalse(set.add(7));
+    Assert.assertTrue(set.add(-1));
+
+    Assert.assertEquals(2, set.size());
+    Assert.assertTrue(set.contains(-1));
+    Assert.assertTrue(set.remove(7));
+    Assert.assertFalse(set.remove(7));
+    Assert.assertFalse(set.contains(7));
+    Assert.assertEquals(1, set.size());
+  }
+
+  @Test
+  public void removeKeepsWrappedProbeChainIntact() {
+    List<Integer> ids = IntObjectMapTest.keysForSlot(7, 4);
+    SensorIdSet set = new SensorIdSet(4);
+    for (int id : ids) {
+      set.add(id);
+    }
+
+    set.remove(ids.get(1));
+    set.remove(ids.get(0));
+    Assert.assertEquals(2, set.size());
+    Assert.assertTrue(set.contains(ids.get(2)));
+    Assert.assertTrue(set.contains(ids.get(3)));
+    Assert.assertEquals(2, set.toArray().length);
+  }
+
+  @Test
+  public void matchesHashSet() {
+    Random random = new Random(7);
+    SensorIdSet set = new SensorIdSet(4);
+    Set<Integer> expected = new HashSet<Integer>();
+
+    for (int i = 0; i < 20000; i++) {
+      int id = random.nextInt(256);
+      if (random.nextInt(3) == 0) {
+        Assert.assertEquals(expected.remove(id), set.remove(id));
+      } else {
+        Assert.assertEquals(expected.add(id), set.add(id));
+      }
+      Assert.assertEquals(expected.size(), set.size());
+    }
+
+    Assert.assertEquals(expected, new HashSet<Integer>(set.toList()));
+  }
+
+  @Test
+  public void resizeAndClear() {
+    SensorIdSet set = new SensorIdSet(1);
+    for (int i = 0; i < 500; i++) {
+      set.add(1000 + i);
+    }
+    Assert.assertEquals(500, set.size());
+    for (int i = 0; i < 500; i++) {
+      Assert.assertTrue(set.contains(1000 + i));
+    }
+
+    set.clear();
+    Assert.assertTrue(set.isEmpty());
+    Assert.assertEquals(-1, set.nextSlot(-1));
+    Assert.assertFalse(set.contains(1000));
+  }
+
+  @Test
+  public void boxedConversionAndJoin() {
+    SensorIdSet set = SensorIdSet.of(Arrays.asList(3, null, 3, 4));
+    Assert.assertEquals(2, set.size());
+    Assert.assertTrue(SensorIdSet.of(null).isEmpty());
+
+    String joined = set.join(',');
+    Assert.assertTrue("3,4".equals(joined) || "4,3".equals(joined));
+
+    SensorIdSet all = new SensorIdSet();
+    all.add(5);
+    all.addAll(set);
+    Assert.assertEquals(new HashSet<Integer>(Arrays.asList(3, 4, 5)),
+            new HashSet<Integer>(all.toList()));
+  }
+}
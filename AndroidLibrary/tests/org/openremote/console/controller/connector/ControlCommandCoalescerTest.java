@@ -0,0 +1,264 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openremote.entities.controller.AsyncControllerCallback;
+import org.openremote.entities.controller.ControlCommand;
+import org.openremote.entities.controller.ControlCommandResponse;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * Tests of the latest wins sending and in flight bookkeeping of the
+ * {@link ControlCommandCoalescer}
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ControlCommandCoalescerTest {
+
+  /**
+   * Records the sent commands; the test completes them
+   */
+  private static class RecordingSender implements ControlCommandCoalescer.Sender {
+    final LinkedBlockingQueue<Sent> sent = new LinkedBlockingQueue<Sent>();
+
+    @Override
+    public void send(ControlCommand command,
+            AsyncControllerCallback<ControlCommandResponse> callback) {
+      sent.add(new Sent(command, callback));
+    }
+
+    Sent next() throws InterruptedException {
+      Sent next = sent.poll(5, TimeUnit.SECONDS);
+      Assert.assertNotNull("Command not sent", next);
+      return next;
+    }
+  }
+
+  private static class Sent {
+    final ControlCommand command;
+    final AsyncControllerCallback<ControlCommandResponse> callback;
+
+    Sent(ControlCommand command, AsyncControllerCallback<ControlCommandResponse> callback) {
+      this.command = command;
+      this.callback = callback;
+    }
+
+    void succeed() {
+      callback.onSuccess(new ControlCommandResponse(command.getSenderId(),
+              ControllerResponseCode.OK));
+    }
+  }
+
+  private static class Outcome implements AsyncControllerCallback<ControlCommandResponse> {
+    final List<Object> outcomes = new ArrayList<Object>();
+
+    @Override
+    public synchronized void onSuccess(ControlCommandResponse result) {
+      outcomes.add(result);
+    }
+
+    @Override
+    public synchronized void onFailure(ControllerResponseCode error) {
+      outcomes.add(error);
+    }
+
+    synchronized List<Object> get() {
+      return new ArrayList<Object>(outcomes);
+    }
+  }
+
+  @Test
+  public void latestQueuedCommandWins() throws Exception {
+    RecordingSender sender = new RecordingSender();
+    ControlCommandCoalescer coalescer = new ControlCommandCoalescer(sender, 0);
+    Outcome first = new Outcome();
+    Outcome second = new Outcome();
+    Outcome third = new Outcome();
+
+    coalescer.send(new ControlCommand(1, "10"), first);
+    coalescer.send(new ControlCommand(1, "20"), second);
+    coalescer.send(new ControlCommand(1, "30"), third);
+
+    Sent sent = sender.next();
+    Assert.assertEquals("10", sent.command.getData());
+    Assert.assertTrue(sender.sent.isEmpty());
+    sent.succeed();
+
+    sent = sender.next();
+    Assert.assertEquals("30", sent.command.getData());
+    sent.succeed();
+
+    Assert.assertEquals(1, first.get().size());
+    Assert.assertEquals(1, second.get().size());
+    Assert.assertEquals(1, third.get().size());
+    Assert.assertSame(second.get().get(0), third.get().get(0));
+    Assert.assertEquals(1, coalescer.getDroppedCount());
+    Assert.assertEquals(1, coalescer.getMergedCount());
+    Assert.assertTrue(sender.sent.isEmpty());
+  }
+
+  @Test
+  public void sendersAreIndependent() throws Exception {
+    RecordingSender sender = new RecordingSender();
+    ControlCommandCoalescer coalescer = new ControlCommandCoalescer(sender, 0);
+
+    coalescer.send(new ControlCommand(1, "10"), null);
+    coalescer.send(new ControlCommand(2, "20"), null);
+
+    Assert.assertEquals(1, sender.next().command.getSenderId());
+    Assert.assertEquals(2, sender.next().command.getSenderId());
+  }
+
+  @Test
+  public void windowDelaysNextSend() throws Exception {
+    RecordingSender sender = new RecordingSender();
+    ControlCommandCoalescer coalescer = new ControlCommandCoalescer(sender, 200);
+
+    long start = System.currentTimeMillis();
+    coalescer.send(new ControlCommand(1, "10"), null);
+    sender.next().succeed();
+    coalescer.send(new ControlCommand(1, "20"), null);
+    coalescer.send(new ControlCommand(1, "30"), null);
+
+    Sent sent = sender.next();
+    Assert.assertEquals("30", sent.command.getData());
+    Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+  }
+
+  @Test
+  public void failureReleasesSender() throws Exception {
+    RecordingSender sender = new RecordingSender();
+    ControlCommandCoalescer coalescer = new ControlCommandCoalescer(sender, 0);
+    Outcome outcome = new Outcome();
+
+    coalescer.send(new ControlCommand(1, "10"), outcome);
+    coalescer.send(new ControlCommand(1, "20"), null);
+    sender.next().callback.onFailure(ControllerResponseCode.UNKNOWN_ERROR);
+
+    Assert.assertEquals(ControllerResponseCode.UNKNOWN_ERROR, outcome.get().get(0));
+    Assert.assertEquals("20", sender.next().command.getData());
+  }
+
+  @Test
+  public void throwingCallbackReleasesSender() throws Exception {
+    RecordingSender sender = new RecordingSender();
+    ControlCommandCoalescer coalescer = new ControlCommandCoalescer(sender, 0);
+
+    coalescer.send(new ControlCommand(1, "10"), new Outcome() {
+      @Override
+      public synchronized void onSuccess(ControlCommandResponse result) {
+        throw new IllegalStateException();
+      }
+    });
+    coalescer.send(new ControlCommand(1, "20"), null);
+
+    try {
+      sender.next().succeed();
+      Assert.fail("Callback exception not propagated");
+    } catch (IllegalStateException e) {
+    }
+
+    Assert.assertEquals("20", sender.next().command.getData());
+  }
+
+  @Test
+  public void throwingSenderReleasesSender() throws Exception {
+    final RecordingSender recorder = new RecordingSender();
+    ControlCommandCoalescer coalescer = new ControlCommandCoalescer(
+            new ControlCommandCoalescer.Sender() {
+              boolean failed;
+
+              @Override
+              public void send(ControlCommand command,
+                      AsyncControllerCallback<ControlCommandResponse> callback) {
+                if (!failed) {
+                  failed = true;
+                  throw new IllegalStateException();
+                }
+                recorder.send(command, callback);
+              }
+            }, 0);
+    Outcome outcome = new Outcome();
+
+    try {
+      coalescer.send(new ControlCommand(1, "10"), outcome);
+      Assert.fail("Sender exception not propagated");
+    } catch (IllegalStateException e) {
+    }
+
+    Assert.assertEquals(ControllerResponseCode.UNKNOWN_ERROR, outcome.get().get(0));
+    coalescer.send(new ControlCommand(1, "20"), null);
+    Assert.assertEquals("20", recorder.next().command.getData());
+  }
+
+  @Test
+  public void cancelAllFailsInFlightAndQueuedCommands() throws Exception {
+    RecordingSender sender = new RecordingSender();
+    ControlCommandCoalescer coalescer = new ControlCommandCoalescer(sender, 0);
+    Outcome inFlight = new Outcome();
+    Outcome queued = new Outcome();
+
+    coalescer.send(new ControlCommand(1, "10"), inFlight);
+    coalescer.send(new ControlCommand(1, "20"), queued);
+    Sent aborted = sender.next();
+
+    coalescer.cancelAll(ControllerResponseCode.DISCONNECTED);
+    Assert.assertEquals(ControllerResponseCode.DISCONNECTED, inFlight.get().get(0));
+    Assert.assertEquals(ControllerResponseCode.DISCONNECTED, queued.get().get(0));
+
+    // The sender is no longer in flight
+    coalescer.send(new ControlCommand(1, "30"), null);
+    Sent sent = sender.next();
+    Assert.assertEquals("30", sent.command.getData());
+
+    // A late response to the aborted command is ignored and doesn't release
+    // the command now in flight
+    aborted.succeed();
+    Assert.assertEquals(1, inFlight.get().size());
+    coalescer.send(new ControlCommand(1, "40"), null);
+    Assert.assertTrue(sender.sent.isEmpty());
+
+    sent.succeed();
+    Assert.assertEquals("40", sender.next().command.getData());
+  }
+
+  @Test
+  public void cancelAllCancelsScheduledSend() throws Exception {
+    RecordingSender sender = new RecordingSender();
+    ControlCommandCoalescer coalescer = new ControlCommandCoalescer(sender, 100);
+    Outcome scheduled = new Outcome();
+
+    coalescer.send(new ControlCommand(1, "10"), null);
+    sender.next().succeed();
+    coalescer.send(new ControlCommand(1, "20"), scheduled);
+
+    coalescer.cancelAll(ControllerResponseCode.DISCONNECTED);
+    Assert.assertEquals(ControllerResponseCode.DISCONNECTED, scheduled.get().get(0));
+    Assert.assertNull(sender.sent.poll(300, TimeUnit.MILLISECONDS));
+  }
+}
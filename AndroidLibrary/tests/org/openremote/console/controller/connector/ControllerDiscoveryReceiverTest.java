@@ -0,0 +1,147 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Local test of the {@link ControllerDiscoveryReceiver} using simulated
+ * controllers that respond to a discovery request over TCP; no network or
+ * real controller is required.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ControllerDiscoveryReceiverTest {
+  private static final int RESPONDER_COUNT = 500;
+  private static final int RESPONDER_THREADS = 32;
+
+  private ControllerDiscoveryReceiver receiver;
+  private final Set<String> received = Collections.synchronizedSet(new HashSet<String>());
+  private volatile int receivedCount;
+  private CountDownLatch latch;
+
+  @Before
+  public void setUp() throws Exception {
+    latch = new CountDownLatch(RESPONDER_COUNT);
+    receiver = new ControllerDiscoveryReceiver(new ControllerDiscoveryResponseHandler() {
+      @Override
+      public void sendStartMessage() {
+      }
+
+      @Override
+      public void sendFinishMessage() {
+      }
+
+      @Override
+      public void sendSuccessMessage(byte[] responseBody) {
+        try {
+          received.add(new String(responseBody, "UTF-8"));
+        } catch (Exception e) {
+          Assert.fail(e.getMessage());
+        }
+        receivedCount++;
+        latch.countDown();
+      }
+
+      @Override
+      public void sendFailureMessage(Exception ex) {
+      }
+    }, 0);
+    receiver.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    receiver.cancel();
+    receiver.join(5000);
+  }
+
+  @Test
+  public void manyResponders() throws Exception {
+    final int port = receiver.getLocalPort();
+    int threadsBefore = Thread.activeCount();
+    ExecutorService responders = Executors.newFixedThreadPool(RESPONDER_THREADS);
+
+    // Every simulated controller responds twice to check duplicates are
+    // ignored; responses are split over several writes
+    for (int i = 0; i < RESPONDER_COUNT * 2; i++) {
+      final int id = i % RESPONDER_COUNT;
+      responders.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            OutputStream out = socket.getOutputStream();
+            out.write(("http://10.0." + (id / 250) + "." + (id % 250)).getBytes("UTF-8"));
+            out.flush();
+            out.write(":8688/controller/\n".getBytes("UTF-8"));
+            out.flush();
+            socket.close();
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+    }
+
+    responders.shutdown();
+    Assert.assertTrue(responders.awaitTermination(30, TimeUnit.SECONDS));
+    Assert.assertTrue("Not all responses received", latch.await(30, TimeUnit.SECONDS));
+
+    // Give any duplicates a chance to arrive
+    Thread.sleep(200);
+    Assert.assertEquals(RESPONDER_COUNT, receivedCount);
+    Assert.assertEquals(RESPONDER_COUNT, received.size());
+    Assert.assertTrue(received.contains("http://10.0.1.0:8688/controller/"));
+
+    // Receiver shouldn't spawn a thread per connection
+    Assert.assertTrue(Thread.activeCount() <= threadsBefore + 1);
+  }
+
+  @Test
+  public void oversizedResponseIgnored() throws Exception {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), receiver.getLocalPort());
+    OutputStream out = socket.getOutputStream();
+    try {
+      out.write(new byte[128 * 1024]);
+    } catch (Exception e) {
+      // Receiver may close the connection before everything is written
+    }
+    socket.close();
+
+    Thread.sleep(200);
+    Assert.assertEquals(0, receivedCount);
+  }
+}
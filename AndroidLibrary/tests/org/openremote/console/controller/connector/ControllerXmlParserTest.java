@@ -0,0 +1,143 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openremote.console.controller.Controller;
+import org.xml.sax.SAXException;
+
+/**
+ * Tests of the {@link ControllerXmlParser} against hand written
+ * <code>controller.xml</code> fragments
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ControllerXmlParserTest {
+
+  @Test
+  public void switchSliderAndButton() throws Exception {
+    List<Controller.WidgetCommandInfo<?>> infos = parse("<openremote><components>"
+            + "<switch id=\"1\"><include type=\"sensor\" ref=\"10\"/>"
+            + "<on><include type=\"command\" ref=\"11\"/></on>"
+            + "<off><include type=\"command\" ref=\"12\"/></off></switch>"
+            + "<slider id=\"2\"><include type=\"sensor\" ref=\"20\"/>"
+            + "<setValue><include type=\"command\" ref=\"21\"/></setValue></slider>"
+            + "<button id=\"3\"><include type=\"command\" ref=\"31\"/></button>"
+            + "</components></openremote>");
+
+    Assert.assertEquals(3, infos.size());
+
+    Controller.WidgetCommandInfo<?> info = infos.get(0);
+    Assert.assertEquals("switch", info.getWidgetType());
+    Assert.assertEquals(Boolean.class, info.getDataType());
+    Assert.assertEquals(10, info.getSensorId());
+    Assert.assertEquals(11, info.getCommandId1());
+    Assert.assertEquals(12, info.getCommandId2());
+
+    info = infos.get(1);
+    Assert.assertEquals("slider", info.getWidgetType());
+    Assert.assertEquals(Integer.class, info.getDataType());
+    Assert.assertEquals(20, info.getSensorId());
+    Assert.assertEquals(21, info.getCommandId1());
+
+    info = infos.get(2);
+    Assert.assertEquals("button", info.getWidgetType());
+    Assert.assertNull(info.getDataType());
+    Assert.assertEquals(31, info.getCommandId1());
+  }
+
+  @Test
+  public void offBeforeOnAndFirstCommandOnly() throws Exception {
+    List<Controller.WidgetCommandInfo<?>> infos = parse("<openremote><components>"
+            + "<switch id=\"1\">"
+            + "<off><include type=\"command\" ref=\"12\"/><include type=\"command\" ref=\"99\"/></off>"
+            + "<on><include type=\"command\" ref=\"11\"/></on>"
+            + "<on><include type=\"command\" ref=\"98\"/></on>"
+            + "<include type=\"sensor\" ref=\"10\"/></switch>"
+            + "</components></openremote>");
+
+    Assert.assertEquals(1, infos.size());
+    Assert.assertEquals(10, infos.get(0).getSensorId());
+    Assert.assertEquals(11, infos.get(0).getCommandId1());
+    Assert.assertEquals(12, infos.get(0).getCommandId2());
+  }
+
+  @Test
+  public void onlyFirstComponentsElementIsUsed() throws Exception {
+    List<Controller.WidgetCommandInfo<?>> infos = parse("<openremote>"
+            + "<components><button id=\"1\"><include type=\"command\" ref=\"1\"/></button></components>"
+            + "<components><button id=\"2\"><include type=\"command\" ref=\"2\"/></button></components>"
+            + "</openremote>");
+
+    Assert.assertEquals(1, infos.size());
+    Assert.assertEquals(1, infos.get(0).getCommandId1());
+  }
+
+  @Test
+  public void unsupportedComponentsAreSkipped() throws Exception {
+    List<Controller.WidgetCommandInfo<?>> infos = parse("<openremote><components>"
+            + "<label id=\"1\"><include type=\"sensor\" ref=\"5\"/></label>"
+            + "<image id=\"2\"><include type=\"sensor\" ref=\"6\"/></image>"
+            + "<button id=\"3\"><include type=\"command\" ref=\"7\"/></button>"
+            + "</components></openremote>");
+
+    Assert.assertEquals(1, infos.size());
+    Assert.assertEquals("button", infos.get(0).getWidgetType());
+    Assert.assertEquals(7, infos.get(0).getCommandId1());
+  }
+
+  @Test
+  public void emptyComponents() throws Exception {
+    Assert.assertTrue(parse("<openremote><components/></openremote>").isEmpty());
+  }
+
+  @Test(expected = SAXException.class)
+  public void missingComponents() throws Exception {
+    parse("<openremote><sensors/></openremote>");
+  }
+
+  @Test(expected = SAXException.class)
+  public void switchWithoutSensor() throws Exception {
+    parse("<openremote><components><switch id=\"1\">"
+            + "<on><include type=\"command\" ref=\"11\"/></on>"
+            + "<off><include type=\"command\" ref=\"12\"/></off>"
+            + "</switch></components></openremote>");
+  }
+
+  @Test(expected = SAXException.class)
+  public void sliderWithoutCommand() throws Exception {
+    parse("<openremote><components><slider id=\"1\">"
+            + "<include type=\"sensor\" ref=\"20\"/></slider></components></openremote>");
+  }
+
+  @Test(expected = SAXException.class)
+  public void invalidRef() throws Exception {
+    parse("<openremote><components><button id=\"1\">"
+            + "<include type=\"command\" ref=\"abc\"/></button></components></openremote>");
+  }
+
+  private static List<Controller.WidgetCommandInfo<?>> parse(String xml) throws Exception {
+    return ControllerXmlParser.parse(xml.getBytes("UTF-8"));
+  }
+}
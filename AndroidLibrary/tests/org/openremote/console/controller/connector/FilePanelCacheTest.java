@@ -0,0 +1,186 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link FilePanelCache} storage, persistence and eviction
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class FilePanelCacheTest {
+  private File directory;
+
+  @Before
+  public void createDirectory() throws IOException {
+    directory = File.createTempFile("panelcache", "");
+    Assert.assertTrue(directory.delete());
+  }
+
+  @After
+  public void deleteDirectory() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void putAndGet() {
+    FilePanelCache cache = new FilePanelCache(directory);
+    Assert.assertNull(cache.get("panel"));
+    Assert.assertEquals(1, cache.getMissCount());
+
+    cache.put("panel", new PanelCache.Entry(data(10, 'a'), "\"1\"", "Thu, 01 Jan 2015 00:00:00 GMT"));
+    PanelCache.Entry entry = cache.get("panel");
+
+    Assert.assertNotNull(entry);
+    Assert.assertArrayEquals(data(10, 'a'), entry.getData());
+    Assert.assertEquals("\"1\"", entry.getEntityTag());
+    Assert.assertEquals("Thu, 01 Jan 2015 00:00:00 GMT", entry.getLastModified());
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertTrue(cache.getSize() > 10);
+  }
+
+  @Test
+  public void putReplacesEntry() {
+    FilePanelCache cache = new FilePanelCache(directory);
+    cache.put("panel", new PanelCache.Entry(data(100, 'a'), "\"1\"", null));
+    long size = cache.getSize();
+    cache.put("panel", new PanelCache.Entry(data(10, 'b'), "\"2\"", null));
+
+    PanelCache.Entry entry = cache.get("panel");
+    Assert.assertArrayEquals(data(10, 'b'), entry.getData());
+    Assert.assertEquals("\"2\"", entry.getEntityTag());
+    Assert.assertNull(entry.getLastModified());
+    Assert.assertEquals(size - 90, cache.getSize());
+    Assert.assertEquals(1, countFiles());
+  }
+
+  @Test
+  public void entriesSurviveRestart() {
+    FilePanelCache cache = new FilePanelCache(directory);
+    cache.put("panels", new PanelCache.Entry(data(10, 'a'), "\"1\"", null));
+    cache.put("panel", new PanelCache.Entry(data(20, 'b'), null, "Thu, 01 Jan 2015 00:00:00 GMT"));
+
+    FilePanelCache restarted = new FilePanelCache(directory);
+    Assert.assertEquals(cache.getSize(), restarted.getSize());
+
+    PanelCache.Entry entry = restarted.get("panels");
+    Assert.assertArrayEquals(data(10, 'a'), entry.getData());
+    Assert.assertEquals("\"1\"", entry.getEntityTag());
+
+    entry = restarted.get("panel");
+    Assert.assertArrayEquals(data(20, 'b'), entry.getData());
+    Assert.assertNull(entry.getEntityTag());
+    Assert.assertEquals("Thu, 01 Jan 2015 00:00:00 GMT", entry.getLastModified());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntryIsEvicted() {
+    FilePanelCache cache = new FilePanelCache(directory, 2500);
+    cache.put("1", new PanelCache.Entry(data(1000, '1'), null, null));
+    cache.put("2", new PanelCache.Entry(data(1000, '2'), null, null));
+    Assert.assertNotNull(cache.get("1"));
+
+    cache.put("3", new PanelCache.Entry(data(1000, '3'), null, null));
+
+    Assert.assertEquals(1, cache.getEvictionCount());
+    Assert.assertTrue(cache.getSize() <= cache.getMaxSize());
+    Assert.assertNull(cache.get("2"));
+    Assert.assertNotNull(cache.get("1"));
+    Assert.assertNotNull(cache.get("3"));
+    Assert.assertEquals(2, countFiles());
+  }
+
+  @Test
+  public void restartTrimsToMaxSize() {
+    FilePanelCache cache = new FilePanelCache(directory);
+    cache.put("1", new PanelCache.Entry(data(1000, '1'), null, null));
+    cache.put("2", new PanelCache.Entry(data(1000, '2'), null, null));
+    cache.put("3", new PanelCache.Entry(data(1000, '3'), null, null));
+
+    FilePanelCache restarted = new FilePanelCache(directory, 2500);
+    Assert.assertTrue(restarted.getSize() <= restarted.getMaxSize());
+    Assert.assertEquals(1, restarted.getEvictionCount());
+    Assert.assertEquals(2, countFiles());
+  }
+
+  @Test
+  public void removeAndClear() {
+    FilePanelCache cache = new FilePanelCache(directory);
+    cache.put("1", new PanelCache.Entry(data(10, '1'), null, null));
+    cache.put("2", new PanelCache.Entry(data(10, '2'), null, null));
+
+    cache.remove("1");
+    Assert.assertNull(cache.get("1"));
+    Assert.assertNotNull(cache.get("2"));
+    Assert.assertEquals(1, countFiles());
+
+    cache.clear();
+    Assert.assertNull(cache.get("2"));
+    Assert.assertEquals(0, cache.getSize());
+    Assert.assertEquals(0, countFiles());
+  }
+
+  @Test
+  public void corruptFileIsDiscarded() throws IOException {
+    FilePanelCache cache = new FilePanelCache(directory);
+    cache.put("panel", new PanelCache.Entry(data(10, 'a'), "\"1\"", null));
+    File[] files = directory.listFiles();
+    Assert.assertEquals(1, files.length);
+
+    FileOutputStream out = new FileOutputStream(files[0]);
+    try {
+      out.write(data(3, 'x'));
+    } finally {
+      out.close();
+    }
+
+    FilePanelCache restarted = new FilePanelCache(directory);
+    Assert.assertNull(restarted.get("panel"));
+    Assert.assertEquals(0, countFiles());
+  }
+
+  private int countFiles() {
+    File[] files = directory.listFiles();
+    return files != null ? files.length : 0;
+  }
+
+  private static byte[] data(int length, char value) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) value;
+    }
+    return data;
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openremote.console.controller.connector.RequestScheduler.Priority;
+
+/**
+ * Tests of the per priority class concurrency limits of the
+ * {@link RequestScheduler}
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class RequestSchedulerTest {
+  private static final long TIMEOUT = 5000;
+
+  private RequestScheduler scheduler;
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  /**
+   * Task that blocks until the test releases it and records the highest
+   * number of tasks of its class running at once
+   */
+  private class BlockingTask implements Runnable, RequestScheduler.Prioritized {
+    final Priority priority;
+    final AtomicInteger running;
+    final AtomicInteger maxRunning;
+    final CountDownLatch started;
+    final CountDownLatch finished;
+
+    BlockingTask(Priority priority, AtomicInteger running, AtomicInteger maxRunning,
+            CountDownLatch started, CountDownLatch finished) {
+      this.priority = priority;
+      this.running = running;
+      this.maxRunning = maxRunning;
+      this.started = started;
+      this.finished = finished;
+    }
+
+    @Override
+    public Priority getPriority() {
+      return priority;
+    }
+
+    @Override
+    public void run() {
+      int count = running.incrementAndGet();
+      synchronized (maxRunning) {
+        maxRunning.set(Math.max(maxRunning.get(), count));
+      }
+      started.countDown();
+      try {
+        release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        running.decrementAndGet();
+        finished.countDown();
+      }
+    }
+  }
+
+  @Before
+  public void createScheduler() {
+    scheduler = new RequestScheduler();
+  }
+
+  @After
+  public void shutdownScheduler() {
+    release.countDown();
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void defaultLimits() {
+    for (Priority priority : Priority.values()) {
+      Assert.assertEquals(priority.getDefaultLimit(), scheduler.getConcurrencyLimit(priority));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void limitMustBePositive() {
+    scheduler.setConcurrencyLimit(Priority.BULK, 0);
+  }
+
+  @Test
+  public void limitIsEnforcedPerClass() throws Exception {
+    scheduler.setConcurrencyLimit(Priority.BULK, 2);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch finished = new CountDownLatch(5);
+
+    for (int i = 0; i < 5; i++) {
+      scheduler.execute(new BlockingTask(Priority.BULK, running, maxRunning, started, finished));
+    }
+
+    Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(2, scheduler.getRunningCount(Priority.BULK));
+    Assert.assertEquals(3, scheduler.getQueueDepth(Priority.BULK));
+
+    release.countDown();
+    Assert.assertTrue(finished.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(2, maxRunning.get());
+    Assert.assertEquals(0, scheduler.getQueueDepth(Priority.BULK));
+  }
+
+  @Test
+  public void saturatedClassDoesNotBlockOtherClasses() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    int bulkLimit = scheduler.getConcurrencyLimit(Priority.BULK);
+    CountDownLatch bulkStarted = new CountDownLatch(bulkLimit);
+    CountDownLatch finished = new CountDownLatch(bulkLimit * 2);
+
+    for (int i = 0; i < bulkLimit * 2; i++) {
+      scheduler.execute(new BlockingTask(Priority.BULK, running, maxRunning, bulkStarted,
+              finished));
+    }
+    Assert.assertTrue(bulkStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    final CountDownLatch interactive = new CountDownLatch(1);
+    scheduler.execute(new PrioritizedRunnable(Priority.INTERACTIVE, interactive));
+    Assert.assertTrue(interactive.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(bulkLimit, scheduler.getQueueDepth(Priority.BULK));
+  }
+
+  @Test
+  public void raisingLimitStartsQueuedTasks() throws Exception {
+    scheduler.setConcurrencyLimit(Priority.SENSOR, 1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch first = new CountDownLatch(1);
+    CountDownLatch all = new CountDownLatch(3);
+    CountDownLatch finished = new CountDownLatch(3);
+
+    scheduler.execute(new BlockingTask(Priority.SENSOR, running, maxRunning, first, finished));
+    Assert.assertTrue(first.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    scheduler.execute(new BlockingTask(Priority.SENSOR, running, maxRunning, all, finished));
+    scheduler.execute(new BlockingTask(Priority.SENSOR, running, maxRunning, all, finished));
+    Assert.assertEquals(2, scheduler.getQueueDepth(Priority.SENSOR));
+
+    scheduler.setConcurrencyLimit(Priority.SENSOR, 3);
+    Assert.assertEquals(0, scheduler.getQueueDepth(Priority.SENSOR));
+    Assert.assertEquals(3, scheduler.getRunningCount(Priority.SENSOR));
+  }
+
+  @Test
+  public void unprioritizedTasksRunAsPanel() throws Exception {
+    scheduler.setConcurrencyLimit(Priority.PANEL, 1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finished = new CountDownLatch(1);
+    scheduler.execute(new BlockingTask(Priority.PANEL, running, maxRunning, started, finished));
+    Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    scheduler.execute(new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+    Assert.assertEquals(1, scheduler.getQueueDepth(Priority.PANEL));
+  }
+
+  @Test
+  public void submitKeepsPriority() throws Exception {
+    scheduler.setConcurrencyLimit(Priority.BULK, 1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finished = new CountDownLatch(2);
+    scheduler.submit(new BlockingTask(Priority.BULK, running, maxRunning, started, finished));
+    Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    scheduler.submit(new BlockingTask(Priority.BULK, running, maxRunning, new CountDownLatch(1),
+            finished));
+    Assert.assertEquals(1, scheduler.getQueueDepth(Priority.BULK));
+    Assert.assertEquals(0, scheduler.getQueueDepth(Priority.PANEL));
+  }
+
+  @Test
+  public void waitTimeIsRecorded() throws Exception {
+    scheduler.setConcurrencyLimit(Priority.BULK, 1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finished = new CountDownLatch(2);
+    scheduler.execute(new BlockingTask(Priority.BULK, running, maxRunning, started, finished));
+    Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    scheduler.execute(new BlockingTask(Priority.BULK, running, maxRunning, new CountDownLatch(1),
+            finished));
+
+    Thread.sleep(100);
+    release.countDown();
+    Assert.assertTrue(finished.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    Assert.assertTrue(scheduler.getMaxWaitTime(Priority.BULK) >= 100);
+    Assert.assertTrue(scheduler.getAverageWaitTime(Priority.BULK) >= 50);
+    Assert.assertEquals(0, scheduler.getMaxWaitTime(Priority.INTERACTIVE));
+  }
+
+  @Test
+  public void shutdownRunsQueuedTasks() throws Exception {
+    scheduler.setConcurrencyLimit(Priority.BULK, 1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finished = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      scheduler.execute(new BlockingTask(Priority.BULK, running, maxRunning, started, finished));
+    }
+    Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    scheduler.shutdown();
+    try {
+      scheduler.execute(new PrioritizedRunnable(Priority.BULK, new CountDownLatch(1)));
+      Assert.fail("Task accepted after shutdown");
+    } catch (RejectedExecutionException e) {
+    }
+    Assert.assertFalse(scheduler.isTerminated());
+
+    release.countDown();
+    Assert.assertTrue(finished.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertTrue(scheduler.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void shutdownNowReturnsQueuedTasks() throws Exception {
+    scheduler.setConcurrencyLimit(Priority.BULK, 1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finished = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      scheduler.execute(new BlockingTask(Priority.BULK, running, maxRunning, started, finished));
+    }
+    Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    List<Runnable> pending = scheduler.shutdownNow();
+    Assert.assertEquals(2, pending.size());
+    Assert.assertTrue(scheduler.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS));
+  }
+
+  private static class PrioritizedRunnable implements Runnable, RequestScheduler.Prioritized {
+    private final Priority priority;
+    private final CountDownLatch ran;
+
+    PrioritizedRunnable(Priority priority, CountDownLatch ran) {
+      this.priority = priority;
+      this.ran = ran;
+    }
+
+    @Override
+    public Priority getPriority() {
+      return priority;
+    }
+
+    @Override
+    public void run() {
+      ran.countDown();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openremote.console.controller.SensorValueMap;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * Tests of the {@link SensorStatusDecoder} against the response shapes the
+ * controller produces
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorStatusDecoderTest {
+
+  @Test
+  public void statusArray() throws Exception {
+    SensorValueMap values = new SensorValueMap();
+    Assert.assertNull(decode("{\"status\":[{\"@id\":\"1001\",\"content\":\"on\"},"
+            + "{\"id\":1002,\"content\":\"42\"}]}", values));
+
+    Assert.assertEquals(2, values.size());
+    Assert.assertEquals("on", values.get(1001));
+    Assert.assertEquals("42", values.get(1002));
+  }
+
+  @Test
+  public void singleStatusNotWrapped() throws Exception {
+    SensorValueMap values = new SensorValueMap();
+    Assert.assertNull(decode("{\"status\":{\"@id\":\" 7 \",\"content\":\"off\"}}", values));
+
+    Assert.assertEquals(1, values.size());
+    Assert.assertEquals("off", values.get(7));
+  }
+
+  @Test
+  public void nullContentAndUnknownFields() throws Exception {
+    SensorValueMap values = new SensorValueMap();
+    Assert.assertNull(decode("{\"version\":2,\"status\":[{\"@id\":\"5\",\"content\":null,"
+            + "\"extra\":{\"nested\":[1,2]}},{\"content\":\"no id\"}],\"other\":[]}", values));
+
+    Assert.assertEquals(1, values.size());
+    Assert.assertTrue(values.containsKey(5));
+    Assert.assertNull(values.get(5));
+  }
+
+  @Test
+  public void errorEnvelope() throws Exception {
+    SensorValueMap values = new SensorValueMap();
+    Assert.assertEquals(ControllerResponseCode.NOT_FOUND, decode("{\"error\":{\"code\":"
+            + ControllerResponseCode.NOT_FOUND.getCode() + ",\"message\":\"Missing\"}}", values));
+    Assert.assertTrue(values.isEmpty());
+
+    Assert.assertEquals(ControllerResponseCode.UNKNOWN_ERROR,
+            decode("{\"error\":{\"code\":-1}}", values));
+  }
+
+  @Test
+  public void emptyResponse() throws Exception {
+    SensorValueMap values = new SensorValueMap();
+    Assert.assertNull(decode("{}", values));
+    Assert.assertTrue(values.isEmpty());
+
+    assertInvalid(null);
+    assertInvalid("");
+  }
+
+  @Test
+  public void invalidResponses() throws Exception {
+    assertInvalid("[]");
+    assertInvalid("{\"status\":[{\"@id\":\"abc\",\"content\":\"x\"}]}");
+    assertInvalid("{\"error\":\"text\"}");
+    assertInvalid("{\"status\":[{\"@id\":\"1\",");
+  }
+
+  private static ControllerResponseCode decode(String json, SensorValueMap values)
+          throws IOException {
+    return SensorStatusDecoder.decode(json.getBytes("UTF-8"), values);
+  }
+
+  private static void assertInvalid(String json) throws Exception {
+    try {
+      SensorStatusDecoder.decode(json != null ? json.getBytes("UTF-8") : null,
+              new SensorValueMap());
+      Assert.fail("Expected " + json + " to be rejected");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.connector;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openremote.console.controller.SensorIdSet;
+import org.openremote.console.controller.SensorValueMap;
+import org.openremote.entities.controller.SensorStatus;
+import org.openremote.entities.controller.SensorStatusList;
+import org.openremote.entities.util.JacksonProcessor;
+
+/**
+ * Compares the per-poll allocation of the boxed sensor status path (String
+ * response, POJO unmarshalling, HashMap copy and List based URL building)
+ * against the primitive path ({@link SensorIdSet} URL building and
+ * {@link SensorStatusDecoder} decoding into a re-used {@link SensorValueMap})
+ * for a 500 sensor panel.
+ * 
+ * Run as a plain Java application on a HotSpot JVM (allocation is measured
+ * using com.sun.management.ThreadMXBean).
+ * 
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorValueMapBenchmark {
+  private static final int SENSOR_COUNT = 500;
+  private static final int WARMUP_POLLS = 20000;
+  private static final int MEASURED_POLLS = 20000;
+
+  private static long blackhole;
+
+  public static void main(String[] args) throws Exception {
+    List<Integer> sensorIdList = new ArrayList<Integer>();
+    SensorIdSet sensorIdSet = new SensorIdSet(SENSOR_COUNT);
+    StringBuilder json = new StringBuilder("{\"status\":[");
+    for (int i = 0; i < SENSOR_COUNT; i++) {
+      int sensorId = 1000 + i;
+      sensorIdList.add(sensorId);
+      sensorIdSet.add(sensorId);
+      json.append(i > 0 ? "," : "").append("{\"id\":\"").append(sensorId)
+              .append("\",\"content\":\"").append(i % 2 == 0 ? "on" : Integer.toString(i))
+              .append("\"}");
+    }
+    byte[] response = json.append("]}").toString().getBytes("UTF-8");
+    SensorValueMap sensorValues = new SensorValueMap(SENSOR_COUNT);
+
+    for (int i = 0; i < WARMUP_POLLS; i++) {
+      boxedPoll(sensorIdList, response);
+      primitivePoll(sensorIdSet, sensorValues, response);
+    }
+
+    long boxedBytes = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_POLLS; i++) {
+      boxedPoll(sensorIdList, response);
+    }
+    long boxedTime = System.nanoTime() - start;
+    boxedBytes = allocatedBytes() - boxedBytes;
+
+    long primitiveBytes = allocatedBytes();
+    start = System.nanoTime();
+    for (int i = 0; i < MEASURED_POLLS; i++) {
+      primitivePoll(sensorIdSet, sensorValues, response);
+    }
+    long primitiveTime = System.nanoTime() - start;
+    primitiveBytes = allocatedBytes() - primitiveBytes;
+
+    System.out.println("Sensors per poll: " + SENSOR_COUNT);
+    System.out.println(String.format("Boxed:     %8d bytes/poll %8d ns/poll", boxedBytes
+            / MEASURED_POLLS, boxedTime / MEASURED_POLLS));
+    System.out.println(String.format("Primitive: %8d bytes/poll %8d ns/poll", primitiveBytes
+            / MEASURED_POLLS, primitiveTime / MEASURED_POLLS));
+    System.out.println("(" + blackhole + ")");
+  }
+
+  private static void boxedPoll(List<Integer> sensorIds, byte[] response) throws Exception {
+    String ids = Arrays.toString(sensorIds.toArray()).replace(", ", ",").replace("]", "")
+            .replace("[", "");
+    SensorStatusList list = JacksonProcessor.unMarshall(new String(response, "UTF-8"),
+            SensorStatusList.class);
+    Map<Integer, String> valueMap = new HashMap<Integer, String>();
+    for (SensorStatus status : list.getStatuses()) {
+      valueMap.put(status.getSensorId(), status.getValue());
+    }
+    blackhole += ids.length() + valueMap.size();
+  }
+
+  private static void primitivePoll(SensorIdSet sensorIds, SensorValueMap sensorValues,
+          byte[] response) throws Exception {
+    String ids = sensorIds.join(',');
+    sensorValues.clear();
+    SensorStatusDecoder.decode(response, sensorValues);
+    blackhole += ids.length() + sensorValues.size();
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.ControllerConnectionStatus;
+import org.openremote.entities.controller.AsyncControllerCallback;
+import org.openremote.entities.controller.ControllerResponseCode;
+
+/**
+ * Base class of the tests that run a {@link Controller} against a
+ * {@link ControllerSimulator}; a simulator and a connected controller are
+ * set up for each test
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public abstract class AbstractSimulatorTest {
+  protected static final int SENSOR_COUNT = 20;
+  protected static final long TIMEOUT = 10000;
+
+  protected ControllerSimulator simulator;
+  protected Controller controller;
+
+  protected static class Result<T> implements AsyncControllerCallback<T> {
+    final CountDownLatch latch = new CountDownLatch(1);
+    volatile T value;
+    volatile ControllerResponseCode error;
+
+    @Override
+    public void onSuccess(T result) {
+      value = result;
+      latch.countDown();
+    }
+
+    @Override
+    public void onFailure(ControllerResponseCode error) {
+      this.error = error;
+      latch.countDown();
+    }
+
+    T get() throws InterruptedException {
+      Assert.assertTrue("Request timed out", latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+      Assert.assertNull("Request failed: " + error, error);
+      return value;
+    }
+  }
+
+  /**
+   * Condition polled by {@link AbstractSimulatorTest#await}
+   */
+  protected interface Condition {
+    boolean isMet();
+  }
+
+  @Before
+  public void startSimulator() throws Exception {
+    simulator = new ControllerSimulator();
+    simulator.setSensorCount(SENSOR_COUNT);
+    simulator.setPollHoldTime(2000);
+    simulator.start();
+
+    controller = connect(new Controller.Builder(simulator.getUrl()).setConnector(
+            new ThreadedHttpConnector()));
+    Assert.assertTrue(controller.isConnected());
+  }
+
+  @After
+  public void stopSimulator() {
+    controller.disconnect();
+    simulator.stop();
+  }
+
+  /**
+   * Builds the controller and waits for it to connect to the simulator
+   */
+  protected Controller connect(Controller.Builder builder) throws InterruptedException {
+    Controller built = builder.build();
+    Result<ControllerConnectionStatus> connect = new Result<ControllerConnectionStatus>();
+    built.connect(connect);
+    connect.get();
+    return built;
+  }
+
+  /**
+   * Waits up to {@link #TIMEOUT} for the condition to be met
+   */
+  protected static void await(String message, Condition condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (!condition.isMet()) {
+      Assert.assertTrue(message, System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,752 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openremote.console.controller.connector.HttpConnector;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for an OpenRemote controller so that the library can be
+ * tested offline and load tested. It serves the REST endpoints used by
+ * {@link HttpConnector.RestCommand} under <code>/controller</code>:
+ * <ul>
+ * <li><code>rest/servers</code> (connect)</li>
+ * <li><code>rest/panels</code> and <code>rest/panel/{name}</code> (with ETag
+ * revalidation)</li>
+ * <li><code>rest/polling/{uuid}/{ids}</code> held until a requested sensor
+ * changes or the hold time expires (504)</li>
+ * <li><code>rest/status/{ids}</code></li>
+ * <li><code>rest/control/{id}/{value}</code></li>
+ * <li><code>rest/devices</code>, <code>rest/devices/{name}</code> and
+ * <code>rest/devices/{name}/commands</code></li>
+ * <li><code>resources/controller.xml</code> and any added resources (GET and
+ * HEAD)</li>
+ * </ul>
+ *
+ * The simulator has a configurable number of sensors (IDs starting at
+ * {@link #FIRST_SENSOR_ID}) that change at random at the configured rate.
+ * Every change gets a new sequence number which is used as the sensor value
+ * so the time of the change can be looked up when the value is received (see
+ * {@link #getChangeTime(String)}).
+ *
+ * A response delay and error rate can be injected into every request. The
+ * default panel (named {@link #DEFAULT_PANEL}) has a label linked to each
+ * sensor and the default device ({@link #DEFAULT_DEVICE}) has a custom sensor
+ * and a command for each sensor.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ControllerSimulator {
+  public static final int FIRST_SENSOR_ID = 1000;
+  public static final int FIRST_COMMAND_ID = 100000;
+  public static final String CONTEXT = "/controller";
+  public static final String DEFAULT_PANEL = "simulator";
+  public static final String DEFAULT_DEVICE = "Simulator";
+  public static final long DEFAULT_POLL_HOLD_TIME = 50000;
+  private static final int CHANGE_HISTORY = 1 << 20;
+
+  private final Object sensorLock = new Object();
+  private final Map<String, Long> pollClients = new HashMap<String, Long>();
+  private final Map<String, byte[]> panels = new LinkedHashMap<String, byte[]>();
+  private final Map<String, Resource> resources = new HashMap<String, Resource>();
+  private final Random random = new Random();
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong injectedErrorCount = new AtomicLong();
+  private final AtomicLong pollCount = new AtomicLong();
+  private final AtomicInteger activePollCount = new AtomicInteger();
+  private final AtomicLong controlCommandCount = new AtomicLong();
+  private final AtomicLong notModifiedCount = new AtomicLong();
+  private final AtomicLong resourceDetailsCount = new AtomicLong();
+  private final AtomicLong resourceDataCount = new AtomicLong();
+  private int sensorCount = 100;
+  private volatile double changeRate;
+  private long tickInterval = 10;
+  private volatile long pollHoldTime = DEFAULT_POLL_HOLD_TIME;
+  private volatile int minResponseDelay;
+  private volatile int maxResponseDelay;
+  private volatile double errorRate;
+  private String[] sensorValues;
+  private long[] sensorSequences;
+  private final long[] changeTimes = new long[CHANGE_HISTORY];
+  private long sequence;
+  private double pendingChanges;
+  private long lastTick;
+  private volatile boolean running;
+  private HttpServer server;
+  private ExecutorService executor;
+  private ScheduledExecutorService ticker;
+
+  private static class Resource {
+    final byte[] data;
+    final String contentType;
+    final long modifiedTime;
+
+    Resource(byte[] data, String contentType, long modifiedTime) {
+      this.data = data;
+      this.contentType = contentType;
+      this.modifiedTime = modifiedTime;
+    }
+  }
+
+  /**
+   * Set the number of simulated sensors; must be called before
+   * {@link #start()}
+   */
+  public synchronized void setSensorCount(int sensorCount) {
+    if (server != null) {
+      throw new IllegalStateException("Simulator is already running");
+    }
+    if (sensorCount < 0) {
+      throw new IllegalArgumentException("Sensor count must be >= 0");
+    }
+    this.sensorCount = sensorCount;
+  }
+
+  public synchronized int getSensorCount() {
+    return sensorCount;
+  }
+
+  /**
+   * Set the total number of sensor changes per second (spread randomly across
+   * all sensors); 0 stops the sensors changing
+   */
+  public void setChangeRate(double changeRate) {
+    if (changeRate < 0) {
+      throw new IllegalArgumentException("Change rate must be >= 0");
+    }
+    this.changeRate = changeRate;
+  }
+
+  public double getChangeRate() {
+    return changeRate;
+  }
+
+  /**
+   * Set how long a polling request is held when none of its sensors have
+   * changed before a 504 is returned
+   */
+  public void setPollHoldTime(long pollHoldTime) {
+    this.pollHoldTime = pollHoldTime;
+  }
+
+  public long getPollHoldTime() {
+    return pollHoldTime;
+  }
+
+  /**
+   * Delay every response by a random time between min and max milliseconds
+   */
+  public void setResponseDelay(int minResponseDelay, int maxResponseDelay) {
+    if (minResponseDelay < 0 || maxResponseDelay < minResponseDelay) {
+      throw new IllegalArgumentException("Delays must satisfy 0 <= min <= max");
+    }
+    this.minResponseDelay = minResponseDelay;
+    this.maxResponseDelay = maxResponseDelay;
+  }
+
+  /**
+   * Set the fraction (0 - 1) of requests that fail with a controller error
+   */
+  public void setErrorRate(double errorRate) {
+    if (errorRate < 0 || errorRate > 1) {
+      throw new IllegalArgumentException("Error rate must be between 0 and 1");
+    }
+    this.errorRate = errorRate;
+  }
+
+  public double getErrorRate() {
+    return errorRate;
+  }
+
+  /**
+   * Add (or replace) a panel; the JSON is returned as is for
+   * <code>rest/panel/{name}</code>
+   */
+  public void addPanel(String name, String json) {
+    synchronized (panels) {
+      panels.put(name, getBytes(json));
+    }
+  }
+
+  /**
+   * Add (or replace) a resource served relative to the controller URL
+   */
+  public void addResource(String name, byte[] data, String contentType) {
+    addResource(name, data, contentType, System.currentTimeMillis());
+  }
+
+  /**
+   * Add (or replace) a resource with the specified modified time (truncated
+   * to seconds as in the Last-Modified header)
+   */
+  public void addResource(String name, byte[] data, String contentType, long modifiedTime) {
+    synchronized (resources) {
+      resources.put(name, new Resource(data, contentType, modifiedTime / 1000 * 1000));
+    }
+  }
+
+  /**
+   * Start the simulator on a free port of the loopback interface
+   */
+  public synchronized void start() throws IOException {
+    if (server != null) {
+      return;
+    }
+
+    sensorValues = new String[sensorCount];
+    sensorSequences = new long[sensorCount];
+    Arrays.fill(sensorValues, "0");
+
+    synchronized (panels) {
+      if (!panels.containsKey(DEFAULT_PANEL)) {
+        panels.put(DEFAULT_PANEL, getBytes(buildDefaultPanel()));
+      }
+    }
+    synchronized (resources) {
+      resources.put("resources/controller.xml", new Resource(getBytes(buildControllerXml()),
+              "text/xml", System.currentTimeMillis() / 1000 * 1000));
+    }
+
+    ThreadFactory threadFactory = new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "ControllerSimulator");
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+
+    // Headers and body are written separately so avoid Nagle/delayed ACK stalls
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    // Idle connections beyond the default limit (200) are closed, which resets
+    // pooled client connections when many controllers are simulated
+    System.setProperty("sun.net.httpserver.maxIdleConnections", "100000");
+    executor = Executors.newCachedThreadPool(threadFactory);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    server.setExecutor(executor);
+    server.createContext(CONTEXT, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          handleRequest(exchange);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+
+    running = true;
+    lastTick = System.nanoTime();
+    ticker = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    ticker.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        tick();
+      }
+    }, tickInterval, tickInterval, TimeUnit.MILLISECONDS);
+    server.start();
+  }
+
+  public synchronized void stop() {
+    if (server == null) {
+      return;
+    }
+
+    running = false;
+    synchronized (sensorLock) {
+      sensorLock.notifyAll();
+    }
+    ticker.shutdownNow();
+    server.stop(0);
+    executor.shutdownNow();
+    server = null;
+  }
+
+  /**
+   * Get the controller URL to use with a connector
+   */
+  public synchronized String getUrl() {
+    if (server == null) {
+      throw new IllegalStateException("Simulator is not running");
+    }
+    return "http://127.0.0.1:" + server.getAddress().getPort() + CONTEXT;
+  }
+
+  /**
+   * Set a sensor value straight away; polls waiting on the sensor are
+   * released
+   */
+  public void setSensorValue(int sensorId, String value) {
+    synchronized (sensorLock) {
+      int index = sensorId - FIRST_SENSOR_ID;
+      if (index < 0 || index >= sensorValues.length) {
+        throw new IllegalArgumentException("Unknown sensor " + sensorId);
+      }
+      long seq = ++sequence;
+      changeTimes[(int) (seq & (CHANGE_HISTORY - 1))] = System.nanoTime();
+      sensorValues[index] = value;
+      sensorSequences[index] = seq;
+      sensorLock.notifyAll();
+    }
+  }
+
+  public String getSensorValue(int sensorId) {
+    synchronized (sensorLock) {
+      return sensorValues[sensorId - FIRST_SENSOR_ID];
+    }
+  }
+
+  /**
+   * Get the {@link System#nanoTime()} of the change that produced a simulated
+   * sensor value
+   *
+   * @return change time or -1 if the value wasn't produced by the simulator
+   *         or is too old to still be known
+   */
+  public long getChangeTime(String value) {
+    long seq;
+    try {
+      seq = Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+
+    synchronized (sensorLock) {
+      if (seq <= 0 || seq > sequence || sequence - seq >= CHANGE_HISTORY) {
+        return -1;
+      }
+      return changeTimes[(int) (seq & (CHANGE_HISTORY - 1))];
+    }
+  }
+
+  /**
+   * Number of sensor changes made so far
+   */
+  public long getChangeCount() {
+    synchronized (sensorLock) {
+      return sequence;
+    }
+  }
+
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  public long getInjectedErrorCount() {
+    return injectedErrorCount.get();
+  }
+
+  public long getPollCount() {
+    return pollCount.get();
+  }
+
+  /**
+   * Number of polling requests currently being held
+   */
+  public int getActivePollCount() {
+    return activePollCount.get();
+  }
+
+  public long getControlCommandCount() {
+    return controlCommandCount.get();
+  }
+
+  /**
+   * Number of conditional requests answered with 304 Not Modified
+   */
+  public long getNotModifiedCount() {
+    return notModifiedCount.get();
+  }
+
+  /**
+   * Number of resource HEAD requests
+   */
+  public long getResourceDetailsCount() {
+    return resourceDetailsCount.get();
+  }
+
+  /**
+   * Number of resource GET requests
+   */
+  public long getResourceDataCount() {
+    return resourceDataCount.get();
+  }
+
+  private void tick() {
+    synchronized (sensorLock) {
+      long now = System.nanoTime();
+      pendingChanges += changeRate * (now - lastTick) / 1e9;
+      lastTick = now;
+
+      int changes = (int) pendingChanges;
+      if (changes == 0 || sensorValues.length == 0) {
+        return;
+      }
+      pendingChanges -= changes;
+
+      for (int i = 0; i < changes; i++) {
+        int index = random.nextInt(sensorValues.length);
+        long seq = ++sequence;
+        changeTimes[(int) (seq & (CHANGE_HISTORY - 1))] = now;
+        sensorValues[index] = Long.toString(seq);
+        sensorSequences[index] = seq;
+      }
+
+      // Release waiting polls once per tick rather than once per change
+      sensorLock.notifyAll();
+    }
+  }
+
+  private void handleRequest(HttpExchange exchange) throws IOException, InterruptedException {
+    requestCount.incrementAndGet();
+    drain(exchange.getRequestBody());
+
+    int maxDelay = maxResponseDelay;
+    if (maxDelay > 0) {
+      int minDelay = minResponseDelay;
+      Thread.sleep(minDelay + (maxDelay > minDelay ? random.nextInt(maxDelay - minDelay + 1) : 0));
+    }
+
+    String path = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+    while (path.startsWith("/")) {
+      path = path.substring(1);
+    }
+    while (path.endsWith("/")) {
+      path = path.substring(0, path.length() - 1);
+    }
+    String[] parts = path.split("/");
+
+    if (errorRate > 0 && random.nextDouble() < errorRate) {
+      injectedErrorCount.incrementAndGet();
+      sendError(exchange, 500, "Simulated error");
+      return;
+    }
+
+    if (parts.length >= 2 && "rest".equals(parts[0])) {
+      String method = parts[1];
+
+      if ("servers".equals(method)) {
+        sendJson(exchange, 200, "{\"server\":[{\"url\":\"" + getUrl() + "\"}]}");
+      } else if ("panels".equals(method)) {
+        sendPanelList(exchange);
+      } else if ("panel".equals(method) && parts.length == 3) {
+        sendPanel(exchange, parts[2]);
+      } else if ("polling".equals(method) && parts.length == 4) {
+        pollCount.incrementAndGet();
+        sendPolling(exchange, parts[2], parseIds(parts[3]));
+      } else if ("status".equals(method) && parts.length == 3) {
+        sendJson(exchange, 200, buildStatus(parseIds(parts[2]), -1));
+      } else if ("control".equals(method) && parts.length == 4) {
+        controlCommandCount.incrementAndGet();
+        sendJson(exchange, 200, "");
+      } else if ("devices".equals(method)) {
+        sendDevices(exchange, parts);
+      } else {
+        sendError(exchange, 404, "Unknown method");
+      }
+      return;
+    }
+
+    sendResource(exchange, path);
+  }
+
+  private void sendPanelList(HttpExchange exchange) throws IOException {
+    StringBuilder json = new StringBuilder("{\"panel\":[");
+    synchronized (panels) {
+      int id = 1;
+      for (String name : panels.keySet()) {
+        if (id > 1) {
+          json.append(',');
+        }
+        json.append("{\"id\":").append(id++).append(",\"name\":\"").append(name).append("\"}");
+      }
+    }
+    sendCacheable(exchange, getBytes(json.append("]}").toString()), "application/json");
+  }
+
+  private void sendPanel(HttpExchange exchange, String name) throws IOException {
+    byte[] panel;
+    synchronized (panels) {
+      panel = panels.get(name);
+    }
+
+    if (panel == null) {
+      sendError(exchange, 404, "Panel not found");
+    } else {
+      sendCacheable(exchange, panel, "application/json");
+    }
+  }
+
+  private void sendPolling(HttpExchange exchange, String uuid, int[] sensorIds) throws IOException,
+          InterruptedException {
+    long since;
+    synchronized (pollClients) {
+      Long last = pollClients.get(uuid);
+      // First poll of a client returns the current values straight away
+      since = last != null ? last : -1;
+    }
+
+    String json = null;
+    long seen;
+
+    activePollCount.incrementAndGet();
+    try {
+      synchronized (sensorLock) {
+        long deadline = System.currentTimeMillis() + pollHoldTime;
+        while (running) {
+          json = buildStatus(sensorIds, since);
+          if (json != null) {
+            break;
+          }
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            break;
+          }
+          sensorLock.wait(remaining);
+        }
+        seen = sequence;
+      }
+    } finally {
+      activePollCount.decrementAndGet();
+    }
+
+    synchronized (pollClients) {
+      pollClients.put(uuid, seen);
+    }
+
+    if (json == null) {
+      sendError(exchange, 504, "Time out");
+    } else {
+      sendJson(exchange, 200, json);
+    }
+  }
+
+  private void sendDevices(HttpExchange exchange, String[] parts) throws IOException {
+    if (parts.length == 2) {
+      sendJson(exchange, 200, "[{\"id\":1,\"name\":\"" + DEFAULT_DEVICE + "\"}]");
+    } else if (!DEFAULT_DEVICE.equals(parts[2])) {
+      sendError(exchange, 404, "Device not found");
+    } else if (parts.length == 3) {
+      sendJson(exchange, 200, buildDevice());
+    } else if (parts.length == 4 && "commands".equals(parts[3])) {
+      controlCommandCount.incrementAndGet();
+      exchange.sendResponseHeaders(204, -1);
+    } else {
+      sendError(exchange, 404, "Unknown method");
+    }
+  }
+
+  private void sendResource(HttpExchange exchange, String path) throws IOException {
+    Resource resource;
+    synchronized (resources) {
+      resource = resources.get(path);
+    }
+
+    if (resource == null) {
+      sendError(exchange, 404, "Resource not found");
+      return;
+    }
+
+    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    exchange.getResponseHeaders().set("Last-Modified", format.format(new Date(resource.modifiedTime)));
+
+    if ("HEAD".equals(exchange.getRequestMethod())) {
+      resourceDetailsCount.incrementAndGet();
+      exchange.getResponseHeaders().set("Content-Type", resource.contentType);
+      exchange.getResponseHeaders().set("Content-Length", Integer.toString(resource.data.length));
+      exchange.sendResponseHeaders(200, -1);
+    } else {
+      resourceDataCount.incrementAndGet();
+      sendCacheable(exchange, resource.data, resource.contentType);
+    }
+  }
+
+  /**
+   * Returns 304 when the If-None-Match header matches the ETag of the data
+   */
+  private void sendCacheable(HttpExchange exchange, byte[] data, String contentType)
+          throws IOException {
+    String entityTag = "\"" + Integer.toHexString(Arrays.hashCode(data)) + "\"";
+    exchange.getResponseHeaders().set("ETag", entityTag);
+
+    if (entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      notModifiedCount.incrementAndGet();
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+
+    send(exchange, 200, contentType, data);
+  }
+
+  /**
+   * Build the status JSON of the sensors changed after the specified sequence
+   * number
+   *
+   * @return JSON or null if none of the sensors have changed
+   */
+  private String buildStatus(int[] sensorIds, long since) {
+    StringBuilder json = new StringBuilder("{\"status\":[");
+    boolean found = false;
+
+    synchronized (sensorLock) {
+      for (int sensorId : sensorIds) {
+        int index = sensorId - FIRST_SENSOR_ID;
+        if (index < 0 || index >= sensorValues.length || sensorSequences[index] <= since) {
+          continue;
+        }
+        if (found) {
+          json.append(',');
+        }
+        json.append("{\"id\":\"").append(sensorId).append("\",\"content\":\"")
+                .append(sensorValues[index]).append("\"}");
+        found = true;
+      }
+    }
+
+    return found || since < 0 ? json.append("]}").toString() : null;
+  }
+
+  private String buildDefaultPanel() {
+    StringBuilder json = new StringBuilder("{\"screens\":{\"screen\":[{\"id\":1,\"name\":\"Sensors\",\"absolute\":[");
+    for (int i = 0; i < sensorCount; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("{\"left\":").append((i % 10) * 30).append(",\"top\":").append((i / 10) * 20)
+              .append(",\"width\":30,\"height\":20,\"label\":{\"id\":").append(i + 1)
+              .append(",\"text\":\"\",\"link\":{\"type\":\"sensor\",\"ref\":")
+              .append(FIRST_SENSOR_ID + i).append("}}}");
+    }
+    return json.append("]}]},\"groups\":{\"group\":[{\"id\":1,\"name\":\"Default\",")
+            .append("\"include\":[{\"type\":\"screen\",\"ref\":1}]}]}}").toString();
+  }
+
+  private String buildDevice() {
+    StringBuilder commands = new StringBuilder();
+    StringBuilder sensors = new StringBuilder();
+    for (int i = 0; i < sensorCount; i++) {
+      if (i > 0) {
+        commands.append(',');
+        sensors.append(',');
+      }
+      commands.append("{\"id\":").append(FIRST_COMMAND_ID + i).append(",\"name\":\"SET ")
+              .append(i).append("\",\"protocol\":\"virtual\"}");
+      sensors.append("{\"id\":").append(FIRST_SENSOR_ID + i).append(",\"name\":\"SENSOR ")
+              .append(i).append("\",\"type\":\"custom\",\"command_id\":")
+              .append(FIRST_COMMAND_ID + i).append('}');
+    }
+    return "{\"id\":1,\"name\":\"" + DEFAULT_DEVICE + "\",\"commands\":[" + commands
+            + "],\"sensors\":[" + sensors + "]}";
+  }
+
+  private String buildControllerXml() {
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    xml.append("<openremote xmlns=\"http://www.openremote.org\">\n<components>\n");
+    for (int i = 0; i < sensorCount; i++) {
+      xml.append("<slider id=\"").append(i + 1).append("\"><include type=\"sensor\" ref=\"")
+              .append(FIRST_SENSOR_ID + i).append("\"/><setValue><include type=\"command\" ref=\"")
+              .append(FIRST_COMMAND_ID + i).append("\"/></setValue></slider>\n");
+    }
+    return xml.append("</components>\n</openremote>\n").toString();
+  }
+
+  private void sendError(HttpExchange exchange, int code, String message) throws IOException {
+    sendJson(exchange, code, "{\"error\":{\"code\":" + code + ",\"message\":\"" + message + "\"}}");
+  }
+
+  private void sendJson(HttpExchange exchange, int code, String json) throws IOException {
+    send(exchange, code, "application/json", getBytes(json));
+  }
+
+  private void send(HttpExchange exchange, int code, String contentType, byte[] data)
+          throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    if ("HEAD".equals(exchange.getRequestMethod())) {
+      exchange.sendResponseHeaders(code, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(code, data.length == 0 ? -1 : data.length);
+    if (data.length > 0) {
+      OutputStream out = exchange.getResponseBody();
+      out.write(data);
+      out.close();
+    }
+  }
+
+  private static int[] parseIds(String ids) {
+    String[] parts = ids.split(",");
+    int[] sensorIds = new int[parts.length];
+    int count = 0;
+    for (String part : parts) {
+      try {
+        sensorIds[count] = Integer.parseInt(part.trim());
+        count++;
+      } catch (NumberFormatException e) {
+        // Ignore invalid IDs in the same way as the controller
+      }
+    }
+    return count == parts.length ? sensorIds : Arrays.copyOf(sensorIds, count);
+  }
+
+  private static void drain(InputStream in) throws IOException {
+    byte[] buffer = new byte[1024];
+    while (in.read(buffer) >= 0) {
+      // Discard request content
+    }
+    in.close();
+  }
+
+  private static byte[] getBytes(String value) {
+    try {
+      return value.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openremote.console.controller.AsyncRegistrationCallback;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.PanelRegistrationHandle;
+import org.openremote.entities.controller.ControllerResponseCode;
+import org.openremote.entities.controller.Device;
+import org.openremote.entities.controller.DeviceInfo;
+import org.openremote.entities.panel.LabelWidget;
+import org.openremote.entities.panel.Panel;
+import org.openremote.entities.panel.PanelInfo;
+import org.openremote.entities.panel.Widget;
+
+/**
+ * Offline tests of {@link Controller} against the {@link ControllerSimulator}
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ControllerSimulatorTest extends AbstractSimulatorTest {
+
+  @Test
+  public void panelsAndDevices() throws Exception {
+    Result<List<PanelInfo>> panelList = new Result<List<PanelInfo>>();
+    controller.getPanelList(panelList);
+    Assert.assertEquals(1, panelList.get().size());
+    Assert.assertEquals(ControllerSimulator.DEFAULT_PANEL, panelList.get().get(0).getName());
+
+    Result<Panel> panel = new Result<Panel>();
+    controller.getPanel(ControllerSimulator.DEFAULT_PANEL, panel);
+    Assert.assertEquals(SENSOR_COUNT, panel.get().getWidgets().size());
+
+    Result<List<DeviceInfo>> deviceList = new Result<List<DeviceInfo>>();
+    controller.getDeviceList(deviceList);
+    Assert.assertEquals(ControllerSimulator.DEFAULT_DEVICE, deviceList.get().get(0).getName());
+
+    Result<Device> device = new Result<Device>();
+    controller.getDevice(ControllerSimulator.DEFAULT_DEVICE, device);
+    Assert.assertEquals(SENSOR_COUNT, device.get().getSensors().size());
+    Assert.assertEquals(SENSOR_COUNT, device.get().getCommands().size());
+
+    Result<List<Controller.WidgetCommandInfo>> widgetCommands = new Result<List<Controller.WidgetCommandInfo>>();
+    controller.getWidgetsCommandsInfo(widgetCommands);
+    Assert.assertEquals(SENSOR_COUNT, widgetCommands.get().size());
+    Assert.assertEquals(SENSOR_COUNT, controller.getWidgetsCommandsInfo().get(TIMEOUT,
+            TimeUnit.MILLISECONDS).size());
+  }
+
+  @Test
+  public void sensorChangesReachWidgets() throws Exception {
+    Result<Panel> panelResult = new Result<Panel>();
+    controller.getPanel(ControllerSimulator.DEFAULT_PANEL, panelResult);
+    Panel panel = panelResult.get();
+
+    final CountDownLatch changed = new CountDownLatch(1);
+    for (Widget widget : panel.getWidgets()) {
+      final LabelWidget label = (LabelWidget) widget;
+      label.addPropertyChangeListener(new PropertyChangeListener() {
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+          if ("changed".equals(evt.getNewValue())) {
+            changed.countDown();
+          }
+        }
+      });
+    }
+
+    final CountDownLatch registered = new CountDownLatch(1);
+    PanelRegistrationHandle handle = controller.registerPanel(panel,
+            new AsyncRegistrationCallback() {
+              @Override
+              public void onSuccess() {
+                registered.countDown();
+              }
+
+              @Override
+              public void onFailure(ControllerResponseCode error) {
+              }
+            });
+    Assert.assertTrue(registered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    // Wait for the long poll to be held
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (simulator.getPollCount() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    simulator.setSensorValue(ControllerSimulator.FIRST_SENSOR_ID + 5, "changed");
+    Assert.assertTrue(changed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    controller.unregisterPanel(handle);
+  }
+
+  @Test
+  public void injectedErrors() throws Exception {
+    simulator.setErrorRate(1);
+
+    Result<List<PanelInfo>> panelList = new Result<List<PanelInfo>>();
+    controller.getPanelList(panelList);
+    Assert.assertTrue(panelList.latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertNotNull(panelList.error);
+    Assert.assertEquals(1, simulator.getInjectedErrorCount());
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.ControllerException;
+import org.openremote.console.controller.ControllerFuture;
+import org.openremote.console.controller.ControllerFuture.Continuation;
+import org.openremote.console.controller.DevicesResponse;
+import org.openremote.console.controller.PanelRegistrationHandle;
+import org.openremote.entities.controller.AsyncControllerCallback;
+import org.openremote.entities.controller.ControllerResponseCode;
+import org.openremote.entities.controller.Device;
+import org.openremote.entities.panel.Panel;
+import org.openremote.entities.panel.PanelInfo;
+
+/**
+ * Tests of {@link ControllerFuture} chaining and of the device fan out
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class FuturesTest extends AbstractSimulatorTest {
+  private Controller counted;
+
+  /**
+   * Connector that records the highest number of device requests in flight
+   */
+  private static class CountingConnector extends ThreadedHttpConnector {
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @Override
+    public void getDevice(String deviceName, final AsyncControllerCallback<Device> callback) {
+      int count = inFlight.incrementAndGet();
+      synchronized (maxInFlight) {
+        maxInFlight.set(Math.max(maxInFlight.get(), count));
+      }
+      super.getDevice(deviceName, new AsyncControllerCallback<Device>() {
+        @Override
+        public void onSuccess(Device result) {
+          inFlight.decrementAndGet();
+          callback.onSuccess(result);
+        }
+
+        @Override
+        public void onFailure(ControllerResponseCode error) {
+          inFlight.decrementAndGet();
+          callback.onFailure(error);
+        }
+      });
+    }
+  }
+
+  @After
+  public void disconnectCounted() {
+    if (counted != null) {
+      counted.disconnect();
+    }
+  }
+
+  @Test
+  public void futuresAndDeviceFanOut() throws Exception {
+    PanelRegistrationHandle handle = controller.getPanelList()
+            .then(new Continuation<List<PanelInfo>, Panel>() {
+              @Override
+              public ControllerFuture<Panel> apply(List<PanelInfo> panels) {
+                return controller.getPanel(panels.get(0).getName());
+              }
+            }).then(new Continuation<Panel, PanelRegistrationHandle>() {
+              @Override
+              public ControllerFuture<PanelRegistrationHandle> apply(Panel panel) {
+                return controller.registerPanel(panel);
+              }
+            }).get(TIMEOUT, TimeUnit.MILLISECONDS);
+    Assert.assertNotNull(handle.getPanel());
+    controller.unregisterPanel(handle);
+
+    DevicesResponse devices = controller.getDevices(
+            Arrays.asList(ControllerSimulator.DEFAULT_DEVICE, "Missing", "Missing"), 1).get(
+            TIMEOUT, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(1, devices.getDevices().size());
+    Assert.assertEquals(SENSOR_COUNT, devices.getDevice(ControllerSimulator.DEFAULT_DEVICE)
+            .getSensors().size());
+    Assert.assertEquals(1, devices.getErrors().size());
+    Assert.assertNotNull(devices.getErrors().get("Missing"));
+
+    ControllerFuture<Panel> missing = controller.getPanel("Missing");
+    try {
+      missing.get(TIMEOUT, TimeUnit.MILLISECONDS);
+      Assert.fail("Expected missing panel to fail");
+    } catch (ExecutionException e) {
+      Assert.assertEquals(missing.getError(),
+              ((ControllerException) e.getCause()).getResponseCode());
+    }
+  }
+
+  @Test
+  public void cancelCompletesSuccessors() throws Exception {
+    simulator.setResponseDelay(500, 500);
+    final AtomicBoolean applied = new AtomicBoolean();
+    ControllerFuture<List<PanelInfo>> panelList = controller.getPanelList();
+    ControllerFuture<Panel> panel = panelList.then(new Continuation<List<PanelInfo>, Panel>() {
+      @Override
+      public ControllerFuture<Panel> apply(List<PanelInfo> panels) {
+        applied.set(true);
+        return controller.getPanel(panels.get(0).getName());
+      }
+    });
+    ControllerFuture<Void> last = panel.then(new Continuation<Panel, Void>() {
+      @Override
+      public ControllerFuture<Void> apply(Panel result) {
+        applied.set(true);
+        return null;
+      }
+    });
+
+    Assert.assertTrue(panelList.cancel(true));
+    assertCancelled(panel);
+    assertCancelled(last);
+
+    // The late response doesn't start the next request
+    Thread.sleep(700);
+    Assert.assertFalse(applied.get());
+  }
+
+  @Test
+  public void cancelledContinuationCancelsChain() throws Exception {
+    final ControllerFuture<Panel> inner = new ControllerFuture<Panel>();
+    ControllerFuture<Panel> chained = ControllerFuture.success("panel").then(
+            new Continuation<String, Panel>() {
+              @Override
+              public ControllerFuture<Panel> apply(String name) {
+                return inner;
+              }
+            });
+
+    inner.cancel(true);
+    assertCancelled(chained);
+  }
+
+  @Test
+  public void cancelledMemberCancelsAll() throws Exception {
+    ControllerFuture<String> first = new ControllerFuture<String>();
+    ControllerFuture<String> second = new ControllerFuture<String>();
+    ControllerFuture<List<String>> all = ControllerFuture.all(Arrays.asList(first, second));
+
+    first.onSuccess("first");
+    second.cancel(true);
+    assertCancelled(all);
+  }
+
+  @Test
+  public void fanOutKeepsConcurrencyLimit() throws Exception {
+    CountingConnector connector = new CountingConnector();
+    counted = connect(new Controller.Builder(simulator.getUrl()).setConnector(connector));
+    simulator.setResponseDelay(200, 200);
+
+    List<String> deviceNames = Arrays.asList(ControllerSimulator.DEFAULT_DEVICE, "Missing1",
+            "Missing2", "Missing3", "Missing4", "Missing5");
+    DevicesResponse devices = counted.getDevices(deviceNames, 3).get(TIMEOUT,
+            TimeUnit.MILLISECONDS);
+
+    Assert.assertEquals(3, connector.maxInFlight.get());
+    Assert.assertEquals(0, connector.inFlight.get());
+    Assert.assertEquals(1, devices.getDevices().size());
+    Assert.assertEquals(SENSOR_COUNT, devices.getDevice(ControllerSimulator.DEFAULT_DEVICE)
+            .getSensors().size());
+    Assert.assertEquals(deviceNames.size() - 1, devices.getErrors().size());
+  }
+
+  private static void assertCancelled(ControllerFuture<?> future) throws Exception {
+    Assert.assertTrue(future.isCancelled());
+    try {
+      future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+      Assert.fail("Expected cancelled future");
+    } catch (CancellationException e) {
+    }
+  }
+}
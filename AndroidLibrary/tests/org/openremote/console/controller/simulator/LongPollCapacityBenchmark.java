@@ -0,0 +1,252 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openremote.console.controller.AsyncRegistrationCallback;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.ControllerConnectionStatus;
+import org.openremote.console.controller.connector.HttpConnector;
+import org.openremote.console.controller.connector.HttpTransport;
+import org.openremote.console.controller.connector.VirtualThreadHttpConnector;
+import org.openremote.entities.controller.AsyncControllerCallback;
+import org.openremote.entities.controller.ControllerResponseCode;
+import org.openremote.entities.panel.Panel;
+
+/**
+ * Measures the client side cost of holding many concurrent sensor long polls
+ * against the {@link ControllerSimulator}. Each subscription is a controller
+ * with the simulator's default panel registered, which keeps one poll open.
+ *
+ * For each step, controllers are added until the simulator holds a poll for
+ * every subscription. The benchmark then reports the live platform threads
+ * (the simulator's own threads are excluded), the peak JVM thread count
+ * (which includes the simulator), and the heap in use after a GC. The heap
+ * figure also includes the simulator's per-poll state, which is the same for
+ * every connector.
+ *
+ * Run as a plain Java application, once per connector so the measurements
+ * don't mix. Optional arguments are
+ * <code>[virtual|platform] [subscriptions,...] [sensors]</code>, and the
+ * defaults are <code>virtual 1000,10000 5</code>.
+ * <code>virtual</code> uses {@link VirtualThreadHttpConnector}; it only uses
+ * virtual threads on Java 21 or later. <code>platform</code> uses a pool
+ * of platform threads. All controllers share one {@link HttpTransport}.
+ *
+ * The controllers and the simulator run in one process, so every
+ * subscription uses two file descriptors. At 10k subscriptions the open file
+ * limit (<code>ulimit -n</code>) must be above 20000.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class LongPollCapacityBenchmark {
+  private static final long TIMEOUT = 300000;
+  // Controllers are set up in batches so the connection bursts don't
+  // overflow the simulator's accept backlog
+  private static final int SETUP_BATCH = 250;
+
+  private final ControllerSimulator simulator;
+  private final HttpTransport transport;
+  private final boolean virtual;
+  private final List<Controller> controllers = new ArrayList<Controller>();
+  private final AtomicLong failures = new AtomicLong();
+
+  public LongPollCapacityBenchmark(ControllerSimulator simulator, HttpTransport transport,
+          boolean virtual) {
+    this.simulator = simulator;
+    this.transport = transport;
+    this.virtual = virtual;
+  }
+
+  public static void main(String[] args) throws Exception {
+    boolean virtual = args.length == 0 || !"platform".equals(args[0]);
+    String[] steps = (args.length > 1 ? args[1] : "1000,10000").split(",");
+    int sensorCount = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    int maxSubscriptions = Integer.parseInt(steps[steps.length - 1].trim());
+
+    ControllerSimulator simulator = new ControllerSimulator();
+    simulator.setSensorCount(sensorCount);
+    simulator.setChangeRate(0);
+    simulator.start();
+
+    // Every poll goes to the same host so the per host limit has to cover them all
+    HttpTransport transport = new HttpTransport(maxSubscriptions + 64, maxSubscriptions + 64);
+    LongPollCapacityBenchmark benchmark = new LongPollCapacityBenchmark(simulator, transport,
+            virtual);
+
+    System.out.println("Connector: "
+            + (virtual ? VirtualThreadHttpConnector.class.getSimpleName()
+                    + (VirtualThreadHttpConnector.isVirtual() ? " (virtual threads)"
+                            : " (platform thread fallback)") : "platform thread pool")
+            + ", Java " + System.getProperty("java.version") + ", sensors: " + sensorCount);
+    long baseHeap = usedHeap();
+    System.out.println(String.format("%13s %12s %12s %12s %10s %10s %10s %10s",
+            "subscriptions", "active polls", "threads", "peak threads", "heap MB", "KB/sub",
+            "setup s", "failures"));
+
+    try {
+      for (String step : steps) {
+        int subscriptions = Integer.parseInt(step.trim());
+        long start = System.currentTimeMillis();
+        boolean setup = true;
+        while (setup && benchmark.controllers.size() < subscriptions) {
+          setup = benchmark.addSubscriptions(Math.min(SETUP_BATCH, subscriptions
+                  - benchmark.controllers.size()));
+        }
+        if (!setup) {
+          System.out.println("Subscription setup failed at " + benchmark.controllers.size()
+                  + " subscriptions");
+          break;
+        }
+        int active = benchmark.awaitActivePolls(subscriptions);
+        long setupTime = System.currentTimeMillis() - start;
+
+        long heap = usedHeap() - baseHeap;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.out.println(String.format("%13d %12d %12d %12d %10.1f %10.1f %10.1f %10d",
+                subscriptions, active, clientThreadCount(), threads.getPeakThreadCount(),
+                heap / 1048576.0, heap / 1024.0 / subscriptions, setupTime / 1000.0,
+                benchmark.failures.getAndSet(0)));
+      }
+    } finally {
+      benchmark.disconnect();
+      simulator.stop();
+      transport.shutdown();
+    }
+
+    System.out.println("Simulator requests: " + simulator.getRequestCount() + ", polls: "
+            + simulator.getPollCount());
+  }
+
+  /**
+   * Connect the specified number of new controllers and register the default
+   * panel on each
+   *
+   * @return false if a controller failed to connect or register
+   */
+  boolean addSubscriptions(int count) throws InterruptedException {
+    final CountDownLatch ready = new CountDownLatch(count);
+    final AtomicLong setupFailures = new AtomicLong();
+
+    for (int i = 0; i < count; i++) {
+      HttpConnector connector = virtual ? new VirtualThreadHttpConnector()
+              : new ThreadedHttpConnector();
+      final Controller controller = new Controller.Builder(simulator.getUrl())
+              .setConnector(connector).setTransport(transport).build();
+      controllers.add(controller);
+
+      final AsyncRegistrationCallback registrationCallback = new AsyncRegistrationCallback() {
+        @Override
+        public void onSuccess() {
+          ready.countDown();
+        }
+
+        @Override
+        public void onFailure(ControllerResponseCode error) {
+          // Also called for poll failures after registration
+          failures.incrementAndGet();
+          if (ready.getCount() > 0) {
+            setupFailures.incrementAndGet();
+            ready.countDown();
+          }
+        }
+      };
+
+      final AsyncControllerCallback<Panel> panelCallback = new AsyncControllerCallback<Panel>() {
+        @Override
+        public void onSuccess(Panel panel) {
+          controller.registerPanel(panel, registrationCallback);
+        }
+
+        @Override
+        public void onFailure(ControllerResponseCode error) {
+          setupFailures.incrementAndGet();
+          ready.countDown();
+        }
+      };
+
+      controller.connect(new AsyncControllerCallback<ControllerConnectionStatus>() {
+        @Override
+        public void onSuccess(ControllerConnectionStatus result) {
+          controller.getPanel(ControllerSimulator.DEFAULT_PANEL, panelCallback);
+        }
+
+        @Override
+        public void onFailure(ControllerResponseCode error) {
+          setupFailures.incrementAndGet();
+          ready.countDown();
+        }
+      });
+    }
+
+    return ready.await(TIMEOUT, TimeUnit.MILLISECONDS) && setupFailures.get() == 0;
+  }
+
+  /**
+   * Wait for the simulator to be holding the specified number of polls
+   *
+   * @return number of polls held when the wait ended
+   */
+  int awaitActivePolls(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    int active = simulator.getActivePollCount();
+    while (active < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+      active = simulator.getActivePollCount();
+    }
+    return active;
+  }
+
+  void disconnect() {
+    for (Controller controller : controllers) {
+      controller.disconnect();
+    }
+    controllers.clear();
+  }
+
+  /**
+   * Live platform threads excluding the simulator's request threads
+   */
+  static int clientThreadCount() {
+    int count = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (!thread.getName().startsWith("ControllerSimulator")) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
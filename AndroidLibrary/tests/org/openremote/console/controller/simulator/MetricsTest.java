@@ -0,0 +1,133 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.SensorIdSet;
+import org.openremote.console.controller.SensorRegistrationHandle;
+import org.openremote.console.controller.connector.ConnectorMetricsSnapshot;
+import org.openremote.console.controller.connector.ConnectorMetricsSnapshot.CommandMetrics;
+import org.openremote.console.controller.connector.HttpConnector.RestCommand;
+import org.openremote.console.controller.connector.RecordingConnectorMetrics;
+import org.openremote.entities.controller.DeviceInfo;
+import org.openremote.entities.panel.Panel;
+
+/**
+ * Tests of the request metrics recorded by a {@link RecordingConnectorMetrics}
+ * sink
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class MetricsTest extends AbstractSimulatorTest {
+  private Controller measured;
+
+  @After
+  public void disconnectMeasured() {
+    if (measured != null) {
+      measured.disconnect();
+    }
+  }
+
+  @Test
+  public void metricsAreRecorded() throws Exception {
+    measured = connect(new Controller.Builder(simulator.getUrl()).setConnector(
+            new ThreadedHttpConnector()).setMetrics(new RecordingConnectorMetrics()));
+
+    Result<Panel> panel = new Result<Panel>();
+    measured.getPanel(ControllerSimulator.DEFAULT_PANEL, panel);
+    panel.get();
+
+    simulator.setErrorRate(1);
+    Result<List<DeviceInfo>> deviceList = new Result<List<DeviceInfo>>();
+    measured.getDeviceList(deviceList);
+    Assert.assertTrue(deviceList.latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    ConnectorMetricsSnapshot snapshot = measured.getMetricsSnapshot();
+    CommandMetrics panelMetrics = snapshot.getCommandMetrics(RestCommand.GET_PANEL_LAYOUT);
+    Assert.assertEquals(1, panelMetrics.getRequestCount());
+    Assert.assertEquals(0, panelMetrics.getFailureCount());
+    Assert.assertTrue(panelMetrics.getBytesIn() > 0);
+    Assert.assertTrue(panelMetrics.getBytesOut() > 0);
+    Assert.assertTrue(panelMetrics.getMaxLatency() >= panelMetrics.getTotalParseTime());
+
+    CommandMetrics deviceMetrics = snapshot.getCommandMetrics(RestCommand.GET_DEVICE_LIST);
+    Assert.assertEquals(1, deviceMetrics.getFailureCount());
+    Assert.assertEquals(1, deviceMetrics.getErrorCounts().size());
+    Assert.assertEquals(0, snapshot.getInFlightCount());
+    Assert.assertNull(snapshot.getCommandMetrics(RestCommand.GET_XML));
+
+    // Default sink records nothing
+    Assert.assertTrue(controller.getMetricsSnapshot().getCommands().isEmpty());
+  }
+
+  @Test
+  public void disconnectedRequestsLeaveNothingInFlight() throws Exception {
+    measured = connect(new Controller.Builder(simulator.getUrl()).setConnector(
+            new ThreadedHttpConnector()).setMetrics(new RecordingConnectorMetrics()));
+    simulator.setResponseDelay(5000, 5000);
+
+    Result<List<DeviceInfo>> deviceList = new Result<List<DeviceInfo>>();
+    measured.getDeviceList(deviceList);
+    Assert.assertEquals(1, measured.getMetricsSnapshot().getInFlightCount());
+
+    measured.disconnect();
+
+    ConnectorMetricsSnapshot snapshot = measured.getMetricsSnapshot();
+    CommandMetrics deviceMetrics = snapshot.getCommandMetrics(RestCommand.GET_DEVICE_LIST);
+    Assert.assertEquals(0, snapshot.getInFlightCount());
+    Assert.assertEquals(1, deviceMetrics.getCancelledCount());
+    Assert.assertEquals(0, deviceMetrics.getRequestCount());
+    Assert.assertEquals(0, deviceMetrics.getFailureCount());
+  }
+
+  @Test
+  public void reissuedPollsLeaveOnePollInFlight() throws Exception {
+    measured = connect(new Controller.Builder(simulator.getUrl()).setConnector(
+            new ThreadedHttpConnector()).setMetrics(new RecordingConnectorMetrics()));
+
+    for (int i = 0; i < 3; i++) {
+      SensorIdSet sensorIds = new SensorIdSet();
+      sensorIds.add(ControllerSimulator.FIRST_SENSOR_ID + i);
+      final long polls = simulator.getPollCount();
+      SensorRegistrationHandle handle = measured.registerSensors(sensorIds).get(TIMEOUT,
+              TimeUnit.MILLISECONDS);
+      Assert.assertNotNull(handle);
+      await("Poll not reissued", new Condition() {
+        @Override
+        public boolean isMet() {
+          return simulator.getPollCount() > polls;
+        }
+      });
+    }
+
+    CommandMetrics pollMetrics = measured.getMetricsSnapshot().getCommandMetrics(
+            RestCommand.DO_SENSOR_POLLING);
+    Assert.assertEquals(1, pollMetrics.getInFlightCount());
+    Assert.assertTrue(pollMetrics.getCancelledCount() >= 2);
+    Assert.assertEquals(0, pollMetrics.getFailureCount());
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.connector.FilePanelCache;
+import org.openremote.entities.panel.Panel;
+
+/**
+ * Tests of panel revalidation through a {@link FilePanelCache} using
+ * conditional GETs against the simulator
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class PanelCacheTest extends AbstractSimulatorTest {
+  private static final String SINGLE_LABEL_PANEL = "{\"screens\":{\"screen\":[{\"id\":1,"
+          + "\"name\":\"Sensors\",\"absolute\":[{\"left\":0,\"top\":0,\"width\":30,\"height\":20,"
+          + "\"label\":{\"id\":1,\"text\":\"\",\"link\":{\"type\":\"sensor\",\"ref\":"
+          + ControllerSimulator.FIRST_SENSOR_ID + "}}}]}]},\"groups\":{\"group\":[{\"id\":1,"
+          + "\"name\":\"Default\",\"include\":[{\"type\":\"screen\",\"ref\":1}]}]}}";
+
+  private File directory;
+
+  @Before
+  public void createDirectory() throws IOException {
+    directory = File.createTempFile("panelcache", "");
+    Assert.assertTrue(directory.delete());
+  }
+
+  @After
+  public void deleteDirectory() {
+    new FilePanelCache(directory).clear();
+    directory.delete();
+  }
+
+  @Test
+  public void unchangedPanelIsServedFromCache() throws Exception {
+    FilePanelCache cache = new FilePanelCache(directory);
+    Controller cached = connect(new Controller.Builder(simulator.getUrl()).setConnector(
+            new ThreadedHttpConnector()).setPanelCache(cache));
+
+    try {
+      Assert.assertEquals(SENSOR_COUNT, getPanel(cached).getWidgets().size());
+      long notModified = simulator.getNotModifiedCount();
+      long hits = cache.getHitCount();
+
+      Assert.assertEquals(SENSOR_COUNT, getPanel(cached).getWidgets().size());
+      Assert.assertEquals(notModified + 1, simulator.getNotModifiedCount());
+      Assert.assertEquals(hits + 1, cache.getHitCount());
+    } finally {
+      cached.disconnect();
+    }
+  }
+
+  @Test
+  public void changedPanelReplacesCachedPanel() throws Exception {
+    FilePanelCache cache = new FilePanelCache(directory);
+    Controller cached = connect(new Controller.Builder(simulator.getUrl()).setConnector(
+            new ThreadedHttpConnector()).setPanelCache(cache));
+
+    try {
+      Assert.assertEquals(SENSOR_COUNT, getPanel(cached).getWidgets().size());
+
+      simulator.addPanel(ControllerSimulator.DEFAULT_PANEL, SINGLE_LABEL_PANEL);
+      long notModified = simulator.getNotModifiedCount();
+      Assert.assertEquals(1, getPanel(cached).getWidgets().size());
+      Assert.assertEquals(notModified, simulator.getNotModifiedCount());
+
+      // The replacement must now be the cached copy
+      Assert.assertEquals(1, getPanel(cached).getWidgets().size());
+      Assert.assertEquals(notModified + 1, simulator.getNotModifiedCount());
+    } finally {
+      cached.disconnect();
+    }
+  }
+
+  @Test
+  public void cachedPanelIsRevalidatedAfterRestart() throws Exception {
+    Controller first = connect(new Controller.Builder(simulator.getUrl()).setConnector(
+            new ThreadedHttpConnector()).setPanelCache(new FilePanelCache(directory)));
+    try {
+      getPanel(first);
+    } finally {
+      first.disconnect();
+    }
+
+    FilePanelCache cache = new FilePanelCache(directory);
+    Controller restarted = connect(new Controller.Builder(simulator.getUrl()).setConnector(
+            new ThreadedHttpConnector()).setPanelCache(cache));
+    try {
+      long notModified = simulator.getNotModifiedCount();
+      Assert.assertEquals(SENSOR_COUNT, getPanel(restarted).getWidgets().size());
+      Assert.assertEquals(notModified + 1, simulator.getNotModifiedCount());
+    } finally {
+      restarted.disconnect();
+    }
+  }
+
+  @Test
+  public void lookupRunsOffCallersThread() throws Exception {
+    final List<Thread> lookupThreads = new CopyOnWriteArrayList<Thread>();
+    FilePanelCache cache = new FilePanelCache(directory) {
+      @Override
+      public Entry get(String key) {
+        lookupThreads.add(Thread.currentThread());
+        return super.get(key);
+      }
+    };
+    Controller cached = connect(new Controller.Builder(simulator.getUrl()).setConnector(
+            new ThreadedHttpConnector()).setPanelCache(cache));
+
+    try {
+      getPanel(cached);
+      getPanel(cached);
+      Assert.assertFalse(lookupThreads.isEmpty());
+      Assert.assertFalse(lookupThreads.contains(Thread.currentThread()));
+    } finally {
+      cached.disconnect();
+    }
+  }
+
+  private static Panel getPanel(Controller controller) throws InterruptedException {
+    Result<Panel> panel = new Result<Panel>();
+    controller.getPanel(ControllerSimulator.DEFAULT_PANEL, panel);
+    return panel.get();
+  }
+}
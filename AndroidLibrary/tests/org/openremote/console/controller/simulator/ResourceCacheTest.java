@@ -0,0 +1,212 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.ControllerConnectionStatus;
+import org.openremote.console.controller.connector.ResourceCache;
+import org.openremote.entities.controller.ControllerResponseCode;
+import org.openremote.entities.panel.ResourceDataResponse;
+
+/**
+ * Tests of the two tier {@link ResourceCache} revalidation against the
+ * simulator
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class ResourceCacheTest extends AbstractSimulatorTest {
+  private static final String IMAGE = "image.png";
+  private static final byte[] IMAGE_DATA = new byte[] { 1, 2, 3, 4 };
+  private static final byte[] CHANGED_IMAGE_DATA = new byte[] { 5, 6, 7 };
+
+  private File directory;
+  private ThreadedHttpConnector connector;
+  private Controller cached;
+
+  @Before
+  public void addResource() throws IOException {
+    simulator.addResource(IMAGE, IMAGE_DATA, "image/png", System.currentTimeMillis() - 60000);
+    directory = File.createTempFile("resourcecache", "");
+    Assert.assertTrue(directory.delete());
+  }
+
+  @After
+  public void disconnectCached() {
+    if (cached != null) {
+      cached.disconnect();
+    }
+    new ResourceCache(0, directory, 1).clear();
+    directory.delete();
+  }
+
+  @Test
+  public void freshResourceIsServedFromMemory() throws Exception {
+    ResourceCache cache = new ResourceCache(ResourceCache.DEFAULT_MAX_MEMORY_SIZE);
+    connect(cache);
+
+    long downloads = simulator.getResourceDataCount();
+    Assert.assertArrayEquals(IMAGE_DATA, getResource().getData());
+    Assert.assertArrayEquals(IMAGE_DATA, getResource().getData());
+
+    Assert.assertEquals(downloads + 1, simulator.getResourceDataCount());
+    Assert.assertEquals(0, simulator.getResourceDetailsCount());
+    Assert.assertEquals(1, cache.getMemoryHitCount());
+  }
+
+  @Test
+  public void staleUnchangedResourceIsRevalidated() throws Exception {
+    ResourceCache cache = new ResourceCache(ResourceCache.DEFAULT_MAX_MEMORY_SIZE);
+    cache.setRevalidateInterval(0);
+    connect(cache);
+
+    long downloads = simulator.getResourceDataCount();
+    Assert.assertArrayEquals(IMAGE_DATA, getResource().getData());
+    Assert.assertArrayEquals(IMAGE_DATA, getResource().getData());
+
+    Assert.assertEquals(downloads + 1, simulator.getResourceDataCount());
+    Assert.assertEquals(1, simulator.getResourceDetailsCount());
+  }
+
+  @Test
+  public void changedResourceIsDownloadedAgain() throws Exception {
+    ResourceCache cache = new ResourceCache(ResourceCache.DEFAULT_MAX_MEMORY_SIZE);
+    cache.setRevalidateInterval(0);
+    connect(cache);
+
+    long downloads = simulator.getResourceDataCount();
+    Assert.assertArrayEquals(IMAGE_DATA, getResource().getData());
+    simulator.addResource(IMAGE, CHANGED_IMAGE_DATA, "image/png", System.currentTimeMillis());
+    Assert.assertArrayEquals(CHANGED_IMAGE_DATA, getResource().getData());
+
+    Assert.assertEquals(downloads + 2, simulator.getResourceDataCount());
+    Assert.assertEquals(1, simulator.getResourceDetailsCount());
+
+    // The download replaces the cached copy
+    Assert.assertArrayEquals(CHANGED_IMAGE_DATA, getResource().getData());
+    Assert.assertEquals(downloads + 2, simulator.getResourceDataCount());
+  }
+
+  @Test
+  public void diskResourceIsRevalidatedAfterRestart() throws Exception {
+    connect(new ResourceCache(ResourceCache.DEFAULT_MAX_MEMORY_SIZE, directory,
+            ResourceCache.DEFAULT_MAX_DISK_SIZE));
+    Assert.assertArrayEquals(IMAGE_DATA, getResource().getData());
+    cached.disconnect();
+
+    ResourceCache cache = new ResourceCache(ResourceCache.DEFAULT_MAX_MEMORY_SIZE, directory,
+            ResourceCache.DEFAULT_MAX_DISK_SIZE);
+    connect(cache);
+
+    long downloads = simulator.getResourceDataCount();
+    Assert.assertArrayEquals(IMAGE_DATA, getResource().getData());
+    Assert.assertEquals(downloads, simulator.getResourceDataCount());
+    Assert.assertEquals(1, simulator.getResourceDetailsCount());
+    Assert.assertEquals(1, cache.getDiskHitCount());
+  }
+
+  @Test
+  public void diskLookupRunsOffCallersThread() throws Exception {
+    connect(new ResourceCache(ResourceCache.DEFAULT_MAX_MEMORY_SIZE, directory,
+            ResourceCache.DEFAULT_MAX_DISK_SIZE));
+    Assert.assertArrayEquals(IMAGE_DATA, getResource().getData());
+    cached.disconnect();
+
+    final List<Thread> lookupThreads = new CopyOnWriteArrayList<Thread>();
+    connect(new ResourceCache(ResourceCache.DEFAULT_MAX_MEMORY_SIZE, directory,
+            ResourceCache.DEFAULT_MAX_DISK_SIZE) {
+      @Override
+      public synchronized Resource get(String key) {
+        lookupThreads.add(Thread.currentThread());
+        return super.get(key);
+      }
+    });
+
+    Assert.assertArrayEquals(IMAGE_DATA, getResource().getData());
+    Assert.assertEquals(1, lookupThreads.size());
+    Assert.assertNotSame(Thread.currentThread(), lookupThreads.get(0));
+  }
+
+  @Test
+  public void concurrentRequestsShareOneDownload() throws Exception {
+    connect(new ResourceCache(ResourceCache.DEFAULT_MAX_MEMORY_SIZE));
+    simulator.setResponseDelay(200, 200);
+
+    long downloads = simulator.getResourceDataCount();
+    List<Result<ResourceDataResponse>> results = new ArrayList<Result<ResourceDataResponse>>();
+    for (int i = 0; i < 3; i++) {
+      Result<ResourceDataResponse> result = new Result<ResourceDataResponse>();
+      connector.getResourceData(IMAGE, result);
+      results.add(result);
+    }
+
+    for (Result<ResourceDataResponse> result : results) {
+      Assert.assertArrayEquals(IMAGE_DATA, result.get().getData());
+    }
+    Assert.assertEquals(downloads + 1, simulator.getResourceDataCount());
+  }
+
+  @Test
+  public void disconnectFailsWaitingCallers() throws Exception {
+    connect(new ResourceCache(ResourceCache.DEFAULT_MAX_MEMORY_SIZE));
+    simulator.setResponseDelay(5000, 5000);
+
+    Result<ResourceDataResponse> first = new Result<ResourceDataResponse>();
+    Result<ResourceDataResponse> second = new Result<ResourceDataResponse>();
+    connector.getResourceData(IMAGE, first);
+    connector.getResourceData(IMAGE, second);
+    cached.disconnect();
+
+    Assert.assertTrue(first.latch.await(1, TimeUnit.SECONDS));
+    Assert.assertTrue(second.latch.await(1, TimeUnit.SECONDS));
+    Assert.assertEquals(ControllerResponseCode.DISCONNECTED, first.error);
+    Assert.assertEquals(ControllerResponseCode.DISCONNECTED, second.error);
+
+    // The aborted request mustn't block later requests for the resource
+    simulator.setResponseDelay(0, 0);
+    Result<ControllerConnectionStatus> reconnect = new Result<ControllerConnectionStatus>();
+    cached.connect(reconnect);
+    reconnect.get();
+    Assert.assertArrayEquals(IMAGE_DATA, getResource().getData());
+  }
+
+  private void connect(ResourceCache cache) throws InterruptedException {
+    connector = new ThreadedHttpConnector();
+    cached = connect(new Controller.Builder(simulator.getUrl()).setConnector(connector)
+            .setResourceCache(cache));
+  }
+
+  private ResourceDataResponse getResource() throws InterruptedException {
+    Result<ResourceDataResponse> result = new Result<ResourceDataResponse>();
+    connector.getResourceData(IMAGE, result);
+    return result.get();
+  }
+}
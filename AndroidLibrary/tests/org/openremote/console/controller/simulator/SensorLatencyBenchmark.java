@@ -0,0 +1,265 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openremote.console.controller.AsyncRegistrationCallback;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.ControllerConnectionStatus;
+import org.openremote.entities.controller.AsyncControllerCallback;
+import org.openremote.entities.controller.ControllerResponseCode;
+import org.openremote.entities.panel.LabelWidget;
+import org.openremote.entities.panel.Panel;
+import org.openremote.entities.panel.Widget;
+
+/**
+ * End to end load test of sensor monitoring against the
+ * {@link ControllerSimulator}. Each step adds controllers (each with its own
+ * connector and a registration of the simulator's default panel) and then
+ * measures the delay from a simulated sensor change to the change reaching
+ * the panel widget via <code>onSensorsChanged</code>.
+ *
+ * The number of registrations doubles every step until the p99 delay exceeds
+ * the target or new registrations can't be set up; the largest step that stayed within the
+ * target is reported as the maximum sustained registrations.
+ *
+ * Run as a plain Java application; optional arguments are
+ * <code>[sensors] [changes/s] [max registrations] [step seconds] [p99 target ms] [response delay ms] [error rate]</code>.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorLatencyBenchmark {
+  private static final long TIMEOUT = 30000;
+
+  private final ControllerSimulator simulator;
+  private final List<Controller> controllers = new ArrayList<Controller>();
+  private final AtomicLong failures = new AtomicLong();
+  private long[] latencies = new long[1 << 16];
+  private int latencyCount;
+  private volatile boolean recording;
+  private volatile long recordingStart;
+
+  public SensorLatencyBenchmark(ControllerSimulator simulator) {
+    this.simulator = simulator;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int sensorCount = getArg(args, 0, 100);
+    int changeRate = getArg(args, 1, 200);
+    int maxRegistrations = getArg(args, 2, 512);
+    int stepSeconds = getArg(args, 3, 10);
+    int p99Target = getArg(args, 4, 500);
+    int responseDelay = getArg(args, 5, 0);
+    double errorRate = args.length > 6 ? Double.parseDouble(args[6]) : 0;
+
+    ControllerSimulator simulator = new ControllerSimulator();
+    simulator.setSensorCount(sensorCount);
+    simulator.setChangeRate(changeRate);
+    simulator.setPollHoldTime(ControllerSimulator.DEFAULT_POLL_HOLD_TIME);
+    simulator.start();
+
+    System.out.println("Sensors: " + sensorCount + ", changes/s: " + changeRate
+            + ", response delay: " + responseDelay + "ms, error rate: " + errorRate
+            + ", p99 target: " + p99Target + "ms");
+    System.out.println(String.format("%13s %10s %10s %10s %10s %10s", "registrations",
+            "updates/s", "p50 ms", "p99 ms", "max ms", "failures"));
+
+    SensorLatencyBenchmark benchmark = new SensorLatencyBenchmark(simulator);
+    int sustained = 0;
+
+    try {
+      for (int registrations = 1; registrations <= maxRegistrations; registrations *= 2) {
+        // Faults are only injected once the registrations are in place
+        simulator.setResponseDelay(0, 0);
+        simulator.setErrorRate(0);
+        if (!benchmark.addRegistrations(registrations - benchmark.controllers.size())) {
+          System.out.println("Registration failed at " + registrations + " registrations");
+          break;
+        }
+        simulator.setResponseDelay(responseDelay, responseDelay);
+        simulator.setErrorRate(errorRate);
+
+        long[] step = benchmark.measure(stepSeconds * 1000L);
+        long p50 = percentile(step, 50);
+        long p99 = percentile(step, 99);
+        long max = step.length > 0 ? step[step.length - 1] : 0;
+        long failures = benchmark.failures.getAndSet(0);
+
+        System.out.println(String.format("%13d %10d %10.1f %10.1f %10.1f %10d", registrations,
+                step.length / stepSeconds, p50 / 1e6, p99 / 1e6, max / 1e6, failures));
+
+        // Failures are reported but don't end the run as they may be injected
+        if (step.length == 0 || p99 > p99Target * 1000000L) {
+          break;
+        }
+        sustained = registrations;
+      }
+    } finally {
+      benchmark.disconnect();
+      simulator.stop();
+    }
+
+    System.out.println("Maximum sustained registrations: " + sustained);
+    System.out.println("Simulator requests: " + simulator.getRequestCount() + ", polls: "
+            + simulator.getPollCount() + ", injected errors: " + simulator.getInjectedErrorCount());
+  }
+
+  /**
+   * Connect the specified number of new controllers and register the default
+   * panel on each
+   *
+   * @return false if a controller failed to connect or register
+   */
+  boolean addRegistrations(int count) throws InterruptedException {
+    final CountDownLatch ready = new CountDownLatch(count);
+    final AtomicLong setupFailures = new AtomicLong();
+
+    for (int i = 0; i < count; i++) {
+      final Controller controller = new Controller.Builder(simulator.getUrl()).setConnector(
+              new ThreadedHttpConnector()).build();
+      controllers.add(controller);
+
+      final AsyncRegistrationCallback registrationCallback = new AsyncRegistrationCallback() {
+        @Override
+        public void onSuccess() {
+          ready.countDown();
+        }
+
+        @Override
+        public void onFailure(ControllerResponseCode error) {
+          // Also called for poll failures after registration
+          failures.incrementAndGet();
+          if (ready.getCount() > 0) {
+            setupFailures.incrementAndGet();
+            ready.countDown();
+          }
+        }
+      };
+
+      final AsyncControllerCallback<Panel> panelCallback = new AsyncControllerCallback<Panel>() {
+        @Override
+        public void onSuccess(Panel panel) {
+          listen(panel);
+          controller.registerPanel(panel, registrationCallback);
+        }
+
+        @Override
+        public void onFailure(ControllerResponseCode error) {
+          setupFailures.incrementAndGet();
+          ready.countDown();
+        }
+      };
+
+      controller.connect(new AsyncControllerCallback<ControllerConnectionStatus>() {
+        @Override
+        public void onSuccess(ControllerConnectionStatus result) {
+          controller.getPanel(ControllerSimulator.DEFAULT_PANEL, panelCallback);
+        }
+
+        @Override
+        public void onFailure(ControllerResponseCode error) {
+          setupFailures.incrementAndGet();
+          ready.countDown();
+        }
+      });
+    }
+
+    return ready.await(TIMEOUT, TimeUnit.MILLISECONDS) && setupFailures.get() == 0;
+  }
+
+  /**
+   * Record change to delivery delays for the specified time
+   *
+   * @return sorted delays in nanoseconds
+   */
+  long[] measure(long duration) throws InterruptedException {
+    synchronized (this) {
+      latencyCount = 0;
+      recordingStart = System.nanoTime();
+      recording = true;
+    }
+    failures.set(0);
+    Thread.sleep(duration);
+
+    synchronized (this) {
+      recording = false;
+      long[] result = Arrays.copyOf(latencies, latencyCount);
+      Arrays.sort(result);
+      return result;
+    }
+  }
+
+  void disconnect() {
+    for (Controller controller : controllers) {
+      controller.disconnect();
+    }
+    controllers.clear();
+  }
+
+  private void listen(Panel panel) {
+    for (Widget widget : panel.getWidgets()) {
+      if (widget instanceof LabelWidget) {
+        widget.addPropertyChangeListener(new PropertyChangeListener() {
+          @Override
+          public void propertyChange(PropertyChangeEvent evt) {
+            if ("text".equals(evt.getPropertyName()) && recording) {
+              long changeTime = simulator.getChangeTime((String) evt.getNewValue());
+              // Initial values of new registrations changed before recording
+              if (changeTime >= recordingStart) {
+                record(System.nanoTime() - changeTime);
+              }
+            }
+          }
+        });
+      }
+    }
+  }
+
+  private synchronized void record(long latency) {
+    if (!recording) {
+      return;
+    }
+    if (latencyCount == latencies.length) {
+      latencies = Arrays.copyOf(latencies, latencies.length * 2);
+    }
+    latencies[latencyCount++] = latency;
+  }
+
+  private static long percentile(long[] sorted, int percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+  }
+
+  private static int getArg(String[] args, int index, int defaultValue) {
+    return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+  }
+}
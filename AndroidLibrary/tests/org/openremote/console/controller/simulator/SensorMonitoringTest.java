@@ -0,0 +1,260 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.ControllerConnectionStatus;
+import org.openremote.console.controller.PanelRegistrationHandle;
+import org.openremote.console.controller.ReconnectPolicy;
+import org.openremote.console.controller.SensorIdSet;
+import org.openremote.console.controller.SensorRegistrationHandle;
+import org.openremote.entities.panel.LabelWidget;
+import org.openremote.entities.panel.Panel;
+import org.openremote.entities.panel.Widget;
+
+/**
+ * Tests of the multiplexed sensor long-poll of a
+ * {@link org.openremote.console.controller.Controller}
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorMonitoringTest extends AbstractSimulatorTest {
+  // Longer than TIMEOUT so a change only arrives in time if the poll is
+  // reissued
+  private static final long LONG_POLL_HOLD_TIME = 60000;
+  private static final long SHORT_POLL_HOLD_TIME = 100;
+  private static final long RETRY_DELAY = 2000;
+
+  @Test
+  public void sensorSetChangeReissuesPoll() throws Exception {
+    simulator.setPollHoldTime(LONG_POLL_HOLD_TIME);
+    final int firstSensorId = ControllerSimulator.FIRST_SENSOR_ID;
+    final int secondSensorId = ControllerSimulator.FIRST_SENSOR_ID + 1;
+
+    SensorRegistrationHandle first = controller.registerSensors(sensorIds(firstSensorId)).get(
+            TIMEOUT, TimeUnit.MILLISECONDS);
+    await("Poll not held", new Condition() {
+      @Override
+      public boolean isMet() {
+        return simulator.getActivePollCount() > 0;
+      }
+    });
+
+    // The held poll doesn't include the second sensor
+    SensorRegistrationHandle second = controller.registerSensors(sensorIds(secondSensorId)).get(
+            TIMEOUT, TimeUnit.MILLISECONDS);
+    simulator.setSensorValue(secondSensorId, "added");
+    await("Added sensor not monitored", new Condition() {
+      @Override
+      public boolean isMet() {
+        return "added".equals(controller.getLastSensorValue(secondSensorId));
+      }
+    });
+
+    final long pollCount = simulator.getPollCount();
+    controller.unregisterSensors(second);
+    await("Poll not reissued on unsubscribe", new Condition() {
+      @Override
+      public boolean isMet() {
+        return simulator.getPollCount() > pollCount;
+      }
+    });
+
+    simulator.setSensorValue(firstSensorId, "remaining");
+    await("Remaining sensor not monitored", new Condition() {
+      @Override
+      public boolean isMet() {
+        return "remaining".equals(controller.getLastSensorValue(firstSensorId));
+      }
+    });
+    Assert.assertNull(controller.getLastSensorValue(secondSensorId));
+    controller.unregisterSensors(first);
+  }
+
+  @Test
+  public void subscribingMonitoredSensorsDoesNotReissuePoll() throws Exception {
+    simulator.setPollHoldTime(LONG_POLL_HOLD_TIME);
+    SensorRegistrationHandle first = controller.registerSensors(
+            sensorIds(ControllerSimulator.FIRST_SENSOR_ID)).get(TIMEOUT, TimeUnit.MILLISECONDS);
+    await("Poll not held", new Condition() {
+      @Override
+      public boolean isMet() {
+        return simulator.getActivePollCount() > 0;
+      }
+    });
+
+    long pollCount = simulator.getPollCount();
+    SensorRegistrationHandle second = controller.registerSensors(
+            sensorIds(ControllerSimulator.FIRST_SENSOR_ID)).get(TIMEOUT, TimeUnit.MILLISECONDS);
+    Thread.sleep(200);
+    Assert.assertEquals(pollCount, simulator.getPollCount());
+
+    controller.unregisterSensors(second);
+    controller.unregisterSensors(first);
+  }
+
+  @Test
+  public void sharedSensorChangeReachesEveryPanelAfterReconnect() throws Exception {
+    simulator.setSensorValue(ControllerSimulator.FIRST_SENSOR_ID, "initial");
+    Panel firstPanel = controller.getPanel(ControllerSimulator.DEFAULT_PANEL).get(TIMEOUT,
+            TimeUnit.MILLISECONDS);
+    Panel secondPanel = controller.getPanel(ControllerSimulator.DEFAULT_PANEL).get(TIMEOUT,
+            TimeUnit.MILLISECONDS);
+    PanelRegistrationHandle first = controller.registerPanel(firstPanel).get(TIMEOUT,
+            TimeUnit.MILLISECONDS);
+    PanelRegistrationHandle second = controller.registerPanel(secondPanel).get(TIMEOUT,
+            TimeUnit.MILLISECONDS);
+    final LabelWidget firstLabel = getLabel(firstPanel, "initial");
+    final LabelWidget secondLabel = getLabel(secondPanel, "initial");
+
+    // Change the sensor while disconnected so only the re-registration of
+    // the panels can see it
+    controller.disconnect();
+    Assert.assertFalse(controller.isConnected());
+    simulator.setSensorValue(ControllerSimulator.FIRST_SENSOR_ID, "reconnected");
+    Result<ControllerConnectionStatus> connect = new Result<ControllerConnectionStatus>();
+    controller.connect(connect);
+    connect.get();
+
+    await("First panel not updated", new Condition() {
+      @Override
+      public boolean isMet() {
+        return "reconnected".equals(firstLabel.getText());
+      }
+    });
+    await("Second panel not updated", new Condition() {
+      @Override
+      public boolean isMet() {
+        return "reconnected".equals(secondLabel.getText());
+      }
+    });
+
+    // Monitoring resumes after the reconnect
+    simulator.setSensorValue(ControllerSimulator.FIRST_SENSOR_ID, "polled");
+    await("Poll not resumed", new Condition() {
+      @Override
+      public boolean isMet() {
+        return "polled".equals(firstLabel.getText()) && "polled".equals(secondLabel.getText());
+      }
+    });
+
+    controller.unregisterPanel(first);
+    controller.unregisterPanel(second);
+  }
+
+  @Test
+  public void newPanelRegistrationUpdatesPanelsSharingSensor() throws Exception {
+    simulator.setSensorValue(ControllerSimulator.FIRST_SENSOR_ID, "initial");
+    Panel firstPanel = controller.getPanel(ControllerSimulator.DEFAULT_PANEL).get(TIMEOUT,
+            TimeUnit.MILLISECONDS);
+    Panel secondPanel = controller.getPanel(ControllerSimulator.DEFAULT_PANEL).get(TIMEOUT,
+            TimeUnit.MILLISECONDS);
+    PanelRegistrationHandle first = controller.registerPanel(firstPanel).get(TIMEOUT,
+            TimeUnit.MILLISECONDS);
+    final LabelWidget firstLabel = getLabel(firstPanel, "initial");
+
+    // Stop the poll loop so only the second panel's initial values can
+    // report the change
+    controller.disconnect();
+    simulator.setSensorValue(ControllerSimulator.FIRST_SENSOR_ID, "changed");
+    PanelRegistrationHandle second = controller.registerPanel(secondPanel).get(TIMEOUT,
+            TimeUnit.MILLISECONDS);
+    getLabel(secondPanel, "changed");
+
+    await("First panel not updated", new Condition() {
+      @Override
+      public boolean isMet() {
+        return "changed".equals(firstLabel.getText());
+      }
+    });
+
+    controller.unregisterPanel(first);
+    controller.unregisterPanel(second);
+  }
+
+  @Test
+  public void retriesShareOneSchedulerThread() throws Exception {
+    Controller other = connect(new Controller.Builder(simulator.getUrl()).setConnector(
+            new ThreadedHttpConnector()));
+    try {
+      registerFailingSensor(controller);
+      registerFailingSensor(other);
+
+      int retryThreads = 0;
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        if (thread.getName().startsWith("SensorMonitor-")) {
+          retryThreads++;
+        }
+      }
+      Assert.assertEquals(1, retryThreads);
+    } finally {
+      other.disconnect();
+    }
+  }
+
+  /**
+   * Register a sensor and make its polls fail until a retry is pending
+   */
+  private void registerFailingSensor(final Controller target) throws Exception {
+    target.setReconnectPolicy(new ReconnectPolicy(RETRY_DELAY, RETRY_DELAY, 1, 0));
+    simulator.setPollHoldTime(SHORT_POLL_HOLD_TIME);
+    simulator.setErrorRate(0);
+    target.registerSensors(sensorIds(ControllerSimulator.FIRST_SENSOR_ID)).get(TIMEOUT,
+            TimeUnit.MILLISECONDS);
+    simulator.setErrorRate(1);
+    await("Poll not retried", new Condition() {
+      @Override
+      public boolean isMet() {
+        return target.getSensorRetryCount() > 0;
+      }
+    });
+  }
+
+  /**
+   * Wait for a label of the panel to show the text
+   */
+  private static LabelWidget getLabel(final Panel panel, final String text) throws Exception {
+    final LabelWidget[] label = new LabelWidget[1];
+    await("No label showing " + text, new Condition() {
+      @Override
+      public boolean isMet() {
+        for (Widget widget : panel.getWidgets()) {
+          if (text.equals(((LabelWidget) widget).getText())) {
+            label[0] = (LabelWidget) widget;
+            return true;
+          }
+        }
+        return false;
+      }
+    });
+    return label[0];
+  }
+
+  private static SensorIdSet sensorIds(int sensorId) {
+    SensorIdSet sensorIds = new SensorIdSet();
+    sensorIds.add(sensorId);
+    return sensorIds;
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openremote.console.controller.SensorFlow;
+import org.openremote.console.controller.SensorIdSet;
+import org.openremote.console.controller.SensorPublisher;
+import org.openremote.console.controller.SensorRegistrationHandle;
+import org.openremote.console.controller.SensorUpdate;
+
+/**
+ * Tests of the demand, conflation and drop accounting of a registration's
+ * {@link SensorPublisher}
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SensorPublisherTest extends AbstractSimulatorTest {
+
+  /**
+   * Subscriber that records its updates and only signals demand when the
+   * test requests it
+   */
+  private static class RecordingSubscriber implements SensorFlow.Subscriber<SensorUpdate> {
+    final BlockingQueue<SensorUpdate> updates = new LinkedBlockingQueue<SensorUpdate>();
+    final CountDownLatch subscribed = new CountDownLatch(1);
+    final CountDownLatch completed = new CountDownLatch(1);
+    volatile SensorFlow.Subscription subscription;
+
+    @Override
+    public void onSubscribe(SensorFlow.Subscription s) {
+      subscription = s;
+      subscribed.countDown();
+    }
+
+    @Override
+    public void onNext(SensorUpdate item) {
+      updates.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+      completed.countDown();
+    }
+
+    SensorUpdate next() throws InterruptedException {
+      SensorUpdate update = updates.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+      Assert.assertNotNull("Update not delivered", update);
+      return update;
+    }
+  }
+
+  @Test
+  public void slowSubscriberIsConflated() throws Exception {
+    int sensorId = ControllerSimulator.FIRST_SENSOR_ID;
+    SensorRegistrationHandle handle = register(1);
+    SensorPublisher publisher = handle.getSensorPublisher();
+
+    // No demand until the updates have piled up
+    RecordingSubscriber subscriber = subscribe(publisher);
+
+    long published = publisher.getPublishedCount();
+    for (int i = 1; i <= 5; i++) {
+      simulator.setSensorValue(sensorId, "value" + i);
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      while (publisher.getPublishedCount() < published + i) {
+        Assert.assertTrue("Update not published", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+    }
+    Assert.assertTrue(subscriber.updates.isEmpty());
+
+    // Only the latest value is pending; each update replaced the one before,
+    // starting with the initial value
+    subscriber.subscription.request(10);
+    SensorUpdate update = subscriber.next();
+    Assert.assertEquals(sensorId, update.getSensorId());
+    Assert.assertEquals("value5", update.getValue());
+    Assert.assertNull(subscriber.updates.poll(100, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(5, publisher.getConflatedCount());
+    Assert.assertEquals(1, publisher.getDeliveredCount());
+
+    controller.unregisterSensors(handle);
+    Assert.assertTrue(subscriber.completed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(0, publisher.getSubscriberCount());
+  }
+
+  @Test
+  public void newSubscriberGetsLastKnownValues() throws Exception {
+    SensorRegistrationHandle handle = register(3);
+    RecordingSubscriber subscriber = subscribe(handle.getSensorPublisher());
+
+    subscriber.subscription.request(10);
+    SensorIdSet received = new SensorIdSet();
+    for (int i = 0; i < 3; i++) {
+      SensorUpdate update = subscriber.next();
+      Assert.assertEquals(simulator.getSensorValue(update.getSensorId()), update.getValue());
+      received.add(update.getSensorId());
+    }
+    Assert.assertEquals(handle.getSensorIds().size(), received.size());
+  }
+
+  @Test
+  public void cancelCountsPendingUpdatesAsDropped() throws Exception {
+    SensorPublisher publisher = register(3).getSensorPublisher();
+    RecordingSubscriber subscriber = subscribe(publisher);
+    Assert.assertEquals(1, publisher.getSubscriberCount());
+
+    subscriber.subscription.cancel();
+    Assert.assertEquals(3, publisher.getDroppedCount());
+    Assert.assertEquals(0, publisher.getDeliveredCount());
+    Assert.assertEquals(0, publisher.getSubscriberCount());
+
+    // Cancelling again drops nothing more
+    subscriber.subscription.cancel();
+    Assert.assertEquals(3, publisher.getDroppedCount());
+  }
+
+  @Test
+  public void cancelDuringDeliveryDropsRestOfBatch() throws Exception {
+    final SensorPublisher publisher = register(3).getSensorPublisher();
+    final CountDownLatch cancelled = new CountDownLatch(1);
+    RecordingSubscriber subscriber = new RecordingSubscriber() {
+      @Override
+      public void onNext(SensorUpdate item) {
+        super.onNext(item);
+        subscription.cancel();
+        cancelled.countDown();
+      }
+    };
+    publisher.subscribe(subscriber);
+    Assert.assertTrue(subscriber.subscribed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    subscriber.subscription.request(3);
+    Assert.assertTrue(cancelled.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    await("Batch not dropped", new Condition() {
+      @Override
+      public boolean isMet() {
+        return publisher.getDroppedCount() == 2;
+      }
+    });
+    Assert.assertEquals(1, publisher.getDeliveredCount());
+    Assert.assertEquals(1, subscriber.updates.size());
+  }
+
+  private SensorRegistrationHandle register(int sensorCount) throws Exception {
+    SensorIdSet sensorIds = new SensorIdSet();
+    for (int i = 0; i < sensorCount; i++) {
+      sensorIds.add(ControllerSimulator.FIRST_SENSOR_ID + i);
+    }
+    return controller.registerSensors(sensorIds).get(TIMEOUT, TimeUnit.MILLISECONDS);
+  }
+
+  private static RecordingSubscriber subscribe(SensorPublisher publisher)
+          throws InterruptedException {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    Assert.assertTrue(subscriber.subscribed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    return subscriber;
+  }
+}
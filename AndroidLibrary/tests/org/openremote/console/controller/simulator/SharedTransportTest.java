@@ -0,0 +1,113 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.auth.UserPasswordCredentials;
+import org.openremote.console.controller.connector.HttpConnector;
+import org.openremote.console.controller.connector.HttpTransport;
+import org.openremote.entities.panel.PanelInfo;
+
+/**
+ * Tests of several {@link Controller} instances sharing one
+ * {@link HttpTransport}
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class SharedTransportTest extends AbstractSimulatorTest {
+  private HttpTransport transport;
+  private Controller[] controllers;
+  private HttpConnector[] connectors;
+
+  @Before
+  public void connectShared() throws Exception {
+    transport = new HttpTransport(8, 2);
+    controllers = new Controller[3];
+    connectors = new HttpConnector[controllers.length];
+
+    for (int i = 0; i < controllers.length; i++) {
+      connectors[i] = new ThreadedHttpConnector();
+      controllers[i] = connect(new Controller.Builder(simulator.getUrl())
+              .setConnector(connectors[i]).setTransport(transport)
+              .setCredentials(new UserPasswordCredentials("user" + i, "secret")));
+    }
+  }
+
+  @After
+  public void disconnectShared() {
+    for (Controller shared : controllers) {
+      if (shared != null) {
+        shared.disconnect();
+      }
+    }
+    transport.shutdown();
+  }
+
+  @Test
+  public void sharedTransport() throws Exception {
+    for (Result<List<PanelInfo>> panelList : getPanelLists()) {
+      Assert.assertEquals(1, panelList.get().size());
+    }
+
+    // Credentials stay with each controller
+    for (int i = 0; i < controllers.length; i++) {
+      Assert.assertSame(transport, connectors[i].getTransport());
+      Assert.assertEquals("user" + i,
+              ((UserPasswordCredentials) connectors[i].getCredentials()).getUsername());
+    }
+  }
+
+  @Test
+  public void disconnectLeavesOtherControllersConnected() throws Exception {
+    controllers[0].disconnect();
+    controllers[0] = null;
+
+    for (Result<List<PanelInfo>> panelList : getPanelLists()) {
+      Assert.assertEquals(1, panelList.get().size());
+    }
+    Assert.assertFalse(transport.isShutdown());
+  }
+
+  @Test
+  public void shutdown() {
+    transport.shutdown();
+    Assert.assertTrue(transport.isShutdown());
+  }
+
+  private List<Result<List<PanelInfo>>> getPanelLists() {
+    List<Result<List<PanelInfo>>> panelLists = new ArrayList<Result<List<PanelInfo>>>();
+    for (Controller shared : controllers) {
+      if (shared != null) {
+        Result<List<PanelInfo>> panelList = new Result<List<PanelInfo>>();
+        shared.getPanelList(panelList);
+        panelLists.add(panelList);
+      }
+    }
+    return panelLists;
+  }
+}
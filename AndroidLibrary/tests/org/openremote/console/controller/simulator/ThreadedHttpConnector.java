@@ -0,0 +1,78 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.openremote.console.controller.connector.SingleThreadHttpConnector;
+
+/**
+ * {@link SingleThreadHttpConnector} that runs each request on a pooled thread
+ * so that the sensor monitor's poll loop doesn't recurse on (and block) the
+ * caller's thread; used to drive many controllers against the
+ * {@link ControllerSimulator}. Like the Android connector, disconnecting
+ * cancels the requests that are still in flight.
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+class ThreadedHttpConnector extends SingleThreadHttpConnector {
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "ThreadedHttpConnector");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+  private final Set<ControllerCallback> requests = Collections
+          .newSetFromMap(new ConcurrentHashMap<ControllerCallback, Boolean>());
+
+  @Override
+  protected void doRequest(final URI uri, final Map<String, String> headers, final String content,
+          final ControllerCallback callback, final Integer timeout) {
+    if (callback.getCommand() == RestCommand.DISCONNECT) {
+      connected = false;
+      for (ControllerCallback request : requests) {
+        request.cancel();
+      }
+      return;
+    }
+
+    requests.add(callback);
+    EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          ThreadedHttpConnector.super.doRequest(uri, headers, content, callback, timeout);
+        } finally {
+          requests.remove(callback);
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2014, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.console.controller.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openremote.console.controller.Controller;
+import org.openremote.console.controller.SensorIdSet;
+import org.openremote.console.controller.connector.HttpTransport;
+import org.openremote.console.controller.connector.VirtualThreadHttpConnector;
+import org.openremote.entities.controller.DeviceInfo;
+
+/**
+ * Tests of the {@link VirtualThreadHttpConnector} against the simulator
+ *
+ * @author <a href="mailto:richard@openremote.org">Richard Turner</a>
+ */
+public class VirtualThreadHttpConnectorTest extends AbstractSimulatorTest {
+  private static final int RESPONSE_DELAY = 500;
+
+  private Controller virtual;
+
+  @After
+  public void disconnectVirtual() {
+    if (virtual != null) {
+      virtual.disconnect();
+    }
+  }
+
+  @Test
+  public void pollDoesNotSerialiseRequestsWithoutTransport() throws Exception {
+    virtual = connect(new Controller.Builder(simulator.getUrl())
+            .setConnector(new VirtualThreadHttpConnector()));
+
+    SensorIdSet sensorIds = new SensorIdSet();
+    sensorIds.add(ControllerSimulator.FIRST_SENSOR_ID);
+    Assert.assertNotNull(virtual.registerSensors(sensorIds).get(TIMEOUT, TimeUnit.MILLISECONDS));
+    await("Poll not held", new Condition() {
+      @Override
+      public boolean isMet() {
+        return simulator.getActivePollCount() > 0;
+      }
+    });
+
+    // The poll holds one connection; the rest of the pool serves the other
+    // requests side by side
+    simulator.setResponseDelay(RESPONSE_DELAY, RESPONSE_DELAY);
+    int requests = HttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST - 1;
+    List<Result<List<DeviceInfo>>> deviceLists = new ArrayList<Result<List<DeviceInfo>>>();
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < requests; i++) {
+      Result<List<DeviceInfo>> deviceList = new Result<List<DeviceInfo>>();
+      virtual.getDeviceList(deviceList);
+      deviceLists.add(deviceList);
+    }
+
+    for (Result<List<DeviceInfo>> deviceList : deviceLists) {
+      Assert.assertFalse(deviceList.get().isEmpty());
+    }
+    Assert.assertTrue(System.currentTimeMillis() - start < RESPONSE_DELAY * 2);
+  }
+}